@@ -0,0 +1,134 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.cadence;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the accuracy and the cost of the cadence estimators on synthetic rotation traces: 5 s windows at 25 Hz (what {@link CadenceManager}
+ * passes to its estimator), with a pedaling signal made of a fundamental and a harmonic, an irregular pedal stroke, and white noise for the
+ * vibrations of the road.<br/>
+ * The results are printed, and the expected behavior is checked: both estimators work on a smooth road, only the autocorrelation still works on a
+ * rough one (noise with a standard deviation of a quarter of the amplitude of the signal). The autocorrelation costs 20 to 40 times more, which is
+ * still only a few tens of microseconds per estimate on a desktop JVM (one estimate every 2 s).
+ */
+public class CadenceEstimatorBenchmarkTest extends TestCase {
+    private static final long SAMPLING_PERIOD_MS = 40;
+    private static final int SAMPLE_COUNT = 125;
+    private static final int TRACE_COUNT = 200;
+
+    /**
+     * Each estimate is repeated to measure its duration more precisely.
+     */
+    private static final int REPEAT_COUNT = 20;
+    private static final float[] NOISE_LEVELS = { 0, .05f, .1f, .2f, .3f };
+    private static final int SMOOTH_ROAD = 0;
+    private static final int ROUGH_ROAD = 2;
+
+    /**
+     * An estimate is accurate if it is within this ratio of the real cadence.
+     */
+    private static final float MAX_ERROR_RATIO = .05f;
+
+    private static class Result {
+        float accuracy;
+        float nanosPerEstimate;
+    }
+
+    public void testBenchmark() {
+        CadenceEstimator autocorrelation = new AutocorrelationCadenceEstimator(SAMPLE_COUNT);
+        CadenceEstimator zeroCrossing = new ZeroCrossingCadenceEstimator();
+
+        // Warm up (JIT)
+        for (int i = 0; i < 10; i++) {
+            run(autocorrelation, NOISE_LEVELS[i % NOISE_LEVELS.length], -i);
+            run(zeroCrossing, NOISE_LEVELS[i % NOISE_LEVELS.length], -i);
+        }
+
+        Result[] autocorrelationResults = new Result[NOISE_LEVELS.length];
+        Result[] zeroCrossingResults = new Result[NOISE_LEVELS.length];
+        System.out.println("noise  autocorrelation (accuracy, us)  zero crossing (accuracy, us)");
+        for (int i = 0; i < NOISE_LEVELS.length; i++) {
+            // Same traces for both estimators
+            autocorrelationResults[i] = run(autocorrelation, NOISE_LEVELS[i], i);
+            zeroCrossingResults[i] = run(zeroCrossing, NOISE_LEVELS[i], i);
+            System.out.println(String.format("%.2f   %5.1f%% %8.1f                   %5.1f%% %8.1f", NOISE_LEVELS[i],
+                    autocorrelationResults[i].accuracy * 100, autocorrelationResults[i].nanosPerEstimate / 1000,
+                    zeroCrossingResults[i].accuracy * 100, zeroCrossingResults[i].nanosPerEstimate / 1000));
+        }
+
+        assertTrue(autocorrelationResults[SMOOTH_ROAD].accuracy > .95f);
+        assertTrue(zeroCrossingResults[SMOOTH_ROAD].accuracy > .95f);
+        assertTrue(autocorrelationResults[ROUGH_ROAD].accuracy > .95f);
+        assertTrue(zeroCrossingResults[ROUGH_ROAD].accuracy < .5f);
+        for (int i = 0; i < NOISE_LEVELS.length; i++) {
+            assertTrue(autocorrelationResults[i].accuracy >= zeroCrossingResults[i].accuracy);
+        }
+    }
+
+    private static Result run(CadenceEstimator estimator, float noise, long seed) {
+        Random random = new Random(seed);
+        SampleRingBuffer samples = new SampleRingBuffer(256);
+        int accurateCount = 0;
+        long nanos = 0;
+        for (int trace = 0; trace < TRACE_COUNT; trace++) {
+            float cadence = 40 + random.nextFloat() * 110;
+            fill(samples, random, cadence, noise);
+
+            float estimate = 0;
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < REPEAT_COUNT; i++) {
+                estimate = estimator.estimate(samples, samples.getStart(), samples.getEnd());
+            }
+            nanos += System.nanoTime() - startNanos;
+
+            if (Math.abs(estimate - cadence) <= cadence * MAX_ERROR_RATIO) accurateCount++;
+        }
+        Result res = new Result();
+        res.accuracy = accurateCount / (float) TRACE_COUNT;
+        res.nanosPerEstimate = nanos / (float) (TRACE_COUNT * REPEAT_COUNT);
+        return res;
+    }
+
+    /**
+     * Fill the samples with a 5 s trace of the given cadence. The speed of the pedal stroke varies by 10% during a revolution, and the phase
+     * at the start is random.
+     */
+    private static void fill(SampleRingBuffer samples, Random random, float cadence, float noise) {
+        samples.clear();
+        double phase = random.nextDouble() * 2 * Math.PI;
+        double phasePerSample = 2 * Math.PI * cadence / 60000 * SAMPLING_PERIOD_MS;
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            float x = (float) (.4 * Math.sin(phase) + .1 * Math.sin(2 * phase));
+            float y = (float) (.2 * Math.cos(phase));
+            float z = (float) (.5 + .05 * Math.sin(phase));
+            samples.add(i * SAMPLING_PERIOD_MS, x + noise * (float) random.nextGaussian(), y + noise * (float) random.nextGaussian(), z + noise
+                    * (float) random.nextGaussian());
+            phase += phasePerSample * (1 + .1 * Math.sin(phase));
+        }
+    }
+}
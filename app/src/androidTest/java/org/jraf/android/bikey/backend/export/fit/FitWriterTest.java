@@ -0,0 +1,162 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.export.fit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jraf.android.bikey.backend.export.fit.FitReader.RecordListener;
+
+public class FitWriterTest extends TestCase {
+    private static final long START_DATE = 1400000000000L;
+
+    private static class Record {
+        long date;
+        double lat;
+        double lon;
+        double ele;
+        Float cadence;
+        Integer heartRate;
+
+        Record(long date, double lat, double lon, double ele, Float cadence, Integer heartRate) {
+            this.date = date;
+            this.lat = lat;
+            this.lon = lon;
+            this.ele = ele;
+            this.cadence = cadence;
+            this.heartRate = heartRate;
+        }
+    }
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        mFile = File.createTempFile("FitWriterTest", ".fit");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    public void testRoundTrip() throws IOException {
+        List<Record> fixture = new ArrayList<Record>();
+        for (int i = 0; i < 500; i++) {
+            // A pause in the middle, to have 2 laps
+            long date = START_DATE + i * 1000L + (i >= 250 ? 10 * 60 * 1000L : 0);
+            Float cadence = i % 7 == 0 ? null : (float) (80 + i % 10);
+            Integer heartRate = i % 11 == 0 ? null : 120 + i % 40;
+            fixture.add(new Record(date, 48.85 + i * .0001, 2.35 - i * .0001, 35.2 + i * .1, cadence, heartRate));
+        }
+        write(fixture);
+
+        List<Record> decoded = read();
+        assertEquals(fixture.size(), decoded.size());
+        for (int i = 0; i < fixture.size(); i++) {
+            Record expected = fixture.get(i);
+            Record actual = decoded.get(i);
+            assertEquals(expected.date, actual.date);
+            assertEquals(expected.lat, actual.lat, 1e-6);
+            assertEquals(expected.lon, actual.lon, 1e-6);
+            assertEquals(expected.ele, actual.ele, 1d / FitProtocol.ALTITUDE_SCALE);
+            assertEquals(expected.cadence, actual.cadence);
+            assertEquals(expected.heartRate, actual.heartRate);
+        }
+    }
+
+    public void testEmpty() throws IOException {
+        write(new ArrayList<Record>());
+        assertEquals(0, read().size());
+    }
+
+    public void testCorruptedCrc() throws IOException {
+        List<Record> fixture = new ArrayList<Record>();
+        fixture.add(new Record(START_DATE, 48.85, 2.35, 35, 80f, 120));
+        write(fixture);
+
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            // Change a byte of the record
+            file.seek(file.length() - 10);
+            int b = file.read();
+            file.seek(file.length() - 10);
+            file.write(b ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        try {
+            read();
+            fail("The corrupted file should not be decoded");
+        } catch (IOException expected) {}
+    }
+
+
+    /*
+     * Helpers.
+     */
+
+    private void write(List<Record> records) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.getChannel().truncate(0);
+            FitWriter writer = new FitWriter(file.getChannel());
+            writer.begin(START_DATE);
+            Record previous = null;
+            for (Record record : records) {
+                Float logDistance = previous == null ? null : 10f;
+                writer.addLog(record.date, record.lat, record.lon, record.ele, record.heartRate, record.cadence, logDistance, 5f);
+                previous = record;
+            }
+            writer.end();
+        } finally {
+            file.close();
+        }
+    }
+
+    private List<Record> read() throws IOException {
+        final List<Record> res = new ArrayList<Record>();
+        InputStream in = new FileInputStream(mFile);
+        try {
+            new FitReader(new RecordListener() {
+                @Override
+                public void onRecord(long date, double lat, double lon, double ele, Float cadence, Integer heartRate) {
+                    res.add(new Record(date, lat, lon, ele, cadence, heartRate));
+                }
+            }).read(in);
+        } finally {
+            in.close();
+        }
+        return res;
+    }
+}
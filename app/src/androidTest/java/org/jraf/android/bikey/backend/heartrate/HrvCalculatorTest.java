@@ -0,0 +1,206 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.heartrate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class HrvCalculatorTest extends TestCase {
+    private static final int WINDOW_MS = 60 * 1000;
+    private static final int CAPACITY = 240;
+    private static final int MIN_COUNT = 10;
+
+    public void testNotEnoughIntervals() {
+        HrvCalculator calculator = new HrvCalculator(CAPACITY);
+        for (int i = 0; i < MIN_COUNT - 1; i++) {
+            calculator.add(i % 2 == 0 ? 800 : 820);
+        }
+        assertEquals(-1f, calculator.getRmssd());
+        assertEquals(-1f, calculator.getSdnn());
+        calculator.add(820);
+        assertEquals(20f, calculator.getRmssd(), .001f);
+        assertTrue(calculator.getSdnn() > 0);
+    }
+
+    /**
+     * A premature beat is followed by a compensatory pause: both must be rejected, and their differences must not be counted.
+     */
+    public void testCompensatoryPause() {
+        HrvCalculator calculator = new HrvCalculator(CAPACITY);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(calculator.add(i % 2 == 0 ? 800 : 810));
+        }
+        // Premature beat, 40% shorter
+        assertFalse(calculator.add(480));
+        // Compensatory pause, 40% longer than the last accepted interval
+        assertFalse(calculator.add(1130));
+        assertTrue(calculator.add(800));
+        for (int i = 1; i < 20; i++) {
+            assertTrue(calculator.add(i % 2 == 0 ? 800 : 810));
+        }
+        // The difference between the intervals on each side of the ectopic beat is not counted either
+        assertEquals(10f, calculator.getRmssd(), .001f);
+    }
+
+    public void testImplausibleIntervals() {
+        HrvCalculator calculator = new HrvCalculator(CAPACITY);
+        for (int i = 0; i < 20; i++) {
+            calculator.add(i % 2 == 0 ? 800 : 820);
+        }
+        // Last accepted: 820
+        assertFalse(calculator.add(250));
+        assertFalse(calculator.add(2500));
+        // Still compared to the last accepted interval
+        assertFalse(calculator.add(1100));
+        assertTrue(calculator.add(820));
+        calculator.add(800);
+        // No difference of 0 between the two 820 around the rejected intervals
+        assertEquals(20f, calculator.getRmssd(), .001f);
+    }
+
+    public void testHeartRateChange() {
+        HrvCalculator calculator = new HrvCalculator(CAPACITY);
+        for (int i = 0; i < 20; i++) {
+            calculator.add(1000);
+        }
+        // A sudden change is first taken for ectopic beats, then accepted
+        for (int i = 0; i < 4; i++) {
+            assertFalse(calculator.add(600));
+        }
+        assertTrue(calculator.add(600));
+        assertTrue(calculator.add(610));
+
+        // After clear(), there is no reference anymore
+        calculator.clear();
+        assertTrue(calculator.add(1000));
+        assertEquals(-1f, calculator.getSdnn());
+    }
+
+    public void testWindowBoundary() {
+        HrvCalculator calculator = new HrvCalculator(CAPACITY);
+        calculator.add(800);
+        for (int i = 0; i < 59; i++) {
+            calculator.add(1000);
+        }
+        // 800 + 59 * 1000 fits in the window
+        assertTrue(calculator.getSdnn() > 0);
+        assertTrue(calculator.getRmssd() > 0);
+        calculator.add(1000);
+        // 60 * 1000 fills it: the 800 is out, and so is the difference between it and the next interval
+        assertEquals(0f, calculator.getSdnn());
+        assertEquals(0f, calculator.getRmssd());
+    }
+
+    public void testWindowShortenedByCapacity() {
+        HrvCalculator calculator = new HrvCalculator(20);
+        for (int i = 0; i < 10; i++) {
+            calculator.add(i % 2 == 0 ? 800 : 1000);
+        }
+        for (int i = 0; i < 20; i++) {
+            calculator.add(1000);
+        }
+        assertEquals(0f, calculator.getSdnn());
+        assertEquals(0f, calculator.getRmssd());
+    }
+
+    /**
+     * A heart rate drifting slowly with some variability, with premature beats (each followed by a compensatory pause) and missed beats. The
+     * normal beats must be accepted and the others rejected, and the values must be the ones of the normal beats of the last 60 s.
+     */
+    public void testAgainstDefinition() {
+        Random random = new Random(1976);
+        HrvCalculator calculator = new HrvCalculator(CAPACITY);
+        List<Integer> normalRrIntervals = new ArrayList<Integer>();
+        // Whether each normal interval directly follows another normal interval
+        List<Boolean> successive = new ArrayList<Boolean>();
+        boolean previousNormal = false;
+        int rrInterval = 800;
+        for (int i = 0; i < 3000; i++) {
+            int type = random.nextInt(40);
+            if (type == 0) {
+                // Premature beat and compensatory pause
+                int premature = rrInterval * 6 / 10;
+                assertFalse(calculator.add(premature));
+                assertFalse(calculator.add(2 * rrInterval - premature));
+                previousNormal = false;
+            } else if (type == 1) {
+                // Missed beat
+                assertFalse(calculator.add(2 * rrInterval));
+                previousNormal = false;
+            } else {
+                rrInterval = Math.max(600, Math.min(1000, rrInterval + random.nextInt(21) - 10));
+                int value = rrInterval + random.nextInt(41) - 20;
+                assertTrue(calculator.add(value));
+                normalRrIntervals.add(value);
+                successive.add(previousNormal);
+                previousNormal = true;
+                // The last accepted interval is the reference
+                rrInterval = value;
+            }
+
+            float[] expected = getHrv(normalRrIntervals, successive);
+            assertEquals(expected[0], calculator.getRmssd(), .01f);
+            assertEquals(expected[1], calculator.getSdnn(), .01f);
+        }
+    }
+
+    /**
+     * The definition: over the last normal intervals whose sum is at most 60 s, the root mean square of the differences between successive
+     * intervals, and the standard deviation of the intervals.
+     */
+    private static float[] getHrv(List<Integer> rrIntervals, List<Boolean> successive) {
+        int end = rrIntervals.size();
+        int start = end;
+        long sum = 0;
+        while (start > 0 && sum + rrIntervals.get(start - 1) <= WINDOW_MS) {
+            start--;
+            sum += rrIntervals.get(start);
+        }
+        int size = end - start;
+
+        double squaredDiffSum = 0;
+        int diffCount = 0;
+        for (int i = start + 1; i < end; i++) {
+            if (!successive.get(i)) continue;
+            double diff = rrIntervals.get(i) - rrIntervals.get(i - 1);
+            squaredDiffSum += diff * diff;
+            diffCount++;
+        }
+        float rmssd = diffCount < MIN_COUNT - 1 ? -1 : (float) Math.sqrt(squaredDiffSum / diffCount);
+
+        double mean = (double) sum / size;
+        double squaredDeviationSum = 0;
+        for (int i = start; i < end; i++) {
+            double deviation = rrIntervals.get(i) - mean;
+            squaredDeviationSum += deviation * deviation;
+        }
+        float sdnn = size < MIN_COUNT ? -1 : (float) Math.sqrt(squaredDeviationSum / (size - 1));
+
+        return new float[] { rmssd, sdnn };
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class GradientCalculatorTest extends TestCase {
+    private static final double WINDOW_DISTANCE_M = GradientCalculator.DEFAULT_WINDOW_DISTANCE_M;
+
+    public void testConstantGradient() {
+        GradientCalculator calculator = new GradientCalculator();
+        assertNull(calculator.getGradient());
+        double elevation = 0;
+        for (int i = 0; i < 1000; i++) {
+            calculator.add(5, elevation);
+            elevation -= 5 * .08;
+        }
+        assertEquals(-.08f, calculator.getGradient(), .0001f);
+    }
+
+    /**
+     * The gradient is only known once the points span half the window.
+     */
+    public void testHalfWindowSpan() {
+        GradientCalculator calculator = new GradientCalculator();
+        calculator.add(0, 0);
+        for (int i = 1; i < 5; i++) {
+            calculator.add(10, i);
+            assertNull(calculator.getGradient());
+        }
+        calculator.add(10, 5);
+        assertEquals(.1f, calculator.getGradient(), .0001f);
+
+        calculator.reset();
+        assertNull(calculator.getGradient());
+        calculator.add(0, 0);
+        calculator.add(10, 1);
+        assertNull(calculator.getGradient());
+    }
+
+    /**
+     * A point exactly at the window distance from the last one is still in the window.
+     */
+    public void testWindowBoundary() {
+        GradientCalculator calculator = new GradientCalculator();
+        List<double[]> points = new ArrayList<double[]>();
+        // A spike at the start, then flat
+        calculator.add(0, 20);
+        points.add(new double[] { 0, 20 });
+        for (int i = 1; i <= 10; i++) {
+            calculator.add(10, 0);
+            points.add(new double[] { i * 10, 0 });
+        }
+        float withSpike = getGradient(points);
+        assertTrue(withSpike < -.05f);
+        assertEquals(withSpike, calculator.getGradient(), .0001f);
+
+        // The spike is now out of the window
+        calculator.add(10, 0);
+        assertEquals(0f, calculator.getGradient(), .0001f);
+    }
+
+    /**
+     * While stopped, the elevation keeps changing (GPS or barometer noise) but the distance does not: this must not change the gradient. Short
+     * steps still add up.
+     */
+    public void testStops() {
+        GradientCalculator calculator = new GradientCalculator();
+        double elevation = 0;
+        for (int i = 0; i < 100; i++) {
+            calculator.add(5, elevation);
+            elevation += 5 * .05;
+        }
+        Float gradient = calculator.getGradient();
+        assertEquals(.05f, gradient, .0001f);
+
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            calculator.add(0, elevation + random.nextGaussian() * 3);
+        }
+        assertEquals(gradient, calculator.getGradient());
+
+        // Walking the bike: 25 cm steps
+        for (int i = 0; i < 400; i++) {
+            calculator.add(.25f, elevation);
+            elevation += .25 * .05;
+        }
+        assertEquals(.05f, calculator.getGradient(), .001f);
+    }
+
+    /**
+     * After a long ride, the distances are large: the sums must stay precise.
+     */
+    public void testRebasePrecision() {
+        GradientCalculator calculator = new GradientCalculator();
+        double elevation = 4000;
+        // 20000 km
+        for (int i = 0; i < 2000000; i++) {
+            calculator.add(10, elevation);
+            elevation += 10 * (i / 1000 % 2 == 0 ? .03 : -.03);
+        }
+        // Last 1000 points going down, and the rest of the window too
+        assertEquals(-.03f, calculator.getGradient(), .000001f);
+    }
+
+    public void testAgainstDefinition() {
+        Random random = new Random(2015);
+        GradientCalculator calculator = new GradientCalculator();
+        List<double[]> points = new ArrayList<double[]>();
+        double distance = 0;
+        double elevation = 100;
+        double gradient = 0;
+        for (int i = 0; i < 20000; i++) {
+            // Steps of 1 to 10 m (every 1 to 5 s), and hills of a few hundred meters
+            float step = 1 + random.nextFloat() * 9;
+            if (random.nextInt(50) == 0) gradient = (random.nextDouble() - .5) * .2;
+            elevation += step * gradient + random.nextGaussian() * .3;
+            calculator.add(step, elevation);
+            distance += step;
+            points.add(new double[] { distance, elevation });
+
+            Float expected = getGradient(points);
+            Float actual = calculator.getGradient();
+            if (expected == null) {
+                assertNull(actual);
+            } else {
+                assertEquals(expected, actual, .0001f);
+            }
+        }
+    }
+
+    /**
+     * The definition: the least-squares slope of the elevation against the distance, over the points at most the window distance before the last
+     * one, if they span at least half the window.
+     */
+    private static Float getGradient(List<double[]> points) {
+        double lastDistance = points.get(points.size() - 1)[0];
+        List<double[]> window = new ArrayList<double[]>();
+        for (int i = points.size() - 1; i >= 0 && lastDistance - points.get(i)[0] <= WINDOW_DISTANCE_M; i--) {
+            window.add(0, points.get(i));
+        }
+        if (window.size() < 3 || lastDistance - window.get(0)[0] < WINDOW_DISTANCE_M / 2) return null;
+
+        double meanD = 0;
+        double meanE = 0;
+        for (double[] point : window) {
+            meanD += point[0] / window.size();
+            meanE += point[1] / window.size();
+        }
+        double sumDD = 0;
+        double sumDE = 0;
+        for (double[] point : window) {
+            sumDD += (point[0] - meanD) * (point[0] - meanD);
+            sumDE += (point[0] - meanD) * (point[1] - meanE);
+        }
+        return (float) (sumDE / sumDD);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.location;
+
+import junit.framework.TestCase;
+
+import android.location.Location;
+
+public class LocationIntervalSchedulerTest extends TestCase {
+    private static final double EARTH_RADIUS_M = 6371009;
+    private static final double METERS_PER_DEGREE_LAT = Math.toRadians(EARTH_RADIUS_M);
+    private static final double START_LAT = 48.85;
+    private static final double START_LON = 2.35;
+    private static final long START_DATE = 1400000000000L;
+
+    private LocationIntervalScheduler mScheduler;
+    private long mDate;
+    private double mEast;
+    private double mNorth;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mScheduler = new LocationIntervalScheduler();
+        mDate = 0;
+        mEast = 0;
+        mNorth = 0;
+    }
+
+    public void testCruising() {
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, mScheduler.getInterval());
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(0, 0, 0));
+        // The first fix with a bearing, then 4 fixes without a turn
+        for (int i = 0; i < 5; i++) {
+            assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(1000, 6, 90));
+        }
+        assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, ride(1000, 6, 90));
+        assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, ride(2000, 6, 90));
+    }
+
+    public void testScreenOff() {
+        startCruising();
+        mScheduler.setScreenOn(false);
+        assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_SCREEN_OFF_MS, mScheduler.getInterval());
+        assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_SCREEN_OFF_MS, ride(3000, 6, 90));
+        mScheduler.setScreenOn(true);
+        assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, mScheduler.getInterval());
+
+        // Only the cruising interval depends on the screen
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(2000, 6, 0));
+        mScheduler.setScreenOn(false);
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, mScheduler.getInterval());
+    }
+
+    public void testTurn() {
+        startCruising();
+        // 90° in 2 s
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(2000, 6, 0));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(1000, 6, 0));
+        }
+        assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, ride(1000, 6, 0));
+    }
+
+    /**
+     * A change of bearing slower than 10°/s is not a turn.
+     */
+    public void testCurve() {
+        startCruising();
+        float bearing = 90;
+        for (int i = 0; i < 20; i++) {
+            // 8°/s
+            bearing += 16;
+            assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, ride(2000, 6, bearing));
+        }
+        // 12°/s
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(2000, 6, bearing + 24));
+    }
+
+    public void testStationary() {
+        startCruising();
+        // Slowing down: the current interval is kept for 4 fixes
+        for (int i = 0; i < 4; i++) {
+            assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, ride(2000, 0, 0));
+        }
+        assertEquals(LocationIntervalScheduler.INTERVAL_STATIONARY_MS, ride(2000, 0, 0));
+        assertEquals(LocationIntervalScheduler.INTERVAL_STATIONARY_MS, ride(5000, .3f, 0));
+
+        // Moving again
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(5000, 6, 90));
+    }
+
+    /**
+     * Below 8 km/h, the bearing is too noisy to know whether the rider is going straight.
+     */
+    public void testSlow() {
+        ride(0, 0, 0);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(1000, 7 / 3.6f, 90));
+        }
+    }
+
+    /**
+     * The speed and bearing measured by the receiver (Doppler) are used when present, rather than the ones computed from the positions.
+     */
+    public void testDopplerSpeed() {
+        // Not moving according to the positions, but at 6 m/s according to the receiver
+        mScheduler.onLocationChanged(createLocation(0, 0, 0, 6f, 90f));
+        for (int i = 1; i < 6; i++) {
+            assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, mScheduler.onLocationChanged(createLocation(i * 1000, 0, 0, 6f, 90f)));
+        }
+        assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, mScheduler.onLocationChanged(createLocation(6000, 0, 0, 6f, 90f)));
+
+        // Moving according to the positions, but stopped according to the receiver
+        for (int i = 7; i < 11; i++) {
+            assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, mScheduler.onLocationChanged(createLocation(i * 1000, i * 6, 0, 0f, null)));
+        }
+        assertEquals(LocationIntervalScheduler.INTERVAL_STATIONARY_MS, mScheduler.onLocationChanged(createLocation(11000, 66, 0, 0f, null)));
+    }
+
+    public void testReset() {
+        startCruising();
+        mScheduler.reset();
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, mScheduler.getInterval());
+        // The previous fixes are forgotten
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(2000, 6, 90));
+        assertEquals(LocationIntervalScheduler.INTERVAL_FAST_MS, ride(1000, 6, 90));
+    }
+
+    /**
+     * A fix older than the previous one is ignored.
+     */
+    public void testOutOfOrder() {
+        startCruising();
+        mDate -= 5000;
+        assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, ride(0, 0, 0));
+    }
+
+
+    /*
+     * Helpers.
+     */
+
+    private void startCruising() {
+        ride(0, 0, 0);
+        for (int i = 0; i < 6; i++) {
+            ride(1000, 6, 90);
+        }
+        assertEquals(LocationIntervalScheduler.INTERVAL_CRUISING_MS, mScheduler.getInterval());
+    }
+
+    /**
+     * Ride for the given duration, at the given speed and bearing, and feed the fix at the end to the scheduler.
+     *
+     * @return The interval returned by the scheduler.
+     */
+    private int ride(long duration, float speed, float bearing) {
+        mDate += duration;
+        mEast += speed * duration / 1000d * Math.sin(Math.toRadians(bearing));
+        mNorth += speed * duration / 1000d * Math.cos(Math.toRadians(bearing));
+        return mScheduler.onLocationChanged(createLocation(mDate, mEast, mNorth, null, null));
+    }
+
+    /**
+     * @param speed The speed measured by the receiver, or {@code null} if none.
+     * @param bearing The bearing measured by the receiver, or {@code null} if none.
+     */
+    private static Location createLocation(long date, double east, double north, Float speed, Float bearing) {
+        Location location = new Location("test");
+        location.setTime(START_DATE + date);
+        location.setLatitude(START_LAT + north / METERS_PER_DEGREE_LAT);
+        location.setLongitude(START_LON + east / (METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(START_LAT))));
+        if (speed != null) location.setSpeed(speed);
+        if (bearing != null) location.setBearing(bearing);
+        return location;
+    }
+}
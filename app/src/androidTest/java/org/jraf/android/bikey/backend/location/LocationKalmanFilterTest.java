@@ -0,0 +1,285 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.location;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import android.location.Location;
+
+public class LocationKalmanFilterTest extends TestCase {
+    private static final double EARTH_RADIUS_M = 6371009;
+    private static final double METERS_PER_DEGREE_LAT = Math.toRadians(EARTH_RADIUS_M);
+    private static final double START_LAT = 48.85;
+    private static final double START_LON = 2.35;
+    private static final long START_DATE = 1400000000000L;
+
+    public void testFirstFix() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        Location location = createLocation(0, 10, 20, 8);
+        filter.filter(location);
+        assertEquals(getLat(20), location.getLatitude(), 1e-9);
+        assertEquals(getLon(10), location.getLongitude(), 1e-9);
+        assertEquals(8f, location.getAccuracy());
+    }
+
+    /**
+     * Irregular fixes of varying accuracy, on a track shorter than 5 km (so the origin of the local plane does not move), compared to the Kalman
+     * filter equations written with matrices: state (x, vx, y, vy), constant velocity model, random acceleration of 1 m/s², and the position
+     * measured with the accuracy of each fix.<br/>
+     * The first fix is exactly at the start of the track, so that the filter and the test use the same local plane.
+     */
+    public void testAgainstKalmanEquations() {
+        Random random = new Random(29);
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+
+        double[] state = null;
+        double[][] covariance = null;
+        long date = 0;
+        double x = 0;
+        double y = 0;
+        double vx = 3;
+        double vy = 2;
+        for (int i = 0; i < 200; i++) {
+            long dt = i == 0 ? 0 : 1000 + random.nextInt(4) * 1000;
+            date += dt;
+            // Around 13 km/h to the north east
+            vx += (3 - vx) * .2 + random.nextGaussian() * dt / 1000;
+            vy += (2 - vy) * .2 + random.nextGaussian() * dt / 1000;
+            x += vx * dt / 1000;
+            y += vy * dt / 1000;
+            float accuracy = 3 + random.nextFloat() * 17;
+            double measuredX = i == 0 ? 0 : x + random.nextGaussian() * accuracy;
+            double measuredY = i == 0 ? 0 : y + random.nextGaussian() * accuracy;
+            Location location = createLocation(date, measuredX, measuredY, accuracy);
+            filter.filter(location);
+
+            double r = (double) accuracy * accuracy;
+            if (i == 0) {
+                state = new double[] { measuredX, 0, measuredY, 0 };
+                covariance = new double[][] { { r, 0, 0, 0 }, { 0, 15 * 15, 0, 0 }, { 0, 0, r, 0 }, { 0, 0, 0, 15 * 15 } };
+            } else {
+                double t = dt / 1000d;
+                double[][] f = { { 1, t, 0, 0 }, { 0, 1, 0, 0 }, { 0, 0, 1, t }, { 0, 0, 0, 1 } };
+                double[][] q = { { t * t * t * t / 4, t * t * t / 2, 0, 0 }, { t * t * t / 2, t * t, 0, 0 }, { 0, 0, t * t * t * t / 4, t * t * t / 2 },
+                        { 0, 0, t * t * t / 2, t * t } };
+                // Predict
+                state = multiply(f, state);
+                covariance = add(multiply(multiply(f, covariance), transpose(f)), q);
+                // Update
+                double[][] h = { { 1, 0, 0, 0 }, { 0, 0, 1, 0 } };
+                double[][] s = add(multiply(multiply(h, covariance), transpose(h)), new double[][] { { r, 0 }, { 0, r } });
+                double[][] k = multiply(multiply(covariance, transpose(h)), invert(s));
+                double[] innovation = { measuredX - state[0], measuredY - state[2] };
+                double[] correction = multiply(k, innovation);
+                for (int j = 0; j < 4; j++) {
+                    state[j] += correction[j];
+                }
+                double[][] identity = { { 1, 0, 0, 0 }, { 0, 1, 0, 0 }, { 0, 0, 1, 0 }, { 0, 0, 0, 1 } };
+                covariance = multiply(add(identity, scale(multiply(k, h), -1)), covariance);
+
+                assertEquals(state[2], getNorth(location), .001);
+                assertEquals(state[0], getEast(location), .001);
+                assertEquals(Math.sqrt(covariance[0][0]), location.getAccuracy(), .001);
+                assertEquals(Math.sqrt(covariance[2][2]), location.getAccuracy(), .001);
+                double speed = Math.hypot(state[1], state[3]);
+                if (speed >= LocationManager.SPEED_MIN_THRESHOLD_M_S) {
+                    double bearing = Math.toDegrees(Math.atan2(state[1], state[3]));
+                    if (bearing < 0) bearing += 360;
+                    assertEquals(bearing, location.getBearing(), .01);
+                } else {
+                    assertFalse(location.hasBearing());
+                }
+            }
+        }
+    }
+
+    public void testNoiseReduced() {
+        Random random = new Random(7);
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        double rawSquaredErrorSum = 0;
+        double filteredSquaredErrorSum = 0;
+        double bearingSquaredErrorSum = 0;
+        for (int i = 0; i < 600; i++) {
+            double east = i * 6;
+            double noiseX = random.nextGaussian() * 10;
+            double noiseY = random.nextGaussian() * 10;
+            Location location = createLocation(i * 1000, east + noiseX, noiseY, 10);
+            filter.filter(location);
+            if (i < 30) continue;
+            rawSquaredErrorSum += noiseX * noiseX + noiseY * noiseY;
+            filteredSquaredErrorSum += Math.pow(getEast(location) - east, 2) + Math.pow(getNorth(location), 2);
+            assertTrue(location.getAccuracy() < 10);
+            bearingSquaredErrorSum += Math.pow(location.getBearing() - 90, 2);
+        }
+        // The error variance is at least halved
+        assertTrue(filteredSquaredErrorSum < rawSquaredErrorSum / 2);
+        // Root mean square error of the bearing, in degrees
+        assertTrue(Math.sqrt(bearingSquaredErrorSum / 570) < 15);
+    }
+
+    /**
+     * On a long ride, the origin of the local plane is moved: the positions must not jump.
+     */
+    public void testLongRide() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        // 30 km to the north east at 10 m/s
+        for (int i = 0; i < 3000; i++) {
+            double distance = i * 10 / Math.sqrt(2);
+            Location location = createLocation(i * 1000, distance, distance, 5);
+            filter.filter(location);
+            if (i < 30) continue;
+            assertEquals(distance, getEast(location), 1);
+            assertEquals(distance, getNorth(location), 1);
+            assertEquals(45, location.getBearing(), 1);
+        }
+    }
+
+    public void testDopplerBearingKept() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        for (int i = 0; i < 10; i++) {
+            Location location = createLocation(i * 1000, i * 8, 0, 5);
+            location.setSpeed(8);
+            location.setBearing(85);
+            filter.filter(location);
+            assertEquals(85f, location.getBearing());
+            assertEquals(8f, location.getSpeed());
+        }
+    }
+
+    public void testStationary() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        for (int i = 0; i < 10; i++) {
+            Location location = createLocation(i * 1000, 0, 0, 5);
+            location.setBearing(180);
+            filter.filter(location);
+            if (i > 0) assertFalse(location.hasBearing());
+        }
+    }
+
+    public void testGap() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        for (int i = 0; i < 10; i++) {
+            filter.filter(createLocation(i * 1000, i * 8, 0, 5));
+        }
+        // After more than 10 s without a fix, the fix is used as is
+        Location location = createLocation(9000 + 11000, 500, 100, 12);
+        filter.filter(location);
+        assertEquals(500, getEast(location), .001);
+        assertEquals(100, getNorth(location), .001);
+        assertEquals(12f, location.getAccuracy());
+    }
+
+
+    /*
+     * Helpers.
+     */
+
+    private static Location createLocation(long date, double east, double north, float accuracy) {
+        Location location = new Location("test");
+        location.setTime(START_DATE + date);
+        location.setLatitude(getLat(north));
+        location.setLongitude(getLon(east));
+        location.setAccuracy(accuracy);
+        return location;
+    }
+
+    private static double getLat(double north) {
+        return START_LAT + north / METERS_PER_DEGREE_LAT;
+    }
+
+    private static double getLon(double east) {
+        return START_LON + east / (METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(START_LAT)));
+    }
+
+    private static double getNorth(Location location) {
+        return (location.getLatitude() - START_LAT) * METERS_PER_DEGREE_LAT;
+    }
+
+    private static double getEast(Location location) {
+        return (location.getLongitude() - START_LON) * METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(START_LAT));
+    }
+
+    private static double[][] multiply(double[][] a, double[][] b) {
+        double[][] res = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < b[0].length; j++) {
+                for (int k = 0; k < b.length; k++) {
+                    res[i][j] += a[i][k] * b[k][j];
+                }
+            }
+        }
+        return res;
+    }
+
+    private static double[] multiply(double[][] a, double[] v) {
+        double[] res = new double[a.length];
+        for (int i = 0; i < a.length; i++) {
+            for (int k = 0; k < v.length; k++) {
+                res[i] += a[i][k] * v[k];
+            }
+        }
+        return res;
+    }
+
+    private static double[][] add(double[][] a, double[][] b) {
+        double[][] res = new double[a.length][a[0].length];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[0].length; j++) {
+                res[i][j] = a[i][j] + b[i][j];
+            }
+        }
+        return res;
+    }
+
+    private static double[][] scale(double[][] a, double factor) {
+        double[][] res = new double[a.length][a[0].length];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[0].length; j++) {
+                res[i][j] = a[i][j] * factor;
+            }
+        }
+        return res;
+    }
+
+    private static double[][] transpose(double[][] a) {
+        double[][] res = new double[a[0].length][a.length];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[0].length; j++) {
+                res[j][i] = a[i][j];
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Inverse of a 2x2 matrix.
+     */
+    private static double[][] invert(double[][] a) {
+        double determinant = a[0][0] * a[1][1] - a[0][1] * a[1][0];
+        return new double[][] { { a[1][1] / determinant, -a[0][1] / determinant }, { -a[1][0] / determinant, a[0][0] / determinant } };
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.location;
+
+import junit.framework.TestCase;
+
+import android.location.Location;
+
+public class LocationOutlierFilterTest extends TestCase {
+    private static final double EARTH_RADIUS_M = 6371009;
+    private static final double START_LAT = 48.85;
+    private static final double START_LON = 2.35;
+    private static final long START_DATE = 1400000000000L;
+
+    private LocationOutlierFilter mFilter;
+
+    @Override
+    protected void setUp() throws Exception {
+        mFilter = new LocationOutlierFilter();
+    }
+
+    public void testSpeed() {
+        assertTrue(mFilter.accept(createLocation(0, 0, 0, 5)));
+        // 100 m in 1 s: even with the accuracy of both fixes, more than 100 km/h
+        assertFalse(mFilter.accept(createLocation(1000, 0, 100, 5)));
+        // 30 m in 1 s, but 10 m of it may be the inaccuracy: 72 km/h
+        assertTrue(mFilter.accept(createLocation(1000, 0, 30, 5)));
+    }
+
+    public void testAcceleration() {
+        for (int i = 0; i <= 5; i++) {
+            assertTrue(mFilter.accept(createLocation(i * 1000, 0, i * 5, 0)));
+        }
+        // From 5 m/s to 15 m/s in 1 s
+        assertFalse(mFilter.accept(createLocation(6000, 0, 25 + 15, 0)));
+        // From 5 m/s to 8 m/s in 1 s
+        assertTrue(mFilter.accept(createLocation(6000, 0, 25 + 8, 0)));
+    }
+
+    public void testMedianSpeed() {
+        for (int i = 0; i <= 5; i++) {
+            assertTrue(mFilter.accept(createLocation(i * 1000, 0, i * 2, 0)));
+        }
+        // 20 m/s after 8 s at 2 m/s: a plausible acceleration, but far above the recent speeds
+        assertFalse(mFilter.accept(createLocation(13000, 0, 10 + 8 * 20, 0)));
+        // 4 m/s is fine
+        assertTrue(mFilter.accept(createLocation(13000, 0, 10 + 8 * 4, 0)));
+    }
+
+    public void testHeading() {
+        for (int i = 0; i <= 3; i++) {
+            assertTrue(mFilter.accept(createLocation(i * 1000, 0, i * 8, 0)));
+        }
+        // Going back at the same speed
+        assertFalse(mFilter.accept(createLocation(4000, 0, 24 - 8, 0)));
+        // Turning right
+        assertTrue(mFilter.accept(createLocation(4000, 8, 24, 0)));
+    }
+
+    public void testHeadingIgnoredWhenSlow() {
+        for (int i = 0; i <= 3; i++) {
+            assertTrue(mFilter.accept(createLocation(i * 1000, 0, i * 2, 0)));
+        }
+        // Going back at walking speed: the heading is too noisy to be checked
+        assertTrue(mFilter.accept(createLocation(4000, 0, 6 - 2, 0)));
+    }
+
+    public void testRestartAfterRejections() {
+        for (int i = 0; i <= 3; i++) {
+            assertTrue(mFilter.accept(createLocation(i * 1000, 0, i * 5, 0)));
+        }
+        // The fixes jump 1 km away and stay there: the first 4 are rejected, then the filter starts over from the 5th
+        for (int i = 4; i <= 7; i++) {
+            assertFalse(mFilter.accept(createLocation(i * 1000, 1000, i * 5, 0)));
+        }
+        assertTrue(mFilter.accept(createLocation(8000, 1000, 40, 0)));
+        assertTrue(mFilter.accept(createLocation(9000, 1000, 45, 0)));
+        // The old position is now the outlier
+        assertFalse(mFilter.accept(createLocation(10000, 0, 50, 0)));
+    }
+
+    public void testGap() {
+        assertTrue(mFilter.accept(createLocation(0, 0, 0, 0)));
+        // After more than 10 s without a fix, anything is accepted
+        assertTrue(mFilter.accept(createLocation(11000, 0, 1000, 0)));
+        assertFalse(mFilter.accept(createLocation(12000, 0, 2000, 0)));
+    }
+
+    /**
+     * @param east The distance to the east of the start, in meters.
+     * @param north The distance to the north of the start, in meters.
+     * @param accuracy The accuracy, or {@code 0} for none.
+     */
+    private static Location createLocation(long date, double east, double north, float accuracy) {
+        Location location = new Location("test");
+        location.setTime(START_DATE + date);
+        location.setLatitude(START_LAT + Math.toDegrees(north / EARTH_RADIUS_M));
+        location.setLongitude(START_LON + Math.toDegrees(east / (EARTH_RADIUS_M * Math.cos(Math.toRadians(START_LAT)))));
+        if (accuracy > 0) location.setAccuracy(accuracy);
+        return location;
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.log;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import android.content.ContentValues;
+import android.location.Location;
+
+import org.jraf.android.bikey.backend.provider.log.LogColumns;
+import org.jraf.android.bikey.backend.provider.log.LogContentValues;
+import org.jraf.android.bikey.backend.provider.log.SpeedSource;
+
+public class TrackSimplifierTest extends TestCase {
+    private static final double EARTH_RADIUS_M = 6371009;
+    private static final float TOLERANCE_M = 5;
+    private static final long START_DATE = 1400000000000L;
+
+    private final List<Location> mLocations = new ArrayList<Location>();
+    private final List<LogContentValues> mLogs = new ArrayList<LogContentValues>();
+
+    @Override
+    protected void setUp() throws Exception {
+        Random random = new Random(1492);
+        double lat = 48.85;
+        double lon = 2.35;
+        double heading = 0;
+        double turnRate = 0;
+        for (int i = 0; i < 3000; i++) {
+            // Straight lines and turns, with some stops
+            if (i % 100 == 0) turnRate = random.nextInt(3) == 0 ? (random.nextDouble() - .5) * .3 : 0;
+            boolean stationary = i % 500 >= 470;
+            float distance = stationary ? 0 : 6 + random.nextFloat() * 4;
+            heading += turnRate;
+            lat += distance * Math.cos(heading) / Math.toRadians(EARTH_RADIUS_M);
+            lon += distance * Math.sin(heading) / (Math.toRadians(EARTH_RADIUS_M) * Math.cos(Math.toRadians(lat)));
+
+            Location location = new Location("test");
+            location.setLatitude(lat);
+            location.setLongitude(lon);
+            location.setTime(START_DATE + i * 1000L + random.nextInt(200));
+            mLocations.add(location);
+
+            LogContentValues values = new LogContentValues();
+            values.putRecordedDate(location.getTime());
+            values.putLat(lat);
+            values.putLon(lon);
+            if (!stationary && i > 0) {
+                values.putLogDistance(distance);
+                values.putLogDuration(location.getTime() - mLocations.get(i - 1).getTime());
+                values.putSpeed(distance);
+            }
+            values.putCadence(i % 13 == 0 ? null : 60 + random.nextFloat() * 40);
+            values.putHeartRate(i % 17 == 0 ? null : 100 + random.nextInt(80));
+            values.putPower(i % 19 == 0 ? null : random.nextInt(400));
+            mLogs.add(values);
+        }
+    }
+
+    /**
+     * Straight lines, turns and stops: the persisted logs must stay within the tolerance of the recorded track, and keep its distance, duration
+     * and sensor values.
+     */
+    public void testRandomTrack() {
+        TrackSimplifier trackSimplifier = new TrackSimplifier(TOLERANCE_M);
+        // The index of each persisted log in the recorded ones (the simplifier persists the recorded values themselves)
+        Map<LogContentValues, Integer> indexes = new IdentityHashMap<LogContentValues, Integer>();
+        for (int i = 0; i < mLogs.size(); i++) {
+            indexes.put(mLogs.get(i), i);
+        }
+        // Copy the sensor values now, since the persisted logs are modified
+        List<ContentValues> recorded = new ArrayList<ContentValues>();
+        for (LogContentValues values : mLogs) {
+            ContentValues copy = new ContentValues();
+            copy.put(LogColumns.RECORDED_DATE, values.values().getAsLong(LogColumns.RECORDED_DATE));
+            copy.put(LogColumns.LOG_DISTANCE, values.values().getAsFloat(LogColumns.LOG_DISTANCE));
+            copy.put(LogColumns.LOG_DURATION, values.values().getAsLong(LogColumns.LOG_DURATION));
+            copy.put(LogColumns.CADENCE, values.values().getAsFloat(LogColumns.CADENCE));
+            copy.put(LogColumns.HEART_RATE, values.values().getAsInteger(LogColumns.HEART_RATE));
+            copy.put(LogColumns.POWER, values.values().getAsInteger(LogColumns.POWER));
+            recorded.add(copy);
+        }
+
+        List<LogContentValues> persisted = new ArrayList<LogContentValues>();
+        double recordedDistance = 0;
+        double persistedDistance = 0;
+        for (int i = 0; i < mLogs.size(); i++) {
+            LogContentValues values = trackSimplifier.add(mLocations.get(i), mLogs.get(i));
+            if (values != null) {
+                persisted.add(values);
+                persistedDistance += getFloat(values.values(), LogColumns.LOG_DISTANCE);
+            }
+            recordedDistance += getFloat(recorded.get(i), LogColumns.LOG_DISTANCE);
+            // The totals can be displayed at any time
+            assertEquals(recordedDistance, persistedDistance + trackSimplifier.getPendingDistance(), .1);
+        }
+        LogContentValues last = trackSimplifier.flush();
+        if (last != null) persisted.add(last);
+        assertEquals(0f, trackSimplifier.getPendingDistance());
+        assertTrue("Not simplified enough: " + persisted.size(), persisted.size() < mLogs.size() / 3);
+
+        int previous = 0;
+        long recordedDuration = 0;
+        long persistedDuration = 0;
+        persistedDistance = 0;
+        for (LogContentValues values : persisted) {
+            int index = indexes.get(values);
+            persistedDistance += getFloat(values.values(), LogColumns.LOG_DISTANCE);
+            Long duration = values.values().getAsLong(LogColumns.LOG_DURATION);
+            if (duration != null) persistedDuration += duration;
+            if (index == 0) continue;
+
+            for (int i = previous + 1; i <= index; i++) {
+                Long recordedLogDuration = recorded.get(i).getAsLong(LogColumns.LOG_DURATION);
+                if (recordedLogDuration != null) recordedDuration += recordedLogDuration;
+
+                // All the dropped logs are close to the simplified track
+                double distance = getDistanceToSegment(mLocations.get(i), mLocations.get(previous), mLocations.get(index));
+                assertTrue("Log " + i + " is " + distance + " m away", distance <= TOLERANCE_M + .01);
+            }
+
+            // The sensor values are the time-weighted averages of the dropped logs
+            Double cadence = getAverage(recorded, previous, index, LogColumns.CADENCE);
+            Double heartRate = getAverage(recorded, previous, index, LogColumns.HEART_RATE);
+            Double power = getAverage(recorded, previous, index, LogColumns.POWER);
+            if (cadence == null) {
+                assertNull(values.values().getAsFloat(LogColumns.CADENCE));
+            } else {
+                assertEquals(cadence, values.values().getAsFloat(LogColumns.CADENCE), .001);
+            }
+            if (heartRate == null) {
+                assertNull(values.values().getAsInteger(LogColumns.HEART_RATE));
+            } else {
+                assertEquals(Math.round(heartRate), (long) values.values().getAsInteger(LogColumns.HEART_RATE));
+            }
+            if (power == null) {
+                assertNull(values.values().getAsInteger(LogColumns.POWER));
+            } else {
+                assertEquals(Math.round(power), (long) values.values().getAsInteger(LogColumns.POWER));
+            }
+            previous = index;
+        }
+        assertEquals(mLogs.size() - 1, previous);
+        assertEquals(recordedDistance, persistedDistance, .1);
+        assertEquals(recordedDuration, persistedDuration);
+    }
+
+
+    /**
+     * The corner of an L shaped track must be kept, and nothing else.
+     */
+    public void testCorner() {
+        TrackSimplifier trackSimplifier = new TrackSimplifier(TOLERANCE_M);
+        List<LogContentValues> persisted = new ArrayList<LogContentValues>();
+        List<LogContentValues> logs = new ArrayList<LogContentValues>();
+        for (int i = 0; i < 40; i++) {
+            // 20 logs going east, then 20 going north
+            double east = Math.min(i, 19) * 10;
+            double north = Math.max(i - 19, 0) * 10;
+            LogContentValues values = createLog(i * 1000L, east, north, 10f);
+            logs.add(values);
+            LogContentValues res = trackSimplifier.add(getLocation(values), values);
+            if (res != null) persisted.add(res);
+        }
+        persisted.add(trackSimplifier.flush());
+        assertEquals(3, persisted.size());
+        assertSame(logs.get(0), persisted.get(0));
+        assertSame(logs.get(19), persisted.get(1));
+        assertSame(logs.get(39), persisted.get(2));
+        assertEquals(190f, persisted.get(1).values().getAsFloat(LogColumns.LOG_DISTANCE), .001f);
+        assertEquals(19000L, (long) persisted.get(1).values().getAsLong(LogColumns.LOG_DURATION));
+    }
+
+    /**
+     * On a long straight road, logs are still persisted regularly.
+     */
+    public void testStraightLine() {
+        TrackSimplifier trackSimplifier = new TrackSimplifier(TOLERANCE_M);
+        int persistedCount = 0;
+        for (int i = 0; i < 500; i++) {
+            LogContentValues values = createLog(i * 1000L, i * 8, 0, 8f);
+            if (trackSimplifier.add(getLocation(values), values) != null) persistedCount++;
+        }
+        if (trackSimplifier.flush() != null) persistedCount++;
+        assertTrue(persistedCount > 2);
+        assertTrue(persistedCount < 20);
+    }
+
+    /**
+     * The logs are not evenly spaced: a value recorded after a longer interval weighs more, and a missing value does not count.
+     */
+    public void testSensorValuesWeightedByTime() {
+        TrackSimplifier trackSimplifier = new TrackSimplifier(TOLERANCE_M);
+        LogContentValues first = createLog(0, 0, 0, 0);
+        assertSame(first, trackSimplifier.add(getLocation(first), first));
+
+        LogContentValues second = createLog(1000, 5, 0, 5f);
+        second.putCadence(60f);
+        second.putPower(100);
+        assertNull(trackSimplifier.add(getLocation(second), second));
+
+        LogContentValues third = createLog(5000, 25, 0, 20f);
+        third.putCadence(90f);
+        third.putPower(null);
+        assertNull(trackSimplifier.add(getLocation(third), third));
+
+        LogContentValues res = trackSimplifier.flush();
+        assertSame(third, res);
+        assertEquals((60f * 1 + 90f * 4) / 5, res.values().getAsFloat(LogColumns.CADENCE), .001f);
+        assertEquals(100, (int) res.values().getAsInteger(LogColumns.POWER));
+        assertNull(res.values().getAsInteger(LogColumns.HEART_RATE));
+        assertEquals(25f, res.values().getAsFloat(LogColumns.LOG_DISTANCE), .001f);
+    }
+
+    /**
+     * When the persisted log was recorded while stopped, it gets the distance of the dropped logs, so it needs a speed.
+     */
+    public void testStationaryPendingLog() {
+        TrackSimplifier trackSimplifier = new TrackSimplifier(TOLERANCE_M);
+        LogContentValues first = createLog(0, 0, 0, 0);
+        trackSimplifier.add(getLocation(first), first);
+        LogContentValues moving = createLog(1000, 6, 0, 6f);
+        trackSimplifier.add(getLocation(moving), moving);
+        LogContentValues stopped = createLog(2000, 6, 0, 0);
+        trackSimplifier.add(getLocation(stopped), stopped);
+        assertEquals(6f, trackSimplifier.getPendingDistance());
+
+        LogContentValues res = trackSimplifier.flush();
+        assertSame(stopped, res);
+        assertEquals(6f, res.values().getAsFloat(LogColumns.LOG_DISTANCE), .001f);
+        assertEquals(6f, res.values().getAsFloat(LogColumns.SPEED), .001f);
+        assertEquals(SpeedSource.POSITIONS.ordinal(), (int) res.values().getAsInteger(LogColumns.SPEED_SOURCE));
+        assertEquals(0f, trackSimplifier.getPendingDistance());
+    }
+
+    /*
+     * Helpers.
+     */
+
+    /**
+     * @param east The distance to the east of the start, in meters.
+     * @param north The distance to the north of the start, in meters.
+     * @param distance The distance since the previous log, or {@code 0} if stopped.
+     */
+    private static LogContentValues createLog(long date, double east, double north, float distance) {
+        double lat = 48.85 + north / Math.toRadians(EARTH_RADIUS_M);
+        double lon = 2.35 + east / (Math.toRadians(EARTH_RADIUS_M) * Math.cos(Math.toRadians(48.85)));
+        LogContentValues values = new LogContentValues();
+        values.putRecordedDate(START_DATE + date);
+        values.putLat(lat);
+        values.putLon(lon);
+        if (distance > 0) {
+            values.putLogDistance(distance);
+            values.putLogDuration(1000L);
+            values.putSpeed(distance);
+        }
+        return values;
+    }
+
+    private static Location getLocation(LogContentValues values) {
+        Location location = new Location("test");
+        location.setLatitude(values.values().getAsDouble(LogColumns.LAT));
+        location.setLongitude(values.values().getAsDouble(LogColumns.LON));
+        location.setTime(values.values().getAsLong(LogColumns.RECORDED_DATE));
+        return location;
+    }
+
+    private static float getFloat(ContentValues values, String key) {
+        Float res = values.getAsFloat(key);
+        return res == null ? 0 : res;
+    }
+
+    /**
+     * @return The average of the given column over the logs after {@code from} up to {@code to}, each value weighted by the time since the
+     *         previous log, or {@code null} if there is no value.
+     */
+    private static Double getAverage(List<ContentValues> recorded, int from, int to, String column) {
+        double sum = 0;
+        long weight = 0;
+        for (int i = from + 1; i <= to; i++) {
+            Double value = recorded.get(i).getAsDouble(column);
+            if (value == null) continue;
+            long duration = recorded.get(i).getAsLong(LogColumns.RECORDED_DATE) - recorded.get(i - 1).getAsLong(LogColumns.RECORDED_DATE);
+            sum += value * duration;
+            weight += duration;
+        }
+        if (weight == 0) return null;
+        return sum / weight;
+    }
+
+    private static double getDistanceToSegment(Location point, Location start, Location end) {
+        double metersPerDegreeLat = Math.toRadians(EARTH_RADIUS_M);
+        double metersPerDegreeLon = metersPerDegreeLat * Math.cos(Math.toRadians(start.getLatitude()));
+        double x = (end.getLongitude() - start.getLongitude()) * metersPerDegreeLon;
+        double y = (end.getLatitude() - start.getLatitude()) * metersPerDegreeLat;
+        double px = (point.getLongitude() - start.getLongitude()) * metersPerDegreeLon;
+        double py = (point.getLatitude() - start.getLatitude()) * metersPerDegreeLat;
+        double lengthSquared = x * x + y * y;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * x + py * y) / lengthSquared));
+        return Math.hypot(px - t * x, py - t * y);
+    }
+}
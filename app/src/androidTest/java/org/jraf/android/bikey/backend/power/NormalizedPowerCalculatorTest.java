@@ -0,0 +1,177 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.power;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class NormalizedPowerCalculatorTest extends TestCase {
+    private static final long WINDOW_MS = 30 * 1000;
+    private static final long MAX_SAMPLE_DURATION_MS = 5 * 60 * 1000;
+    private static final int CAPACITY = 128;
+
+    public void testFirstWindow() {
+        NormalizedPowerCalculator calculator = new NormalizedPowerCalculator(CAPACITY, MAX_SAMPLE_DURATION_MS);
+        assertNull(calculator.getNormalizedPower());
+        // The first sample does not stand for any time: 30 s are covered at the 31st sample
+        for (int i = 0; i < 30; i++) {
+            calculator.add(i * 1000L, 200);
+        }
+        assertNull(calculator.getNormalizedPower());
+        calculator.add(30 * 1000L, 200);
+        assertEquals(200f, calculator.getNormalizedPower(), .001f);
+    }
+
+    public void testSingleSampleSpanningTheWindow() {
+        NormalizedPowerCalculator calculator = new NormalizedPowerCalculator(CAPACITY, MAX_SAMPLE_DURATION_MS);
+        calculator.add(0, 0);
+        calculator.add(45 * 1000L, 180);
+        assertEquals(180f, calculator.getNormalizedPower(), .001f);
+    }
+
+    /**
+     * A simplified log stands for several seconds: it must weigh more than the logs recorded every second.
+     */
+    public void testWeightedByTime() {
+        NormalizedPowerCalculator calculator = new NormalizedPowerCalculator(CAPACITY, MAX_SAMPLE_DURATION_MS);
+        long date = 0;
+        calculator.add(date, 100);
+        for (int i = 0; i < 100; i++) {
+            // 4 s at 100 W, then 4 s at 300 W in a single sample
+            for (int j = 0; j < 4; j++) {
+                date += 1000;
+                calculator.add(date, 100);
+            }
+            date += 4000;
+            calculator.add(date, 300);
+        }
+        // Each window holds 3.75 cycles of 8 s, so its average is 200 W +/- 7 W (a per sample average would give 140 W)
+        assertEquals(200f, calculator.getNormalizedPower(), 7f);
+    }
+
+    public void testPauseLeftOut() {
+        int[] powers = new int[200];
+        for (int i = 0; i < powers.length; i++) {
+            powers[i] = i < 100 ? 100 : 300;
+        }
+        long[] pausedDates = new long[powers.length];
+        long[] continuousDates = new long[powers.length];
+        for (int i = 1; i < powers.length; i++) {
+            pausedDates[i] = pausedDates[i - 1] + (i == 100 ? 60 * 60 * 1000 : 1000);
+            continuousDates[i] = continuousDates[i - 1] + (i == 100 ? MAX_SAMPLE_DURATION_MS : 1000);
+        }
+        NormalizedPowerCalculator paused = new NormalizedPowerCalculator(CAPACITY, MAX_SAMPLE_DURATION_MS);
+        NormalizedPowerCalculator continuous = new NormalizedPowerCalculator(CAPACITY, MAX_SAMPLE_DURATION_MS);
+        for (int i = 0; i < powers.length; i++) {
+            paused.add(pausedDates[i], powers[i]);
+            continuous.add(continuousDates[i], powers[i]);
+        }
+        // Only the max sample duration of the pause is counted
+        assertEquals(continuous.getNormalizedPower(), paused.getNormalizedPower());
+        assertEquals(getNormalizedPower(continuousDates, powers, WINDOW_MS), paused.getNormalizedPower(), .01f);
+    }
+
+    /**
+     * When the samples come more often than the capacity, the window only holds the last {@code capacity} samples.
+     */
+    public void testWindowShortenedByCapacity() {
+        int[] powers = new int[300];
+        long[] dates = new long[powers.length];
+        for (int i = 0; i < powers.length; i++) {
+            dates[i] = i * 1000L;
+            powers[i] = (i / 7) % 2 == 0 ? 120 : 350;
+        }
+        NormalizedPowerCalculator calculator = new NormalizedPowerCalculator(4, MAX_SAMPLE_DURATION_MS);
+        for (int i = 0; i < powers.length; i++) {
+            calculator.add(dates[i], powers[i]);
+        }
+        assertEquals(getNormalizedPower(dates, powers, 4 * 1000), calculator.getNormalizedPower(), .01f);
+    }
+
+    /**
+     * Samples every 1, 2, 3 or 5 s (like the recording), simplified samples standing for up to a minute, and a few pauses.
+     */
+    public void testAgainstDefinition() {
+        Random random = new Random(2014);
+        int[] intervals = { 1000, 2000, 3000, 5000 };
+        int count = 4000;
+        long[] dates = new long[count];
+        int[] powers = new int[count];
+        for (int i = 1; i < count; i++) {
+            long interval;
+            int kind = random.nextInt(100);
+            if (kind == 0) {
+                interval = 10 * 60 * 1000 + random.nextInt(60 * 60 * 1000);
+            } else if (kind < 10) {
+                interval = 10 * 1000 + random.nextInt(50 * 1000);
+            } else {
+                interval = intervals[random.nextInt(intervals.length)] + random.nextInt(100) - 50;
+            }
+            dates[i] = dates[i - 1] + interval;
+            powers[i] = random.nextInt(8) == 0 ? 0 : 80 + random.nextInt(400);
+        }
+
+        NormalizedPowerCalculator calculator = new NormalizedPowerCalculator(CAPACITY, MAX_SAMPLE_DURATION_MS);
+        for (int i = 0; i < count; i++) {
+            calculator.add(dates[i], powers[i]);
+        }
+        Float expected = getNormalizedPower(dates, powers, WINDOW_MS);
+        assertEquals(expected, calculator.getNormalizedPower(), expected * 1e-5f);
+
+        // Starting again gives the same result
+        calculator.clear();
+        assertNull(calculator.getNormalizedPower());
+        for (int i = 0; i < count; i++) {
+            calculator.add(dates[i], powers[i]);
+        }
+        assertEquals(expected, calculator.getNormalizedPower(), expected * 1e-5f);
+    }
+
+    /**
+     * The definition: each sample holds its power during the time since the previous sample (up to the max sample duration), on a time line
+     * without the pauses. The exact average of this power over the window is taken every second, from 30 s on.
+     */
+    private static Float getNormalizedPower(long[] dates, int[] powers, long windowMs) {
+        long[] endTimes = new long[dates.length];
+        for (int i = 1; i < dates.length; i++) {
+            endTimes[i] = endTimes[i - 1] + Math.min(dates[i] - dates[i - 1], MAX_SAMPLE_DURATION_MS);
+        }
+        double fourthPowerSum = 0;
+        int fourthPowerCount = 0;
+        for (long time = WINDOW_MS; time <= endTimes[dates.length - 1]; time += 1000) {
+            long fromTime = Math.max(time - windowMs, 0);
+            double energy = 0;
+            for (int i = 1; i < dates.length; i++) {
+                long overlap = Math.min(endTimes[i], time) - Math.max(endTimes[i - 1], fromTime);
+                if (overlap > 0) energy += (double) powers[i] * overlap;
+            }
+            fourthPowerSum += Math.pow(energy / (time - fromTime), 4);
+            fourthPowerCount++;
+        }
+        if (fourthPowerCount == 0) return null;
+        return (float) Math.pow(fourthPowerSum / fourthPowerCount, .25);
+    }
+}
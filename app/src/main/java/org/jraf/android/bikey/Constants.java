@@ -34,8 +34,15 @@ public class Constants {
     public static final String PREF_UNITS_DEFAULT = PREF_UNITS_IMPERIAL;
     public static final String PREF_CATEGORY_HEART_RATE = "PREF_CATEGORY_HEART_RATE";
     public static final String PREF_HEART_RATE_SCAN = "PREF_HEART_RATE_SCAN";
+    public static final String PREF_CATEGORY_CSC = "PREF_CATEGORY_CSC";
+    public static final String PREF_CSC_SCAN = "PREF_CSC_SCAN";
+    public static final String PREF_CATEGORY_POWER = "PREF_CATEGORY_POWER";
+    public static final String PREF_POWER_SCAN = "PREF_POWER_SCAN";
     public static final String PREF_IMPORT = "PREF_IMPORT";
     public static final String PREF_EXPORT = "PREF_EXPORT";
+    public static final String PREF_EXPORT_INCREMENTAL = "PREF_EXPORT_INCREMENTAL";
+    public static final String PREF_LAST_EXPORT_DATE = "PREF_LAST_EXPORT_DATE";
+    public static final String PREF_JOBS = "PREF_JOBS";
 
     public static final String PREF_LISTEN_TO_HEADSET_BUTTON = "PREF_LISTEN_TO_HEADSET_BUTTON";
     public static final boolean PREF_LISTEN_TO_HEADSET_BUTTON_DEFAULT = false;
@@ -43,6 +50,25 @@ public class Constants {
     public static final String PREF_RECORD_CADENCE = "PREF_RECORD_CADENCE";
     public static final boolean PREF_RECORD_CADENCE_DEFAULT = false;
 
+    public static final String PREF_FILTER_LOCATIONS = "PREF_FILTER_LOCATIONS";
+    public static final boolean PREF_FILTER_LOCATIONS_DEFAULT = true;
+
+    public static final String PREF_AUTO_PAUSE = "PREF_AUTO_PAUSE";
+    public static final String PREF_AUTO_PAUSE_OFF = "PREF_AUTO_PAUSE_OFF";
+    public static final String PREF_AUTO_PAUSE_5S = "PREF_AUTO_PAUSE_5S";
+    public static final String PREF_AUTO_PAUSE_10S = "PREF_AUTO_PAUSE_10S";
+    public static final String PREF_AUTO_PAUSE_30S = "PREF_AUTO_PAUSE_30S";
+    public static final String PREF_AUTO_PAUSE_DEFAULT = PREF_AUTO_PAUSE_OFF;
+
+    public static final String PREF_SIMPLIFY_TRACK = "PREF_SIMPLIFY_TRACK";
+    public static final String PREF_SIMPLIFY_TRACK_OFF = "PREF_SIMPLIFY_TRACK_OFF";
+    public static final String PREF_SIMPLIFY_TRACK_2M = "PREF_SIMPLIFY_TRACK_2M";
+    public static final String PREF_SIMPLIFY_TRACK_5M = "PREF_SIMPLIFY_TRACK_5M";
+    public static final String PREF_SIMPLIFY_TRACK_10M = "PREF_SIMPLIFY_TRACK_10M";
+    public static final String PREF_SIMPLIFY_TRACK_DEFAULT = PREF_SIMPLIFY_TRACK_OFF;
+
+    public static final String PREF_STATIONARY_LOGS_COMPACTED = "PREF_STATIONARY_LOGS_COMPACTED";
+
     public static final String PREF_CURRENT_RIDE_URI = "PREF_CURRENT_RIDE_URI";
 
     public static final String PREF_RIDE_MAP_TYPE = "PREF_RIDE_MAP_TYPE";
@@ -36,6 +36,7 @@ import org.acra.annotation.ReportsCrashes;
 import org.jraf.android.bikey.Config;
 import org.jraf.android.bikey.Constants;
 import org.jraf.android.bikey.R;
+import org.jraf.android.bikey.backend.log.LogManager;
 import org.jraf.android.bikey.util.UnitUtil;
 import org.jraf.android.util.log.wrapper.Log;
 
@@ -110,6 +111,9 @@ public class Application extends android.app.Application {
         // Units
         UnitUtil.readPreferences(this);
 
+        // Shrink the rides recorded before the stationary logs were compacted
+        LogManager.get().compactStationaryLogsOfAllRidesOnce();
+
         if (Config.STRICT_MODE) setupStrictMode();
     }
 
@@ -47,10 +47,21 @@ import org.jraf.android.bikey.R;
 import org.jraf.android.bikey.app.display.DisplayActivity;
 import org.jraf.android.bikey.backend.cadence.CadenceListener;
 import org.jraf.android.bikey.backend.cadence.CadenceManager;
+import org.jraf.android.bikey.backend.csc.CscListener;
+import org.jraf.android.bikey.backend.csc.CscManager;
 import org.jraf.android.bikey.backend.heartrate.HeartRateListener;
 import org.jraf.android.bikey.backend.heartrate.HeartRateManager;
+import org.jraf.android.bikey.backend.heartrate.RrIntervalWriter;
+import org.jraf.android.bikey.backend.location.GradientCalculator;
+import org.jraf.android.bikey.backend.location.GradientMeter;
 import org.jraf.android.bikey.backend.location.LocationManager;
+import org.jraf.android.bikey.backend.location.LocationPair;
 import org.jraf.android.bikey.backend.log.LogManager;
+import org.jraf.android.bikey.backend.log.TrackSimplifier;
+import org.jraf.android.bikey.backend.power.PowerListener;
+import org.jraf.android.bikey.backend.power.PowerManager;
+import org.jraf.android.bikey.backend.ride.AutoPauseDetector;
+import org.jraf.android.bikey.backend.ride.AutoPauseDetector.AutoPauseListener;
 import org.jraf.android.bikey.backend.ride.RideManager;
 import org.jraf.android.util.log.wrapper.Log;
 import org.jraf.android.util.string.StringUtil;
@@ -64,7 +75,15 @@ public class LogCollectorService extends Service {
     private Uri mCollectingRideUri;
     protected Location mLastLocation;
     private Float mLastCadence;
-    private Integer mLastHeartRate;
+    private volatile Integer mLastHeartRate;
+    private volatile Float mLastCscCadence;
+    private volatile Float mLastCscSpeed;
+    private volatile Integer mLastPower;
+    private volatile Float mLastPowerCadence;
+    private volatile RrIntervalWriter mRrIntervalWriter;
+    private volatile AutoPauseDetector mAutoPauseDetector;
+    private volatile TrackSimplifier mTrackSimplifier;
+    private GradientCalculator mGradientCalculator;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -90,6 +109,7 @@ public class LogCollectorService extends Service {
             public void run() {
                 // First, pause current ride if any
                 if (mCollectingRideUri != null) {
+                    if (mTrackSimplifier != null) LogManager.get().flush(mCollectingRideUri, mTrackSimplifier);
                     RideManager.get().pause(mCollectingRideUri);
                 }
 
@@ -108,6 +128,17 @@ public class LogCollectorService extends Service {
                 mCollectingRideUri = rideUri;
                 RideManager.get().activate(mCollectingRideUri);
 
+                // Detect the stops (if enabled in the prefs)
+                long autoPauseDelay = getAutoPauseDelay();
+                mAutoPauseDetector = autoPauseDelay == 0 ? null : new AutoPauseDetector(autoPauseDelay, mAutoPauseListener);
+
+                // Only persist the logs needed to keep the track within the tolerance (if enabled in the prefs)
+                float simplifyTrackTolerance = getSimplifyTrackTolerance();
+                mTrackSimplifier = simplifyTrackTolerance == 0 ? null : new TrackSimplifier(simplifyTrackTolerance);
+
+                // The gradient is computed over the distance travelled during this ride only
+                mGradientCalculator = new GradientCalculator(GradientMeter.getDefaultWindowDistance());
+
                 // Show notification
                 Notification notification = createNotification();
                 startForeground(NOTIFICATION_ID, notification);
@@ -125,15 +156,26 @@ public class LogCollectorService extends Service {
                         mOnSharedPreferenceChangeListener);
 
                 // Start recording heart rate
+                if (mRrIntervalWriter != null) mRrIntervalWriter.close();
+                mRrIntervalWriter = new RrIntervalWriter(LogCollectorService.this, mCollectingRideUri);
                 HeartRateManager.get().addListener(mHeartRateListener);
+
+                // Start recording speed and cadence from the bluetooth sensor (if any)
+                CscManager.get().addListener(mCscListener);
+
+                // Start recording power from the power meter (if any)
+                PowerManager.get().addListener(mPowerListener);
             }
         });
     }
 
     private void stopCollecting(final Uri rideUri) {
+        final TrackSimplifier trackSimplifier = mTrackSimplifier;
+        mTrackSimplifier = null;
         runOnBackgroundThread(new Runnable() {
             @Override
             public void run() {
+                if (trackSimplifier != null) LogManager.get().flush(rideUri, trackSimplifier);
                 RideManager.get().pause(rideUri);
             }
         });
@@ -142,7 +184,18 @@ public class LogCollectorService extends Service {
         LocationManager.get().removeLocationListener(mLocationListener);
         CadenceManager.get().removeListener(mCadenceListener);
         HeartRateManager.get().removeListener(mHeartRateListener);
-
+        if (mRrIntervalWriter != null) {
+            mRrIntervalWriter.close();
+            mRrIntervalWriter = null;
+        }
+        CscManager.get().removeListener(mCscListener);
+        mLastCscCadence = null;
+        mLastCscSpeed = null;
+        PowerManager.get().removeListener(mPowerListener);
+        mLastPower = null;
+        mLastPowerCadence = null;
+
+        mAutoPauseDetector = null;
         mCollectingRideUri = null;
         stopSelf();
     }
@@ -168,7 +221,32 @@ public class LogCollectorService extends Service {
             runOnBackgroundThread(new Runnable() {
                 @Override
                 public void run() {
-                    LogManager.get().add(mCollectingRideUri, location, mLastLocation, mLastCadence, mLastHeartRate);
+                    // A bluetooth sensor is more precise than the accelerometer (cadence) and the GPS (speed)
+                    Float cadence = mLastCscCadence;
+                    if (cadence == null) cadence = mLastPowerCadence;
+                    if (cadence == null) cadence = mLastCadence;
+
+                    if (location.hasAltitude()) {
+                        float distance = mLastLocation == null ? 0 : new LocationPair(mLastLocation, location).getDistance();
+                        mGradientCalculator.add(distance, location.getAltitude());
+                    }
+
+                    AutoPauseDetector autoPauseDetector = mAutoPauseDetector;
+                    if (autoPauseDetector != null) {
+                        Float speed = mLastCscSpeed;
+                        if (speed == null && (location.hasSpeed() || mLastLocation != null)) {
+                            speed = location.hasSpeed() ? location.getSpeed() : new LocationPair(mLastLocation, location).getSpeed();
+                        }
+                        if (speed != null) autoPauseDetector.onLocationChanged(location, speed);
+                        if (autoPauseDetector.isPaused()) {
+                            // Do not log anything while stopped
+                            mLastLocation = location;
+                            return;
+                        }
+                    }
+
+                    LogManager.get().add(mCollectingRideUri, location, mLastLocation, cadence, mLastHeartRate, mLastCscSpeed, mLastPower,
+                            mGradientCalculator.getGradient(), mTrackSimplifier);
                     mLastLocation = location;
                 }
             });
@@ -187,6 +265,53 @@ public class LogCollectorService extends Service {
     };
 
 
+    /*
+     * Auto pause / track simplification.
+     */
+
+    /**
+     * @return How long the rider must be stopped for the ride to be paused automatically, in milliseconds, or {@code 0} if the automatic pause is
+     *         disabled.
+     */
+    private long getAutoPauseDelay() {
+        String autoPause = PreferenceManager.getDefaultSharedPreferences(this).getString(Constants.PREF_AUTO_PAUSE, Constants.PREF_AUTO_PAUSE_DEFAULT);
+        if (Constants.PREF_AUTO_PAUSE_5S.equals(autoPause)) return 5 * 1000;
+        if (Constants.PREF_AUTO_PAUSE_10S.equals(autoPause)) return 10 * 1000;
+        if (Constants.PREF_AUTO_PAUSE_30S.equals(autoPause)) return 30 * 1000;
+        return 0;
+    }
+
+    /**
+     * @return The tolerance of the simplification of the recorded track, in meters, or {@code 0} if the simplification is disabled.
+     */
+    private float getSimplifyTrackTolerance() {
+        String simplifyTrack = PreferenceManager.getDefaultSharedPreferences(this).getString(Constants.PREF_SIMPLIFY_TRACK,
+                Constants.PREF_SIMPLIFY_TRACK_DEFAULT);
+        if (Constants.PREF_SIMPLIFY_TRACK_2M.equals(simplifyTrack)) return 2;
+        if (Constants.PREF_SIMPLIFY_TRACK_5M.equals(simplifyTrack)) return 5;
+        if (Constants.PREF_SIMPLIFY_TRACK_10M.equals(simplifyTrack)) return 10;
+        return 0;
+    }
+
+    /**
+     * Called on the background thread, while handling a location.
+     */
+    private AutoPauseListener mAutoPauseListener = new AutoPauseListener() {
+        @Override
+        public void onAutoPause(long date) {
+            TrackSimplifier trackSimplifier = mTrackSimplifier;
+            if (trackSimplifier != null) LogManager.get().flush(mCollectingRideUri, trackSimplifier);
+            // The ride stays active (the collection goes on), only its duration is stopped
+            RideManager.get().autoPause(mCollectingRideUri, date);
+        }
+
+        @Override
+        public void onAutoResume(long date) {
+            RideManager.get().autoResume(mCollectingRideUri, date);
+        }
+    };
+
+
     /*
      * Cadence listener.
      */
@@ -231,6 +356,20 @@ public class LogCollectorService extends Service {
             mLastHeartRate = bpm;
         }
 
+        @Override
+        public void onRrIntervals(long date, int[] rrIntervals, int count) {
+            RrIntervalWriter rrIntervalWriter = mRrIntervalWriter;
+            if (rrIntervalWriter == null) return;
+            // The measurement date is the end of the last interval
+            for (int i = count - 1; i >= 0; i--) {
+                rrIntervalWriter.add(date, rrIntervals[i]);
+                date -= rrIntervals[i];
+            }
+        }
+
+        @Override
+        public void onHrvChange(float rmssd, float sdnn) {}
+
         @Override
         public void onDisconnected() {
             mLastHeartRate = null;
@@ -246,6 +385,66 @@ public class LogCollectorService extends Service {
     };
 
 
+    /*
+     * Speed and cadence listener.
+     */
+
+    private CscListener mCscListener = new CscListener() {
+        @Override
+        public void onConnecting() {}
+
+        @Override
+        public void onConnected() {}
+
+        @Override
+        public void onCscChange(float cadence, float speed) {
+            mLastCscCadence = cadence == -1 ? null : cadence;
+            mLastCscSpeed = speed == -1 ? null : speed;
+        }
+
+        @Override
+        public void onDisconnected() {
+            mLastCscCadence = null;
+            mLastCscSpeed = null;
+        }
+
+        @Override
+        public void onError() {
+            onDisconnected();
+        }
+    };
+
+
+    /*
+     * Power listener.
+     */
+
+    private PowerListener mPowerListener = new PowerListener() {
+        @Override
+        public void onConnecting() {}
+
+        @Override
+        public void onConnected() {}
+
+        @Override
+        public void onPowerChange(int power, float cadence) {
+            mLastPower = power;
+            mLastPowerCadence = cadence == -1 ? null : cadence;
+        }
+
+        @Override
+        public void onDisconnected() {
+            mLastPower = null;
+            mLastPowerCadence = null;
+        }
+
+        @Override
+        public void onError() {
+            onDisconnected();
+        }
+    };
+
+
     /*
      * Notification.
      */
@@ -53,10 +53,13 @@ import org.jraf.android.bikey.app.collect.LogCollectorService;
 import org.jraf.android.bikey.app.display.fragment.compass.CompassDisplayFragment;
 import org.jraf.android.bikey.app.display.fragment.currenttime.CurrentTimeDisplayFragment;
 import org.jraf.android.bikey.app.display.fragment.elapsedtime.ElapsedTimeDisplayFragment;
+import org.jraf.android.bikey.app.display.fragment.gradient.GradientDisplayFragment;
 import org.jraf.android.bikey.app.display.fragment.heartrate.HeartRateDisplayFragment;
+import org.jraf.android.bikey.app.display.fragment.power.PowerDisplayFragment;
 import org.jraf.android.bikey.app.display.fragment.speed.SpeedDisplayFragment;
 import org.jraf.android.bikey.app.display.fragment.totaldistance.TotalDistanceDisplayFragment;
 import org.jraf.android.bikey.backend.heartrate.HeartRateManager;
+import org.jraf.android.bikey.backend.power.PowerManager;
 import org.jraf.android.bikey.backend.location.LocationManager;
 import org.jraf.android.bikey.backend.location.LocationManager.StatusListener;
 import org.jraf.android.bikey.backend.provider.ride.RideState;
@@ -199,12 +202,16 @@ public class DisplayActivity extends BaseFragmentActivity {
         mFragmentCycler.add(this, SpeedDisplayFragment.newInstance(), R.id.chkTabSpeed, R.string.display_title_speed);
         mFragmentCycler.add(this, ElapsedTimeDisplayFragment.newInstance(), R.id.chkTabDuration, R.string.display_title_duration);
         mFragmentCycler.add(this, TotalDistanceDisplayFragment.newInstance(), R.id.chkTabDistance, R.string.display_title_distance);
+        mFragmentCycler.add(this, GradientDisplayFragment.newInstance(), R.id.chkTabGradient, R.string.display_title_gradient);
         mFragmentCycler.add(this, HeartRateDisplayFragment.newInstance(), R.id.chkHeartRate, R.string.display_title_heartRate);
+        mFragmentCycler.add(this, PowerDisplayFragment.newInstance(), R.id.chkTabPower, R.string.display_title_power);
         mFragmentCycler.add(this, CompassDisplayFragment.newInstance(), R.id.chkTabCompass, R.string.display_title_compass);
         mFragmentCycler.add(this, CurrentTimeDisplayFragment.newInstance(), R.id.chkTabCurrentTime, R.string.display_title_currentTime);
 
         HeartRateManager heartRateManager = HeartRateManager.get();
         mFragmentCycler.setEnabled(this, HeartRateDisplayFragment.class, heartRateManager.isConnected() || heartRateManager.isConnecting());
+        PowerManager powerManager = PowerManager.get();
+        mFragmentCycler.setEnabled(this, PowerDisplayFragment.class, powerManager.isConnected() || powerManager.isConnecting());
 
         mFragmentCycler.show(this);
     }
@@ -338,6 +345,12 @@ public class DisplayActivity extends BaseFragmentActivity {
             if (mChkRecordTextAnimator.isStarted()) mChkRecordTextAnimator.cancel();
             mChkRecordText.setAlpha(1f);
         }
+
+        @Override
+        public void onAutoPaused(Uri rideUri) {}
+
+        @Override
+        public void onAutoResumed(Uri rideUri) {}
     };
 
 
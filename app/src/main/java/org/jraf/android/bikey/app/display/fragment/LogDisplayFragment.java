@@ -103,6 +103,12 @@ public abstract class LogDisplayFragment extends SimpleDisplayFragment {
             if (!rideUri.equals(getRideUri())) return;
             setTextEnabled(false);
         }
+
+        @Override
+        public void onAutoPaused(Uri rideUri) {}
+
+        @Override
+        public void onAutoResumed(Uri rideUri) {}
     };
 
     private LogListener mLogListener = new LogListener() {
@@ -79,6 +79,8 @@ public class ElapsedTimeDisplayFragment extends SimpleDisplayFragment {
                 mIsActive = rideManager.getState(rideUri) == RideState.ACTIVE;
                 if (mIsActive) {
                     mActivatedDate = rideManager.getActivatedDate(rideUri).getTime();
+                    // Auto paused
+                    if (mActivatedDate == 0) mIsActive = false;
                 }
                 return null;
             }
@@ -133,5 +135,37 @@ public class ElapsedTimeDisplayFragment extends SimpleDisplayFragment {
             mChronometer.stop();
             mChronometer.setEnabled(false);
         }
+
+        @Override
+        public void onAutoPaused(Uri rideUri) {
+            onPaused(rideUri);
+        }
+
+        @Override
+        public void onAutoResumed(final Uri rideUri) {
+            if (!rideUri.equals(getRideUri())) return;
+
+            new AsyncTask<Void, Void, Void>() {
+                private long mDuration;
+                private long mActivatedDate;
+
+                @Override
+                protected Void doInBackground(Void... params) {
+                    mDuration = RideManager.get().getDuration(rideUri);
+                    mActivatedDate = RideManager.get().getActivatedDate(rideUri).getTime();
+                    return null;
+                }
+
+                @Override
+                protected void onPostExecute(Void result) {
+                    // Auto paused again in the meantime
+                    if (mActivatedDate == 0) return;
+                    // The ride was resumed in the past (when the rider started moving)
+                    setChronometerDuration(mDuration + Math.max(0, System.currentTimeMillis() - mActivatedDate));
+                    mChronometer.start();
+                    mChronometer.setEnabled(true);
+                }
+            }.execute();
+        }
     };
 }
@@ -0,0 +1,75 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.app.display.fragment.gradient;
+
+import android.location.Location;
+
+import org.jraf.android.bikey.app.display.fragment.SimpleDisplayFragment;
+import org.jraf.android.bikey.backend.location.GradientMeter;
+import org.jraf.android.bikey.backend.location.LocationManager;
+import org.jraf.android.bikey.backend.location.LocationManager.StatusListener;
+import org.jraf.android.bikey.util.UnitUtil;
+
+public class GradientDisplayFragment extends SimpleDisplayFragment {
+    public static GradientDisplayFragment newInstance() {
+        return new GradientDisplayFragment();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        // GPS status
+        LocationManager.get().addStatusListener(mGpsStatusListener);
+
+        // Gradient updates
+        mGradientMeter.startListening();
+        setText(UnitUtil.formatGradient(mGradientMeter.getGradient()));
+    }
+
+    @Override
+    public void onStop() {
+        // GPS status
+        LocationManager.get().removeStatusListener(mGpsStatusListener);
+
+        // Gradient updates
+        mGradientMeter.stopListening();
+        super.onStop();
+    }
+
+    private GradientMeter mGradientMeter = new GradientMeter() {
+        @Override
+        public void onLocationChanged(Location location) {
+            super.onLocationChanged(location);
+            setText(UnitUtil.formatGradient(getGradient()));
+        }
+    };
+
+    private StatusListener mGpsStatusListener = new StatusListener() {
+        @Override
+        public void onStatusChanged(boolean active) {
+            setTextEnabled(active);
+        }
+    };
+}
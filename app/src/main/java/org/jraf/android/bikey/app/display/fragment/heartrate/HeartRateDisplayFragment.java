@@ -24,29 +24,57 @@
  */
 package org.jraf.android.bikey.app.display.fragment.heartrate;
 
+import android.os.Bundle;
+import android.view.View;
+import android.widget.TextView;
+
+import org.jraf.android.bikey.R;
 import org.jraf.android.bikey.app.display.fragment.SimpleDisplayFragment;
 import org.jraf.android.bikey.backend.heartrate.HeartRateListener;
 import org.jraf.android.bikey.backend.heartrate.HeartRateManager;
 import org.jraf.android.bikey.util.UnitUtil;
+import org.jraf.android.util.handler.HandlerUtil;
 
 public class HeartRateDisplayFragment extends SimpleDisplayFragment {
     public static HeartRateDisplayFragment newInstance() {
         return new HeartRateDisplayFragment();
     }
 
+    private TextView mTxtHrv;
+
+    @Override
+    protected int getLayoutResId() {
+        return R.layout.display_heart_rate;
+    }
+
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        mTxtHrv = (TextView) view.findViewById(R.id.txtHrv);
+    }
+
+    private void setHrv(float rmssd) {
+        if (rmssd == -1) {
+            mTxtHrv.setVisibility(View.INVISIBLE);
+        } else {
+            mTxtHrv.setText(getString(R.string.display_hrv, Math.round(rmssd)));
+            mTxtHrv.setVisibility(View.VISIBLE);
+        }
+    }
+
     @Override
     public void onStart() {
         super.onStart();
         // HeartRate
         HeartRateManager heartRateManager = HeartRateManager.get();
         heartRateManager.addListener(mHeartRateListener);
-        if (heartRateManager.isConnecting()) {
-            mHeartRateListener.onConnecting();
-        } else if (heartRateManager.isConnected()) {
-            mHeartRateListener.onConnected();
+        if (heartRateManager.isConnected()) {
+            setConnected();
+            int bpm = heartRateManager.getLastValue();
+            if (bpm != -1) setText(UnitUtil.formatHeartRate(bpm));
+            setHrv(heartRateManager.getLastRmssd());
         } else {
-            mHeartRateListener.onHeartRateChange(heartRateManager.getLastValue());
-            mHeartRateListener.onDisconnected();
+            setDisconnected();
         }
     }
 
@@ -57,24 +85,70 @@ public class HeartRateDisplayFragment extends SimpleDisplayFragment {
         super.onStop();
     }
 
+    private void setConnected() {
+        setTextEnabled(true);
+        mTxtHrv.setEnabled(true);
+    }
+
+    private void setDisconnected() {
+        setText("    -    ");
+        setTextEnabled(false);
+        mTxtHrv.setEnabled(false);
+        setHrv(-1);
+    }
+
+    /*
+     * The heart rate monitor callbacks are called on the sensor hub thread.
+     */
+
     private HeartRateListener mHeartRateListener = new HeartRateListener() {
         @Override
         public void onConnecting() {}
 
         @Override
         public void onConnected() {
-            setTextEnabled(true);
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    setConnected();
+                }
+            });
         }
 
         @Override
-        public void onHeartRateChange(int bpm) {
-            setText(UnitUtil.formatHeartRate(bpm));
+        public void onHeartRateChange(final int bpm) {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    setText(UnitUtil.formatHeartRate(bpm));
+                }
+            });
+        }
+
+        @Override
+        public void onRrIntervals(long date, int[] rrIntervals, int count) {}
+
+        /*
+         * Only the RMSSD is shown: it is the most meaningful short-term value during an effort.
+         */
+        @Override
+        public void onHrvChange(final float rmssd, float sdnn) {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    setHrv(rmssd);
+                }
+            });
         }
 
         @Override
         public void onDisconnected() {
-            setText("    -    ");
-            setTextEnabled(false);
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    setDisconnected();
+                }
+            });
         }
 
         @Override
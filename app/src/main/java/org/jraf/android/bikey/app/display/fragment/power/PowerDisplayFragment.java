@@ -0,0 +1,108 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.app.display.fragment.power;
+
+import org.jraf.android.bikey.app.display.fragment.SimpleDisplayFragment;
+import org.jraf.android.bikey.backend.power.PowerListener;
+import org.jraf.android.bikey.backend.power.PowerManager;
+import org.jraf.android.bikey.util.UnitUtil;
+import org.jraf.android.util.handler.HandlerUtil;
+
+public class PowerDisplayFragment extends SimpleDisplayFragment {
+    public static PowerDisplayFragment newInstance() {
+        return new PowerDisplayFragment();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        // Power
+        PowerManager powerManager = PowerManager.get();
+        powerManager.addListener(mPowerListener);
+        if (powerManager.isConnected()) {
+            setTextEnabled(true);
+            int power = powerManager.getLastPower();
+            if (power != -1) setText(UnitUtil.formatPower(power));
+        } else {
+            setDisconnected();
+        }
+    }
+
+    @Override
+    public void onStop() {
+        // Power
+        PowerManager.get().removeListener(mPowerListener);
+        super.onStop();
+    }
+
+    private void setDisconnected() {
+        setText("    -    ");
+        setTextEnabled(false);
+    }
+
+    /*
+     * The power meter callbacks are called on the sensor hub thread.
+     */
+
+    private PowerListener mPowerListener = new PowerListener() {
+        @Override
+        public void onConnecting() {}
+
+        @Override
+        public void onConnected() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    setTextEnabled(true);
+                }
+            });
+        }
+
+        @Override
+        public void onPowerChange(final int power, float cadence) {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    setText(UnitUtil.formatPower(power));
+                }
+            });
+        }
+
+        @Override
+        public void onDisconnected() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    setDisconnected();
+                }
+            });
+        }
+
+        @Override
+        public void onError() {
+            onDisconnected();
+        }
+    };
+}
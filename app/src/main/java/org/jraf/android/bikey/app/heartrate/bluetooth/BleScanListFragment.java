@@ -40,7 +40,9 @@ import android.support.v4.app.ListFragment;
 import android.view.View;
 import android.widget.ListView;
 
+import org.jraf.android.bikey.backend.csc.CscManager;
 import org.jraf.android.bikey.backend.heartrate.HeartRateManager;
+import org.jraf.android.bikey.backend.power.PowerManager;
 import org.jraf.android.util.handler.HandlerUtil;
 import org.jraf.android.util.log.wrapper.Log;
 
@@ -134,7 +136,21 @@ public class BleScanListFragment extends ListFragment {
     @Override
     public void onListItemClick(ListView l, View v, int position, long id) {
         Log.d();
-        HeartRateManager.get().setBluetoothDevice(mBleScanListAdapter.getItem(position));
+        BluetoothDevice bluetoothDevice = mBleScanListAdapter.getItem(position);
+        int sensorType = ((HeartRateMonitorScanActivity) getActivity()).getSensorType();
+        switch (sensorType) {
+            case HeartRateMonitorScanActivity.SENSOR_TYPE_CSC:
+                CscManager.get().setBluetoothDevice(bluetoothDevice);
+                break;
+
+            case HeartRateMonitorScanActivity.SENSOR_TYPE_POWER:
+                PowerManager.get().setBluetoothDevice(bluetoothDevice);
+                break;
+
+            default:
+                HeartRateManager.get().setBluetoothDevice(bluetoothDevice);
+                break;
+        }
         getActivity().finish();
     }
 
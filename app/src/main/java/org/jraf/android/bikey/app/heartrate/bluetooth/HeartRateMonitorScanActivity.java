@@ -30,9 +30,32 @@ import org.jraf.android.bikey.R;
 import org.jraf.android.util.app.base.BaseFragmentActivity;
 
 public class HeartRateMonitorScanActivity extends BaseFragmentActivity {
+    /**
+     * The kind of sensor to connect to, one of {@link #SENSOR_TYPE_HEART_RATE} (the default), {@link #SENSOR_TYPE_CSC} or
+     * {@link #SENSOR_TYPE_POWER}.
+     */
+    public static final String EXTRA_SENSOR_TYPE = "EXTRA_SENSOR_TYPE";
+
+    public static final int SENSOR_TYPE_HEART_RATE = 0;
+    public static final int SENSOR_TYPE_CSC = 1;
+    public static final int SENSOR_TYPE_POWER = 2;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.heart_rate_monitor_scan);
+        switch (getSensorType()) {
+            case SENSOR_TYPE_CSC:
+                setTitle(R.string.cscScan_title);
+                break;
+
+            case SENSOR_TYPE_POWER:
+                setTitle(R.string.powerScan_title);
+                break;
+        }
+    }
+
+    public int getSensorType() {
+        return getIntent().getIntExtra(EXTRA_SENSOR_TYPE, SENSOR_TYPE_HEART_RATE);
     }
 }
@@ -0,0 +1,206 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.app.job;
+
+import java.io.File;
+import java.util.List;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.IBinder;
+import android.support.v4.app.NotificationCompat;
+
+import org.jraf.android.bikey.R;
+import org.jraf.android.bikey.backend.job.Job;
+import org.jraf.android.bikey.backend.job.JobListener;
+import org.jraf.android.bikey.backend.job.JobManager;
+import org.jraf.android.util.log.wrapper.Log;
+import org.jraf.android.util.string.StringUtil;
+
+/**
+ * Keeps the process alive while jobs are queued or running, and shows their progress in a notification.<br/>
+ * The result of a job is also shown in a notification, unless a screen has already shown it to the user (see {@link Job#isResultHandled()}).
+ */
+public class JobService extends Service {
+    private static final String PREFIX = JobService.class.getName() + ".";
+    public static final String ACTION_CANCEL = PREFIX + "ACTION_CANCEL";
+    public static final String EXTRA_JOB_ID = PREFIX + "EXTRA_JOB_ID";
+
+    private static final int NOTIFICATION_ID_PROGRESS = 2;
+    private static final int NOTIFICATION_ID_RESULT = 3;
+
+    private final Handler mHandler = new Handler();
+    private NotificationManager mNotificationManager;
+    private boolean mForeground;
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        JobManager.get().addListener(mJobListener);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        Log.d("intent=" + StringUtil.toString(intent));
+        // Restarted after the death of the process: run the jobs that were interrupted
+        JobManager.get().restore();
+        if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+            JobManager.get().cancel(intent.getLongExtra(EXTRA_JOB_ID, 0));
+        }
+        updateProgressNotification();
+        return Service.START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        JobManager.get().removeListener(mJobListener);
+        super.onDestroy();
+    }
+
+
+    /*
+     * Job listener.
+     */
+
+    private JobListener mJobListener = new JobListener() {
+        @Override
+        public void onJobProgress(Job job) {
+            updateProgressNotification();
+        }
+
+        @Override
+        public void onJobFinished(Job job) {
+            // Other listeners (a screen in the foreground) may still handle the result: check it after they have all been called
+            postResultNotification(job);
+            updateProgressNotification();
+        }
+    };
+
+
+    /*
+     * Notifications.
+     */
+
+    private void updateProgressNotification() {
+        List<Job> jobs = JobManager.get().getJobs();
+        if (jobs.isEmpty()) {
+            Log.d("No more jobs");
+            stopForeground(true);
+            mForeground = false;
+            stopSelf();
+            return;
+        }
+
+        // Show the first running job (or the first queued one)
+        Job shownJob = jobs.get(0);
+        for (Job job : jobs) {
+            if (job.getStatus() == Job.Status.RUNNING) {
+                shownJob = job;
+                break;
+            }
+        }
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this);
+        builder.setOngoing(true);
+        builder.setOnlyAlertOnce(true);
+        builder.setSmallIcon(shownJob.getType().isExport() ? android.R.drawable.stat_sys_upload : android.R.drawable.stat_sys_download);
+        builder.setContentTitle(getString(shownJob.getType().isExport() ? R.string.job_notification_export : R.string.job_notification_import));
+        if (jobs.size() > 1) builder.setContentText(getString(R.string.job_notification_queued, jobs.size() - 1));
+        int progress = shownJob.getProgress();
+        builder.setProgress(100, Math.max(progress, 0), shownJob.getStatus() != Job.Status.RUNNING || progress == -1);
+        builder.setContentIntent(PendingIntent.getActivity(this, 0, new Intent(), 0));
+
+        Intent cancelIntent = new Intent(this, JobService.class).setAction(ACTION_CANCEL).putExtra(EXTRA_JOB_ID, shownJob.getId());
+        builder.addAction(R.drawable.ic_action_discard, getString(R.string.job_notification_action_cancel),
+                PendingIntent.getService(this, 0, cancelIntent, PendingIntent.FLAG_UPDATE_CURRENT));
+
+        Notification notification = builder.build();
+        if (mForeground) {
+            mNotificationManager.notify(NOTIFICATION_ID_PROGRESS, notification);
+        } else {
+            startForeground(NOTIFICATION_ID_PROGRESS, notification);
+            mForeground = true;
+        }
+    }
+
+    private void postResultNotification(final Job job) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (job.isResultHandled() || job.getStatus() == Job.Status.CANCELLED) return;
+                boolean export = job.getType().isExport();
+                NotificationCompat.Builder builder = new NotificationCompat.Builder(JobService.this);
+                builder.setAutoCancel(true);
+                if (job.getStatus() == Job.Status.SUCCEEDED) {
+                    if (export) {
+                        File exportFile = job.getExportFile();
+                        builder.setSmallIcon(android.R.drawable.stat_sys_upload_done);
+                        builder.setContentTitle(getString(R.string.job_notification_exportDone_title));
+                        builder.setContentText(getString(R.string.job_notification_exportDone_text, exportFile.getName()));
+                        builder.setContentIntent(PendingIntent.getActivity(JobService.this, (int) job.getId(), newShareIntent(JobService.this, exportFile),
+                                PendingIntent.FLAG_UPDATE_CURRENT));
+                    } else {
+                        builder.setSmallIcon(android.R.drawable.stat_sys_download_done);
+                        builder.setContentTitle(getString(R.string.job_notification_importDone_title));
+                        builder.setContentText(getString(R.string.import_successToast));
+                        builder.setContentIntent(PendingIntent.getActivity(JobService.this, 0, new Intent(), 0));
+                    }
+                } else {
+                    builder.setSmallIcon(android.R.drawable.stat_notify_error);
+                    builder.setContentTitle(getString(export ? R.string.job_notification_exportFailed_title : R.string.job_notification_importFailed_title));
+                    builder.setContentText(getString(export ? R.string.export_failToast : R.string.import_failToast));
+                    builder.setContentIntent(PendingIntent.getActivity(JobService.this, 0, new Intent(), 0));
+                }
+                mNotificationManager.notify(String.valueOf(job.getId()), NOTIFICATION_ID_RESULT, builder.build());
+            }
+        });
+    }
+
+    /**
+     * Create an intent to share an exported file.
+     */
+    public static Intent newShareIntent(Context context, File exportFile) {
+        Intent sendIntent = new Intent();
+        sendIntent.setAction(Intent.ACTION_SEND);
+        sendIntent.putExtra(Intent.EXTRA_SUBJECT, context.getString(R.string.export_subject));
+        String messageBody = context.getString(R.string.export_body);
+        sendIntent.putExtra(Intent.EXTRA_STREAM, Uri.parse("file://" + exportFile.getAbsolutePath()));
+        sendIntent.setType("application/bikey");
+        sendIntent.putExtra(Intent.EXTRA_TEXT, messageBody);
+        return Intent.createChooser(sendIntent, context.getText(R.string.ride_list_action_share));
+    }
+}
@@ -41,11 +41,16 @@ import android.widget.Toast;
 
 import org.jraf.android.bikey.Constants;
 import org.jraf.android.bikey.R;
+import org.jraf.android.bikey.backend.csc.CscListener;
+import org.jraf.android.bikey.backend.csc.CscManager;
 import org.jraf.android.bikey.backend.heartrate.HeartRateListener;
 import org.jraf.android.bikey.backend.heartrate.HeartRateManager;
+import org.jraf.android.bikey.backend.power.PowerListener;
+import org.jraf.android.bikey.backend.power.PowerManager;
 import org.jraf.android.bikey.backend.provider.ride.RideColumns;
 import org.jraf.android.bikey.util.MediaButtonUtil;
 import org.jraf.android.bikey.util.UnitUtil;
+import org.jraf.android.util.handler.HandlerUtil;
 
 public class MainPreferenceFragment extends PreferenceFragment {
     private PreferenceCallbacks mCallbacks;
@@ -57,15 +62,22 @@ public class MainPreferenceFragment extends PreferenceFragment {
         addPreferencesFromResource(R.xml.preferences);
         updateListPreferenceSummary(Constants.PREF_UNITS);
 
-        // Show heart rate section only if supported
-        boolean heartRateSupported = getActivity().getPackageManager().hasSystemFeature(PackageManager.FEATURE_BLUETOOTH_LE);
-        if (heartRateSupported) {
+        // Show heart rate, speed / cadence and power sections only if supported
+        boolean bluetoothLeSupported = getActivity().getPackageManager().hasSystemFeature(PackageManager.FEATURE_BLUETOOTH_LE);
+        if (bluetoothLeSupported) {
             findPreference(Constants.PREF_HEART_RATE_SCAN).setOnPreferenceClickListener(mOnPreferenceClickListener);
+            findPreference(Constants.PREF_CSC_SCAN).setOnPreferenceClickListener(mOnPreferenceClickListener);
+            findPreference(Constants.PREF_POWER_SCAN).setOnPreferenceClickListener(mOnPreferenceClickListener);
         } else {
             PreferenceCategory preferenceCategory = (PreferenceCategory) findPreference(Constants.PREF_CATEGORY_HEART_RATE);
             getPreferenceScreen().removePreference(preferenceCategory);
+            preferenceCategory = (PreferenceCategory) findPreference(Constants.PREF_CATEGORY_CSC);
+            getPreferenceScreen().removePreference(preferenceCategory);
+            preferenceCategory = (PreferenceCategory) findPreference(Constants.PREF_CATEGORY_POWER);
+            getPreferenceScreen().removePreference(preferenceCategory);
         }
         findPreference(Constants.PREF_EXPORT).setOnPreferenceClickListener(mOnPreferenceClickListener);
+        findPreference(Constants.PREF_EXPORT_INCREMENTAL).setOnPreferenceClickListener(mOnPreferenceClickListener);
         findPreference(Constants.PREF_IMPORT).setOnPreferenceClickListener(mOnPreferenceClickListener);
     }
 
@@ -101,6 +113,28 @@ public class MainPreferenceFragment extends PreferenceFragment {
             mHeartRateListener.onHeartRateChange(heartRateManager.getLastValue());
             mHeartRateListener.onDisconnected();
         }
+
+        // Speed and cadence
+        CscManager cscManager = CscManager.get();
+        cscManager.addListener(mCscListener);
+        if (cscManager.isConnecting()) {
+            mCscListener.onConnecting();
+        } else if (cscManager.isConnected()) {
+            mCscListener.onConnected();
+        } else {
+            mCscListener.onDisconnected();
+        }
+
+        // Power
+        PowerManager powerManager = PowerManager.get();
+        powerManager.addListener(mPowerListener);
+        if (powerManager.isConnecting()) {
+            mPowerListener.onConnecting();
+        } else if (powerManager.isConnected()) {
+            mPowerListener.onConnected();
+        } else {
+            mPowerListener.onDisconnected();
+        }
     }
 
     @Override
@@ -109,6 +143,12 @@ public class MainPreferenceFragment extends PreferenceFragment {
 
         // HeartRate
         HeartRateManager.get().removeListener(mHeartRateListener);
+
+        // Speed and cadence
+        CscManager.get().removeListener(mCscListener);
+
+        // Power
+        PowerManager.get().removeListener(mPowerListener);
         super.onStop();
     }
 
@@ -158,7 +198,10 @@ public class MainPreferenceFragment extends PreferenceFragment {
         @Override
         public boolean onPreferenceClick(Preference preference) {
             if (Constants.PREF_EXPORT.equals(preference.getKey())) {
-                getCallbacks().startExport();
+                getCallbacks().startExport(false);
+                return true;
+            } else if (Constants.PREF_EXPORT_INCREMENTAL.equals(preference.getKey())) {
+                getCallbacks().startExport(true);
                 return true;
             } else if (Constants.PREF_IMPORT.equals(preference.getKey())) {
                 getCallbacks().startImport();
@@ -173,47 +216,209 @@ public class MainPreferenceFragment extends PreferenceFragment {
                     getCallbacks().startHeartRateMonitorScan();
                 }
                 return true;
+            } else if (Constants.PREF_CSC_SCAN.equals(preference.getKey())) {
+                CscManager cscManager = CscManager.get();
+                if (cscManager.isConnected() || cscManager.isConnecting()) {
+                    cscManager.disconnect();
+                } else {
+                    getCallbacks().startCscScan();
+                }
+                return true;
+            } else if (Constants.PREF_POWER_SCAN.equals(preference.getKey())) {
+                PowerManager powerManager = PowerManager.get();
+                if (powerManager.isConnected() || powerManager.isConnecting()) {
+                    powerManager.disconnect();
+                } else {
+                    getCallbacks().startPowerScan();
+                }
+                return true;
             }
             return false;
         }
     };
 
+    /*
+     * The bluetooth sensor callbacks are called on the sensor hub thread.
+     */
+
     private HeartRateListener mHeartRateListener = new HeartRateListener() {
         @Override
         public void onConnecting() {
-            Preference pref = getPreferenceManager().findPreference(Constants.PREF_HEART_RATE_SCAN);
-            pref.setTitle(R.string.preference_heartRate_connecting_title);
-            pref.setSummary(R.string.preference_heartRate_connecting_summary);
-            pref.setWidgetLayoutResource(R.layout.heart_rate_pref_widget_connecting);
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Preference pref = getPreferenceManager().findPreference(Constants.PREF_HEART_RATE_SCAN);
+                    pref.setTitle(R.string.preference_heartRate_connecting_title);
+                    pref.setSummary(R.string.preference_heartRate_connecting_summary);
+                    pref.setWidgetLayoutResource(R.layout.heart_rate_pref_widget_connecting);
+                }
+            });
         }
 
         @Override
         public void onConnected() {
-            Preference pref = getPreferenceManager().findPreference(Constants.PREF_HEART_RATE_SCAN);
-            pref.setTitle(R.string.preference_heartRate_disconnect_title);
-            pref.setSummary(R.string.preference_heartRate_disconnect_summary);
-            pref.setWidgetLayoutResource(R.layout.heart_rate_pref_widget_connected);
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Preference pref = getPreferenceManager().findPreference(Constants.PREF_HEART_RATE_SCAN);
+                    pref.setTitle(R.string.preference_heartRate_disconnect_title);
+                    pref.setSummary(R.string.preference_heartRate_disconnect_summary);
+                    pref.setWidgetLayoutResource(R.layout.heart_rate_pref_widget_connected);
+                }
+            });
         }
 
         @Override
         public void onHeartRateChange(int bpm) {}
 
+        @Override
+        public void onRrIntervals(long date, int[] rrIntervals, int count) {}
+
+        @Override
+        public void onHrvChange(float rmssd, float sdnn) {}
+
         @Override
         public void onDisconnected() {
-            Preference pref = getPreferenceManager().findPreference(Constants.PREF_HEART_RATE_SCAN);
-            if (pref == null) {
-                // Could be null here, on devices where BTLE is not supported
-                return;
-            }
-            pref.setEnabled(true);
-            pref.setTitle(R.string.preference_heartRate_scan_title);
-            pref.setSummary(R.string.preference_heartRate_scan_summary);
-            pref.setWidgetLayoutResource(0);
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Preference pref = getPreferenceManager().findPreference(Constants.PREF_HEART_RATE_SCAN);
+                    if (pref == null) {
+                        // Could be null here, on devices where BTLE is not supported
+                        return;
+                    }
+                    pref.setEnabled(true);
+                    pref.setTitle(R.string.preference_heartRate_scan_title);
+                    pref.setSummary(R.string.preference_heartRate_scan_summary);
+                    pref.setWidgetLayoutResource(0);
+                }
+            });
+        }
+
+        @Override
+        public void onError() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(getActivity(), R.string.preference_heartRate_bt_error, Toast.LENGTH_LONG).show();
+                }
+            });
+        }
+    };
+
+    private CscListener mCscListener = new CscListener() {
+        @Override
+        public void onConnecting() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Preference pref = getPreferenceManager().findPreference(Constants.PREF_CSC_SCAN);
+                    pref.setTitle(R.string.preference_csc_connecting_title);
+                    pref.setSummary(R.string.preference_csc_connecting_summary);
+                    pref.setWidgetLayoutResource(R.layout.heart_rate_pref_widget_connecting);
+                }
+            });
+        }
+
+        @Override
+        public void onConnected() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Preference pref = getPreferenceManager().findPreference(Constants.PREF_CSC_SCAN);
+                    pref.setTitle(R.string.preference_csc_disconnect_title);
+                    pref.setSummary(R.string.preference_csc_disconnect_summary);
+                    pref.setWidgetLayoutResource(R.layout.heart_rate_pref_widget_connected);
+                }
+            });
+        }
+
+        @Override
+        public void onCscChange(float cadence, float speed) {}
+
+        @Override
+        public void onDisconnected() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Preference pref = getPreferenceManager().findPreference(Constants.PREF_CSC_SCAN);
+                    if (pref == null) {
+                        // Could be null here, on devices where BTLE is not supported
+                        return;
+                    }
+                    pref.setTitle(R.string.preference_csc_scan_title);
+                    pref.setSummary(R.string.preference_csc_scan_summary);
+                    pref.setWidgetLayoutResource(0);
+                }
+            });
+        }
+
+        @Override
+        public void onError() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(getActivity(), R.string.preference_heartRate_bt_error, Toast.LENGTH_LONG).show();
+                }
+            });
+        }
+    };
+
+    private PowerListener mPowerListener = new PowerListener() {
+        @Override
+        public void onConnecting() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Preference pref = getPreferenceManager().findPreference(Constants.PREF_POWER_SCAN);
+                    pref.setTitle(R.string.preference_power_connecting_title);
+                    pref.setSummary(R.string.preference_power_connecting_summary);
+                    pref.setWidgetLayoutResource(R.layout.heart_rate_pref_widget_connecting);
+                }
+            });
+        }
+
+        @Override
+        public void onConnected() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Preference pref = getPreferenceManager().findPreference(Constants.PREF_POWER_SCAN);
+                    pref.setTitle(R.string.preference_power_disconnect_title);
+                    pref.setSummary(R.string.preference_power_disconnect_summary);
+                    pref.setWidgetLayoutResource(R.layout.heart_rate_pref_widget_connected);
+                }
+            });
+        }
+
+        @Override
+        public void onPowerChange(int power, float cadence) {}
+
+        @Override
+        public void onDisconnected() {
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Preference pref = getPreferenceManager().findPreference(Constants.PREF_POWER_SCAN);
+                    if (pref == null) {
+                        // Could be null here, on devices where BTLE is not supported
+                        return;
+                    }
+                    pref.setTitle(R.string.preference_power_scan_title);
+                    pref.setSummary(R.string.preference_power_scan_summary);
+                    pref.setWidgetLayoutResource(0);
+                }
+            });
         }
 
         @Override
         public void onError() {
-            Toast.makeText(getActivity(), R.string.preference_heartRate_bt_error, Toast.LENGTH_LONG).show();
+            HandlerUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(getActivity(), R.string.preference_heartRate_bt_error, Toast.LENGTH_LONG).show();
+                }
+            });
         }
     };
 }
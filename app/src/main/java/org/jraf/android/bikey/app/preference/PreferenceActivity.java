@@ -24,24 +24,27 @@
  */
 package org.jraf.android.bikey.app.preference;
 
-import java.io.File;
+import java.io.IOException;
 
 import android.bluetooth.BluetoothAdapter;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.view.MenuItem;
+import android.widget.Toast;
 
 import org.jraf.android.bikey.Constants;
 import org.jraf.android.bikey.R;
 import org.jraf.android.bikey.app.heartrate.bluetooth.HeartRateMonitorScanActivity;
-import org.jraf.android.bikey.backend.dbimport.DatabaseImporter;
-import org.jraf.android.bikey.backend.export.db.DbExporter;
+import org.jraf.android.bikey.app.job.JobService;
 import org.jraf.android.bikey.backend.heartrate.HeartRateManager;
+import org.jraf.android.bikey.backend.job.Job;
+import org.jraf.android.bikey.backend.job.JobListener;
+import org.jraf.android.bikey.backend.job.JobManager;
+import org.jraf.android.bikey.backend.trackimport.TrackImporter;
 import org.jraf.android.util.app.base.BaseFragmentActivity;
-import org.jraf.android.util.async.Task;
-import org.jraf.android.util.async.TaskFragment;
 import org.jraf.android.util.dialog.AlertDialogFragment;
 import org.jraf.android.util.dialog.AlertDialogListener;
 import org.jraf.android.util.log.wrapper.Log;
@@ -49,14 +52,25 @@ import org.jraf.android.util.log.wrapper.Log;
 public class PreferenceActivity extends BaseFragmentActivity implements PreferenceCallbacks, AlertDialogListener {
     private static final int REQUEST_PICK_FILE_FOR_IMPORT = 0;
     private static final int REQUEST_SCAN_HEART_RATE_MONITOR = 1;
+    private static final int REQUEST_SCAN_CSC = 2;
+    private static final int REQUEST_SCAN_POWER = 3;
 
     private static final int DIALOG_RECORD_CADENCE = 0;
     private static final int DIALOG_DISCONNECT_HEART_RATE = 1;
     private static final int DIALOG_RECONNECT_HEART_RATE = 2;
+    private static final int DIALOG_IMPORT_MODE = 3;
+
+    private static final String STATE_JOB_ID = "mJobId";
+
+    /**
+     * The last import or export started from this screen.
+     */
+    private long mJobId;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (savedInstanceState != null) mJobId = savedInstanceState.getLong(STATE_JOB_ID);
         PreferenceManager.setDefaultValues(this, R.xml.preferences, false);
 
         getFragmentManager().beginTransaction().replace(android.R.id.content, new MainPreferenceFragment()).commit();
@@ -64,6 +78,24 @@ public class PreferenceActivity extends BaseFragmentActivity implements Preferen
         getActionBar().setDisplayHomeAsUpEnabled(true);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        JobManager.get().addListener(mJobListener);
+    }
+
+    @Override
+    protected void onPause() {
+        JobManager.get().removeListener(mJobListener);
+        super.onPause();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        outState.putLong(STATE_JOB_ID, mJobId);
+        super.onSaveInstanceState(outState);
+    }
+
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
@@ -96,36 +128,17 @@ public class PreferenceActivity extends BaseFragmentActivity implements Preferen
      */
 
     @Override
-    public void startExport() {
-        new TaskFragment(new Task<PreferenceActivity>() {
-            DbExporter mExporter = new DbExporter();
-
-            @Override
-            protected void doInBackground() throws Throwable {
-                mExporter.export();
-            }
-
-            @Override
-            protected void onPostExecuteOk() {
-                File exportedFile = mExporter.getExportFile();
-
-                Intent sendIntent = new Intent();
-                sendIntent.setAction(Intent.ACTION_SEND);
-                sendIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.export_subject));
-                String messageBody = getString(R.string.export_body);
-                sendIntent.putExtra(Intent.EXTRA_STREAM, Uri.parse("file://" + exportedFile.getAbsolutePath()));
-                sendIntent.setType("application/bikey");
-                sendIntent.putExtra(Intent.EXTRA_TEXT, messageBody);
-
-                startActivity(Intent.createChooser(sendIntent, getResources().getText(R.string.preference_export_title)));
-            }
-        }.toastFail(R.string.export_failToast)).execute(getSupportFragmentManager());
+    public void startExport(boolean incremental) {
+        Job job = JobManager.get().enqueue(incremental ? Job.Type.EXPORT_DATABASE_INCREMENTAL : Job.Type.EXPORT_DATABASE, null);
+        mJobId = job.getId();
+        Toast.makeText(this, R.string.job_startedToast, Toast.LENGTH_SHORT).show();
     }
 
     @Override
     public void startImport() {
         Intent importIntent = new Intent(Intent.ACTION_GET_CONTENT);
-        String contentType = "application/octet-stream";
+        // GPX, TCX and FIT files have no well established mime type
+        String contentType = "*/*";
         importIntent.setType(contentType);
         importIntent.addCategory(Intent.CATEGORY_OPENABLE);
 
@@ -144,20 +157,94 @@ public class PreferenceActivity extends BaseFragmentActivity implements Preferen
         switch (requestCode) {
             case REQUEST_PICK_FILE_FOR_IMPORT:
                 if (resultCode != RESULT_OK) return;
-                importRides(data.getData());
+                checkFileTypeAndImport(data.getData());
                 break;
         }
     }
 
-    private void importRides(final Uri ridesFile) {
-        new TaskFragment(new Task<PreferenceActivity>() {
+    /**
+     * The import mode only makes sense for database files: track files are always added as a new ride.
+     */
+    private void checkFileTypeAndImport(final Uri ridesFile) {
+        new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                try {
+                    return TrackImporter.newInstance(thiz, ridesFile) != null;
+                } catch (IOException e) {
+                    Log.w("Could not read " + ridesFile, e);
+                    return null;
+                }
+            }
+
             @Override
-            protected void doInBackground() throws Throwable {
-                DatabaseImporter.importDatabase(thiz, ridesFile);
+            protected void onPostExecute(Boolean isTrackFile) {
+                if (isTrackFile == null) {
+                    Toast.makeText(thiz, R.string.import_failToast, Toast.LENGTH_LONG).show();
+                } else if (isTrackFile) {
+                    enqueueImport(Job.Type.IMPORT_TRACK, ridesFile);
+                } else {
+                    showImportModeDialog(ridesFile);
+                }
             }
-        }.toastFail(R.string.import_failToast).toastOk(R.string.import_successToast)).execute(getSupportFragmentManager());
+        }.execute();
     }
 
+    private void showImportModeDialog(Uri ridesFile) {
+        AlertDialogFragment dialog = AlertDialogFragment.newInstance(DIALOG_IMPORT_MODE);
+        dialog.setTitle(R.string.preference_import_modeDialog_title);
+        dialog.setMessage(R.string.preference_import_modeDialog_message);
+        dialog.setPositiveButton(R.string.preference_import_modeDialog_positive);
+        dialog.setNegativeButton(R.string.preference_import_modeDialog_negative);
+        dialog.setCancelIsNegative(false);
+        dialog.setPayload(ridesFile);
+        dialog.show(getSupportFragmentManager());
+    }
+
+    /**
+     * @param merge {@code true} to only add the rides that are not already present, {@code false} to replace all the rides.
+     */
+    private void importDatabase(Uri ridesFile, boolean merge) {
+        enqueueImport(merge ? Job.Type.IMPORT_MERGE : Job.Type.IMPORT_REPLACE, ridesFile);
+    }
+
+    private void enqueueImport(Job.Type type, Uri ridesFile) {
+        Job job = JobManager.get().enqueue(type, ridesFile);
+        mJobId = job.getId();
+        Toast.makeText(this, R.string.job_startedToast, Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * While we are in the foreground, show the result of the job we started directly, instead of as a notification.
+     */
+    private JobListener mJobListener = new JobListener() {
+        @Override
+        public void onJobProgress(Job job) {}
+
+        @Override
+        public void onJobFinished(Job job) {
+            if (job.getId() != mJobId) return;
+            job.setResultHandled();
+            boolean export = job.getType().isExport();
+            switch (job.getStatus()) {
+                case SUCCEEDED:
+                    if (export) {
+                        startActivity(JobService.newShareIntent(thiz, job.getExportFile()));
+                    } else {
+                        Toast.makeText(thiz, R.string.import_successToast, Toast.LENGTH_SHORT).show();
+                    }
+                    break;
+
+                case FAILED:
+                    Toast.makeText(thiz, export ? R.string.export_failToast : R.string.import_failToast, Toast.LENGTH_LONG).show();
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    };
+
 
     /*
      * Heart rate monitor.
@@ -195,6 +282,30 @@ public class PreferenceActivity extends BaseFragmentActivity implements Preferen
     }
 
 
+    /*
+     * Speed and cadence sensor.
+     */
+
+    @Override
+    public void startCscScan() {
+        Intent intent = new Intent(this, HeartRateMonitorScanActivity.class);
+        intent.putExtra(HeartRateMonitorScanActivity.EXTRA_SENSOR_TYPE, HeartRateMonitorScanActivity.SENSOR_TYPE_CSC);
+        startActivityForResult(intent, REQUEST_SCAN_CSC);
+    }
+
+
+    /*
+     * Power meter.
+     */
+
+    @Override
+    public void startPowerScan() {
+        Intent intent = new Intent(this, HeartRateMonitorScanActivity.class);
+        intent.putExtra(HeartRateMonitorScanActivity.EXTRA_SENSOR_TYPE, HeartRateMonitorScanActivity.SENSOR_TYPE_POWER);
+        startActivityForResult(intent, REQUEST_SCAN_POWER);
+    }
+
+
     /*
      * AlertDialogListener.
      */
@@ -211,6 +322,11 @@ public class PreferenceActivity extends BaseFragmentActivity implements Preferen
                 // Disconnect
                 HeartRateManager.get().disconnect();
                 break;
+
+            case DIALOG_IMPORT_MODE:
+                // Replace
+                importDatabase((Uri) payload, false);
+                break;
         }
     }
 
@@ -233,6 +349,11 @@ public class PreferenceActivity extends BaseFragmentActivity implements Preferen
                 HeartRateManager.get().disconnect();
                 startHeartRateMonitorScan();
                 break;
+
+            case DIALOG_IMPORT_MODE:
+                // Merge
+                importDatabase((Uri) payload, true);
+                break;
         }
     }
 
@@ -27,7 +27,10 @@ package org.jraf.android.bikey.app.preference;
 public interface PreferenceCallbacks {
     void showRecordCadenceConfirmDialog();
 
-    void startExport();
+    /**
+     * @param incremental {@code true} to only export the rides changed since the last export.
+     */
+    void startExport(boolean incremental);
 
     void startImport();
 
@@ -36,4 +39,8 @@ public interface PreferenceCallbacks {
     void disconnectHeartRateMonitor();
 
     void tryToReconnectOrGiveUp();
+
+    void startCscScan();
+
+    void startPowerScan();
 }
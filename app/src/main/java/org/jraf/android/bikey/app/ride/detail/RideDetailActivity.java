@@ -24,7 +24,6 @@
  */
 package org.jraf.android.bikey.app.ride.detail;
 
-import java.io.File;
 import java.util.Date;
 import java.util.List;
 
@@ -39,6 +38,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import butterknife.ButterKnife;
 import butterknife.InjectView;
@@ -46,11 +46,12 @@ import butterknife.OnClick;
 
 import org.jraf.android.bikey.R;
 import org.jraf.android.bikey.app.display.DisplayActivity;
+import org.jraf.android.bikey.app.job.JobService;
 import org.jraf.android.bikey.app.ride.edit.RideEditActivity;
 import org.jraf.android.bikey.app.ride.map.RideMapActivity;
-import org.jraf.android.bikey.backend.export.genymotion.GenymotionExporter;
-import org.jraf.android.bikey.backend.export.gpx.GpxExporter;
-import org.jraf.android.bikey.backend.export.kml.KmlExporter;
+import org.jraf.android.bikey.backend.job.Job;
+import org.jraf.android.bikey.backend.job.JobListener;
+import org.jraf.android.bikey.backend.job.JobManager;
 import org.jraf.android.bikey.backend.log.LogManager;
 import org.jraf.android.bikey.backend.provider.ride.RideCursor;
 import org.jraf.android.bikey.backend.ride.RideManager;
@@ -146,6 +147,21 @@ public class RideDetailActivity extends FragmentActivity implements AlertDialogL
     @InjectView(R.id.grpHeartRate)
     protected GraphView mGrpHeartRate;
 
+    @InjectView(R.id.txtPowerSectionTitle)
+    protected TextView mTxtPowerSectionTitle;
+
+    @InjectView(R.id.txtPowerAverage)
+    protected LabelTextView mTxtPowerAverage;
+
+    @InjectView(R.id.txtPowerMax)
+    protected LabelTextView mTxtPowerMax;
+
+    @InjectView(R.id.txtPowerNormalized)
+    protected LabelTextView mTxtPowerNormalized;
+
+    @InjectView(R.id.grpPower)
+    protected GraphView mGrpPower;
+
     private RideDetailStateFragment mState;
     private GoogleMap mMap;
 
@@ -167,6 +183,13 @@ public class RideDetailActivity extends FragmentActivity implements AlertDialogL
     protected void onResume() {
         super.onResume();
         loadData();
+        JobManager.get().addListener(mJobListener);
+    }
+
+    @Override
+    protected void onPause() {
+        JobManager.get().removeListener(mJobListener);
+        super.onPause();
     }
 
     private void restoreState() {
@@ -231,6 +254,10 @@ public class RideDetailActivity extends FragmentActivity implements AlertDialogL
             private float mMaxHeartRate;
             private Float mAverageHeartRate;
             private float[] mHeartRateArray;
+            private Float mAveragePower;
+            private float mMaxPower;
+            private Float mNormalizedPower;
+            private float[] mPowerArray;
 
             @Override
             protected void doInBackground() throws Throwable {
@@ -253,6 +280,9 @@ public class RideDetailActivity extends FragmentActivity implements AlertDialogL
                 mMinHeartRate = logManager.getMinHeartRate(rideUri);
                 mMaxHeartRate = logManager.getMaxHeartRate(rideUri);
                 mAverageHeartRate = logManager.getAverageHeartRate(rideUri);
+                mAveragePower = logManager.getAveragePower(rideUri);
+                mMaxPower = logManager.getMaxPower(rideUri);
+                mNormalizedPower = logManager.getNormalizedPower(rideUri);
 
                 mLatLngArray = logManager.getLatLngArray(rideUri, POINTS_TO_GRAPH);
 
@@ -267,6 +297,10 @@ public class RideDetailActivity extends FragmentActivity implements AlertDialogL
                 List<Float> heartRateList = logManager.getHeartRateArray(rideUri, POINTS_TO_GRAPH);
                 mHeartRateArray = CollectionUtil.unwrap(heartRateList.toArray(new Float[heartRateList.size()]));
                 mHeartRateArray = MathUtil.getMovingAverage(mHeartRateArray, mHeartRateArray.length / 10);
+
+                List<Float> powerList = logManager.getPowerArray(rideUri, POINTS_TO_GRAPH);
+                mPowerArray = CollectionUtil.unwrap(powerList.toArray(new Float[powerList.size()]));
+                mPowerArray = MathUtil.getMovingAverage(mPowerArray, mPowerArray.length / 10);
             }
 
             @Override
@@ -351,6 +385,30 @@ public class RideDetailActivity extends FragmentActivity implements AlertDialogL
                     a.mGrpHeartRate.setColor(0, a.getResources().getColor(R.color.graph_line));
                     a.mGrpHeartRate.setValues(0, mHeartRateArray);
                 }
+
+                // Power
+                if (mAveragePower == null) {
+                    a.mTxtPowerSectionTitle.setVisibility(View.GONE);
+                    a.mTxtPowerAverage.setVisibility(View.GONE);
+                    a.mTxtPowerMax.setVisibility(View.GONE);
+                    a.mTxtPowerNormalized.setVisibility(View.GONE);
+                    a.mGrpPower.setVisibility(View.GONE);
+                } else {
+                    a.mTxtPowerSectionTitle.setVisibility(View.VISIBLE);
+                    a.mTxtPowerAverage.setVisibility(View.VISIBLE);
+                    a.mTxtPowerAverage.setText(UnitUtil.formatPower(mAveragePower, true));
+                    a.mTxtPowerMax.setVisibility(View.VISIBLE);
+                    a.mTxtPowerMax.setText(UnitUtil.formatPower(mMaxPower, true));
+                    if (mNormalizedPower == null) {
+                        a.mTxtPowerNormalized.setVisibility(View.GONE);
+                    } else {
+                        a.mTxtPowerNormalized.setVisibility(View.VISIBLE);
+                        a.mTxtPowerNormalized.setText(UnitUtil.formatPower(mNormalizedPower, true));
+                    }
+                    a.mGrpPower.setVisibility(View.VISIBLE);
+                    a.mGrpPower.setColor(0, a.getResources().getColor(R.color.graph_line));
+                    a.mGrpPower.setValues(0, mPowerArray);
+                }
             }
         }).execute(getSupportFragmentManager());
     }
@@ -418,47 +476,57 @@ public class RideDetailActivity extends FragmentActivity implements AlertDialogL
 
     @Override
     public void onClickListItem(int tag, int index, Object payload) {
+        Job.Type type = null;
         switch (index) {
             case 0:
                 // Gpx
-                mState.mExporter = new GpxExporter(mRideUri);
+                type = Job.Type.EXPORT_GPX;
                 break;
             case 1:
                 // Kml
-                mState.mExporter = new KmlExporter(mRideUri);
+                type = Job.Type.EXPORT_KML;
                 break;
-            case 3:
+            case 2:
                 // Genymotion script
-                mState.mExporter = new GenymotionExporter(mRideUri);
+                type = Job.Type.EXPORT_GENYMOTION;
+                break;
+            case 3:
+                // Fit
+                type = Job.Type.EXPORT_FIT;
+                break;
+            case 4:
+                // Tcx
+                type = Job.Type.EXPORT_TCX;
                 break;
         }
-        startExport();
+        mState.mExportJobId = JobManager.get().enqueue(type, mRideUri).getId();
     }
 
-    private void startExport() {
-        new TaskFragment(new Task<RideDetailActivity>() {
-            @Override
-            protected void doInBackground() throws Throwable {
-                getActivity().mState.mExporter.export();
-            }
-
-            @Override
-            protected void onPostExecuteOk() {
-                File exportedFile = getActivity().mState.mExporter.getExportFile();
-
-                Intent sendIntent = new Intent();
-                sendIntent.setAction(Intent.ACTION_SEND);
-                sendIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.export_subject));
-                String messageBody = getString(R.string.export_body);
-                sendIntent.putExtra(Intent.EXTRA_STREAM, Uri.parse("file://" + exportedFile.getAbsolutePath()));
-                sendIntent.setType("application/bikey");
-                sendIntent.putExtra(Intent.EXTRA_TEXT, messageBody);
-
-                startActivity(Intent.createChooser(sendIntent, getResources().getText(R.string.ride_list_action_share)));
-
+    /**
+     * While we are in the foreground, share the file exported by the job we started directly, instead of from a notification.
+     */
+    private JobListener mJobListener = new JobListener() {
+        @Override
+        public void onJobProgress(Job job) {}
+
+        @Override
+        public void onJobFinished(Job job) {
+            if (job.getId() != mState.mExportJobId) return;
+            job.setResultHandled();
+            switch (job.getStatus()) {
+                case SUCCEEDED:
+                    startActivity(JobService.newShareIntent(RideDetailActivity.this, job.getExportFile()));
+                    break;
+
+                case FAILED:
+                    Toast.makeText(RideDetailActivity.this, R.string.export_failToast, Toast.LENGTH_LONG).show();
+                    break;
+
+                default:
+                    break;
             }
-        }.toastFail(R.string.export_failToast)).execute(getSupportFragmentManager());
-    }
+        }
+    };
 
 
     /*
@@ -26,10 +26,11 @@ package org.jraf.android.bikey.app.ride.detail;
 
 import android.support.v4.app.Fragment;
 
-import org.jraf.android.bikey.backend.export.Exporter;
-
 public class RideDetailStateFragment extends Fragment {
-    /*package*/Exporter mExporter;
+    /**
+     * The last export started from this screen.
+     */
+    /*package*/long mExportJobId;
 
     public RideDetailStateFragment() {
         setRetainInstance(true);
@@ -24,8 +24,6 @@
  */
 package org.jraf.android.bikey.app.ride.list;
 
-import java.io.File;
-
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -33,17 +31,19 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.widget.Toast;
 
 import org.jraf.android.bikey.R;
 import org.jraf.android.bikey.app.about.AboutActivity;
 import org.jraf.android.bikey.app.collect.LogCollectorService;
 import org.jraf.android.bikey.app.display.DisplayActivity;
+import org.jraf.android.bikey.app.job.JobService;
 import org.jraf.android.bikey.app.preference.PreferenceActivity;
 import org.jraf.android.bikey.app.ride.detail.RideDetailActivity;
 import org.jraf.android.bikey.app.ride.edit.RideEditActivity;
-import org.jraf.android.bikey.backend.export.genymotion.GenymotionExporter;
-import org.jraf.android.bikey.backend.export.gpx.GpxExporter;
-import org.jraf.android.bikey.backend.export.kml.KmlExporter;
+import org.jraf.android.bikey.backend.job.Job;
+import org.jraf.android.bikey.backend.job.JobListener;
+import org.jraf.android.bikey.backend.job.JobManager;
 import org.jraf.android.bikey.backend.provider.ride.RideState;
 import org.jraf.android.bikey.backend.ride.RideManager;
 import org.jraf.android.bikey.util.MediaButtonUtil;
@@ -87,6 +87,18 @@ public class RideListActivity extends BaseFragmentActivity implements AlertDialo
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        JobManager.get().addListener(mJobListener);
+    }
+
+    @Override
+    protected void onPause() {
+        JobManager.get().removeListener(mJobListener);
+        super.onPause();
+    }
+
     private void restoreState() {
         mState = (RideListStateFragment) getSupportFragmentManager().findFragmentByTag(FRAGMENT_RETAINED_STATE);
         if (mState == null) {
@@ -281,47 +293,57 @@ public class RideListActivity extends BaseFragmentActivity implements AlertDialo
     @Override
     public void onClickListItem(int tag, int index, Object payload) {
         Uri rideUri = (Uri) payload;
+        Job.Type type = null;
         switch (index) {
             case 0:
                 // Gpx
-                mState.mExporter = new GpxExporter(rideUri);
+                type = Job.Type.EXPORT_GPX;
                 break;
             case 1:
                 // Kml
-                mState.mExporter = new KmlExporter(rideUri);
+                type = Job.Type.EXPORT_KML;
                 break;
-            case 3:
+            case 2:
                 // Genymotion script
-                mState.mExporter = new GenymotionExporter(rideUri);
+                type = Job.Type.EXPORT_GENYMOTION;
+                break;
+            case 3:
+                // Fit
+                type = Job.Type.EXPORT_FIT;
+                break;
+            case 4:
+                // Tcx
+                type = Job.Type.EXPORT_TCX;
                 break;
         }
-        startExport();
+        mState.mExportJobId = JobManager.get().enqueue(type, rideUri).getId();
     }
 
-    private void startExport() {
-        new TaskFragment(new Task<RideListActivity>() {
-            @Override
-            protected void doInBackground() throws Throwable {
-                getActivity().mState.mExporter.export();
-            }
-
-            @Override
-            protected void onPostExecuteOk() {
-                File exportedFile = getActivity().mState.mExporter.getExportFile();
-
-                Intent sendIntent = new Intent();
-                sendIntent.setAction(Intent.ACTION_SEND);
-                sendIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.export_subject));
-                String messageBody = getString(R.string.export_body);
-                sendIntent.putExtra(Intent.EXTRA_STREAM, Uri.parse("file://" + exportedFile.getAbsolutePath()));
-                sendIntent.setType("application/bikey");
-                sendIntent.putExtra(Intent.EXTRA_TEXT, messageBody);
-
-                startActivity(Intent.createChooser(sendIntent, getResources().getText(R.string.ride_list_action_share)));
-
+    /**
+     * While we are in the foreground, share the file exported by the job we started directly, instead of from a notification.
+     */
+    private JobListener mJobListener = new JobListener() {
+        @Override
+        public void onJobProgress(Job job) {}
+
+        @Override
+        public void onJobFinished(Job job) {
+            if (job.getId() != mState.mExportJobId) return;
+            job.setResultHandled();
+            switch (job.getStatus()) {
+                case SUCCEEDED:
+                    startActivity(JobService.newShareIntent(thiz, job.getExportFile()));
+                    break;
+
+                case FAILED:
+                    Toast.makeText(thiz, R.string.export_failToast, Toast.LENGTH_LONG).show();
+                    break;
+
+                default:
+                    break;
             }
-        }.toastFail(R.string.export_failToast)).execute(getSupportFragmentManager());
-    }
+        }
+    };
 
 
     /*
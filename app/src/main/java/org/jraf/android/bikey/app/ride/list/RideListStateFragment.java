@@ -26,10 +26,11 @@ package org.jraf.android.bikey.app.ride.list;
 
 import android.support.v4.app.Fragment;
 
-import org.jraf.android.bikey.backend.export.Exporter;
-
 public class RideListStateFragment extends Fragment {
-    /*package*/Exporter mExporter;
+    /**
+     * The last export started from this screen.
+     */
+    /*package*/long mExportJobId;
 
     public RideListStateFragment() {
         setRetainInstance(true);
@@ -0,0 +1,204 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.barometer;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+
+import org.jraf.android.bikey.app.Application;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Fuses the altitude given by the barometer with the one given by the GPS, using a complementary filter.<br/>
+ * The barometer is precise on altitude changes (about 1 m), but its absolute altitude depends on the weather. The GPS altitude is right on
+ * average, but jitters by tens of meters. So the fused altitude is the barometric altitude, plus an offset which slowly follows the difference
+ * between the GPS and the barometric altitudes.<br/>
+ * The offset is calibrated quickly on the first fixes after {@link #startListening()} (when the location updates start, i.e. when a ride starts
+ * or the display is opened), then only follows the slow drifts (weather changes).<br/>
+ * The {@link org.jraf.android.bikey.backend.location.LocationManager} fuses the altitude of each fix before dispatching it, so the recorded logs
+ * (and the exports) and the {@link org.jraf.android.bikey.backend.location.GradientMeter} all use it.<br/>
+ * On devices without a barometer, the GPS altitude is left as is.
+ */
+public class BarometerManager {
+    private static final BarometerManager INSTANCE = new BarometerManager();
+
+    /**
+     * Requested rate of the pressure sensor (5 Hz).
+     */
+    private static final int SAMPLING_PERIOD_US = 200 * 1000;
+
+    /**
+     * When the sensor supports it, events are batched in its hardware FIFO and delivered at most this late, which lets the CPU sleep in between.
+     */
+    private static final int MAX_REPORT_LATENCY_US = 2 * 1000 * 1000;
+
+    /**
+     * Time constant of the low-pass filter applied to the pressure, to remove the sensor noise.
+     */
+    private static final float PRESSURE_TIME_CONSTANT_MS = 2 * 1000;
+
+    /**
+     * A pressure older than this is not used.
+     */
+    private static final long MAX_PRESSURE_AGE_MS = 10 * 1000;
+
+    /**
+     * Number of fixes used for the initial calibration of the offset (averaged).
+     */
+    private static final int CALIBRATION_FIX_COUNT = 10;
+
+    /**
+     * After the calibration, time constant with which the offset follows the GPS.
+     */
+    private static final float OFFSET_TIME_CONSTANT_MS = 5 * 60 * 1000;
+
+    /**
+     * Fixes with a worse accuracy are not used to calibrate the offset.
+     */
+    private static final float MAX_CALIBRATION_ACCURACY_M = 15;
+
+    public static BarometerManager get() {
+        return INSTANCE;
+    }
+
+    private final Context mContext;
+    private final boolean mHasBarometer;
+
+    /*
+     * Written by the sensor thread, read by the location thread (both are the main thread).
+     */
+    private volatile float mPressure;
+    private volatile long mPressureReceivedDate;
+
+    // Only used by the sensor thread
+    private long mPressureDate;
+
+    // Only used by the location thread
+    private int mCalibrationCount;
+    private double mOffset;
+    private long mLastFixDate;
+
+    private BarometerManager() {
+        mContext = Application.getApplication();
+        SensorManager sensorManager = (SensorManager) mContext.getSystemService(Context.SENSOR_SERVICE);
+        mHasBarometer = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE) != null;
+        Log.d("mHasBarometer=" + mHasBarometer);
+    }
+
+    /**
+     * @return {@code true} if this device has a barometer.
+     */
+    public boolean hasBarometer() {
+        return mHasBarometer;
+    }
+
+    public void startListening() {
+        if (!mHasBarometer) return;
+        Log.d();
+        mPressureDate = 0;
+        mPressureReceivedDate = 0;
+        mCalibrationCount = 0;
+        SensorManager sensorManager = (SensorManager) mContext.getSystemService(Context.SENSOR_SERVICE);
+        Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            registerListenerKitKat(sensorManager, sensor);
+        } else {
+            sensorManager.registerListener(mPressureSensorEventListener, sensor, SAMPLING_PERIOD_US);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void registerListenerKitKat(SensorManager sensorManager, Sensor sensor) {
+        boolean batching = sensorManager.registerListener(mPressureSensorEventListener, sensor, SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US);
+        Log.d("batching=" + batching + " fifoMaxEventCount=" + sensor.getFifoMaxEventCount());
+    }
+
+    public void stopListening() {
+        if (!mHasBarometer) return;
+        Log.d();
+        SensorManager sensorManager = (SensorManager) mContext.getSystemService(Context.SENSOR_SERVICE);
+        sensorManager.unregisterListener(mPressureSensorEventListener);
+    }
+
+    private SensorEventListener mPressureSensorEventListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            // Use the time of the measure, not the time of the delivery (which can be up to MAX_REPORT_LATENCY_US later when batching)
+            long date = event.timestamp / 1000000;
+            float pressure = event.values[0];
+            long dateDiff = date - mPressureDate;
+            if (mPressureDate == 0 || dateDiff <= 0 || dateDiff > MAX_PRESSURE_AGE_MS) {
+                mPressure = pressure;
+            } else {
+                // Low-pass filter
+                float alpha = dateDiff / (PRESSURE_TIME_CONSTANT_MS + dateDiff);
+                mPressure += alpha * (pressure - mPressure);
+            }
+            mPressureDate = date;
+            mPressureReceivedDate = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+    };
+
+    /**
+     * Replace the altitude of the given location with the fused altitude, if possible. Otherwise the GPS altitude is left as is.<br/>
+     * Must be called with each new fix, in order, and before its accuracy is changed by a filter (see {@link #MAX_CALIBRATION_ACCURACY_M}).
+     */
+    public void fuseAltitude(Location location) {
+        if (!mHasBarometer) return;
+        long pressureReceivedDate = mPressureReceivedDate;
+        long now = SystemClock.elapsedRealtime();
+        // Allow for the batching latency
+        if (pressureReceivedDate == 0 || now - pressureReceivedDate > MAX_PRESSURE_AGE_MS + MAX_REPORT_LATENCY_US / 1000) return;
+
+        double barometricAltitude = SensorManager.getAltitude(SensorManager.PRESSURE_STANDARD_ATMOSPHERE, mPressure);
+        if (location.hasAltitude() && (!location.hasAccuracy() || location.getAccuracy() <= MAX_CALIBRATION_ACCURACY_M)) {
+            double offset = location.getAltitude() - barometricAltitude;
+            if (mCalibrationCount < CALIBRATION_FIX_COUNT) {
+                // Calibration: average of the first fixes
+                mCalibrationCount++;
+                mOffset += (offset - mOffset) / mCalibrationCount;
+            } else {
+                // Complementary filter: the offset only follows the slow changes
+                long dateDiff = Math.max(0, now - mLastFixDate);
+                double alpha = dateDiff / (OFFSET_TIME_CONSTANT_MS + dateDiff);
+                mOffset += alpha * (offset - mOffset);
+            }
+            mLastFixDate = now;
+        }
+        if (mCalibrationCount == 0) return;
+
+        location.setAltitude(barometricAltitude + mOffset);
+    }
+}
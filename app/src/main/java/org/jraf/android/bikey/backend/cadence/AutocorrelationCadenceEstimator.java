@@ -0,0 +1,147 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.cadence;
+
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Finds the period of the pedaling with the normalized autocorrelation of the samples (all axes, centered on their average).<br/>
+ * Only the lags corresponding to cadences between {@link #MIN_CADENCE} and {@link #MAX_CADENCE} are computed, and the peak is refined with a
+ * parabolic interpolation. To avoid detecting a multiple of the period, the shortest lag whose correlation is close to the maximum is chosen.<br/>
+ * The confidence is the correlation at the chosen lag: close to {@code 1} for a clean periodic signal, low for noise. Vibrations are mostly
+ * uncorrelated from one pedal stroke to the next, so this is much more robust than counting zero crossings.<br/>
+ * The samples are assumed to be uniformly spaced in time (see {@link UniformResampler}).
+ */
+public class AutocorrelationCadenceEstimator implements CadenceEstimator {
+    private static final float MIN_AMPLITUDE = .3f;
+    private static final float MIN_CADENCE = 30;
+    private static final float MAX_CADENCE = 170;
+
+    /**
+     * A lag shorter than the one with the maximum correlation is preferred if its correlation is at least this ratio of the maximum.
+     */
+    private static final float SUB_MULTIPLE_RATIO = .85f;
+
+    private final WindowStatistics mStatistics = new WindowStatistics();
+    private final float[] mCorrelation;
+    private float mConfidence;
+
+    /**
+     * @param capacity The maximum number of samples of a window.
+     */
+    public AutocorrelationCadenceEstimator(int capacity) {
+        mCorrelation = new float[capacity];
+    }
+
+    @Override
+    public float estimate(SampleRingBuffer samples, long start, long end) {
+        mConfidence = 0;
+        int len = (int) (end - start);
+        if (len < 4) return Float.NaN;
+        float sampleDurationMs = (samples.getTimestamp(end - 1) - samples.getTimestamp(start)) / (float) (len - 1);
+        if (sampleDurationMs <= 0) return Float.NaN;
+
+        mStatistics.compute(samples, start, end);
+        float maxAmplitude = mStatistics.getAmplitude(mStatistics.getMaxAmplitudeAxis());
+        if (maxAmplitude < MIN_AMPLITUDE) {
+            Log.d("Amplitude to small: returning NaN");
+            return Float.NaN;
+        }
+
+        // Lags to consider (at least half the window must overlap)
+        int minLag = Math.max(1, (int) (60000f / MAX_CADENCE / sampleDurationMs));
+        int maxLag = Math.min(len / 2, (int) Math.ceil(60000f / MIN_CADENCE / sampleDurationMs));
+        if (minLag >= maxLag) return Float.NaN;
+
+        // Compute the correlations (including the neighbors of the range, for the interpolation)
+        int firstLag = Math.max(1, minLag - 1);
+        int lastLag = Math.min(len - 2, maxLag + 1);
+        float maxCorrelation = -1;
+        for (int lag = firstLag; lag <= lastLag; lag++) {
+            float correlation = correlation(samples, start, len, lag);
+            mCorrelation[lag] = correlation;
+            if (lag >= minLag && lag <= maxLag && correlation > maxCorrelation) maxCorrelation = correlation;
+        }
+        if (maxCorrelation <= 0) {
+            Log.d("No correlation: returning NaN");
+            return Float.NaN;
+        }
+
+        // Shortest local maximum close enough to the maximum
+        int bestLag = -1;
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            float correlation = mCorrelation[lag];
+            if (correlation < SUB_MULTIPLE_RATIO * maxCorrelation) continue;
+            boolean isPeak = (lag == firstLag || correlation >= mCorrelation[lag - 1]) && (lag == lastLag || correlation >= mCorrelation[lag + 1]);
+            if (isPeak) {
+                bestLag = lag;
+                break;
+            }
+        }
+        if (bestLag == -1) return Float.NaN;
+
+        // Parabolic interpolation of the peak
+        float refinedLag = bestLag;
+        if (bestLag > firstLag && bestLag < lastLag) {
+            float previous = mCorrelation[bestLag - 1];
+            float current = mCorrelation[bestLag];
+            float next = mCorrelation[bestLag + 1];
+            float denominator = previous - 2 * current + next;
+            if (denominator < 0) {
+                float offset = .5f * (previous - next) / denominator;
+                refinedLag += Math.max(-.5f, Math.min(.5f, offset));
+            }
+        }
+
+        mConfidence = Math.min(1, mCorrelation[bestLag]);
+        return 60000f / (refinedLag * sampleDurationMs);
+    }
+
+    /**
+     * Normalized correlation between the window and itself shifted by {@code lag} samples, summed over all axes.
+     */
+    private float correlation(SampleRingBuffer samples, long start, int len, int lag) {
+        float product = 0;
+        float energy1 = 0;
+        float energy2 = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            float average = mStatistics.getAverage(axis);
+            for (int i = 0; i < len - lag; i++) {
+                float value1 = samples.get(axis, start + i) - average;
+                float value2 = samples.get(axis, start + i + lag) - average;
+                product += value1 * value2;
+                energy1 += value1 * value1;
+                energy2 += value2 * value2;
+            }
+        }
+        if (energy1 == 0 || energy2 == 0) return 0;
+        return product / (float) Math.sqrt(energy1 * energy2);
+    }
+
+    @Override
+    public float getConfidence() {
+        return mConfidence;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.cadence;
+
+/**
+ * Estimates the cadence from a window of rotation samples.<br/>
+ * Implementations must not allocate in {@link #estimate(SampleRingBuffer, long, long)}: it is called regularly while a ride is recorded. They are
+ * not thread safe.
+ */
+public interface CadenceEstimator {
+    /**
+     * Estimate the cadence from the samples of the given window. The samples are read in place, and the caller is responsible for checking that
+     * they have not been overwritten in the meantime (see {@link SampleRingBuffer#isValid(long)}).
+     * 
+     * @param start The sequence number of the first sample of the window.
+     * @param end The sequence number following the last sample of the window.
+     * @return The cadence in revolutions per minute, or {@link Float#NaN} if it could not be estimated.
+     */
+    float estimate(SampleRingBuffer samples, long start, long end);
+
+    /**
+     * @return How much the last estimate can be trusted, from {@code 0} (not at all) to {@code 1}.
+     */
+    float getConfidence();
+}
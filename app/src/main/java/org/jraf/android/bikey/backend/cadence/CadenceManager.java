@@ -24,23 +24,22 @@
  */
 package org.jraf.android.bikey.backend.cadence;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Build;
 
 import org.jraf.android.bikey.app.Application;
 import org.jraf.android.util.listeners.Listeners;
 import org.jraf.android.util.listeners.Listeners.Dispatcher;
 import org.jraf.android.util.log.wrapper.Log;
-import org.jraf.android.util.math.MathUtil;
 import org.jraf.android.util.object.ObjectUtil;
 
 public class CadenceManager {
@@ -52,27 +51,49 @@ public class CadenceManager {
     private static final float SANITY_CHECK_MAX = 170;
     private static final float SANITY_CHECK_MIN = 30;
 
-    private static final float MIN_AMPLITUDE = .3f;
+    /**
+     * Estimates with a lower confidence are ignored.
+     */
+    private static final float MIN_CONFIDENCE = .4f;
 
-    private static class Entry {
-        long timestamp;
-        float[] values;
+    /**
+     * Enough for {@link #LOG_SIZE_MS} of samples at 200 Hz.
+     */
+    private static final int SAMPLE_CAPACITY = 1024;
 
-        Entry(float[] values) {
-            this.values = values;
-            timestamp = System.currentTimeMillis();
-        }
-    }
+    /**
+     * Requested rate of the rotation sensor (50 Hz).
+     */
+    private static final int SAMPLING_PERIOD_US = 20 * 1000;
+
+    /**
+     * When the sensor supports it, events are batched in its hardware FIFO and delivered at most this late, which lets the CPU sleep in between.
+     * This is shorter than {@link #BROADCAST_CURRENT_VALUE_RATE_S} so the estimations are done on recent samples.
+     */
+    private static final int MAX_REPORT_LATENCY_US = 1000 * 1000;
+
+    /**
+     * The samples are resampled to this period (25 Hz, so at least 8 samples per revolution at the highest cadence) before estimating the
+     * cadence.
+     */
+    private static final long UNIFORM_SAMPLING_PERIOD_MS = 40;
+    private static final int UNIFORM_SAMPLE_CAPACITY = 256;
 
     public static CadenceManager get() {
         return INSTANCE;
     }
 
     private Context mContext;
-    private ArrayDeque<Entry> mValues = new ArrayDeque<Entry>(200);
+    /**
+     * Written by the sensor thread, read by the broadcast thread.
+     */
+    private final SampleRingBuffer mSamples = new SampleRingBuffer(SAMPLE_CAPACITY);
     private ScheduledExecutorService mScheduledExecutorService;
     protected Float mLastValue = -1f;
-    private float[][] mLastRawData;
+
+    // Only used by the broadcast thread
+    private final UniformResampler mResampler = new UniformResampler(UNIFORM_SAMPLING_PERIOD_MS, UNIFORM_SAMPLE_CAPACITY);
+    private final CadenceEstimator mCadenceEstimator = new AutocorrelationCadenceEstimator(UNIFORM_SAMPLE_CAPACITY);
 
     private Listeners<CadenceListener> mListeners = new Listeners<CadenceListener>() {
         @Override
@@ -101,9 +122,15 @@ public class CadenceManager {
 
     protected void startListening() {
         Log.d();
+        // Forget the samples of the previous session
+        mSamples.clear();
         SensorManager sensorManager = (SensorManager) mContext.getSystemService(Context.SENSOR_SERVICE);
-        sensorManager.registerListener(mRotationSensorEventListener, sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR),
-                SensorManager.SENSOR_DELAY_NORMAL);
+        Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            registerListenerKitKat(sensorManager, sensor);
+        } else {
+            sensorManager.registerListener(mRotationSensorEventListener, sensor, SAMPLING_PERIOD_US);
+        }
 
         if (mScheduledExecutorService == null) {
             mScheduledExecutorService = Executors.newScheduledThreadPool(1);
@@ -112,6 +139,12 @@ public class CadenceManager {
                 TimeUnit.SECONDS);
     }
 
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void registerListenerKitKat(SensorManager sensorManager, Sensor sensor) {
+        boolean batching = sensorManager.registerListener(mRotationSensorEventListener, sensor, SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US);
+        Log.d("batching=" + batching + " fifoMaxEventCount=" + sensor.getFifoMaxEventCount());
+    }
+
     protected void stopListening() {
         Log.d();
         SensorManager sensorManager = (SensorManager) mContext.getSystemService(Context.SENSOR_SERVICE);
@@ -125,126 +158,46 @@ public class CadenceManager {
     private SensorEventListener mRotationSensorEventListener = new SensorEventListener() {
         @Override
         public void onSensorChanged(SensorEvent event) {
-            // Keep only logs for a specific duration (discard old logs)
-            while (mValues.size() >= 2 && mValues.peekLast().timestamp - mValues.peekFirst().timestamp >= LOG_SIZE_MS) {
-                mValues.removeFirst();
-            }
-            float[] values = event.values.clone();
-            synchronized (mValues) {
-                mValues.add(new Entry(values));
-            }
+            // Use the time of the measure, not the time of the delivery (which can be up to MAX_REPORT_LATENCY_US later when batching)
+            long timestampMs = event.timestamp / 1000000;
+            // Old samples are simply overwritten, and ignored by the reader (see getCurrentCadence)
+            mSamples.add(timestampMs, event.values[0], event.values[1], event.values[2]);
         }
 
         @Override
         public void onAccuracyChanged(Sensor sensor, int accuracy) {}
     };
 
-    private static class ValuesAsArray {
-        float[][] values;
-        long[] times;
-    }
-
-    private ValuesAsArray getValuesAsFloatArray() {
-        float[][] values = new float[3][mValues.size()];
-        long[] timestamps = new long[mValues.size()];
-        int i = 0;
-
-        for (Entry e : mValues) {
-            float valX = e.values[0];
-            float valY = e.values[1];
-            float valZ = e.values[2];
-
-            values[0][i] = valX;
-            values[1][i] = valY;
-            values[2][i] = valZ;
-
-            timestamps[i] = e.timestamp;
-
-            i++;
-        }
-        ValuesAsArray res = new ValuesAsArray();
-        res.values = values;
-        res.times = timestamps;
-        return res;
-    }
-
     /**
-     * Get the current cadence.
+     * Get the current cadence.<br/>
+     * The samples of the last {@link #LOG_SIZE_MS} are read in place from the ring buffer, resampled to a uniform rate, and passed to the
+     * {@link CadenceEstimator}, without any allocation.
      * 
      * @return The current cadence in revolutions per minute, or {@code null} if the information is not available.
      */
     private Float getCurrentCadence() {
         if (mListeners.size() == 0) throw new IllegalStateException("There must be at least one listener prior to calling getCurrentCadence");
-        ValuesAsArray valuesAsArrays;
-        long durationMs;
-        int len;
-        synchronized (mValues) {
-            len = mValues.size();
-            if (len < 2) return null;
-            valuesAsArrays = getValuesAsFloatArray();
-            durationMs = mValues.peekLast().timestamp - mValues.peekFirst().timestamp;
-        }
-        mLastRawData = valuesAsArrays.values;
-
-        float[] vX = valuesAsArrays.values[0];
-        float[] vY = valuesAsArrays.values[1];
-        float[] vZ = valuesAsArrays.values[2];
-
-        float amplitudeX = MathUtil.getAmplitude(vX);
-        float amplitudeY = MathUtil.getAmplitude(vY);
-        float amplitudeZ = MathUtil.getAmplitude(vZ);
-
-        // Use the values with the highest amplitude
-        float maxAmplitude = MathUtil.getMinMax(amplitudeX, amplitudeY, amplitudeZ)[1];
-
-        if (maxAmplitude < MIN_AMPLITUDE) {
-            Log.d("Amplitude to small: returning null");
+        long end = mSamples.getEnd();
+        long start = mSamples.getWindowStart(end, LOG_SIZE_MS);
+        if (end - start < 2) return null;
+
+        SampleRingBuffer uniformSamples = mResampler.resample(mSamples, start, end);
+        if (!mSamples.isValid(start)) {
+            // Should not happen since the buffer is much bigger than the window
+            Log.w("Samples overwritten while computing the cadence: returning null");
             return null;
         }
 
-        float[] values;
-        String logValues;
-        if (maxAmplitude == amplitudeX) {
-            values = vX;
-            logValues = "x";
-        } else if (maxAmplitude == amplitudeY) {
-            values = vY;
-            logValues = "y";
-        } else {
-            values = vZ;
-            logValues = "z";
-        }
+        float revPerMin = mCadenceEstimator.estimate(uniformSamples, uniformSamples.getStart(), uniformSamples.getEnd());
+        float confidence = mCadenceEstimator.getConfidence();
 
-        // Average
-        float average = MathUtil.getAverage(values);
-        ArrayList<Long> periods = new ArrayList<Long>();
-        long lastTime = -1;
-        for (int i = 1; i < len; i++) {
-            if (values[i - 1] < average && values[i] >= average) {
-                // Going up
-                if (lastTime != -1) {
-                    long duration = valuesAsArrays.times[i] - lastTime;
-                    periods.add(duration);
-                }
-                lastTime = valuesAsArrays.times[i];
-            }
-        }
-        int periodCount = periods.size();
-        if (periodCount == 0) {
-            Log.d("No periods: returning null");
-            return null;
-        }
+        Log.d("sampleCount=" + (end - start) + " revPerMin=" + revPerMin + " confidence=" + confidence);
+        if (Float.isNaN(revPerMin)) return null;
 
-        // Average of the rev per ms for each period
-        float revPerMs = 0;
-        for (Long t : periods) {
-            revPerMs += 1f / t;
+        if (confidence < MIN_CONFIDENCE) {
+            Log.d("Confidence too low: returning null");
+            return null;
         }
-        revPerMs /= periodCount;
-
-        float revPerMin = revPerMs * 60000f;
-
-        Log.d("durationMs=" + durationMs + " revPerMin=" + revPerMin + " periods=" + periods + " values=" + logValues + " maxAmplitude=" + maxAmplitude);
 
         // Sanity checks
         if (revPerMin > SANITY_CHECK_MAX || revPerMin < SANITY_CHECK_MIN) {
@@ -255,6 +208,22 @@ public class CadenceManager {
         return revPerMin;
     }
 
+    /**
+     * Copy the (resampled) samples used by the last estimation, for the listeners. Only called when the cadence has changed.
+     */
+    private float[][] getRawData() {
+        SampleRingBuffer uniformSamples = mResampler.getOutput();
+        long start = uniformSamples.getStart();
+        int len = (int) (uniformSamples.getEnd() - start);
+        float[][] res = new float[3][len];
+        for (int i = 0; i < len; i++) {
+            res[0][i] = uniformSamples.getX(start + i);
+            res[1][i] = uniformSamples.getY(start + i);
+            res[2][i] = uniformSamples.getZ(start + i);
+        }
+        return res;
+    }
+
     private Runnable mBroadcastCurrentValueRunnable = new Runnable() {
         @Override
         public void run() {
@@ -265,10 +234,11 @@ public class CadenceManager {
                 return;
             }
             mLastValue = value;
+            final float[][] rawData = getRawData();
             mListeners.dispatch(new Dispatcher<CadenceListener>() {
                 @Override
                 public void dispatch(CadenceListener listener) {
-                    listener.onCadenceChanged(value, mLastRawData);
+                    listener.onCadenceChanged(value, rawData);
                 }
             });
         }
@@ -0,0 +1,150 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.cadence;
+
+/**
+ * A fixed capacity ring buffer of 3 axis samples, stored in primitive columns (no allocation when adding or reading samples).<br/>
+ * There must be only one writer thread and one reader thread. The writer publishes each sample by incrementing a volatile counter, and never
+ * waits for the reader. Samples are identified by their sequence number (the value of the counter when they were added): the reader reads them
+ * in place with {@link #getX(long)} and the like, and must then call {@link #isValid(long)} on the oldest sequence number it has read to check
+ * that the writer has not overwritten it in the meantime.
+ */
+public class SampleRingBuffer {
+    private final int mMask;
+    private final float[] mX;
+    private final float[] mY;
+    private final float[] mZ;
+    private final long[] mTimestamp;
+
+    /**
+     * Number of samples added since the creation of the buffer. Written only by the writer thread.
+     */
+    private volatile long mCount;
+
+    /**
+     * @param capacity The capacity, which must be a power of 2.
+     */
+    public SampleRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a power of 2");
+        mMask = capacity - 1;
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mZ = new float[capacity];
+        mTimestamp = new long[capacity];
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Add a sample, overwriting the oldest one if the buffer is full. Must only be called from the writer thread.
+     */
+    public void add(long timestamp, float x, float y, float z) {
+        long count = mCount;
+        int index = (int) (count & mMask);
+        mX[index] = x;
+        mY[index] = y;
+        mZ[index] = z;
+        mTimestamp[index] = timestamp;
+        // Publish the sample (volatile write)
+        mCount = count + 1;
+    }
+
+    /**
+     * Forget all the samples. Must only be called when neither the writer nor the reader are active.
+     */
+    public void clear() {
+        mCount = 0;
+    }
+
+    /**
+     * @return The sequence number of the next sample to be added. The most recent sample is therefore {@code getEnd() - 1}.
+     */
+    public long getEnd() {
+        return mCount;
+    }
+
+    /**
+     * @return The sequence number of the oldest sample still in the buffer.
+     */
+    public long getStart() {
+        long count = mCount;
+        return Math.max(0, count - getCapacity());
+    }
+
+    /**
+     * Find the oldest sample that is at most {@code durationMs} older than the sample before {@code end}.
+     * 
+     * @return The sequence number of this sample, or {@code end} if there are no samples.
+     */
+    public long getWindowStart(long end, long durationMs) {
+        long start = Math.max(0, end - getCapacity());
+        if (end <= start) return end;
+        long minTimestamp = getTimestamp(end - 1) - durationMs;
+        long res = end - 1;
+        while (res > start && getTimestamp(res - 1) >= minTimestamp) {
+            res--;
+        }
+        return res;
+    }
+
+    /**
+     * @return {@code true} if the sample with the given sequence number (and therefore all the following ones) has not been overwritten yet.
+     */
+    public boolean isValid(long sequence) {
+        return mCount - sequence <= getCapacity();
+    }
+
+    public float getX(long sequence) {
+        return mX[(int) (sequence & mMask)];
+    }
+
+    public float getY(long sequence) {
+        return mY[(int) (sequence & mMask)];
+    }
+
+    public float getZ(long sequence) {
+        return mZ[(int) (sequence & mMask)];
+    }
+
+    /**
+     * @param axis 0, 1 or 2 for x, y or z.
+     */
+    public float get(int axis, long sequence) {
+        switch (axis) {
+            case 0:
+                return getX(sequence);
+            case 1:
+                return getY(sequence);
+            default:
+                return getZ(sequence);
+        }
+    }
+
+    public long getTimestamp(long sequence) {
+        return mTimestamp[(int) (sequence & mMask)];
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.cadence;
+
+/**
+ * Resamples a window of samples to a uniform rate, with a linear interpolation.<br/>
+ * Sensor events are not evenly spaced (especially when they are batched), whereas the {@link CadenceEstimator}s work best with uniformly spaced
+ * samples. The output buffer is preallocated and reused, so there is no allocation. Not thread safe.
+ */
+public class UniformResampler {
+    private final long mPeriodMs;
+    private final SampleRingBuffer mOutput;
+
+    /**
+     * @param periodMs The duration between two output samples.
+     * @param capacity The maximum number of output samples (a power of 2).
+     */
+    public UniformResampler(long periodMs, int capacity) {
+        mPeriodMs = periodMs;
+        mOutput = new SampleRingBuffer(capacity);
+    }
+
+    /**
+     * Resample the given window of the input. The previous output is discarded.<br/>
+     * If the window is longer than the capacity of the output, only its most recent part is kept.
+     * 
+     * @return The output, containing samples from {@link SampleRingBuffer#getStart()} to {@link SampleRingBuffer#getEnd()}.
+     */
+    public SampleRingBuffer resample(SampleRingBuffer input, long start, long end) {
+        mOutput.clear();
+        if (end - start < 2) return mOutput;
+        long lastTimestamp = input.getTimestamp(end - 1);
+        long timestamp = input.getTimestamp(start);
+        long i = start;
+        while (timestamp <= lastTimestamp) {
+            // Find the input samples surrounding the timestamp
+            while (i < end - 2 && input.getTimestamp(i + 1) <= timestamp) {
+                i++;
+            }
+            long timestamp0 = input.getTimestamp(i);
+            long timestamp1 = input.getTimestamp(i + 1);
+            float ratio = timestamp1 <= timestamp0 ? 1 : (float) (timestamp - timestamp0) / (timestamp1 - timestamp0);
+            ratio = Math.max(0, Math.min(1, ratio));
+            mOutput.add(timestamp, interpolate(input.getX(i), input.getX(i + 1), ratio), interpolate(input.getY(i), input.getY(i + 1), ratio),
+                    interpolate(input.getZ(i), input.getZ(i + 1), ratio));
+            timestamp += mPeriodMs;
+        }
+        return mOutput;
+    }
+
+    /**
+     * @return The output of the last call to {@link #resample(SampleRingBuffer, long, long)}.
+     */
+    public SampleRingBuffer getOutput() {
+        return mOutput;
+    }
+
+    private static float interpolate(float value0, float value1, float ratio) {
+        return value0 + (value1 - value0) * ratio;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.cadence;
+
+/**
+ * Minimum, maximum and average of each axis over a window of samples, computed in a single pass.
+ */
+/* package */class WindowStatistics {
+    private final float[] mMin = new float[3];
+    private final float[] mMax = new float[3];
+    private final float[] mAverage = new float[3];
+
+    public void compute(SampleRingBuffer samples, long start, long end) {
+        for (int axis = 0; axis < 3; axis++) {
+            mMin[axis] = Float.MAX_VALUE;
+            mMax[axis] = -Float.MAX_VALUE;
+            mAverage[axis] = 0;
+        }
+        for (long i = start; i < end; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                float value = samples.get(axis, i);
+                if (value < mMin[axis]) mMin[axis] = value;
+                if (value > mMax[axis]) mMax[axis] = value;
+                mAverage[axis] += value;
+            }
+        }
+        for (int axis = 0; axis < 3; axis++) {
+            mAverage[axis] /= end - start;
+        }
+    }
+
+    public float getAmplitude(int axis) {
+        return mMax[axis] - mMin[axis];
+    }
+
+    public float getAverage(int axis) {
+        return mAverage[axis];
+    }
+
+    /**
+     * @return The axis with the highest amplitude.
+     */
+    public int getMaxAmplitudeAxis() {
+        int res = 0;
+        for (int axis = 1; axis < 3; axis++) {
+            if (getAmplitude(axis) > getAmplitude(res)) res = axis;
+        }
+        return res;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.cadence;
+
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Counts the periods of the axis with the highest amplitude, delimited by the values going up through the average.<br/>
+ * Cheap, but sensitive to noise: on rough roads, vibrations add spurious crossings. The confidence decreases as the periods get irregular.
+ */
+public class ZeroCrossingCadenceEstimator implements CadenceEstimator {
+    private static final float MIN_AMPLITUDE = .3f;
+    private static final int MIN_PERIODS_FOR_FULL_CONFIDENCE = 3;
+
+    private final WindowStatistics mStatistics = new WindowStatistics();
+    private float mConfidence;
+
+    @Override
+    public float estimate(SampleRingBuffer samples, long start, long end) {
+        mConfidence = 0;
+        if (end - start < 2) return Float.NaN;
+        mStatistics.compute(samples, start, end);
+
+        // Use the values with the highest amplitude
+        int axis = mStatistics.getMaxAmplitudeAxis();
+        float maxAmplitude = mStatistics.getAmplitude(axis);
+        if (maxAmplitude < MIN_AMPLITUDE) {
+            Log.d("Amplitude to small: returning NaN");
+            return Float.NaN;
+        }
+
+        // Average (and variance) of the rev per ms for each period
+        float average = mStatistics.getAverage(axis);
+        float revPerMsSum = 0;
+        float revPerMsSquareSum = 0;
+        int periodCount = 0;
+        long lastTime = -1;
+        float previousValue = samples.get(axis, start);
+        for (long i = start + 1; i < end; i++) {
+            float value = samples.get(axis, i);
+            if (previousValue < average && value >= average) {
+                // Going up
+                long time = samples.getTimestamp(i);
+                if (lastTime != -1 && time > lastTime) {
+                    float revPerMs = 1f / (time - lastTime);
+                    revPerMsSum += revPerMs;
+                    revPerMsSquareSum += revPerMs * revPerMs;
+                    periodCount++;
+                }
+                lastTime = time;
+            }
+            previousValue = value;
+        }
+        if (periodCount == 0) {
+            Log.d("No periods: returning NaN");
+            return Float.NaN;
+        }
+        float revPerMs = revPerMsSum / periodCount;
+        float variance = Math.max(0, revPerMsSquareSum / periodCount - revPerMs * revPerMs);
+        float coefficientOfVariation = (float) Math.sqrt(variance) / revPerMs;
+        mConfidence = Math.max(0, 1 - coefficientOfVariation) * Math.min(1, periodCount / (float) MIN_PERIODS_FOR_FULL_CONFIDENCE);
+        return revPerMs * 60000f;
+    }
+
+    @Override
+    public float getConfidence() {
+        return mConfidence;
+    }
+}
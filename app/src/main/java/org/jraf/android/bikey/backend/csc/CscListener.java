@@ -0,0 +1,37 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.csc;
+
+import org.jraf.android.bikey.backend.sensor.SensorListener;
+
+public interface CscListener extends SensorListener {
+    /**
+     * Called on the sensor hub thread, when the cadence or the speed has changed.
+     * 
+     * @param cadence The cadence in revolutions per minute, or {@code -1} if the sensor does not measure it.
+     * @param speed The wheel speed in meters per second, or {@code -1} if the sensor does not measure it.
+     */
+    void onCscChange(float cadence, float speed);
+}
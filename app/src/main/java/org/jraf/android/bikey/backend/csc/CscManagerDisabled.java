@@ -0,0 +1,63 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.csc;
+
+import android.bluetooth.BluetoothDevice;
+
+public class CscManagerDisabled extends CscManager {
+    /* package */CscManagerDisabled() {}
+
+    @Override
+    public void addListener(CscListener listener) {}
+
+    @Override
+    public void removeListener(CscListener listener) {}
+
+    @Override
+    public void setBluetoothDevice(BluetoothDevice bluetoothDevice) {}
+
+    @Override
+    public boolean isConnected() {
+        return false;
+    }
+
+    @Override
+    public boolean isConnecting() {
+        return false;
+    }
+
+    @Override
+    public float getLastCadence() {
+        return -1;
+    }
+
+    @Override
+    public float getLastSpeed() {
+        return -1;
+    }
+
+    @Override
+    public void disconnect() {}
+}
@@ -0,0 +1,163 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.csc;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.os.Build;
+import android.os.SystemClock;
+
+import org.jraf.android.bikey.backend.sensor.GattSensor;
+import org.jraf.android.util.listeners.Listeners.Dispatcher;
+
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class CscManagerJellyBeanMR2 extends CscManager {
+    // See https://developer.bluetooth.org/gatt/services/Pages/ServiceViewer.aspx?u=org.bluetooth.service.cycling_speed_and_cadence.xml
+    private static final int GATT_SERVICE_CYCLING_SPEED_AND_CADENCE = 0x1816;
+
+    // See https://developer.bluetooth.org/gatt/characteristics/Pages/CharacteristicViewer.aspx?u=org.bluetooth.characteristic.csc_measurement.xml
+    private static final int GATT_CHARACTERISTIC_CSC_MEASUREMENT = 0x2A5B;
+
+    private static final int FLAG_WHEEL_REVOLUTION_DATA_PRESENT = 0x01;
+    private static final int FLAG_CRANK_REVOLUTION_DATA_PRESENT = 0x02;
+
+    private static final int WHEEL_REVOLUTION_DATA_SIZE = 6;
+    private static final int CRANK_REVOLUTION_DATA_SIZE = 4;
+
+    /**
+     * Wheel circumference in meters (700x23c, the most common road tyre).
+     */
+    private static final float WHEEL_CIRCUMFERENCE = 2.105f;
+
+    /**
+     * Max plausible wheel revolutions per second (~230 km/h), to reject counter resets.
+     */
+    private static final float MAX_WHEEL_RATE = 30f;
+
+    /**
+     * Max plausible crank revolutions per second (240 rpm), to reject counter resets.
+     */
+    private static final float MAX_CRANK_RATE = 4f;
+
+    private final RevolutionCounter mWheelCounter = new RevolutionCounter(0xFFFFFFFFL, MAX_WHEEL_RATE);
+    private final RevolutionCounter mCrankCounter = new RevolutionCounter(0xFFFFL, MAX_CRANK_RATE);
+
+    private volatile float mLastCadence = -1;
+    private volatile float mLastSpeed = -1;
+
+    /* package */CscManagerJellyBeanMR2() {}
+
+    @Override
+    public void addListener(CscListener listener) {
+        mSensor.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(CscListener listener) {
+        mSensor.removeListener(listener);
+    }
+
+    @Override
+    public void setBluetoothDevice(BluetoothDevice bluetoothDevice) {
+        mSensor.connect(bluetoothDevice);
+    }
+
+    private final GattSensor<CscListener> mSensor = new GattSensor<CscListener>(GATT_SERVICE_CYCLING_SPEED_AND_CADENCE,
+            GATT_CHARACTERISTIC_CSC_MEASUREMENT) {
+        @Override
+        protected void onMeasurement(byte[] value) {
+            if (value == null || value.length < 1) return;
+            long now = SystemClock.elapsedRealtime();
+            int flags = value[0] & 0xFF;
+            int offset = 1;
+
+            float speed = mLastSpeed;
+            if ((flags & FLAG_WHEEL_REVOLUTION_DATA_PRESENT) != 0 && value.length >= offset + WHEEL_REVOLUTION_DATA_SIZE) {
+                long wheelRevolutions = readUInt32(value, offset);
+                int wheelEventTime = readUInt16(value, offset + 4);
+                offset += WHEEL_REVOLUTION_DATA_SIZE;
+                float wheelRate = mWheelCounter.update(wheelRevolutions, wheelEventTime, now);
+                speed = wheelRate == -1 ? -1 : wheelRate * WHEEL_CIRCUMFERENCE;
+            }
+
+            float cadence = mLastCadence;
+            if ((flags & FLAG_CRANK_REVOLUTION_DATA_PRESENT) != 0 && value.length >= offset + CRANK_REVOLUTION_DATA_SIZE) {
+                int crankRevolutions = readUInt16(value, offset);
+                int crankEventTime = readUInt16(value, offset + 2);
+                float crankRate = mCrankCounter.update(crankRevolutions, crankEventTime, now);
+                cadence = crankRate == -1 ? -1 : crankRate * 60f;
+            }
+
+            onValidMeasurement();
+
+            if (speed != mLastSpeed || cadence != mLastCadence) {
+                mLastSpeed = speed;
+                mLastCadence = cadence;
+                // Inform listeners
+                dispatch(mCscChangeDispatcher);
+            }
+        }
+
+        @Override
+        protected void onReset() {
+            mLastCadence = -1;
+            mLastSpeed = -1;
+            mWheelCounter.reset();
+            mCrankCounter.reset();
+        }
+    };
+
+    private final Dispatcher<CscListener> mCscChangeDispatcher = new Dispatcher<CscListener>() {
+        @Override
+        public void dispatch(CscListener listener) {
+            listener.onCscChange(mLastCadence, mLastSpeed);
+        }
+    };
+
+    @Override
+    public boolean isConnected() {
+        return mSensor.isConnected();
+    }
+
+    @Override
+    public boolean isConnecting() {
+        return mSensor.isConnecting();
+    }
+
+    @Override
+    public float getLastCadence() {
+        return mLastCadence;
+    }
+
+    @Override
+    public float getLastSpeed() {
+        return mLastSpeed;
+    }
+
+    @Override
+    public void disconnect() {
+        mSensor.disconnect();
+    }
+}
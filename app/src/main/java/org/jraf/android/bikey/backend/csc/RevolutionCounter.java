@@ -0,0 +1,90 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.csc;
+
+/**
+ * Turns a cumulative revolution counter and its last event time (in 1/1024 s, as sent by the sensor) into a rate, handling the rollover of both.
+ */
+public class RevolutionCounter {
+    private static final float EVENT_TIME_RESOLUTION = 1024f;
+
+    /**
+     * If no revolution happened for this long, the rate is considered to be 0.
+     */
+    private static final long STOPPED_TIMEOUT_MS = 3000;
+
+    private final long mRevolutionMask;
+    private final float mMaxRate;
+
+    private boolean mHasPrevious;
+    private long mRevolutions;
+    private int mEventTime;
+    private long mLastEventElapsed;
+    private float mRate;
+
+    public RevolutionCounter(long revolutionMask, float maxRate) {
+        mRevolutionMask = revolutionMask;
+        mMaxRate = maxRate;
+        reset();
+    }
+
+    public void reset() {
+        mHasPrevious = false;
+        mRate = -1;
+    }
+
+    /**
+     * @return The rate in revolutions per second, or {@code -1} if still unknown.
+     */
+    public float update(long revolutions, int eventTime, long now) {
+        if (!mHasPrevious) {
+            // First measurement: nothing to compare it to yet
+            mHasPrevious = true;
+            mRevolutions = revolutions;
+            mEventTime = eventTime;
+            mLastEventElapsed = now;
+            return mRate;
+        }
+
+        long deltaRevolutions = (revolutions - mRevolutions) & mRevolutionMask;
+        int deltaEventTime = (eventTime - mEventTime) & 0xFFFF;
+        if (deltaEventTime == 0) {
+            // No new revolution since the last measurement
+            if (now - mLastEventElapsed > STOPPED_TIMEOUT_MS) mRate = 0;
+            return mRate;
+        }
+
+        float rate = deltaRevolutions * EVENT_TIME_RESOLUTION / deltaEventTime;
+        mRevolutions = revolutions;
+        mEventTime = eventTime;
+        mLastEventElapsed = now;
+        if (rate > mMaxRate) {
+            // Probably a counter reset (e.g. sensor battery change): ignore this measurement
+            return mRate;
+        }
+        mRate = rate;
+        return mRate;
+    }
+}
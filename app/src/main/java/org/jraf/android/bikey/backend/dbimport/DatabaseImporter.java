@@ -29,105 +29,355 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.List;
 
-import android.content.ContentProviderOperation;
-import android.content.ContentProviderOperation.Builder;
+import android.content.ContentValues;
 import android.content.Context;
-import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
-import android.os.RemoteException;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
 
+import org.jraf.android.bikey.backend.export.ExportCache;
 import org.jraf.android.bikey.backend.provider.BikeyProvider;
 import org.jraf.android.bikey.backend.provider.log.LogColumns;
 import org.jraf.android.bikey.backend.provider.ride.RideColumns;
+import org.jraf.android.bikey.backend.provider.ride.RideState;
+import org.jraf.android.bikey.backend.provider.rrinterval.RrIntervalColumns;
+import org.jraf.android.bikey.backend.trackimport.TrackImporter;
+import org.jraf.android.util.annotation.Background;
 import org.jraf.android.util.file.FileUtil;
 import org.jraf.android.util.io.IoUtil;
 import org.jraf.android.util.log.wrapper.Log;
 
 /**
- * Replace the contents of the current database with the contents of another database.
- * This is based on DBImport from the scrum chatter project.
+ * Import the contents of another database into the current database.<br/>
+ * The other database is attached to ours, and its rows are copied with {@code INSERT INTO ... SELECT} statements, in a single transaction. This keeps
+ * the values as they are stored (no conversion to strings), and is much faster than inserting the rows one by one.<br/>
+ * The contents can either replace the whole current database, or be merged into it (see {@link #mergeDatabase(SQLiteDatabase, File)}).
  */
 public class DatabaseImporter {
+    private static final String IMPORT_SCHEMA = "import_db";
+    private static final String RIDE_MAP_TABLE_NAME = "import_ride_map";
+    private static final String RIDE_MAP_TABLE = "temp." + RIDE_MAP_TABLE_NAME;
 
     /**
-     * Replace the database of our app with the contents of the database found at the given uri.
+     * Import the database found at the given uri into the database of our app.
+     * 
+     * @param merge {@code true} to only add the rides that are not already present, {@code false} to replace all the rides.
      */
-    public static void importDatabase(Context context, Uri uri) throws RemoteException, OperationApplicationException, IOException {
-        Log.d("uri=" + uri);
+    @Background
+    public static void importDatabase(Context context, Uri uri, boolean merge) throws IOException {
+        Log.d("uri=" + uri + " merge=" + merge);
         if (uri.getScheme().equals("file")) {
             File db = new File(uri.getPath());
-            importDatabase(context, db);
+            importDatabase(context, db, merge);
         } else {
             InputStream is = context.getContentResolver().openInputStream(uri);
             File tempDb = FileUtil.newTemporaryFile(context, ".db");
             FileOutputStream os = new FileOutputStream(tempDb);
-            if (IoUtil.copy(is, os) > 0) {
-                importDatabase(context, tempDb);
+            try {
+                if (IoUtil.copy(is, os) > 0) {
+                    importDatabase(context, tempDb, merge);
+                }
+            } finally {
+                IoUtil.closeSilently(is);
+                IoUtil.closeSilently(os);
                 tempDb.delete();
             }
         }
     }
 
+    private static void importDatabase(Context context, File importDb, boolean merge) {
+        Uri uri = Uri.parse(BikeyProvider.CONTENT_URI_BASE);
+        String method = merge ? BikeyProvider.METHOD_MERGE_DATABASE : BikeyProvider.METHOD_IMPORT_DATABASE;
+        context.getContentResolver().call(uri, method, importDb.getAbsolutePath(), null);
+
+        // The ids and versions of the rides may now designate other rides
+        ExportCache.get().clear();
+    }
+
     /**
-     * In a single database transaction, delete all the cells from the current database, read the data from the given importDb file, create a batch of
-     * corresponding insert operations, and execute the inserts.
+     * Called by the provider, with our own database.<br/>
+     * In a single transaction, delete all the rows from the current database, and copy all the rows from the given importDb file.
      */
-    private static void importDatabase(Context context, File importDb) throws RemoteException, OperationApplicationException {
+    public static void importDatabase(SQLiteDatabase db, File importDb) {
         Log.d("importDb=" + importDb);
-        SQLiteDatabase dbImport = SQLiteDatabase.openDatabase(importDb.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
-        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
-        operations.add(ContentProviderOperation.newDelete(LogColumns.CONTENT_URI).build());
-        operations.add(ContentProviderOperation.newDelete(RideColumns.CONTENT_URI).build());
-        Uri insertUri = new Uri.Builder().authority(BikeyProvider.AUTHORITY).appendPath(RideColumns.TABLE_NAME)
-                .appendQueryParameter(BikeyProvider.QUERY_NOTIFY, "false").build();
-        buildInsertOperations(context, dbImport, insertUri, RideColumns.TABLE_NAME, operations);
-        insertUri = new Uri.Builder().authority(BikeyProvider.AUTHORITY).appendPath(LogColumns.TABLE_NAME)
-                .appendQueryParameter(BikeyProvider.QUERY_NOTIFY, "false").build();
-        buildInsertOperations(context, dbImport, insertUri, LogColumns.TABLE_NAME, operations);
-        dbImport.close();
+        attach(db, importDb);
+        try {
+            db.beginTransaction();
+            try {
+                db.delete(RrIntervalColumns.TABLE_NAME, null, null);
+                db.delete(LogColumns.TABLE_NAME, null, null);
+                db.delete(RideColumns.TABLE_NAME, null, null);
+                copyTable(db, RideColumns.TABLE_NAME);
+                copyTable(db, LogColumns.TABLE_NAME);
+                copyTable(db, RrIntervalColumns.TABLE_NAME);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            detach(db);
+        }
     }
 
     /**
-     * Read all cells from the given table from the dbImport database, and add corresponding insert operations to the operations parameter.
+     * Called by the provider, with our own database.<br/>
+     * In a single transaction, add the rides and logs of the given importDb file that are not already present in the current database:
+     * <ul>
+     * <li>A ride is considered already present if a ride with the same creation date and the same first log date exists.</li>
+     * <li>New rides are inserted with new ids, and the ride id of their logs is remapped accordingly.</li>
+     * <li>A log is considered already present if a log of the same ride with the same recorded date exists. This is an anti-join backed by the
+     * (ride_id, recorded_date) index, so re-importing the same file is cheap.</li>
+     * <li>RR intervals are merged the same way as logs.</li>
+     * </ul>
+     * The distance of all the rides that received logs is then recomputed, as well as the duration of the already present rides that received logs
+     * (see {@link #updateDurations(SQLiteDatabase)}).
+     * 
+     * @return The number of logs that were added.
      */
-    private static void buildInsertOperations(Context context, SQLiteDatabase dbImport, Uri uri, String table, ArrayList<ContentProviderOperation> operations)
-            throws RemoteException, OperationApplicationException {
-        Log.d();
-        Cursor c = dbImport.query(false, table, null, null, null, null, null, null, null);
-        if (c != null) {
+    public static int mergeDatabase(SQLiteDatabase db, File importDb) {
+        Log.d("importDb=" + importDb);
+        attach(db, importDb);
+        try {
+            db.beginTransaction();
             try {
-                if (c.moveToFirst()) {
-                    int columnCount = c.getColumnCount();
-                    do {
-                        Builder builder = ContentProviderOperation.newInsert(uri);
-                        for (int i = 0; i < columnCount; i++) {
-                            String columnName = c.getColumnName(i);
-                            Object value = c.getString(i);
-                            // The distance and duration columns of the log table
-                            // were renamed to log_distance and log_duration,
-                            // in DB version 5.
-                            if (LogColumns.TABLE_NAME.equals(table)) {
-                                if ("distance".equals(columnName)) columnName = LogColumns.LOG_DISTANCE;
-                                else if ("duration".equals(columnName)) columnName = LogColumns.LOG_DURATION;
-                            }
-                            builder.withValue(columnName, value);
-                        }
-                        operations.add(builder.build());
-                        if (operations.size() >= 100) {
-                            context.getContentResolver().applyBatch(BikeyProvider.AUTHORITY, operations);
-                            operations.clear();
-                        }
-
-                    } while (c.moveToNext());
-                    if (operations.size() > 0) context.getContentResolver().applyBatch(BikeyProvider.AUTHORITY, operations);
+                mapRides(db);
+                countLogs(db);
+                int res = mergeTable(db, LogColumns.TABLE_NAME, LogColumns.RIDE_ID, LogColumns.RECORDED_DATE);
+                mergeTable(db, RrIntervalColumns.TABLE_NAME, RrIntervalColumns.RIDE_ID, RrIntervalColumns.RECORDED_DATE);
+                updateDistances(db);
+                updateDurations(db);
+                db.execSQL("DROP TABLE " + RIDE_MAP_TABLE);
+                db.setTransactionSuccessful();
+                Log.d(res + " logs merged");
+                return res;
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            detach(db);
+        }
+    }
+
+    private static void attach(SQLiteDatabase db, File importDb) {
+        // Note: ATTACH is not allowed inside a transaction
+        db.execSQL("ATTACH DATABASE ? AS " + IMPORT_SCHEMA, new Object[] { importDb.getAbsolutePath() });
+    }
 
+    private static void detach(SQLiteDatabase db) {
+        db.execSQL("DETACH DATABASE " + IMPORT_SCHEMA);
+    }
+
+    /**
+     * Copy all the rows of the given table from the attached database.<br/>
+     * Only the columns that exist in both databases are copied. Nothing is copied if the table does not exist in the attached database (older
+     * version).
+     */
+    private static void copyTable(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<String>();
+        List<String> expressions = new ArrayList<String>();
+        getColumnMapping(db, table, columns, expressions);
+        if (columns.isEmpty()) return;
+        String sql = "INSERT INTO main." + table + " (" + TextUtils.join(",", columns) + ") SELECT " + TextUtils.join(",", expressions) + " FROM "
+                + IMPORT_SCHEMA + "." + table;
+        db.execSQL(sql);
+    }
+
+    /**
+     * Fill the {@code import_ride_map} temporary table, which maps the ids of the attached rides to the ids of our rides.<br/>
+     * Rides that are not already present are inserted (paused, if they were active).
+     */
+    private static void mapRides(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + RIDE_MAP_TABLE
+                + " (source_id INTEGER PRIMARY KEY, created_date INTEGER, first_log_date INTEGER, target_id INTEGER, inserted INTEGER NOT NULL DEFAULT 0,"
+                + " log_count INTEGER)");
+
+        // Compute the first log date of all the attached rides in one pass
+        db.execSQL("INSERT INTO " + RIDE_MAP_TABLE + " (source_id, created_date, first_log_date) SELECT s." + RideColumns._ID + ", s."
+                + RideColumns.CREATED_DATE + ", f.first_log_date FROM " + IMPORT_SCHEMA + "." + RideColumns.TABLE_NAME + " s LEFT JOIN (SELECT "
+                + LogColumns.RIDE_ID + ", MIN(" + LogColumns.RECORDED_DATE + ") AS first_log_date FROM " + IMPORT_SCHEMA + "." + LogColumns.TABLE_NAME
+                + " GROUP BY " + LogColumns.RIDE_ID + ") f ON f." + LogColumns.RIDE_ID + "=s." + RideColumns._ID);
+
+        // Find the rides that are already present
+        db.execSQL("UPDATE " + RIDE_MAP_TABLE + " SET target_id=(SELECT t." + RideColumns._ID + " FROM main." + RideColumns.TABLE_NAME + " t WHERE t."
+                + RideColumns.CREATED_DATE + "=" + RIDE_MAP_TABLE_NAME + ".created_date AND (SELECT MIN(" + LogColumns.RECORDED_DATE + ") FROM main."
+                + LogColumns.TABLE_NAME + " WHERE " + LogColumns.RIDE_ID + "=t." + RideColumns._ID + ") IS " + RIDE_MAP_TABLE_NAME
+                + ".first_log_date LIMIT 1)");
+
+        // Insert the other ones
+        List<String> columns = new ArrayList<String>();
+        List<String> expressions = new ArrayList<String>();
+        getColumnMapping(db, RideColumns.TABLE_NAME, columns, expressions);
+        int idIndex = columns.indexOf(RideColumns._ID);
+        columns.remove(idIndex);
+        expressions.remove(idIndex);
+        SQLiteStatement insertRide = db.compileStatement("INSERT INTO main." + RideColumns.TABLE_NAME + " (" + TextUtils.join(",", columns) + ") SELECT "
+                + TextUtils.join(",", expressions) + " FROM " + IMPORT_SCHEMA + "." + RideColumns.TABLE_NAME + " WHERE " + RideColumns._ID + "=?");
+        SQLiteStatement updateMap = db.compileStatement("UPDATE " + RIDE_MAP_TABLE + " SET target_id=?, inserted=1 WHERE source_id=?");
+        Cursor c = db.rawQuery("SELECT source_id FROM " + RIDE_MAP_TABLE + " WHERE target_id IS NULL", null);
+        try {
+            while (c.moveToNext()) {
+                long sourceId = c.getLong(0);
+                insertRide.bindLong(1, sourceId);
+                long targetId = insertRide.executeInsert();
+                updateMap.bindLong(1, targetId);
+                updateMap.bindLong(2, sourceId);
+                updateMap.execute();
+            }
+        } finally {
+            c.close();
+            insertRide.close();
+            updateMap.close();
+        }
+
+        // Only one ride can be active: pause the inserted ones
+        ContentValues values = new ContentValues();
+        values.put(RideColumns.STATE, RideState.PAUSED.ordinal());
+        values.put(RideColumns.ACTIVATED_DATE, 0);
+        db.update(RideColumns.TABLE_NAME, values, RideColumns.STATE + "=" + RideState.ACTIVE.ordinal() + " AND " + RideColumns._ID
+                + " IN (SELECT target_id FROM " + RIDE_MAP_TABLE + " WHERE inserted=1)", null);
+    }
+
+    /**
+     * Copy the rows of the given table (logs or RR intervals) of the attached database that are not already present, with their ride id remapped.
+     * 
+     * @return The number of rows that were added.
+     */
+    private static int mergeTable(SQLiteDatabase db, String table, String rideIdColumn, String recordedDateColumn) {
+        List<String> columns = new ArrayList<String>();
+        List<String> expressions = new ArrayList<String>();
+        getColumnMapping(db, table, columns, expressions);
+        if (columns.isEmpty()) return 0;
+        int idIndex = columns.indexOf(BaseColumns._ID);
+        columns.remove(idIndex);
+        expressions.remove(idIndex);
+        for (int i = 0; i < expressions.size(); i++) {
+            if (rideIdColumn.equals(columns.get(i))) {
+                expressions.set(i, "m.target_id");
+            } else {
+                expressions.set(i, "s." + expressions.get(i));
+            }
+        }
+        SQLiteStatement insertRows = db.compileStatement("INSERT INTO main." + table + " (" + TextUtils.join(",", columns) + ") SELECT "
+                + TextUtils.join(",", expressions) + " FROM " + IMPORT_SCHEMA + "." + table + " s JOIN " + RIDE_MAP_TABLE + " m ON s." + rideIdColumn
+                + "=m.source_id WHERE NOT EXISTS (SELECT 1 FROM main." + table + " t WHERE t." + rideIdColumn + "=m.target_id AND t." + recordedDateColumn
+                + "=s." + recordedDateColumn + ")");
+        try {
+            return insertRows.executeUpdateDelete();
+        } finally {
+            insertRows.close();
+        }
+    }
+
+    /**
+     * Remember the number of logs of the already present rides, to know afterwards which ones received logs.
+     */
+    private static void countLogs(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + RIDE_MAP_TABLE + " SET log_count=(SELECT COUNT(*) FROM main." + LogColumns.TABLE_NAME + " WHERE " + LogColumns.RIDE_ID
+                + "=" + RIDE_MAP_TABLE_NAME + ".target_id) WHERE inserted=0");
+    }
+
+    private static void updateDistances(SQLiteDatabase db) {
+        db.execSQL("UPDATE main." + RideColumns.TABLE_NAME + " SET " + RideColumns.DISTANCE + "=(SELECT TOTAL(" + LogColumns.LOG_DISTANCE + ") FROM main."
+                + LogColumns.TABLE_NAME + " WHERE " + LogColumns.RIDE_ID + "=" + RideColumns.TABLE_NAME + "." + RideColumns._ID + ") WHERE "
+                + RideColumns._ID + " IN (SELECT target_id FROM " + RIDE_MAP_TABLE + ")");
+    }
+
+    /**
+     * Recompute the duration of the already present rides that received logs, the same way as for imported tracks (see
+     * {@link #getDuration(SQLiteDatabase, String, long)}).
+     */
+    private static void updateDurations(SQLiteDatabase db) {
+        Cursor c = db.rawQuery("SELECT target_id FROM " + RIDE_MAP_TABLE + " WHERE inserted=0 AND log_count<>(SELECT COUNT(*) FROM main."
+                + LogColumns.TABLE_NAME + " WHERE " + LogColumns.RIDE_ID + "=" + RIDE_MAP_TABLE_NAME + ".target_id)", null);
+        SQLiteStatement updateDuration = db.compileStatement("UPDATE main." + RideColumns.TABLE_NAME + " SET " + RideColumns.DURATION + "=? WHERE "
+                + RideColumns._ID + "=?");
+        try {
+            while (c.moveToNext()) {
+                long rideId = c.getLong(0);
+                updateDuration.bindLong(1, getDuration(db, "main", rideId));
+                updateDuration.bindLong(2, rideId);
+                updateDuration.execute();
+            }
+        } finally {
+            c.close();
+            updateDuration.close();
+        }
+    }
+
+    /**
+     * Compute the duration of a ride from its logs: the time between consecutive logs is summed, except when they are separated by more than
+     * {@link TrackImporter#PAUSE_DURATION}.
+     * 
+     * @param schema The name of the database containing the logs ({@code main} or an attached database).
+     */
+    public static long getDuration(SQLiteDatabase db, String schema, long rideId) {
+        long res = 0;
+        Cursor c = db.rawQuery("SELECT " + LogColumns.RECORDED_DATE + " FROM " + schema + "." + LogColumns.TABLE_NAME + " WHERE " + LogColumns.RIDE_ID
+                + "=? ORDER BY " + LogColumns.RECORDED_DATE, new String[] { String.valueOf(rideId) });
+        try {
+            long previousDate = -1;
+            while (c.moveToNext()) {
+                long date = c.getLong(0);
+                if (previousDate != -1) {
+                    long duration = date - previousDate;
+                    if (duration <= TrackImporter.PAUSE_DURATION) res += duration;
                 }
-            } finally {
-                c.close();
+                previousDate = date;
+            }
+        } finally {
+            c.close();
+        }
+        return res;
+    }
+
+    /**
+     * Compute which columns of the attached database to copy into the columns of our database, for the given table.<br/>
+     * Only the columns that exist in both databases are copied.
+     * 
+     * @param columns Filled with the columns of our database.
+     * @param expressions Filled with the corresponding columns of the attached database.
+     */
+    private static void getColumnMapping(SQLiteDatabase db, String table, List<String> columns, List<String> expressions) {
+        List<String> sourceColumns = getColumns(db, IMPORT_SCHEMA, table);
+        for (String column : getColumns(db, "main", table)) {
+            String expression = getSourceColumn(table, column, sourceColumns);
+            if (expression == null) continue;
+            columns.add(column);
+            expressions.add(expression);
+        }
+    }
+
+    /**
+     * @return The column of the attached database to copy into the given column, or {@code null} if there is none.
+     */
+    private static String getSourceColumn(String table, String column, List<String> sourceColumns) {
+        if (sourceColumns.contains(column)) return column;
+        // The distance and duration columns of the log table
+        // were renamed to log_distance and log_duration,
+        // in DB version 5.
+        if (LogColumns.TABLE_NAME.equals(table)) {
+            if (LogColumns.LOG_DISTANCE.equals(column) && sourceColumns.contains("distance")) return "distance";
+            if (LogColumns.LOG_DURATION.equals(column) && sourceColumns.contains("duration")) return "duration";
+        }
+        return null;
+    }
+
+    private static List<String> getColumns(SQLiteDatabase db, String schema, String table) {
+        List<String> res = new ArrayList<String>();
+        Cursor c = db.rawQuery("PRAGMA " + schema + ".table_info(" + table + ")", null);
+        try {
+            int nameIndex = c.getColumnIndexOrThrow("name");
+            while (c.moveToNext()) {
+                res.add(c.getString(nameIndex));
             }
+        } finally {
+            c.close();
         }
+        return res;
     }
 }
@@ -0,0 +1,188 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.export;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import android.content.Context;
+
+import org.jraf.android.bikey.app.Application;
+import org.jraf.android.util.annotation.Background;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Cache of exported rides, so sharing a ride that has not changed since its last export is instant.<br/>
+ * Each entry is a directory named after the ride id, the ride creation date, the export format and the ride version, containing the exported file.
+ * The creation date makes the key unique even if a ride id is reused (after a delete or an import), in which case the version starts again at 0. A file is only
+ * renamed to its final name once it is complete, so an interrupted export is never reused.<br/>
+ * When the cache exceeds {@link #MAX_SIZE}, the least recently used entries are deleted.
+ */
+public class ExportCache {
+    private static final ExportCache INSTANCE = new ExportCache();
+
+    public static ExportCache get() {
+        return INSTANCE;
+    }
+
+    private static final String DIRECTORY_NAME = "export_cache";
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final long MAX_SIZE = 20 * 1024 * 1024;
+
+    private final Context mContext;
+
+    private ExportCache() {
+        mContext = Application.getApplication();
+    }
+
+    /**
+     * @return The cached exported file, or {@code null} if the ride has not been exported in this format since it last changed.
+     */
+    @Background
+    public synchronized File get(long rideId, long createdDate, String format, long version, String fileName) {
+        File res = new File(getEntryDirectory(rideId, createdDate, format, version), fileName);
+        if (!res.exists()) return null;
+        // Mark it as recently used
+        res.setLastModified(System.currentTimeMillis());
+        return res;
+    }
+
+    /**
+     * @return The file to export to. Once the export is complete, call {@link #commit(File)}.
+     */
+    @Background
+    public synchronized File newPartialFile(long rideId, long createdDate, String format, long version, String fileName) {
+        File directory = getEntryDirectory(rideId, createdDate, format, version);
+        directory.mkdirs();
+        return new File(directory, fileName + PARTIAL_SUFFIX);
+    }
+
+    /**
+     * Mark an export as complete, and evict the least recently used entries if needed.
+     * 
+     * @return The final exported file.
+     */
+    @Background
+    public synchronized File commit(File partialFile) {
+        String path = partialFile.getPath();
+        File res = new File(path.substring(0, path.length() - PARTIAL_SUFFIX.length()));
+        partialFile.renameTo(res);
+        trim();
+        return res;
+    }
+
+    /**
+     * Delete the entries of the given rides.
+     */
+    @Background
+    public synchronized void remove(long[] rideIds) {
+        File[] entries = getDirectory().listFiles();
+        if (entries == null) return;
+        for (File entry : entries) {
+            for (long rideId : rideIds) {
+                if (entry.getName().startsWith(rideId + "-")) {
+                    Log.d("Removing " + entry);
+                    delete(entry);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete all the entries.
+     */
+    @Background
+    public synchronized void clear() {
+        File[] entries = getDirectory().listFiles();
+        if (entries == null) return;
+        for (File entry : entries) {
+            delete(entry);
+        }
+    }
+
+    private File getEntryDirectory(long rideId, long createdDate, String format, long version) {
+        return new File(getDirectory(), rideId + "-" + createdDate + "-" + format + "-" + version);
+    }
+
+    private File getDirectory() {
+        return new File(mContext.getExternalFilesDir(null), DIRECTORY_NAME);
+    }
+
+    /**
+     * Delete the least recently used entries until the size of the cache is under {@link #MAX_SIZE}. The most recently used entry is always kept.
+     */
+    private void trim() {
+        File[] entries = getDirectory().listFiles();
+        if (entries == null) return;
+        final long[] lastModified = new long[entries.length];
+        long size = 0;
+        for (int i = 0; i < entries.length; i++) {
+            File[] files = entries[i].listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                size += file.length();
+                lastModified[i] = Math.max(lastModified[i], file.lastModified());
+            }
+        }
+        if (size <= MAX_SIZE) return;
+
+        // Sort by last use, most recent first
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                long l = lastModified[lhs];
+                long r = lastModified[rhs];
+                return l > r ? -1 : l < r ? 1 : 0;
+            }
+        });
+        for (int i = order.length - 1; i > 0 && size > MAX_SIZE; i--) {
+            File entry = entries[order[i]];
+            Log.d("Evicting " + entry);
+            size -= delete(entry);
+        }
+    }
+
+    /**
+     * @return The size of the deleted files.
+     */
+    private static long delete(File directory) {
+        long res = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long length = file.length();
+                if (file.delete()) res += length;
+            }
+        }
+        directory.delete();
+        return res;
+    }
+}
@@ -27,16 +27,24 @@ package org.jraf.android.bikey.backend.export;
 import java.io.File;
 import java.io.IOException;
 
+import android.content.ContentUris;
 import android.content.Context;
 import android.net.Uri;
 
 import org.jraf.android.bikey.app.Application;
+import org.jraf.android.bikey.backend.progress.CancelledException;
+import org.jraf.android.bikey.backend.progress.ProgressListener;
+import org.jraf.android.bikey.backend.ride.RideManager;
 import org.jraf.android.util.annotation.Background;
+import org.jraf.android.util.log.wrapper.Log;
 
 
 public abstract class Exporter {
     private Context mContext;
     private Uri mRideUri;
+    private File mExportFile;
+    private ProgressListener mProgressListener;
+    private volatile boolean mCancelled;
 
     protected Exporter(Uri rideUri) {
         mContext = Application.getApplication();
@@ -48,11 +56,80 @@ public abstract class Exporter {
     @Background
     public abstract void export() throws IOException;
 
+    /**
+     * Export the ride, unless it has already been exported in the same format and has not changed since (see {@link ExportCache}).<br/>
+     * After this call, {@link #getExportFile()} returns the exported file.
+     */
+    @Background
+    public void exportCached() throws IOException {
+        if (mRideUri == null) {
+            export();
+            return;
+        }
+        ExportCache exportCache = ExportCache.get();
+        long rideId = ContentUris.parseId(mRideUri);
+        String format = getClass().getSimpleName();
+        long createdDate = RideManager.get().getCreatedDate(mRideUri).getTime();
+        long version = RideManager.get().getVersion(mRideUri);
+        String fileName = getExportedFileName();
+        File cachedFile = exportCache.get(rideId, createdDate, format, version, fileName);
+        if (cachedFile != null) {
+            Log.d("Reusing " + cachedFile);
+            mExportFile = cachedFile;
+            return;
+        }
+
+        mExportFile = exportCache.newPartialFile(rideId, createdDate, format, version, fileName);
+        try {
+            export();
+        } catch (IOException e) {
+            // Includes cancellation: never commit a partial file
+            mExportFile.delete();
+            mExportFile = null;
+            throw e;
+        }
+        mExportFile = exportCache.commit(mExportFile);
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        mProgressListener = progressListener;
+    }
+
+    /**
+     * Ask the export to stop as soon as possible. Can be called from any thread.<br/>
+     * The export then fails with a {@link CancelledException}.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Must be called regularly by the export loops.
+     * 
+     * @throws CancelledException If {@link #cancel()} has been called.
+     */
+    protected void checkCancelled() throws CancelledException {
+        if (mCancelled) throw new CancelledException();
+    }
+
+    /**
+     * Check for cancellation, and report the progress to the listener (if any).
+     */
+    protected void reportProgress(long progress, long max) throws CancelledException {
+        checkCancelled();
+        if (mProgressListener != null) mProgressListener.onProgress(progress, max);
+    }
+
     public Uri getRideUri() {
         return mRideUri;
     }
 
     public File getExportFile() {
+        if (mExportFile != null) return mExportFile;
         return new File(mContext.getExternalFilesDir(null), getExportedFileName());
     }
 
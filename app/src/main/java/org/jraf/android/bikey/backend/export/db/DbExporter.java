@@ -26,27 +26,218 @@ package org.jraf.android.bikey.backend.export.db;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
+import android.content.ContentProviderClient;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.preference.PreferenceManager;
+import android.provider.BaseColumns;
+
+import org.jraf.android.bikey.Constants;
+import org.jraf.android.bikey.backend.dbimport.DatabaseImporter;
 import org.jraf.android.bikey.backend.export.Exporter;
-import org.jraf.android.bikey.backend.provider.BikeySQLiteOpenHelper;
+import org.jraf.android.bikey.backend.progress.CancelledException;
+import org.jraf.android.bikey.backend.provider.BikeyProvider;
+import org.jraf.android.bikey.backend.provider.log.LogColumns;
+import org.jraf.android.bikey.backend.provider.ride.RideColumns;
+import org.jraf.android.bikey.backend.provider.rrinterval.RrIntervalColumns;
 import org.jraf.android.util.annotation.Background;
 import org.jraf.android.util.file.FileUtil;
+import org.jraf.android.util.log.wrapper.Log;
 
+/**
+ * Exports the database to a file that can be imported back.<br/>
+ * Instead of copying the database file (which could be torn if a ride is being recorded at the same time), the export file is attached to our
+ * database and filled with {@code INSERT INTO ... SELECT} statements. A single transaction would block the recording of a ride during the whole
+ * export, so logs and RR intervals are copied by chunks of {@link #CHUNK_SIZE} ids, each chunk in its own transaction, and only the ones that
+ * existed after the rides were copied are exported. The rides whose logs changed during the export (see {@link RideColumns#VERSION}) are then
+ * copied again in a short transaction each, or removed if they have been deleted, and their distance and duration are recomputed from the exported
+ * logs. Each exported ride is therefore consistent with its logs, but the file as a whole is not a snapshot of a single instant.<br/>
+ * In incremental mode, only the rides created or modified (see {@link RideColumns#MODIFIED_DATE}) since the last export are exported. The
+ * resulting file is meant to be merged into another database (see
+ * {@link org.jraf.android.bikey.backend.dbimport.DatabaseImporter#mergeDatabase(SQLiteDatabase, File)}).
+ */
 public class DbExporter extends Exporter {
-    public DbExporter() {
+    private static final String EXPORT_SCHEMA = "export_db";
+    private static final long CHUNK_SIZE = 10000;
+
+    private final boolean mIncremental;
+    private final Date mDate = new Date();
+
+    /**
+     * @param incremental {@code true} to only export the rides changed since the last export.
+     */
+    public DbExporter(boolean incremental) {
         super(null);
+        mIncremental = incremental;
     }
 
     @Override
     protected String getExportedFileName() {
-        return FileUtil.getValidFileName("Bikey export " + new Date() + ".db");
+        if (mIncremental) return FileUtil.getValidFileName("Bikey export (changes) " + mDate + ".db");
+        return FileUtil.getValidFileName("Bikey export " + mDate + ".db");
     }
 
     @Override
     @Background
     public void export() throws IOException {
-        File dbFile = getContext().getDatabasePath(BikeySQLiteOpenHelper.DATABASE_FILE_NAME);
-        FileUtil.copy(dbFile, getExportFile());
+        File exportFile = getExportFile();
+        exportFile.delete();
+        long changedSince = 0;
+        if (mIncremental) {
+            changedSince = PreferenceManager.getDefaultSharedPreferences(getContext()).getLong(Constants.PREF_LAST_EXPORT_DATE, 0);
+        }
+
+        ContentProviderClient client = getContext().getContentResolver().acquireContentProviderClient(BikeyProvider.AUTHORITY);
+        boolean ok = false;
+        try {
+            SQLiteDatabase db = ((BikeyProvider) client.getLocalContentProvider()).getWritableDatabase();
+            createSchema(db, exportFile);
+            long exportDate = copy(db, exportFile, changedSince);
+            PreferenceManager.getDefaultSharedPreferences(getContext()).edit().putLong(Constants.PREF_LAST_EXPORT_DATE, exportDate).commit();
+            ok = true;
+        } catch (RuntimeException e) {
+            throw new IOException("Could not export the database", e);
+        } finally {
+            client.release();
+            // Failed or cancelled
+            if (!ok) exportFile.delete();
+        }
+    }
+
+    /**
+     * Create the tables and indexes of our database in the export file.
+     */
+    private static void createSchema(SQLiteDatabase db, File exportFile) {
+        SQLiteDatabase exportDb = SQLiteDatabase.openOrCreateDatabase(exportFile, null);
+        Cursor c = db.rawQuery("SELECT sql FROM sqlite_master WHERE type IN ('table', 'index') AND sql NOT NULL AND name NOT LIKE 'sqlite_%'"
+                + " AND name<>'android_metadata' ORDER BY type DESC", null);
+        try {
+            while (c.moveToNext()) {
+                exportDb.execSQL(c.getString(0));
+            }
+            exportDb.setVersion(db.getVersion());
+        } finally {
+            c.close();
+            exportDb.close();
+        }
+    }
+
+    /**
+     * Copy the rides changed since the given date, and their logs and RR intervals, into the export file.
+     * 
+     * @return The date of the export.
+     * @throws CancelledException If the export has been cancelled.
+     */
+    private long copy(SQLiteDatabase db, File exportFile, long changedSince) throws CancelledException {
+        // Note: ATTACH is not allowed inside a transaction
+        db.execSQL("ATTACH DATABASE ? AS " + EXPORT_SCHEMA, new Object[] { exportFile.getAbsolutePath() });
+        try {
+            // Anything modified from now on will be part of the next incremental export
+            long res = System.currentTimeMillis();
+
+            // Rides
+            String rideSelection = null;
+            String[] rideSelectionArgs = {};
+            if (changedSince > 0) {
+                rideSelection = " WHERE " + RideColumns.CREATED_DATE + ">=? OR " + RideColumns.MODIFIED_DATE + ">=?";
+                rideSelectionArgs = new String[] { String.valueOf(changedSince), String.valueOf(changedSince) };
+            }
+            db.execSQL("INSERT INTO " + EXPORT_SCHEMA + "." + RideColumns.TABLE_NAME + " SELECT * FROM main." + RideColumns.TABLE_NAME
+                    + (rideSelection == null ? "" : rideSelection), rideSelectionArgs);
+
+            // Snapshot: the rows inserted from now on are not exported (this is done after copying the rides so that any log inserted in a copied
+            // ride afterwards changes its version)
+            long minLogId = getId(db, "MIN", LogColumns.TABLE_NAME);
+            long maxLogId = getId(db, "MAX", LogColumns.TABLE_NAME);
+            long minRrIntervalId = getId(db, "MIN", RrIntervalColumns.TABLE_NAME);
+            long maxRrIntervalId = getId(db, "MAX", RrIntervalColumns.TABLE_NAME);
+
+            // Logs and RR intervals
+            long logCount = maxLogId - minLogId + 1;
+            long total = logCount + maxRrIntervalId - minRrIntervalId + 1;
+            copyByChunks(db, LogColumns.TABLE_NAME, LogColumns.RIDE_ID, minLogId, maxLogId, 0, total);
+            copyByChunks(db, RrIntervalColumns.TABLE_NAME, RrIntervalColumns.RIDE_ID, minRrIntervalId, maxRrIntervalId, logCount, total);
+
+            syncChangedRides(db, maxLogId, maxRrIntervalId);
+
+            Log.d("Exported database as of " + new Date(res));
+            return res;
+        } finally {
+            db.execSQL("DETACH DATABASE " + EXPORT_SCHEMA);
+        }
+    }
+
+    private static long getId(SQLiteDatabase db, String function, String table) {
+        return DatabaseUtils.longForQuery(db, "SELECT IFNULL(" + function + "(" + BaseColumns._ID + "), 0) FROM main." + table, null);
+    }
+
+    /**
+     * Copy the rows of the given table belonging to the exported rides, by chunks of {@link #CHUNK_SIZE} ids.
+     */
+    private void copyByChunks(SQLiteDatabase db, String table, String rideIdColumn, long minId, long maxId, long progressOffset, long progressTotal)
+            throws CancelledException {
+        String insert = "INSERT INTO " + EXPORT_SCHEMA + "." + table + " SELECT * FROM main." + table + " WHERE " + BaseColumns._ID + ">=? AND "
+                + BaseColumns._ID + "<? AND " + rideIdColumn + " IN (SELECT " + RideColumns._ID + " FROM " + EXPORT_SCHEMA + "."
+                + RideColumns.TABLE_NAME + ")";
+        for (long id = minId; id <= maxId; id += CHUNK_SIZE) {
+            reportProgress(progressOffset + id - minId, progressTotal);
+            db.execSQL(insert, new Object[] { id, Math.min(id + CHUNK_SIZE, maxId + 1) });
+        }
+    }
+
+    /**
+     * Copy again the exported rides whose logs have changed since their row was copied (ride being recorded, compacted, merged or deleted), and
+     * recompute their distance and duration from the exported logs.
+     */
+    private static void syncChangedRides(SQLiteDatabase db, long maxLogId, long maxRrIntervalId) {
+        List<Long> rideIds = new ArrayList<Long>();
+        Cursor c = db.rawQuery("SELECT e." + RideColumns._ID + " FROM " + EXPORT_SCHEMA + "." + RideColumns.TABLE_NAME + " e LEFT JOIN main."
+                + RideColumns.TABLE_NAME + " m ON m." + RideColumns._ID + "=e." + RideColumns._ID + " WHERE m." + RideColumns._ID + " IS NULL OR m."
+                + RideColumns.VERSION + "<>e." + RideColumns.VERSION, null);
+        try {
+            while (c.moveToNext()) {
+                rideIds.add(c.getLong(0));
+            }
+        } finally {
+            c.close();
+        }
+
+        for (long rideId : rideIds) {
+            Log.d("Ride " + rideId + " changed during the export");
+            Object[] rideIdArgs = { rideId };
+            db.beginTransaction();
+            try {
+                db.execSQL("DELETE FROM " + EXPORT_SCHEMA + "." + RideColumns.TABLE_NAME + " WHERE " + RideColumns._ID + "=?", rideIdArgs);
+                db.execSQL("DELETE FROM " + EXPORT_SCHEMA + "." + LogColumns.TABLE_NAME + " WHERE " + LogColumns.RIDE_ID + "=?", rideIdArgs);
+                db.execSQL("DELETE FROM " + EXPORT_SCHEMA + "." + RrIntervalColumns.TABLE_NAME + " WHERE " + RrIntervalColumns.RIDE_ID + "=?",
+                        rideIdArgs);
+
+                db.execSQL("INSERT INTO " + EXPORT_SCHEMA + "." + RideColumns.TABLE_NAME + " SELECT * FROM main." + RideColumns.TABLE_NAME + " WHERE "
+                        + RideColumns._ID + "=?", rideIdArgs);
+                boolean deleted = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + EXPORT_SCHEMA + "." + RideColumns.TABLE_NAME + " WHERE "
+                        + RideColumns._ID + "=?", new String[] { String.valueOf(rideId) }) == 0;
+                if (!deleted) {
+                    db.execSQL("INSERT INTO " + EXPORT_SCHEMA + "." + LogColumns.TABLE_NAME + " SELECT * FROM main." + LogColumns.TABLE_NAME
+                            + " WHERE " + LogColumns.RIDE_ID + "=? AND " + LogColumns._ID + "<=?", new Object[] { rideId, maxLogId });
+                    db.execSQL("INSERT INTO " + EXPORT_SCHEMA + "." + RrIntervalColumns.TABLE_NAME + " SELECT * FROM main."
+                            + RrIntervalColumns.TABLE_NAME + " WHERE " + RrIntervalColumns.RIDE_ID + "=? AND " + RrIntervalColumns._ID + "<=?",
+                            new Object[] { rideId, maxRrIntervalId });
+
+                    // The logs after the snapshot are not exported
+                    db.execSQL("UPDATE " + EXPORT_SCHEMA + "." + RideColumns.TABLE_NAME + " SET " + RideColumns.DISTANCE + "=(SELECT TOTAL("
+                            + LogColumns.LOG_DISTANCE + ") FROM " + EXPORT_SCHEMA + "." + LogColumns.TABLE_NAME + " WHERE " + LogColumns.RIDE_ID
+                            + "=?), " + RideColumns.DURATION + "=? WHERE " + RideColumns._ID + "=?",
+                            new Object[] { rideId, DatabaseImporter.getDuration(db, EXPORT_SCHEMA, rideId), rideId });
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
     }
 }
@@ -0,0 +1,83 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2014 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.export.fit;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import android.content.ContentUris;
+import android.net.Uri;
+
+import org.jraf.android.bikey.backend.export.Exporter;
+import org.jraf.android.bikey.backend.provider.log.LogColumns;
+import org.jraf.android.bikey.backend.provider.log.LogCursor;
+import org.jraf.android.bikey.backend.ride.RideManager;
+import org.jraf.android.util.annotation.Background;
+import org.jraf.android.util.file.FileUtil;
+import org.jraf.android.util.io.IoUtil;
+
+/**
+ * Exports a ride to the FIT binary format (see {@link FitWriter}), in a single pass over the logs.
+ */
+public class FitExporter extends Exporter {
+    public FitExporter(Uri rideUri) {
+        super(rideUri);
+    }
+
+    @Override
+    protected String getExportedFileName() {
+        return FileUtil.getValidFileName(RideManager.get().getDisplayName(getRideUri()) + ".fit");
+    }
+
+    @Override
+    @Background
+    public void export() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(getExportFile(), "rw");
+        try {
+            file.getChannel().truncate(0);
+            FitWriter writer = new FitWriter(file.getChannel());
+            writer.begin(System.currentTimeMillis());
+
+            long rideId = ContentUris.parseId(getRideUri());
+            String selection = LogColumns.RIDE_ID + "=?";
+            String[] selectionArgs = { String.valueOf(rideId) };
+            LogCursor c = new LogCursor(getContext().getContentResolver().query(LogColumns.CONTENT_URI, null, selection, selectionArgs, null));
+            try {
+                int count = c.getCount();
+                while (c.moveToNext()) {
+                    reportProgress(c.getPosition(), count);
+                    writer.addLog(c.getRecordedDate().getTime(), c.getLat(), c.getLon(), c.getEle(), c.getHeartRate(), c.getCadence(),
+                            c.getLogDistance(), c.getSpeed());
+                }
+            } finally {
+                c.close();
+            }
+
+            writer.end();
+        } finally {
+            IoUtil.closeSilently(file);
+        }
+    }
+}
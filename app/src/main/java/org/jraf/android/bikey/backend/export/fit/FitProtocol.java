@@ -0,0 +1,183 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2014 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.export.fit;
+
+/**
+ * Constants and helpers for the FIT (Flexible and Interoperable Data Transfer) binary protocol.
+ */
+public class FitProtocol {
+    public static final int HEADER_SIZE = 14;
+    public static final int PROTOCOL_VERSION = 0x10;
+    public static final int PROFILE_VERSION = 1310;
+    public static final byte[] DATA_TYPE = { '.', 'F', 'I', 'T' };
+
+    /**
+     * Seconds between the Unix epoch and the FIT epoch (1989-12-31T00:00:00Z).
+     */
+    public static final long FIT_EPOCH_OFFSET_S = 631065600L;
+
+    /*
+     * Record headers.
+     */
+    public static final int RECORD_HEADER_DEFINITION = 0x40;
+    public static final int RECORD_HEADER_COMPRESSED_TIMESTAMP = 0x80;
+    public static final int RECORD_HEADER_DEVELOPER_DATA = 0x20;
+    public static final int RECORD_HEADER_LOCAL_TYPE_MASK = 0x0F;
+    public static final int COMPRESSED_TIMESTAMP_LOCAL_TYPE_SHIFT = 5;
+    public static final int COMPRESSED_TIMESTAMP_LOCAL_TYPE_MASK = 0x03;
+    public static final int COMPRESSED_TIMESTAMP_TIME_OFFSET_MASK = 0x1F;
+
+    public static final int ARCHITECTURE_LITTLE_ENDIAN = 0;
+    public static final int ARCHITECTURE_BIG_ENDIAN = 1;
+
+    /*
+     * Base types.
+     */
+    public static final int BASE_TYPE_ENUM = 0x00;
+    public static final int BASE_TYPE_UINT8 = 0x02;
+    public static final int BASE_TYPE_UINT16 = 0x84;
+    public static final int BASE_TYPE_SINT32 = 0x85;
+    public static final int BASE_TYPE_UINT32 = 0x86;
+
+    public static final int INVALID_UINT8 = 0xFF;
+    public static final int INVALID_UINT16 = 0xFFFF;
+    public static final int INVALID_SINT32 = 0x7FFFFFFF;
+    public static final long INVALID_UINT32 = 0xFFFFFFFFL;
+
+    /*
+     * Global message numbers.
+     */
+    public static final int MESG_FILE_ID = 0;
+    public static final int MESG_SESSION = 18;
+    public static final int MESG_LAP = 19;
+    public static final int MESG_RECORD = 20;
+
+    /*
+     * Field numbers.
+     */
+    public static final int FIELD_TIMESTAMP = 253;
+
+    public static final int FIELD_FILE_ID_TYPE = 0;
+    public static final int FIELD_FILE_ID_MANUFACTURER = 1;
+    public static final int FIELD_FILE_ID_PRODUCT = 2;
+    public static final int FIELD_FILE_ID_TIME_CREATED = 4;
+
+    public static final int FIELD_RECORD_POSITION_LAT = 0;
+    public static final int FIELD_RECORD_POSITION_LONG = 1;
+    public static final int FIELD_RECORD_ALTITUDE = 2;
+    public static final int FIELD_RECORD_HEART_RATE = 3;
+    public static final int FIELD_RECORD_CADENCE = 4;
+    public static final int FIELD_RECORD_DISTANCE = 5;
+    public static final int FIELD_RECORD_SPEED = 6;
+    public static final int FIELD_RECORD_ENHANCED_ALTITUDE = 78;
+
+    public static final int FIELD_LAP_EVENT = 0;
+    public static final int FIELD_LAP_EVENT_TYPE = 1;
+    public static final int FIELD_LAP_START_TIME = 2;
+    public static final int FIELD_LAP_TOTAL_ELAPSED_TIME = 7;
+    public static final int FIELD_LAP_TOTAL_TIMER_TIME = 8;
+    public static final int FIELD_LAP_TOTAL_DISTANCE = 9;
+
+    public static final int FIELD_SESSION_EVENT = 0;
+    public static final int FIELD_SESSION_EVENT_TYPE = 1;
+    public static final int FIELD_SESSION_START_TIME = 2;
+    public static final int FIELD_SESSION_SPORT = 5;
+    public static final int FIELD_SESSION_TOTAL_ELAPSED_TIME = 7;
+    public static final int FIELD_SESSION_TOTAL_TIMER_TIME = 8;
+    public static final int FIELD_SESSION_TOTAL_DISTANCE = 9;
+    public static final int FIELD_SESSION_AVG_HEART_RATE = 16;
+    public static final int FIELD_SESSION_AVG_CADENCE = 18;
+
+    /*
+     * Enum values.
+     */
+    public static final int FILE_TYPE_ACTIVITY = 4;
+    public static final int MANUFACTURER_DEVELOPMENT = 255;
+    public static final int SPORT_CYCLING = 2;
+    public static final int EVENT_SESSION = 8;
+    public static final int EVENT_LAP = 9;
+    public static final int EVENT_TYPE_STOP = 1;
+
+    /*
+     * Scales and offsets.
+     */
+    public static final double SEMICIRCLES_PER_DEGREE = 2147483648.0 / 180.0;
+    public static final int ALTITUDE_SCALE = 5;
+    public static final int ALTITUDE_OFFSET = 500;
+    public static final int DISTANCE_SCALE = 100;
+    public static final int SPEED_SCALE = 1000;
+    public static final int TIME_SCALE = 1000;
+
+    private static final int[] CRC_TABLE = { 0x0000, 0xCC01, 0xD801, 0x1400, 0xF001, 0x3C00, 0x2800, 0xE401, 0xA001, 0x6C00, 0x7800, 0xB401, 0x5000,
+            0x9C01, 0x8801, 0x4400 };
+
+    private FitProtocol() {}
+
+    /**
+     * Update the given FIT CRC with one byte.
+     */
+    public static int crc(int crc, byte b) {
+        int tmp = CRC_TABLE[crc & 0xF];
+        crc = (crc >> 4) & 0x0FFF;
+        crc = crc ^ tmp ^ CRC_TABLE[b & 0xF];
+
+        tmp = CRC_TABLE[crc & 0xF];
+        crc = (crc >> 4) & 0x0FFF;
+        crc = crc ^ tmp ^ CRC_TABLE[(b >> 4) & 0xF];
+        return crc;
+    }
+
+    /**
+     * Update the given FIT CRC with a range of bytes.
+     */
+    public static int crc(int crc, byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            crc = crc(crc, bytes[i]);
+        }
+        return crc;
+    }
+
+    /**
+     * Convert a Unix time in milliseconds to a FIT timestamp (seconds since the FIT epoch).
+     */
+    public static long toFitTimestamp(long unixTimeMs) {
+        return unixTimeMs / 1000 - FIT_EPOCH_OFFSET_S;
+    }
+
+    /**
+     * Convert a FIT timestamp (seconds since the FIT epoch) to a Unix time in milliseconds.
+     */
+    public static long toUnixTime(long fitTimestamp) {
+        return (fitTimestamp + FIT_EPOCH_OFFSET_S) * 1000;
+    }
+
+    public static int toSemicircles(double degrees) {
+        return (int) Math.round(degrees * SEMICIRCLES_PER_DEGREE);
+    }
+
+    public static double toDegrees(int semicircles) {
+        return semicircles / SEMICIRCLES_PER_DEGREE;
+    }
+}
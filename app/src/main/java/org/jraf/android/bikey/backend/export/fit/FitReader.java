@@ -0,0 +1,242 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.export.fit;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the record messages of a FIT activity file, in a single pass, checking the CRC on the fly.
+ */
+public class FitReader {
+    public interface RecordListener {
+        /**
+         * @param date The date of the record, in milliseconds since the epoch.
+         * @param cadence The cadence, or {@code null} if unknown.
+         * @param heartRate The heart rate, or {@code null} if unknown.
+         */
+        void onRecord(long date, double lat, double lon, double ele, Float cadence, Integer heartRate);
+    }
+
+    private static final int LOCAL_TYPE_COUNT = 16;
+    private static final int MAX_FIELD_COUNT = 255;
+
+    private static class Definition {
+        int globalMessageNumber;
+        boolean bigEndian;
+        int fieldCount;
+        final int[] fieldNumbers = new int[MAX_FIELD_COUNT];
+        final int[] fieldSizes = new int[MAX_FIELD_COUNT];
+        int developerDataSize;
+    }
+
+    private final RecordListener mRecordListener;
+    private final Definition[] mDefinitions = new Definition[LOCAL_TYPE_COUNT];
+    private final byte[] mBuffer = new byte[MAX_FIELD_COUNT];
+    private InputStream mIn;
+    private int mCrc;
+    private long mPosition;
+    private long mTimestamp = -1;
+
+    public FitReader(RecordListener recordListener) {
+        mRecordListener = recordListener;
+    }
+
+    /**
+     * Read the whole given stream, calling the listener for each record with a timestamp and a position.
+     */
+    public void read(InputStream in) throws IOException {
+        mIn = in;
+
+        // Header
+        int headerSize = readByte();
+        if (headerSize < 12) throw new IOException("Invalid FIT header size: " + headerSize);
+        read(mBuffer, headerSize - 1);
+        for (int i = 0; i < FitProtocol.DATA_TYPE.length; i++) {
+            if (mBuffer[7 + i] != FitProtocol.DATA_TYPE[i]) throw new IOException("Not a FIT file");
+        }
+        long dataSize = getValue(mBuffer, 3, 4, false);
+
+        // Records
+        long end = headerSize + dataSize;
+        while (mPosition < end) {
+            readRecord();
+        }
+
+        // CRC
+        int expectedCrc = mCrc;
+        int crc = readByte() | readByte() << 8;
+        // A CRC of 0 means it was not computed
+        if (crc != 0 && crc != expectedCrc) throw new IOException("Invalid FIT file CRC");
+    }
+
+    private void readRecord() throws IOException {
+        int header = readByte();
+        if ((header & FitProtocol.RECORD_HEADER_COMPRESSED_TIMESTAMP) != 0) {
+            int localType = (header >> FitProtocol.COMPRESSED_TIMESTAMP_LOCAL_TYPE_SHIFT) & FitProtocol.COMPRESSED_TIMESTAMP_LOCAL_TYPE_MASK;
+            int timeOffset = header & FitProtocol.COMPRESSED_TIMESTAMP_TIME_OFFSET_MASK;
+            if (mTimestamp != -1) {
+                long timestamp = (mTimestamp & ~FitProtocol.COMPRESSED_TIMESTAMP_TIME_OFFSET_MASK) + timeOffset;
+                // Roll over
+                if (timeOffset < (mTimestamp & FitProtocol.COMPRESSED_TIMESTAMP_TIME_OFFSET_MASK)) {
+                    timestamp += FitProtocol.COMPRESSED_TIMESTAMP_TIME_OFFSET_MASK + 1;
+                }
+                mTimestamp = timestamp;
+            }
+            readDataMessage(localType);
+        } else if ((header & FitProtocol.RECORD_HEADER_DEFINITION) != 0) {
+            readDefinition(header & FitProtocol.RECORD_HEADER_LOCAL_TYPE_MASK, (header & FitProtocol.RECORD_HEADER_DEVELOPER_DATA) != 0);
+        } else {
+            readDataMessage(header & FitProtocol.RECORD_HEADER_LOCAL_TYPE_MASK);
+        }
+    }
+
+    private void readDefinition(int localType, boolean hasDeveloperData) throws IOException {
+        Definition definition = mDefinitions[localType];
+        if (definition == null) {
+            definition = new Definition();
+            mDefinitions[localType] = definition;
+        }
+        read(mBuffer, 5);
+        // mBuffer[0] is reserved
+        definition.bigEndian = mBuffer[1] == FitProtocol.ARCHITECTURE_BIG_ENDIAN;
+        definition.globalMessageNumber = (int) getValue(mBuffer, 2, 2, definition.bigEndian);
+        definition.fieldCount = mBuffer[4] & 0xFF;
+        for (int i = 0; i < definition.fieldCount; i++) {
+            read(mBuffer, 3);
+            definition.fieldNumbers[i] = mBuffer[0] & 0xFF;
+            definition.fieldSizes[i] = mBuffer[1] & 0xFF;
+        }
+        definition.developerDataSize = 0;
+        if (hasDeveloperData) {
+            int developerFieldCount = readByte();
+            for (int i = 0; i < developerFieldCount; i++) {
+                read(mBuffer, 3);
+                definition.developerDataSize += mBuffer[1] & 0xFF;
+            }
+        }
+    }
+
+    private void readDataMessage(int localType) throws IOException {
+        Definition definition = mDefinitions[localType];
+        if (definition == null) throw new IOException("Data message with undefined local type " + localType);
+        boolean isRecord = definition.globalMessageNumber == FitProtocol.MESG_RECORD;
+
+        int lat = FitProtocol.INVALID_SINT32;
+        int lon = FitProtocol.INVALID_SINT32;
+        double ele = Double.NaN;
+        double enhancedEle = Double.NaN;
+        Float cadence = null;
+        Integer heartRate = null;
+        for (int i = 0; i < definition.fieldCount; i++) {
+            int size = definition.fieldSizes[i];
+            read(mBuffer, size);
+            if (!isRecord && definition.fieldNumbers[i] != FitProtocol.FIELD_TIMESTAMP) continue;
+            if (size != 1 && size != 2 && size != 4) continue;
+            long value = getValue(mBuffer, 0, size, definition.bigEndian);
+            switch (definition.fieldNumbers[i]) {
+                case FitProtocol.FIELD_TIMESTAMP:
+                    if (size == 4 && value != FitProtocol.INVALID_UINT32) mTimestamp = value;
+                    break;
+
+                case FitProtocol.FIELD_RECORD_POSITION_LAT:
+                    if (size == 4) lat = (int) value;
+                    break;
+
+                case FitProtocol.FIELD_RECORD_POSITION_LONG:
+                    if (size == 4) lon = (int) value;
+                    break;
+
+                case FitProtocol.FIELD_RECORD_ALTITUDE:
+                    if (size == 2 && value != FitProtocol.INVALID_UINT16) {
+                        ele = (double) value / FitProtocol.ALTITUDE_SCALE - FitProtocol.ALTITUDE_OFFSET;
+                    }
+                    break;
+
+                case FitProtocol.FIELD_RECORD_ENHANCED_ALTITUDE:
+                    if (size == 4 && value != FitProtocol.INVALID_UINT32) {
+                        enhancedEle = (double) value / FitProtocol.ALTITUDE_SCALE - FitProtocol.ALTITUDE_OFFSET;
+                    }
+                    break;
+
+                case FitProtocol.FIELD_RECORD_HEART_RATE:
+                    if (size == 1 && value != FitProtocol.INVALID_UINT8) heartRate = (int) value;
+                    break;
+
+                case FitProtocol.FIELD_RECORD_CADENCE:
+                    if (size == 1 && value != FitProtocol.INVALID_UINT8) cadence = (float) value;
+                    break;
+            }
+        }
+        skip(definition.developerDataSize);
+
+        if (!isRecord) return;
+        // Ignore the records without timestamp or position
+        if (mTimestamp == -1 || lat == FitProtocol.INVALID_SINT32 || lon == FitProtocol.INVALID_SINT32) return;
+        if (!Double.isNaN(enhancedEle)) ele = enhancedEle;
+        if (Double.isNaN(ele)) ele = 0;
+        mRecordListener.onRecord(FitProtocol.toUnixTime(mTimestamp), FitProtocol.toDegrees(lat), FitProtocol.toDegrees(lon), ele, cadence, heartRate);
+    }
+
+    /**
+     * Read an unsigned value of 1, 2 or 4 bytes.
+     */
+    private static long getValue(byte[] buffer, int offset, int size, boolean bigEndian) {
+        long res = 0;
+        for (int i = 0; i < size; i++) {
+            int b = buffer[offset + (bigEndian ? i : size - 1 - i)] & 0xFF;
+            res = res << 8 | b;
+        }
+        return res;
+    }
+
+    private int readByte() throws IOException {
+        int res = mIn.read();
+        if (res == -1) throw new EOFException("Unexpected end of FIT file");
+        mCrc = FitProtocol.crc(mCrc, (byte) res);
+        mPosition++;
+        return res;
+    }
+
+    private void read(byte[] buffer, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = mIn.read(buffer, offset, length - offset);
+            if (read == -1) throw new EOFException("Unexpected end of FIT file");
+            offset += read;
+        }
+        mCrc = FitProtocol.crc(mCrc, buffer, 0, length);
+        mPosition += length;
+    }
+
+    private void skip(int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, mBuffer.length);
+            read(mBuffer, count);
+            length -= count;
+        }
+    }
+}
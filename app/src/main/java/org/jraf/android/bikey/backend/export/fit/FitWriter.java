@@ -0,0 +1,312 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2014 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.export.fit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a FIT activity file from a sequence of logs, computing the laps and the session on the fly.
+ */
+public class FitWriter {
+    private static final long NEW_LAP_DURATION = 5 * 60 * 1000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final int LOCAL_TYPE_FILE_ID = 0;
+    private static final int LOCAL_TYPE_RECORD = 1;
+    private static final int LOCAL_TYPE_LAP = 2;
+    private static final int LOCAL_TYPE_SESSION = 3;
+
+    // @formatter:off
+    private static final int[] FIELDS_FILE_ID = {
+            FitProtocol.FIELD_FILE_ID_TYPE, 1, FitProtocol.BASE_TYPE_ENUM,
+            FitProtocol.FIELD_FILE_ID_MANUFACTURER, 2, FitProtocol.BASE_TYPE_UINT16,
+            FitProtocol.FIELD_FILE_ID_PRODUCT, 2, FitProtocol.BASE_TYPE_UINT16,
+            FitProtocol.FIELD_FILE_ID_TIME_CREATED, 4, FitProtocol.BASE_TYPE_UINT32,
+    };
+
+    private static final int[] FIELDS_RECORD = {
+            FitProtocol.FIELD_TIMESTAMP, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_RECORD_POSITION_LAT, 4, FitProtocol.BASE_TYPE_SINT32,
+            FitProtocol.FIELD_RECORD_POSITION_LONG, 4, FitProtocol.BASE_TYPE_SINT32,
+            FitProtocol.FIELD_RECORD_ALTITUDE, 2, FitProtocol.BASE_TYPE_UINT16,
+            FitProtocol.FIELD_RECORD_HEART_RATE, 1, FitProtocol.BASE_TYPE_UINT8,
+            FitProtocol.FIELD_RECORD_CADENCE, 1, FitProtocol.BASE_TYPE_UINT8,
+            FitProtocol.FIELD_RECORD_DISTANCE, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_RECORD_SPEED, 2, FitProtocol.BASE_TYPE_UINT16,
+    };
+
+    private static final int[] FIELDS_LAP = {
+            FitProtocol.FIELD_TIMESTAMP, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_LAP_START_TIME, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_LAP_TOTAL_ELAPSED_TIME, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_LAP_TOTAL_TIMER_TIME, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_LAP_TOTAL_DISTANCE, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_LAP_EVENT, 1, FitProtocol.BASE_TYPE_ENUM,
+            FitProtocol.FIELD_LAP_EVENT_TYPE, 1, FitProtocol.BASE_TYPE_ENUM,
+    };
+
+    private static final int[] FIELDS_SESSION = {
+            FitProtocol.FIELD_TIMESTAMP, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_SESSION_START_TIME, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_SESSION_TOTAL_ELAPSED_TIME, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_SESSION_TOTAL_TIMER_TIME, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_SESSION_TOTAL_DISTANCE, 4, FitProtocol.BASE_TYPE_UINT32,
+            FitProtocol.FIELD_SESSION_AVG_HEART_RATE, 1, FitProtocol.BASE_TYPE_UINT8,
+            FitProtocol.FIELD_SESSION_AVG_CADENCE, 1, FitProtocol.BASE_TYPE_UINT8,
+            FitProtocol.FIELD_SESSION_EVENT, 1, FitProtocol.BASE_TYPE_ENUM,
+            FitProtocol.FIELD_SESSION_EVENT_TYPE, 1, FitProtocol.BASE_TYPE_ENUM,
+            FitProtocol.FIELD_SESSION_SPORT, 1, FitProtocol.BASE_TYPE_ENUM,
+    };
+    // @formatter:on
+
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long mSessionStartDate = -1;
+    private long mSessionTimerTime;
+    private long mLapStartDate;
+    private float mLapStartDistance;
+    private long mPreviousRecordedDate;
+    private float mTotalDistance;
+    private long mHeartRateSum;
+    private int mHeartRateCount;
+    private double mCadenceSum;
+    private int mCadenceCount;
+
+    /**
+     * @param channel An empty channel, positioned at 0. It must be readable (the file CRC is computed by reading it back).
+     */
+    public FitWriter(FileChannel channel) {
+        mChannel = channel;
+    }
+
+    /**
+     * Write the header, the definitions and the file_id message.
+     */
+    public void begin(long timeCreated) throws IOException {
+        // The header contains the data size, which is only known at the end: write a placeholder for now
+        writeHeader(0);
+
+        // Definitions
+        writeDefinition(LOCAL_TYPE_FILE_ID, FitProtocol.MESG_FILE_ID, FIELDS_FILE_ID);
+        writeDefinition(LOCAL_TYPE_RECORD, FitProtocol.MESG_RECORD, FIELDS_RECORD);
+        writeDefinition(LOCAL_TYPE_LAP, FitProtocol.MESG_LAP, FIELDS_LAP);
+        writeDefinition(LOCAL_TYPE_SESSION, FitProtocol.MESG_SESSION, FIELDS_SESSION);
+
+        writeFileId(timeCreated);
+    }
+
+    /**
+     * Write a record message for the given log, preceded by a lap message if the log starts a new lap.
+     *
+     * @param logDistance The distance since the previous log, or {@code null}.
+     */
+    public void addLog(long recordedDate, double lat, double lon, double ele, Integer heartRate, Float cadence, Float logDistance, Float speed)
+            throws IOException {
+        if (mSessionStartDate == -1) {
+            mSessionStartDate = recordedDate;
+            mLapStartDate = recordedDate;
+        } else if (recordedDate - mPreviousRecordedDate > NEW_LAP_DURATION) {
+            // New lap
+            writeLap(mLapStartDate, mPreviousRecordedDate, mTotalDistance - mLapStartDistance);
+            mSessionTimerTime += mPreviousRecordedDate - mLapStartDate;
+            mLapStartDate = recordedDate;
+            mLapStartDistance = mTotalDistance;
+        }
+
+        if (logDistance != null) mTotalDistance += logDistance;
+        if (heartRate != null) {
+            mHeartRateSum += heartRate;
+            mHeartRateCount++;
+        }
+        if (cadence != null) {
+            mCadenceSum += cadence;
+            mCadenceCount++;
+        }
+
+        writeRecord(recordedDate, lat, lon, ele, heartRate, cadence, mTotalDistance, speed);
+        mPreviousRecordedDate = recordedDate;
+    }
+
+    /**
+     * Write the last lap and the session (if there was at least one log), then the final header and the file CRC.
+     */
+    public void end() throws IOException {
+        if (mSessionStartDate != -1) {
+            // Last lap
+            writeLap(mLapStartDate, mPreviousRecordedDate, mTotalDistance - mLapStartDistance);
+            mSessionTimerTime += mPreviousRecordedDate - mLapStartDate;
+
+            // Session
+            Integer avgHeartRate = mHeartRateCount == 0 ? null : (int) (mHeartRateSum / mHeartRateCount);
+            Float avgCadence = mCadenceCount == 0 ? null : (float) (mCadenceSum / mCadenceCount);
+            writeSession(mSessionStartDate, mPreviousRecordedDate, mSessionTimerTime, mTotalDistance, avgHeartRate, avgCadence);
+        }
+
+        // Now that the data size is known, rewrite the header and append the file CRC
+        flush();
+        long dataSize = mChannel.position() - FitProtocol.HEADER_SIZE;
+        mChannel.position(0);
+        writeHeader(dataSize);
+        flush();
+        int crc = computeFileCrc();
+        mBuffer.putShort((short) crc);
+        flush();
+    }
+
+
+    /*
+     * Messages.
+     */
+
+    private void writeHeader(long dataSize) throws IOException {
+        ensureRemaining(FitProtocol.HEADER_SIZE);
+        int start = mBuffer.position();
+        mBuffer.put((byte) FitProtocol.HEADER_SIZE);
+        mBuffer.put((byte) FitProtocol.PROTOCOL_VERSION);
+        mBuffer.putShort((short) FitProtocol.PROFILE_VERSION);
+        mBuffer.putInt((int) dataSize);
+        mBuffer.put(FitProtocol.DATA_TYPE);
+        int crc = FitProtocol.crc(0, mBuffer.array(), mBuffer.arrayOffset() + start, FitProtocol.HEADER_SIZE - 2);
+        mBuffer.putShort((short) crc);
+    }
+
+    /**
+     * @param fields Triplets of (field number, size in bytes, base type).
+     */
+    private void writeDefinition(int localType, int globalMessageNumber, int[] fields) throws IOException {
+        int fieldCount = fields.length / 3;
+        ensureRemaining(6 + fieldCount * 3);
+        mBuffer.put((byte) (FitProtocol.RECORD_HEADER_DEFINITION | localType));
+        // Reserved
+        mBuffer.put((byte) 0);
+        mBuffer.put((byte) FitProtocol.ARCHITECTURE_LITTLE_ENDIAN);
+        mBuffer.putShort((short) globalMessageNumber);
+        mBuffer.put((byte) fieldCount);
+        for (int i = 0; i < fields.length; i++) {
+            mBuffer.put((byte) fields[i]);
+        }
+    }
+
+    private void writeFileId(long timeCreated) throws IOException {
+        ensureRemaining(10);
+        mBuffer.put((byte) LOCAL_TYPE_FILE_ID);
+        mBuffer.put((byte) FitProtocol.FILE_TYPE_ACTIVITY);
+        mBuffer.putShort((short) FitProtocol.MANUFACTURER_DEVELOPMENT);
+        mBuffer.putShort((short) 0);
+        mBuffer.putInt((int) FitProtocol.toFitTimestamp(timeCreated));
+    }
+
+    private void writeRecord(long recordedDate, double lat, double lon, double ele, Integer heartRate, Float cadence, float distance, Float speed)
+            throws IOException {
+        ensureRemaining(23);
+        mBuffer.put((byte) LOCAL_TYPE_RECORD);
+        mBuffer.putInt((int) FitProtocol.toFitTimestamp(recordedDate));
+        mBuffer.putInt(FitProtocol.toSemicircles(lat));
+        mBuffer.putInt(FitProtocol.toSemicircles(lon));
+        long altitude = Math.round((ele + FitProtocol.ALTITUDE_OFFSET) * FitProtocol.ALTITUDE_SCALE);
+        mBuffer.putShort((short) clamp(altitude, FitProtocol.INVALID_UINT16 - 1, FitProtocol.INVALID_UINT16));
+        mBuffer.put((byte) (heartRate == null ? FitProtocol.INVALID_UINT8 : clamp(heartRate, FitProtocol.INVALID_UINT8 - 1, FitProtocol.INVALID_UINT8)));
+        mBuffer.put((byte) (cadence == null ? FitProtocol.INVALID_UINT8 : clamp(Math.round(cadence), FitProtocol.INVALID_UINT8 - 1,
+                FitProtocol.INVALID_UINT8)));
+        mBuffer.putInt((int) Math.round((double) distance * FitProtocol.DISTANCE_SCALE));
+        mBuffer.putShort((short) (speed == null ? FitProtocol.INVALID_UINT16 : clamp(Math.round(speed * FitProtocol.SPEED_SCALE),
+                FitProtocol.INVALID_UINT16 - 1, FitProtocol.INVALID_UINT16)));
+    }
+
+    private void writeLap(long startDate, long endDate, float distance) throws IOException {
+        ensureRemaining(23);
+        mBuffer.put((byte) LOCAL_TYPE_LAP);
+        mBuffer.putInt((int) FitProtocol.toFitTimestamp(endDate));
+        mBuffer.putInt((int) FitProtocol.toFitTimestamp(startDate));
+        mBuffer.putInt((int) (endDate - startDate));
+        mBuffer.putInt((int) (endDate - startDate));
+        mBuffer.putInt((int) Math.round((double) distance * FitProtocol.DISTANCE_SCALE));
+        mBuffer.put((byte) FitProtocol.EVENT_LAP);
+        mBuffer.put((byte) FitProtocol.EVENT_TYPE_STOP);
+    }
+
+    private void writeSession(long startDate, long endDate, long timerTime, float distance, Integer avgHeartRate, Float avgCadence) throws IOException {
+        ensureRemaining(26);
+        mBuffer.put((byte) LOCAL_TYPE_SESSION);
+        mBuffer.putInt((int) FitProtocol.toFitTimestamp(endDate));
+        mBuffer.putInt((int) FitProtocol.toFitTimestamp(startDate));
+        mBuffer.putInt((int) (endDate - startDate));
+        mBuffer.putInt((int) timerTime);
+        mBuffer.putInt((int) Math.round((double) distance * FitProtocol.DISTANCE_SCALE));
+        mBuffer.put((byte) (avgHeartRate == null ? FitProtocol.INVALID_UINT8 : clamp(avgHeartRate, FitProtocol.INVALID_UINT8 - 1,
+                FitProtocol.INVALID_UINT8)));
+        mBuffer.put((byte) (avgCadence == null ? FitProtocol.INVALID_UINT8 : clamp(Math.round(avgCadence), FitProtocol.INVALID_UINT8 - 1,
+                FitProtocol.INVALID_UINT8)));
+        mBuffer.put((byte) FitProtocol.EVENT_SESSION);
+        mBuffer.put((byte) FitProtocol.EVENT_TYPE_STOP);
+        mBuffer.put((byte) FitProtocol.SPORT_CYCLING);
+    }
+
+
+    /*
+     * Buffer / channel.
+     */
+
+    private void ensureRemaining(int size) throws IOException {
+        if (mBuffer.remaining() < size) flush();
+    }
+
+    private void flush() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    /**
+     * Compute the CRC of the whole file (header included), reading it back from the channel.<br/>
+     * When this returns, the channel is positioned at the end of the file.
+     */
+    private int computeFileCrc() throws IOException {
+        int crc = 0;
+        mChannel.position(0);
+        mBuffer.clear();
+        while (mChannel.read(mBuffer) > 0) {
+            mBuffer.flip();
+            crc = FitProtocol.crc(crc, mBuffer.array(), mBuffer.arrayOffset(), mBuffer.limit());
+            mBuffer.clear();
+        }
+        return crc;
+    }
+
+    /**
+     * Clamp the given value to [0, max], or return {@code invalid} if it is negative.
+     */
+    private static long clamp(long value, long max, long invalid) {
+        if (value < 0) return invalid;
+        if (value > max) return max;
+        return value;
+    }
+}
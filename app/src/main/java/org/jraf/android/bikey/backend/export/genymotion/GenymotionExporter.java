@@ -57,7 +57,9 @@ public class GenymotionExporter extends Exporter {
         String[] selectionArgs = { String.valueOf(rideId) };
         LogCursor c = new LogCursor(getContext().getContentResolver().query(LogColumns.CONTENT_URI, null, selection, selectionArgs, null));
         try {
+            int count = c.getCount();
             while (c.moveToNext()) {
+                reportProgress(c.getPosition(), count);
                 String lat = String.valueOf(c.getLat());
                 String lon = String.valueOf(c.getLon());
                 String ele = String.valueOf(c.getEle());
@@ -68,7 +70,7 @@ public class GenymotionExporter extends Exporter {
             }
         } finally {
             c.close();
+            IoUtil.closeSilently(out);
         }
-        IoUtil.closeSilently(out);
     }
 }
@@ -67,7 +67,9 @@ public class GpxExporter extends Exporter {
         Long previousRecordedDate = null;
         LogCursor c = new LogCursor(getContext().getContentResolver().query(LogColumns.CONTENT_URI, null, selection, selectionArgs, null));
         try {
+            int count = c.getCount();
             while (c.moveToNext()) {
+                reportProgress(c.getPosition(), count);
                 long recordedDate = c.getRecordedDate().getTime();
                 // Track segment
                 if (previousRecordedDate == null) {
@@ -86,11 +88,11 @@ public class GpxExporter extends Exporter {
 
                 previousRecordedDate = recordedDate;
             }
+            out.println(getString(R.string.export_gpx_trackSegment_end));
+            out.println(getString(R.string.export_gpx_end));
         } finally {
             c.close();
+            IoUtil.closeSilently(out);
         }
-        out.println(getString(R.string.export_gpx_trackSegment_end));
-        out.println(getString(R.string.export_gpx_end));
-        IoUtil.closeSilently(out);
     }
 }
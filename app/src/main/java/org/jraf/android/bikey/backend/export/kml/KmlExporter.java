@@ -113,14 +113,14 @@ public class KmlExporter extends Exporter {
             out.println(getString(R.string.export_kml_document_end));
         } finally {
             c.close();
+            IoUtil.closeSilently(out);
         }
-        IoUtil.closeSilently(out);
     }
 
     /**
      * Write a Placemark which contains a gx:Track element
      */
-    private void writeTrackPlacemark(LogCursor c, PrintWriter out, String timestampBegin) {
+    private void writeTrackPlacemark(LogCursor c, PrintWriter out, String timestampBegin) throws IOException {
         Log.d();
         out.println(getString(R.string.export_kml_placemark_begin));
         String trackName = getString(R.string.export_kml_track_name, timestampBegin);
@@ -128,8 +128,10 @@ public class KmlExporter extends Exporter {
         out.println(getString(R.string.export_kml_track_style_url));
         out.println(getString(R.string.export_kml_track_begin));
 
-        // Write the timestamps for each track point
+        // Write the timestamps for each track point (this is the first pass over the logs, use it to report progress)
+        int count = c.getCount();
         while (c.moveToNext()) {
+            reportProgress(c.getPosition(), count);
             long recordedDate = c.getRecordedDate().getTime();
             String dateTime = DateTimeUtil.toIso8601(recordedDate, true);
             out.println(getString(R.string.export_kml_when, dateTime));
@@ -138,6 +140,7 @@ public class KmlExporter extends Exporter {
         // Write the coordinates for each track point
         c.moveToPosition(-1);
         while (c.moveToNext()) {
+            checkCancelled();
             double latitude = c.getLat();
             double longitude = c.getLon();
             double elevation = c.getEle();
@@ -151,7 +154,7 @@ public class KmlExporter extends Exporter {
     /**
      * Write a Placemark which contains a LineString element.
      */
-    private void writeLineStringPlacemark(LogCursor c, PrintWriter out, String timestampBegin) {
+    private void writeLineStringPlacemark(LogCursor c, PrintWriter out, String timestampBegin) throws IOException {
         Log.d();
         out.println(getString(R.string.export_kml_placemark_begin));
         String linestringName = getString(R.string.export_kml_linestring_name, timestampBegin);
@@ -160,6 +163,7 @@ public class KmlExporter extends Exporter {
         out.println(getString(R.string.export_kml_linestring_begin));
         c.moveToPosition(-1);
         while (c.moveToNext()) {
+            checkCancelled();
             double latitude = c.getLat();
             double longitude = c.getLon();
             double elevation = c.getEle();
@@ -190,7 +194,7 @@ public class KmlExporter extends Exporter {
     /**
      * Write a folder containing all the cadence points
      */
-    private void writeCadence(long rideId, PrintWriter out) {
+    private void writeCadence(long rideId, PrintWriter out) throws IOException {
         Log.d();
         String selection = LogColumns.RIDE_ID + "=? AND " + LogColumns.CADENCE + " NOT NULL";
         String[] selectionArgs = { String.valueOf(rideId) };
@@ -202,6 +206,7 @@ public class KmlExporter extends Exporter {
                 out.println(getString(R.string.export_kml_folder_begin, getString(R.string.export_kml_cadence_folder_name)));
                 int previousCadence = 0;
                 while (c.moveToNext()) {
+                    checkCancelled();
                     int cadence = c.getCadence().intValue();
                     if (cadence != previousCadence) {
                         Style style = Style.RED;
@@ -222,7 +227,7 @@ public class KmlExporter extends Exporter {
     /**
      * Write a folder containing all the heart rate points
      */
-    private void writeHeartRate(long rideId, PrintWriter out) {
+    private void writeHeartRate(long rideId, PrintWriter out) throws IOException {
         Log.d();
         String selection = LogColumns.RIDE_ID + "=? AND " + LogColumns.HEART_RATE + " NOT NULL";
         String[] selectionArgs = { String.valueOf(rideId) };
@@ -234,6 +239,7 @@ public class KmlExporter extends Exporter {
                 out.println(getString(R.string.export_kml_folder_begin, getString(R.string.export_kml_heart_rate_folder_name)));
                 int previousHeartRate = 0;
                 while (c.moveToNext()) {
+                    checkCancelled();
                     int heartRate = c.getHeartRate();
                     if (heartRate != previousHeartRate) {
                         Style style = Style.RED;
@@ -0,0 +1,229 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2014 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.export.tcx;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+
+import android.content.ContentUris;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import org.jraf.android.bikey.R;
+import org.jraf.android.bikey.backend.export.Exporter;
+import org.jraf.android.bikey.backend.provider.log.LogColumns;
+import org.jraf.android.bikey.backend.provider.log.LogCursor;
+import org.jraf.android.bikey.backend.ride.RideManager;
+import org.jraf.android.util.annotation.Background;
+import org.jraf.android.util.datetime.DateTimeUtil;
+import org.jraf.android.util.file.FileUtil;
+import org.jraf.android.util.io.IoUtil;
+
+/**
+ * Exports a ride to the Training Center XML format.<br/>
+ * A new lap is started after a pause (logs separated by more than {@link #NEW_LAP_DURATION}) or every {@link #LAP_DISTANCE} meters.<br/>
+ * The TCX schema requires the lap summary to come before its track points, so the track points of the current lap are spooled to a temporary file
+ * and appended to the output when the lap ends. This keeps the export to a single pass over the logs, in constant memory.
+ */
+public class TcxExporter extends Exporter {
+    private static final long NEW_LAP_DURATION = 5 * 60 * 1000;
+    private static final float LAP_DISTANCE = 1000;
+
+    private static final String TRIGGER_METHOD_MANUAL = "Manual";
+    private static final String TRIGGER_METHOD_DISTANCE = "Distance";
+
+    private static class Lap {
+        long startDate;
+        long endDate;
+        float distance;
+        int trackPointCount;
+        long heartRateSum;
+        int heartRateCount;
+        int maxHeartRate;
+        double cadenceSum;
+        int cadenceCount;
+
+        void reset(long date) {
+            startDate = date;
+            endDate = date;
+            distance = 0;
+            trackPointCount = 0;
+            heartRateSum = 0;
+            heartRateCount = 0;
+            maxHeartRate = 0;
+            cadenceSum = 0;
+            cadenceCount = 0;
+        }
+    }
+
+    private final Lap mLap = new Lap();
+    private final char[] mCopyBuffer = new char[8 * 1024];
+    private File mSpoolFile;
+    private PrintWriter mSpool;
+
+    public TcxExporter(Uri rideUri) {
+        super(rideUri);
+    }
+
+    @Override
+    protected String getExportedFileName() {
+        return FileUtil.getValidFileName(RideManager.get().getDisplayName(getRideUri()) + ".tcx");
+    }
+
+    @Override
+    @Background
+    public void export() throws IOException {
+        PrintWriter out = new PrintWriter(getExportFile());
+        mSpoolFile = FileUtil.newTemporaryFile(getContext(), ".tcx");
+        try {
+            long rideId = ContentUris.parseId(getRideUri());
+            String selection = LogColumns.RIDE_ID + "=?";
+            String[] selectionArgs = { String.valueOf(rideId) };
+            LogCursor c = new LogCursor(getContext().getContentResolver().query(LogColumns.CONTENT_URI, null, selection, selectionArgs, null));
+            try {
+                long previousRecordedDate = -1;
+                float totalDistance = 0;
+                int count = c.getCount();
+                while (c.moveToNext()) {
+                    reportProgress(c.getPosition(), count);
+                    long recordedDate = c.getRecordedDate().getTime();
+                    if (previousRecordedDate == -1) {
+                        // Header
+                        out.println(getString(R.string.export_tcx_begin, DateTimeUtil.toIso8601(recordedDate, true)));
+                        startLap(recordedDate);
+                    } else if (recordedDate - previousRecordedDate > NEW_LAP_DURATION) {
+                        endLap(out, TRIGGER_METHOD_MANUAL);
+                        startLap(recordedDate);
+                    } else if (mLap.distance >= LAP_DISTANCE) {
+                        endLap(out, TRIGGER_METHOD_DISTANCE);
+                        startLap(recordedDate);
+                    }
+
+                    Float logDistance = c.getLogDistance();
+                    if (logDistance != null) {
+                        totalDistance += logDistance;
+                        mLap.distance += logDistance;
+                    }
+                    mLap.endDate = recordedDate;
+                    writeTrackPoint(c, recordedDate, totalDistance);
+
+                    previousRecordedDate = recordedDate;
+                }
+
+                if (previousRecordedDate == -1) {
+                    // No logs: still produce a valid document, which requires at least one lap
+                    long now = System.currentTimeMillis();
+                    out.println(getString(R.string.export_tcx_begin, DateTimeUtil.toIso8601(now, true)));
+                    startLap(now);
+                }
+                endLap(out, TRIGGER_METHOD_MANUAL);
+            } finally {
+                c.close();
+            }
+            String rideName = TextUtils.htmlEncode(RideManager.get().getDisplayName(getRideUri()));
+            out.println(getString(R.string.export_tcx_end, rideName));
+        } finally {
+            IoUtil.closeSilently(mSpool);
+            mSpool = null;
+            mSpoolFile.delete();
+            IoUtil.closeSilently(out);
+        }
+    }
+
+    private void startLap(long startDate) throws IOException {
+        mLap.reset(startDate);
+        mSpool = new PrintWriter(mSpoolFile);
+    }
+
+    private void writeTrackPoint(LogCursor c, long recordedDate, float totalDistance) {
+        String dateTime = DateTimeUtil.toIso8601(recordedDate, true);
+        String lat = String.valueOf(c.getLat());
+        String lon = String.valueOf(c.getLon());
+        String ele = String.valueOf(c.getEle());
+        mSpool.println(getString(R.string.export_tcx_trackPoint_begin, dateTime, lat, lon, ele, String.valueOf(totalDistance)));
+        mLap.trackPointCount++;
+
+        Integer heartRate = c.getHeartRate();
+        if (heartRate != null) {
+            mSpool.println(getString(R.string.export_tcx_trackPoint_heartRate, String.valueOf(heartRate)));
+            mLap.heartRateSum += heartRate;
+            mLap.heartRateCount++;
+            if (heartRate > mLap.maxHeartRate) mLap.maxHeartRate = heartRate;
+        }
+
+        Float cadence = c.getCadence();
+        if (cadence != null) {
+            // TCX only allows integer cadences
+            mSpool.println(getString(R.string.export_tcx_trackPoint_cadence, String.valueOf(Math.round(cadence))));
+            mLap.cadenceSum += cadence;
+            mLap.cadenceCount++;
+        }
+
+        mSpool.println(getString(R.string.export_tcx_trackPoint_end));
+    }
+
+    /**
+     * Write the summary of the current lap, followed by its spooled track points.
+     */
+    private void endLap(PrintWriter out, String triggerMethod) throws IOException {
+        mSpool.close();
+        mSpool = null;
+
+        String startTime = DateTimeUtil.toIso8601(mLap.startDate, true);
+        String totalTimeSeconds = String.valueOf((mLap.endDate - mLap.startDate) / 1000f);
+        out.println(getString(R.string.export_tcx_lap_begin, startTime, totalTimeSeconds, String.valueOf(mLap.distance)));
+        if (mLap.heartRateCount > 0) {
+            String avgHeartRate = String.valueOf(mLap.heartRateSum / mLap.heartRateCount);
+            out.println(getString(R.string.export_tcx_lap_heartRate, avgHeartRate, String.valueOf(mLap.maxHeartRate)));
+        }
+        out.println(getString(R.string.export_tcx_lap_intensity));
+        if (mLap.cadenceCount > 0) {
+            out.println(getString(R.string.export_tcx_lap_cadence, String.valueOf(Math.round(mLap.cadenceSum / mLap.cadenceCount))));
+        }
+        out.println(getString(R.string.export_tcx_lap_triggerMethod, triggerMethod));
+
+        // A track must contain at least one track point
+        if (mLap.trackPointCount > 0) {
+            out.println(getString(R.string.export_tcx_track_begin));
+
+            // Append the spooled track points
+            Reader in = new FileReader(mSpoolFile);
+            try {
+                int read;
+                while ((read = in.read(mCopyBuffer)) != -1) {
+                    out.write(mCopyBuffer, 0, read);
+                }
+            } finally {
+                IoUtil.closeSilently(in);
+            }
+
+            out.println(getString(R.string.export_tcx_track_end));
+        }
+        out.println(getString(R.string.export_tcx_lap_end));
+    }
+}
@@ -24,14 +24,24 @@
  */
 package org.jraf.android.bikey.backend.heartrate;
 
-public interface HeartRateListener {
-    void onConnecting();
-
-    void onConnected();
+import org.jraf.android.bikey.backend.sensor.SensorListener;
 
+public interface HeartRateListener extends SensorListener {
     void onHeartRateChange(int bpm);
 
-    void onDisconnected();
+    /**
+     * Called for each measurement that contains RR intervals.
+     * 
+     * @param date The date of the measurement, which is the end of the last interval.
+     * @param rrIntervals The RR intervals in milliseconds, oldest first. Only the first {@code count} values are valid. The array is reused for the
+     *            next measurements, so it must not be kept.
+     * @param count The number of intervals.
+     */
+    void onRrIntervals(long date, int[] rrIntervals, int count);
 
-    void onError();
+    /**
+     * @param rmssd The root mean square of the successive differences of the last minute in milliseconds, or {@code -1} if unknown.
+     * @param sdnn The standard deviation of the RR intervals of the last minute in milliseconds, or {@code -1} if unknown.
+     */
+    void onHrvChange(float rmssd, float sdnn);
 }
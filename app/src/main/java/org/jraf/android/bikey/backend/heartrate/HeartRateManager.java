@@ -47,5 +47,20 @@ public abstract class HeartRateManager {
 
     public abstract int getLastValue();
 
+    /**
+     * @return The last RMSSD in milliseconds, or {@code -1} if unknown.
+     */
+    public abstract float getLastRmssd();
+
+    /**
+     * @return The last SDNN in milliseconds, or {@code -1} if unknown.
+     */
+    public abstract float getLastSdnn();
+
+    /**
+     * @return The energy expended since the monitor was reset in kilojoules, as reported by the monitor, or {@code -1} if unknown.
+     */
+    public abstract int getLastEnergyExpended();
+
     public abstract void disconnect();
 }
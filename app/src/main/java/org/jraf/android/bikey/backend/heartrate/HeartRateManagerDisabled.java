@@ -53,6 +53,21 @@ public class HeartRateManagerDisabled extends HeartRateManager {
         return 0;
     }
 
+    @Override
+    public float getLastRmssd() {
+        return -1;
+    }
+
+    @Override
+    public float getLastSdnn() {
+        return -1;
+    }
+
+    @Override
+    public int getLastEnergyExpended() {
+        return -1;
+    }
+
     @Override
     public void disconnect() {}
 }
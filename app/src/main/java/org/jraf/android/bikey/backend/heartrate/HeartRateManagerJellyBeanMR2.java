@@ -24,25 +24,12 @@
  */
 package org.jraf.android.bikey.backend.heartrate;
 
-import java.util.List;
-import java.util.UUID;
-
 import android.annotation.TargetApi;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
-import android.bluetooth.BluetoothProfile;
-import android.content.Context;
 import android.os.Build;
 
-import org.jraf.android.bikey.app.Application;
-import org.jraf.android.util.listeners.Listeners;
+import org.jraf.android.bikey.backend.sensor.GattSensor;
 import org.jraf.android.util.listeners.Listeners.Dispatcher;
-import org.jraf.android.util.log.LogUtil;
-import org.jraf.android.util.log.wrapper.Log;
 
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
 public class HeartRateManagerJellyBeanMR2 extends HeartRateManager {
@@ -52,107 +39,73 @@ public class HeartRateManagerJellyBeanMR2 extends HeartRateManager {
     // See https://developer.bluetooth.org/gatt/characteristics/Pages/CharacteristicViewer.aspx?u=org.bluetooth.characteristic.heart_rate_measurement.xml
     private static final int GATT_CHARACTERISTIC_HEART_RATE_MEASUREMENT = 0x2A37;
 
-    // See https://developer.bluetooth.org/gatt/descriptors/Pages/DescriptorViewer.aspx?u=org.bluetooth.descriptor.gatt.client_characteristic_configuration.xml
-    private static final int GATT_DESCRIPTOR_CLIENT_CHARACTERISTIC_CONFIGURATION = 0x2902;
+    private static final int FLAG_HEART_RATE_VALUE_UINT16 = 0x01;
+    private static final int FLAG_SENSOR_CONTACT_DETECTED = 0x02;
+    private static final int FLAG_SENSOR_CONTACT_SUPPORTED = 0x04;
+    private static final int FLAG_ENERGY_EXPENDED_PRESENT = 0x08;
+    private static final int FLAG_RR_INTERVALS_PRESENT = 0x10;
 
-    // @formatter:off
-    private static enum Status {
-        DISCONNECTED,
-        CONNECTING,
-        CONNECTED,
-    }
-    // @formatter:on
+    /**
+     * With the default ATT MTU, a measurement contains at most 9 RR intervals.
+     */
+    private static final int MAX_RR_INTERVALS = 16;
 
-    private Context mContext;
-    private BluetoothDevice mBluetoothDevice;
-    private BluetoothGatt mBluetoothGatt;
+    /**
+     * Enough for a one minute window up to 240 bpm.
+     */
+    private static final int HRV_CAPACITY = 240;
 
-    private Listeners<HeartRateListener> mListeners = new Listeners<>();
+    private volatile int mLastValue = -1;
+    private volatile int mLastEnergyExpended = -1;
+    private final int[] mRrIntervals = new int[MAX_RR_INTERVALS];
+    private int mRrIntervalCount;
+    private long mRrIntervalsDate;
+    private final HrvCalculator mHrvCalculator = new HrvCalculator(HRV_CAPACITY);
+    private volatile float mLastRmssd = -1;
+    private volatile float mLastSdnn = -1;
 
-    private int mLastValue = -1;
-    private Status mStatus = Status.DISCONNECTED;
-
-    /* package */HeartRateManagerJellyBeanMR2() {
-        mContext = Application.getApplication();
-    }
+    /* package */HeartRateManagerJellyBeanMR2() {}
 
     @Override
     public void addListener(HeartRateListener listener) {
-        mListeners.add(listener);
+        mSensor.addListener(listener);
     }
 
     @Override
     public void removeListener(HeartRateListener listener) {
-        mListeners.remove(listener);
+        mSensor.removeListener(listener);
     }
 
     @Override
     public void setBluetoothDevice(BluetoothDevice bluetoothDevice) {
-        Log.d();
-        mStatus = Status.CONNECTING;
-        // Inform listeners
-        mListeners.dispatch(new Dispatcher<HeartRateListener>() {
-            @Override
-            public void dispatch(HeartRateListener listener) {
-                listener.onConnecting();
-            }
-        });
-
-        mBluetoothDevice = bluetoothDevice;
-        mBluetoothGatt = mBluetoothDevice.connectGatt(mContext, true, mBluetoothGattCallback);
+        mSensor.connect(bluetoothDevice);
     }
 
-    private BluetoothGattCallback mBluetoothGattCallback = new BluetoothGattCallback() {
-        @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            Log.d("status=" + LogUtil.getConstantName(BluetoothGatt.class, status, "GATT_") + " newState="
-                    + LogUtil.getConstantName(BluetoothProfile.class, newState, "STATE_"));
-            switch (newState) {
-                case BluetoothProfile.STATE_CONNECTED:
-                    mBluetoothGatt.discoverServices();
-                    break;
-
-                case BluetoothProfile.STATE_DISCONNECTED:
-                    onDisconnect();
-                    break;
-            }
-        }
-
-        @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            Log.d("status=" + LogUtil.getConstantName(BluetoothGatt.class, status, "GATT_"));
-            List<BluetoothGattService> services = gatt.getServices();
-            boolean found = false;
-            for (BluetoothGattService service : services) {
-                Log.d(service.getUuid().toString());
-                if (getAssignedNumber(service.getUuid()) == GATT_SERVICE_HEART_RATE) {
-                    // Found heart rate service
-                    onHeartRateServiceFound(service);
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                onHeartRateServiceNotFound();
-            }
-        }
-
+    private final GattSensor<HeartRateListener> mSensor = new GattSensor<HeartRateListener>(GATT_SERVICE_HEART_RATE,
+            GATT_CHARACTERISTIC_HEART_RATE_MEASUREMENT) {
+        /**
+         * Parse a heart rate measurement. The format of each field is given by the flags byte at the start of the value.
+         */
         @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            Log.d("characteristic=" + characteristic.getUuid());
-            int format;
-            int flag = characteristic.getProperties();
-            if ((flag & 0x01) != 0) {
-                format = BluetoothGattCharacteristic.FORMAT_UINT16;
+        protected void onMeasurement(byte[] value) {
+            if (value == null || value.length < 2) return;
+            int flags = value[0] & 0xFF;
+            int offset = 1;
+
+            int heartRate;
+            if ((flags & FLAG_HEART_RATE_VALUE_UINT16) != 0) {
+                if (value.length < 3) return;
+                heartRate = readUInt16(value, offset);
+                offset += 2;
             } else {
-                format = BluetoothGattCharacteristic.FORMAT_UINT8;
+                heartRate = value[offset] & 0xFF;
+                offset += 1;
             }
-            int previousValue = mLastValue;
 
-            int value = characteristic.getIntValue(format, 1);
-            if (value < 50) {
+            boolean noContact = (flags & FLAG_SENSOR_CONTACT_SUPPORTED) != 0 && (flags & FLAG_SENSOR_CONTACT_DETECTED) == 0;
+            if (heartRate < 50 || noContact) {
                 // This is probably a false measurement, consider this as a disconnect
-                if (mStatus == Status.CONNECTED) {
+                if (isConnected()) {
                     // Disconnect
                     onDisconnect();
                 }
@@ -160,158 +113,108 @@ public class HeartRateManagerJellyBeanMR2 extends HeartRateManager {
                 return;
             }
 
+            if ((flags & FLAG_ENERGY_EXPENDED_PRESENT) != 0 && value.length >= offset + 2) {
+                mLastEnergyExpended = readUInt16(value, offset);
+                offset += 2;
+            }
 
-            mLastValue = value;
-            Log.d("heartRate=" + mLastValue);
+            mRrIntervalCount = 0;
+            boolean hrvChanged = false;
+            if ((flags & FLAG_RR_INTERVALS_PRESENT) != 0) {
+                mRrIntervalsDate = System.currentTimeMillis();
+                while (value.length >= offset + 2 && mRrIntervalCount < MAX_RR_INTERVALS) {
+                    // The intervals are in 1/1024 s
+                    int rrInterval = (readUInt16(value, offset) * 1000 + 512) / 1024;
+                    offset += 2;
+                    mRrIntervals[mRrIntervalCount++] = rrInterval;
+                    hrvChanged |= mHrvCalculator.add(rrInterval);
+                }
+            }
 
-            if (mStatus != Status.CONNECTED) {
-                mStatus = Status.CONNECTED;
+            onValidMeasurement();
 
+            if (heartRate != mLastValue) {
+                mLastValue = heartRate;
                 // Inform listeners
-                mListeners.dispatch(new Dispatcher<HeartRateListener>() {
-                    @Override
-                    public void dispatch(HeartRateListener listener) {
-                        listener.onConnected();
-                    }
-                });
+                dispatch(mHeartRateChangeDispatcher);
             }
 
-            if (previousValue != mLastValue) {
+            if (mRrIntervalCount > 0) {
                 // Inform listeners
-                mListeners.dispatch(new Dispatcher<HeartRateListener>() {
-                    @Override
-                    public void dispatch(HeartRateListener listener) {
-                        listener.onHeartRateChange(mLastValue);
-                    }
-                });
+                dispatch(mRrIntervalsDispatcher);
             }
-        }
-    };
-
-    private void onDisconnect() {
-        mStatus = Status.DISCONNECTED;
-        mLastValue = -1;
-        mListeners.dispatch(new Dispatcher<HeartRateListener>() {
-            @Override
-            public void dispatch(HeartRateListener listener) {
-                listener.onDisconnected();
-            }
-        });
-    }
 
-
-    /*
-     * Service.
-     */
-
-    protected void onHeartRateServiceFound(BluetoothGattService service) {
-        Log.d();
-        for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
-            Log.d("characteristic=" + characteristic.getUuid());
-            boolean found = false;
-            if (getAssignedNumber(characteristic.getUuid()) == GATT_CHARACTERISTIC_HEART_RATE_MEASUREMENT) {
-                // Found heart read measurement characteristic
-                onHeartRateMeasurementCharacteristicFound(characteristic);
-                found = true;
-                break;
-            }
-            if (!found) {
-                onHeartRateMeasurementCharacteristicNotFound();
+            if (hrvChanged) {
+                mLastRmssd = mHrvCalculator.getRmssd();
+                mLastSdnn = mHrvCalculator.getSdnn();
+                // Inform listeners
+                dispatch(mHrvChangeDispatcher);
             }
         }
-    }
-
-    protected void onHeartRateServiceNotFound() {
-        Log.d();
-        onError();
-    }
-
-    private void onError() {
-        mListeners.dispatch(new Dispatcher<HeartRateListener>() {
-            @Override
-            public void dispatch(HeartRateListener listener) {
-                listener.onError();
-            }
-        });
-    }
-
-
-    /*
-     * Characteristic.
-     */
 
-    private void onHeartRateMeasurementCharacteristicFound(BluetoothGattCharacteristic characteristic) {
-        Log.d();
-        boolean found = false;
-        for (BluetoothGattDescriptor descriptor : characteristic.getDescriptors()) {
-            Log.d("descriptor=" + descriptor.getUuid());
-            if (getAssignedNumber(descriptor.getUuid()) == GATT_DESCRIPTOR_CLIENT_CHARACTERISTIC_CONFIGURATION) {
-                onClientCharacteristicConfigurationDescriptorFound(characteristic, descriptor);
-                found = true;
-                break;
-            }
-        }
-        if (!found) {
-            onClientCharacteristicConfigurationDescriptorNotFound();
+        @Override
+        protected void onReset() {
+            mLastValue = -1;
+            mLastEnergyExpended = -1;
+            mHrvCalculator.clear();
+            mLastRmssd = -1;
+            mLastSdnn = -1;
         }
-    }
+    };
 
-    private void onHeartRateMeasurementCharacteristicNotFound() {
-        Log.d();
-        onError();
-    }
+    private final Dispatcher<HeartRateListener> mHeartRateChangeDispatcher = new Dispatcher<HeartRateListener>() {
+        @Override
+        public void dispatch(HeartRateListener listener) {
+            listener.onHeartRateChange(mLastValue);
+        }
+    };
 
+    private final Dispatcher<HeartRateListener> mRrIntervalsDispatcher = new Dispatcher<HeartRateListener>() {
+        @Override
+        public void dispatch(HeartRateListener listener) {
+            listener.onRrIntervals(mRrIntervalsDate, mRrIntervals, mRrIntervalCount);
+        }
+    };
 
-    /*
-     * Descriptor.
-     */
+    private final Dispatcher<HeartRateListener> mHrvChangeDispatcher = new Dispatcher<HeartRateListener>() {
+        @Override
+        public void dispatch(HeartRateListener listener) {
+            listener.onHrvChange(mLastRmssd, mLastSdnn);
+        }
+    };
 
-    private void onClientCharacteristicConfigurationDescriptorFound(BluetoothGattCharacteristic characteristic, BluetoothGattDescriptor descriptor) {
-        Log.d();
-        mBluetoothGatt.setCharacteristicNotification(characteristic, true);
-        descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-        mBluetoothGatt.writeDescriptor(descriptor);
+    @Override
+    public boolean isConnected() {
+        return mSensor.isConnected();
     }
 
-    private void onClientCharacteristicConfigurationDescriptorNotFound() {
-        Log.d();
-        onError();
+    @Override
+    public boolean isConnecting() {
+        return mSensor.isConnecting();
     }
 
-
-    /*
-     * Helpers.
-     */
-
-    private static int getAssignedNumber(UUID uuid) {
-        // Keep only the significant bits of the UUID
-        return (int) ((uuid.getMostSignificantBits() & 0x0000FFFF00000000L) >> 32);
+    @Override
+    public int getLastValue() {
+        return mLastValue;
     }
 
     @Override
-    public boolean isConnected() {
-        return mStatus == Status.CONNECTED;
+    public float getLastRmssd() {
+        return mLastRmssd;
     }
 
     @Override
-    public boolean isConnecting() {
-        return mStatus == Status.CONNECTING;
+    public float getLastSdnn() {
+        return mLastSdnn;
     }
 
     @Override
-    public int getLastValue() {
-        return mLastValue;
+    public int getLastEnergyExpended() {
+        return mLastEnergyExpended;
     }
 
     @Override
     public void disconnect() {
-        Log.d();
-        if (mBluetoothGatt != null) {
-            mBluetoothGatt.close();
-            mBluetoothGatt.disconnect();
-            mBluetoothGatt = null;
-        }
-        mBluetoothDevice = null;
-        onDisconnect();
+        mSensor.disconnect();
     }
 }
@@ -0,0 +1,162 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.heartrate;
+
+/**
+ * Computes the heart rate variability (RMSSD and SDNN) over a sliding window of RR intervals, ignoring the ectopic and missed beats.<br/>
+ * Each interval is compared to the last accepted one, so that the compensatory pause following a premature beat is rejected too. The successive
+ * differences are only taken between intervals that follow each other.
+ */
+public class HrvCalculator {
+    /**
+     * Duration of the window, as a sum of RR intervals.
+     */
+    private static final int WINDOW_MS = 60 * 1000;
+
+    private static final int MIN_RR_INTERVAL_MS = 300;
+    private static final int MAX_RR_INTERVAL_MS = 2000;
+
+    /**
+     * Max relative difference between two successive intervals.
+     */
+    private static final float MAX_RR_INTERVAL_CHANGE = .3f;
+
+    /**
+     * After this many intervals in a row too different from the last accepted one, the heart rate is assumed to have really changed.
+     */
+    private static final int MAX_CONSECUTIVE_REJECTS = 5;
+
+    /**
+     * Min number of intervals in the window for the values to be meaningful.
+     */
+    private static final int MIN_COUNT = 10;
+
+    private final int[] mRrIntervals;
+    /**
+     * Square of the difference with the previous interval, or {@code -1} if there is none.
+     */
+    private final long[] mSquaredDiffs;
+    private int mStart;
+    private int mSize;
+    private long mSum;
+    private long mSquareSum;
+    private long mSquaredDiffSum;
+    private int mDiffCount;
+    private int mLastAcceptedRrInterval = -1;
+    private boolean mPreviousAccepted;
+    private int mConsecutiveRejectCount;
+
+    /**
+     * @param capacity The max number of intervals kept for the window. If the heart beats more than {@code capacity} times per minute, the window
+     *            is shortened accordingly.
+     */
+    public HrvCalculator(int capacity) {
+        mRrIntervals = new int[capacity];
+        mSquaredDiffs = new long[capacity];
+    }
+
+    /**
+     * @param rrInterval An RR interval in milliseconds.
+     * @return {@code true} if the interval has been taken into account, {@code false} if it has been rejected.
+     */
+    public boolean add(int rrInterval) {
+        if (rrInterval < MIN_RR_INTERVAL_MS || rrInterval > MAX_RR_INTERVAL_MS) {
+            mPreviousAccepted = false;
+            return false;
+        }
+        if (mLastAcceptedRrInterval != -1 && Math.abs(rrInterval - mLastAcceptedRrInterval) > mLastAcceptedRrInterval * MAX_RR_INTERVAL_CHANGE) {
+            mPreviousAccepted = false;
+            mConsecutiveRejectCount++;
+            if (mConsecutiveRejectCount < MAX_CONSECUTIVE_REJECTS) return false;
+            // Start over from this interval
+        }
+
+        // Evict the intervals that are now out of the window
+        while (mSize > 0 && (mSum + rrInterval > WINDOW_MS || mSize == mRrIntervals.length)) {
+            int rr = mRrIntervals[mStart];
+            mSum -= rr;
+            mSquareSum -= (long) rr * rr;
+            if (mSquaredDiffs[mStart] != -1) {
+                mSquaredDiffSum -= mSquaredDiffs[mStart];
+                mDiffCount--;
+            }
+            mStart = (mStart + 1) % mRrIntervals.length;
+            mSize--;
+            // The new first interval has no previous interval in the window anymore
+            if (mSize > 0 && mSquaredDiffs[mStart] != -1) {
+                mSquaredDiffSum -= mSquaredDiffs[mStart];
+                mSquaredDiffs[mStart] = -1;
+                mDiffCount--;
+            }
+        }
+
+        int end = (mStart + mSize) % mRrIntervals.length;
+        mRrIntervals[end] = rrInterval;
+        if (mPreviousAccepted && mSize > 0) {
+            long diff = rrInterval - mLastAcceptedRrInterval;
+            mSquaredDiffs[end] = diff * diff;
+            mSquaredDiffSum += diff * diff;
+            mDiffCount++;
+        } else {
+            mSquaredDiffs[end] = -1;
+        }
+        mSize++;
+        mSum += rrInterval;
+        mSquareSum += (long) rrInterval * rrInterval;
+        mLastAcceptedRrInterval = rrInterval;
+        mPreviousAccepted = true;
+        mConsecutiveRejectCount = 0;
+        return true;
+    }
+
+    /**
+     * @return The root mean square of the successive differences of the window in milliseconds, or {@code -1} if there are not enough intervals.
+     */
+    public float getRmssd() {
+        if (mDiffCount < MIN_COUNT - 1) return -1;
+        return (float) Math.sqrt((double) mSquaredDiffSum / mDiffCount);
+    }
+
+    /**
+     * @return The standard deviation of the intervals of the window in milliseconds, or {@code -1} if there are not enough intervals.
+     */
+    public float getSdnn() {
+        if (mSize < MIN_COUNT) return -1;
+        double variance = (mSquareSum - (double) mSum * mSum / mSize) / (mSize - 1);
+        return (float) Math.sqrt(Math.max(variance, 0));
+    }
+
+    public void clear() {
+        mStart = 0;
+        mSize = 0;
+        mSum = 0;
+        mSquareSum = 0;
+        mSquaredDiffSum = 0;
+        mDiffCount = 0;
+        mLastAcceptedRrInterval = -1;
+        mPreviousAccepted = false;
+        mConsecutiveRejectCount = 0;
+    }
+}
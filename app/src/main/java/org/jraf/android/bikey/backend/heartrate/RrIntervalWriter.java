@@ -0,0 +1,100 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.heartrate;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+
+import org.jraf.android.bikey.backend.provider.BikeyProvider;
+import org.jraf.android.bikey.backend.provider.rrinterval.RrIntervalColumns;
+import org.jraf.android.bikey.backend.provider.rrinterval.RrIntervalContentValues;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Records the RR intervals of a ride.<br/>
+ * Intervals come at every heart beat, so they are inserted by batches, on a dedicated thread, to keep the sensor hub thread free and the number of
+ * transactions low.
+ */
+public class RrIntervalWriter {
+    private static final int BATCH_SIZE = 64;
+
+    private final Context mContext;
+    private final long mRideId;
+    private final ExecutorService mExecutorService = Executors.newSingleThreadExecutor();
+    private final ContentValues[] mBatch = new ContentValues[BATCH_SIZE];
+    private int mBatchCount;
+    private boolean mClosed;
+
+    public RrIntervalWriter(Context context, Uri rideUri) {
+        mContext = context.getApplicationContext();
+        mRideId = ContentUris.parseId(rideUri);
+    }
+
+    /**
+     * @param date The date of the end of the interval.
+     * @param rrInterval The RR interval in milliseconds.
+     */
+    public synchronized void add(long date, int rrInterval) {
+        if (mClosed) return;
+        RrIntervalContentValues values = new RrIntervalContentValues();
+        values.putRideId(mRideId);
+        values.putRecordedDate(date);
+        values.putRrInterval(rrInterval);
+        mBatch[mBatchCount++] = values.values();
+        if (mBatchCount == BATCH_SIZE) flush();
+    }
+
+    /**
+     * Write the pending intervals.
+     */
+    public synchronized void flush() {
+        if (mClosed || mBatchCount == 0) return;
+        final ContentValues[] batch = Arrays.copyOf(mBatch, mBatchCount);
+        Arrays.fill(mBatch, null);
+        mBatchCount = 0;
+        mExecutorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                int count = mContext.getContentResolver().bulkInsert(BikeyProvider.notify(RrIntervalColumns.CONTENT_URI, false), batch);
+                Log.d("Inserted " + count + " RR intervals");
+            }
+        });
+    }
+
+    /**
+     * Write the pending intervals and release the writer. The intervals added after this call are ignored.
+     */
+    public synchronized void close() {
+        flush();
+        mClosed = true;
+        mExecutorService.shutdown();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.job;
+
+import java.io.File;
+
+import android.net.Uri;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * An export or import, run in the background by the {@link JobManager}.<br/>
+ * Only the id, type, uri and imported ride are persisted: a job interrupted by the death of the process is started again from the beginning (after
+ * deleting the partially imported ride, if any). Note that an import restarted this way fails if the permission to read its uri was only granted to
+ * the previous process.
+ */
+public class Job {
+    // @formatter:off
+    public static enum Type {
+        EXPORT_GPX,
+        EXPORT_KML,
+        EXPORT_GENYMOTION,
+        EXPORT_FIT,
+        EXPORT_TCX,
+        EXPORT_DATABASE,
+        EXPORT_DATABASE_INCREMENTAL,
+        IMPORT_REPLACE,
+        IMPORT_MERGE,
+        IMPORT_TRACK,
+        ;
+
+        public boolean isExport() {
+            return this != IMPORT_REPLACE && this != IMPORT_MERGE && this != IMPORT_TRACK;
+        }
+
+        /**
+         * @return {@code true} if the job works on the whole database (these jobs must not run at the same time).
+         */
+        public boolean isDatabase() {
+            return this == EXPORT_DATABASE || this == EXPORT_DATABASE_INCREMENTAL || this == IMPORT_REPLACE || this == IMPORT_MERGE;
+        }
+    }
+
+    public static enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED,
+    }
+    // @formatter:on
+
+    private static final String JSON_ID = "id";
+    private static final String JSON_TYPE = "type";
+    private static final String JSON_URI = "uri";
+    private static final String JSON_IMPORTED_RIDE_URI = "importedRideUri";
+
+    private final long mId;
+    private final Type mType;
+    private final Uri mUri;
+
+    private volatile Status mStatus = Status.QUEUED;
+    private volatile int mProgress = -1;
+    private volatile File mExportFile;
+    private volatile Uri mImportedRideUri;
+    private volatile boolean mResultHandled;
+
+    /**
+     * @param uri The ride to export, or the file to import. {@code null} for database exports.
+     */
+    /* package */Job(long id, Type type, Uri uri) {
+        mId = id;
+        mType = type;
+        mUri = uri;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    public Uri getUri() {
+        return mUri;
+    }
+
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    /* package */void setStatus(Status status) {
+        mStatus = status;
+    }
+
+    public boolean isFinished() {
+        return mStatus == Status.SUCCEEDED || mStatus == Status.FAILED || mStatus == Status.CANCELLED;
+    }
+
+    /**
+     * @return The progress, in percent, or {@code -1} if it is unknown.
+     */
+    public int getProgress() {
+        return mProgress;
+    }
+
+    /* package */void setProgress(int progress) {
+        mProgress = progress;
+    }
+
+    /**
+     * @return The exported file, once an export has succeeded.
+     */
+    public File getExportFile() {
+        return mExportFile;
+    }
+
+    /* package */void setExportFile(File exportFile) {
+        mExportFile = exportFile;
+    }
+
+    /**
+     * @return The ride created by a track import, as soon as it has been created, or {@code null}.
+     */
+    public Uri getImportedRideUri() {
+        return mImportedRideUri;
+    }
+
+    /* package */void setImportedRideUri(Uri importedRideUri) {
+        mImportedRideUri = importedRideUri;
+    }
+
+    /**
+     * @return {@code true} if a screen has already shown the result of this job to the user (for instance by sharing the exported file), in which
+     *         case no notification is needed.
+     */
+    public boolean isResultHandled() {
+        return mResultHandled;
+    }
+
+    public void setResultHandled() {
+        mResultHandled = true;
+    }
+
+    /* package */JSONObject toJson() throws JSONException {
+        JSONObject res = new JSONObject();
+        res.put(JSON_ID, mId);
+        res.put(JSON_TYPE, mType.name());
+        if (mUri != null) res.put(JSON_URI, mUri.toString());
+        if (mImportedRideUri != null) res.put(JSON_IMPORTED_RIDE_URI, mImportedRideUri.toString());
+        return res;
+    }
+
+    /* package */static Job fromJson(JSONObject json) throws JSONException {
+        Uri uri = json.has(JSON_URI) ? Uri.parse(json.getString(JSON_URI)) : null;
+        Job res = new Job(json.getLong(JSON_ID), Type.valueOf(json.getString(JSON_TYPE)), uri);
+        if (json.has(JSON_IMPORTED_RIDE_URI)) res.mImportedRideUri = Uri.parse(json.getString(JSON_IMPORTED_RIDE_URI));
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return "Job [mId=" + mId + ", mType=" + mType + ", mUri=" + mUri + ", mStatus=" + mStatus + ", mProgress=" + mProgress + "]";
+    }
+}
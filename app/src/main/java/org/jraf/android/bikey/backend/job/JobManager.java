@@ -0,0 +1,352 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.job;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import org.jraf.android.bikey.Constants;
+import org.jraf.android.bikey.app.Application;
+import org.jraf.android.bikey.app.job.JobService;
+import org.jraf.android.bikey.backend.dbimport.DatabaseImporter;
+import org.jraf.android.bikey.backend.export.Exporter;
+import org.jraf.android.bikey.backend.export.db.DbExporter;
+import org.jraf.android.bikey.backend.export.fit.FitExporter;
+import org.jraf.android.bikey.backend.export.genymotion.GenymotionExporter;
+import org.jraf.android.bikey.backend.export.gpx.GpxExporter;
+import org.jraf.android.bikey.backend.export.kml.KmlExporter;
+import org.jraf.android.bikey.backend.export.tcx.TcxExporter;
+import org.jraf.android.bikey.backend.progress.CancelledException;
+import org.jraf.android.bikey.backend.progress.ProgressListener;
+import org.jraf.android.bikey.backend.trackimport.TrackImporter;
+import org.jraf.android.bikey.backend.trackimport.TrackImporter.RideCreatedListener;
+import org.jraf.android.util.listeners.Listeners;
+import org.jraf.android.util.listeners.Listeners.Dispatcher;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Runs the exports and imports of rides in the background, on a pool of {@link #POOL_SIZE} threads. The jobs on the whole database run one at a
+ * time, on their own thread.<br/>
+ * The queued and running jobs are saved in the preferences, so they are run again if the process dies (the {@link JobService} is sticky and calls
+ * {@link #restore()} when it is restarted).<br/>
+ * Cancellation is cooperative: a queued job is simply removed from the queue, and a running job is asked to stop (see {@link Exporter#cancel()}
+ * and {@link TrackImporter#cancel()}). Database imports run in a single transaction and can only be cancelled before they start.
+ */
+public class JobManager {
+    private static final JobManager INSTANCE = new JobManager();
+
+    public static JobManager get() {
+        return INSTANCE;
+    }
+
+    private static final int POOL_SIZE = 2;
+
+    private final Context mContext;
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+    private final ThreadPoolExecutor mDatabaseExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Listeners<JobListener> mListeners = Listeners.newInstance();
+
+    /**
+     * Queued and running jobs, in the order they have been enqueued.
+     */
+    private final Map<Long, JobRunnable> mJobs = new LinkedHashMap<Long, JobRunnable>();
+    private boolean mRestored;
+    private long mLastId;
+
+    private JobManager() {
+        mContext = Application.getApplication();
+    }
+
+    /**
+     * Add a job to the queue.
+     * 
+     * @param uri The ride to export, or the file to import. {@code null} for database exports.
+     */
+    public synchronized Job enqueue(Job.Type type, Uri uri) {
+        restore();
+        // Ids must be unique across restarts of the process
+        long id = Math.max(System.currentTimeMillis(), mLastId + 1);
+        mLastId = id;
+        Job job = new Job(id, type, uri);
+        Log.d("job=" + job);
+        submit(job);
+        save();
+        mContext.startService(new Intent(mContext, JobService.class));
+        return job;
+    }
+
+    /**
+     * Submit the jobs that were queued or running when the process last died. Does nothing if they have already been submitted.
+     */
+    public synchronized void restore() {
+        if (mRestored) return;
+        mRestored = true;
+        String jobsJson = PreferenceManager.getDefaultSharedPreferences(mContext).getString(Constants.PREF_JOBS, null);
+        if (jobsJson == null) return;
+        try {
+            JSONArray jsonArray = new JSONArray(jobsJson);
+            for (int i = 0; i < jsonArray.length(); i++) {
+                Job job = Job.fromJson(jsonArray.getJSONObject(i));
+                Log.d("Restoring " + job);
+                mLastId = Math.max(mLastId, job.getId());
+                submit(job);
+            }
+        } catch (JSONException e) {
+            Log.w("Could not restore the jobs", e);
+        }
+    }
+
+    private void submit(Job job) {
+        JobRunnable jobRunnable = new JobRunnable(job);
+        mJobs.put(job.getId(), jobRunnable);
+        getExecutor(job).execute(jobRunnable);
+        dispatchProgress(job);
+    }
+
+    private ThreadPoolExecutor getExecutor(Job job) {
+        return job.getType().isDatabase() ? mDatabaseExecutor : mExecutor;
+    }
+
+    private synchronized void save() {
+        JSONArray jsonArray = new JSONArray();
+        try {
+            for (JobRunnable jobRunnable : mJobs.values()) {
+                jsonArray.put(jobRunnable.mJob.toJson());
+            }
+        } catch (JSONException e) {
+            // Cannot happen
+            Log.w("Could not save the jobs", e);
+        }
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit().putString(Constants.PREF_JOBS, jsonArray.toString()).commit();
+    }
+
+    /**
+     * Cancel the given job. Does nothing if it is already finished.
+     */
+    public synchronized void cancel(long jobId) {
+        JobRunnable jobRunnable = mJobs.get(jobId);
+        Log.d("jobRunnable=" + jobRunnable);
+        if (jobRunnable == null) return;
+        if (getExecutor(jobRunnable.mJob).remove(jobRunnable)) {
+            // Was not started yet
+            onFinished(jobRunnable.mJob, Job.Status.CANCELLED);
+        } else {
+            jobRunnable.cancel();
+        }
+    }
+
+    /**
+     * @return The queued and running jobs, in the order they have been enqueued.
+     */
+    public synchronized List<Job> getJobs() {
+        List<Job> res = new ArrayList<Job>(mJobs.size());
+        for (JobRunnable jobRunnable : mJobs.values()) {
+            res.add(jobRunnable.mJob);
+        }
+        return res;
+    }
+
+    private synchronized void onFinished(Job job, Job.Status status) {
+        Log.d("job=" + job + " status=" + status);
+        job.setStatus(status);
+        mJobs.remove(job.getId());
+        save();
+        dispatchFinished(job);
+    }
+
+
+    /*
+     * Execution.
+     */
+
+    private class JobRunnable implements Runnable {
+        private final Job mJob;
+        private volatile boolean mCancelled;
+        private Exporter mExporter;
+        private TrackImporter mTrackImporter;
+
+        public JobRunnable(Job job) {
+            mJob = job;
+        }
+
+        @Override
+        public void run() {
+            mJob.setStatus(Job.Status.RUNNING);
+            dispatchProgress(mJob);
+            Job.Status status;
+            try {
+                if (mCancelled) throw new CancelledException();
+                if (mJob.getType().isExport()) {
+                    export();
+                } else {
+                    importFile();
+                }
+                status = Job.Status.SUCCEEDED;
+            } catch (CancelledException e) {
+                status = Job.Status.CANCELLED;
+            } catch (Throwable t) {
+                Log.w("Job failed: " + mJob, t);
+                status = Job.Status.FAILED;
+            }
+            onFinished(mJob, status);
+        }
+
+        private void export() throws Exception {
+            Exporter exporter = newExporter(mJob.getType(), mJob.getUri());
+            exporter.setProgressListener(mProgressListener);
+            synchronized (this) {
+                mExporter = exporter;
+                if (mCancelled) exporter.cancel();
+            }
+            exporter.exportCached();
+            mJob.setExportFile(exporter.getExportFile());
+        }
+
+        private void importFile() throws Exception {
+            if (mJob.getType() != Job.Type.IMPORT_TRACK) {
+                DatabaseImporter.importDatabase(mContext, mJob.getUri(), mJob.getType() == Job.Type.IMPORT_MERGE);
+                return;
+            }
+            if (mJob.getImportedRideUri() != null) {
+                // Interrupted by the death of the process: start again from scratch
+                TrackImporter.deleteRide(mContext, mJob.getImportedRideUri());
+                mJob.setImportedRideUri(null);
+                save();
+            }
+            TrackImporter trackImporter = TrackImporter.newInstance(mContext, mJob.getUri());
+            if (trackImporter == null) throw new IOException("Not a GPX, TCX or FIT file: " + mJob.getUri());
+            trackImporter.setRideCreatedListener(new RideCreatedListener() {
+                @Override
+                public void onRideCreated(Uri rideUri) {
+                    mJob.setImportedRideUri(rideUri);
+                    save();
+                }
+            });
+            synchronized (this) {
+                mTrackImporter = trackImporter;
+                if (mCancelled) trackImporter.cancel();
+            }
+            trackImporter.importTrack(mProgressListener);
+        }
+
+        public synchronized void cancel() {
+            mCancelled = true;
+            if (mExporter != null) mExporter.cancel();
+            if (mTrackImporter != null) mTrackImporter.cancel();
+        }
+
+        /**
+         * Only dispatches when the percentage changes, to avoid flooding the main thread (and the notification manager).
+         */
+        private final ProgressListener mProgressListener = new ProgressListener() {
+            @Override
+            public void onProgress(long progress, long max) {
+                int percent = max <= 0 ? -1 : (int) (progress * 100 / max);
+                if (percent == mJob.getProgress()) return;
+                mJob.setProgress(percent);
+                dispatchProgress(mJob);
+            }
+        };
+    }
+
+    private static Exporter newExporter(Job.Type type, Uri rideUri) {
+        switch (type) {
+            case EXPORT_GPX:
+                return new GpxExporter(rideUri);
+            case EXPORT_KML:
+                return new KmlExporter(rideUri);
+            case EXPORT_GENYMOTION:
+                return new GenymotionExporter(rideUri);
+            case EXPORT_FIT:
+                return new FitExporter(rideUri);
+            case EXPORT_TCX:
+                return new TcxExporter(rideUri);
+            case EXPORT_DATABASE:
+                return new DbExporter(false);
+            case EXPORT_DATABASE_INCREMENTAL:
+                return new DbExporter(true);
+            default:
+                throw new IllegalArgumentException("Not an export: " + type);
+        }
+    }
+
+
+    /*
+     * Listeners.
+     */
+
+    public void addListener(JobListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(JobListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void dispatchProgress(final Job job) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListeners.dispatch(new Dispatcher<JobListener>() {
+                    @Override
+                    public void dispatch(JobListener listener) {
+                        listener.onJobProgress(job);
+                    }
+                });
+            }
+        });
+    }
+
+    private void dispatchFinished(final Job job) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListeners.dispatch(new Dispatcher<JobListener>() {
+                    @Override
+                    public void dispatch(JobListener listener) {
+                        listener.onJobFinished(job);
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.location;
+
+/**
+ * Computes the gradient of the road as the least-squares slope of the elevation against the distance, over a trailing distance.
+ */
+public class GradientCalculator {
+    public static final float DEFAULT_WINDOW_DISTANCE_M = 100;
+
+    private static final int CAPACITY = 256;
+
+    /**
+     * Points closer than this to the previous one are not added (they would give too much weight to the stops).
+     */
+    private static final double MIN_STEP_M = 1;
+
+    /**
+     * The gradient is only known when the points span at least this fraction of the window.
+     */
+    private static final double MIN_SPAN_FRACTION = .5;
+
+    private static final int MIN_POINT_COUNT = 3;
+
+    private final double mWindowDistance;
+
+    private final double[] mDistances = new double[CAPACITY];
+    private final double[] mElevations = new double[CAPACITY];
+    private int mHead;
+    private int mCount;
+    private int mAddedSinceRebase;
+
+    private double mOrigin;
+    private double mDistance;
+    private double mLastPointDistance;
+
+    private double mSumD;
+    private double mSumE;
+    private double mSumDD;
+    private double mSumDE;
+
+    /**
+     * @param windowDistance The trailing distance over which the gradient is computed, in meters.
+     */
+    public GradientCalculator(float windowDistance) {
+        mWindowDistance = windowDistance;
+    }
+
+    public GradientCalculator() {
+        this(DEFAULT_WINDOW_DISTANCE_M);
+    }
+
+    /**
+     * Add a point.
+     *
+     * @param distance The distance traveled since the previous point, in meters.
+     * @param elevation The elevation at this point, in meters.
+     */
+    public void add(float distance, double elevation) {
+        mDistance += distance;
+        if (mCount > 0 && mDistance - mLastPointDistance < MIN_STEP_M) return;
+        mLastPointDistance = mDistance;
+
+        // Make room, and remove the points that are now out of the window
+        if (mCount == CAPACITY) removeOldest();
+        while (mCount > 0 && mDistance - (mOrigin + mDistances[mHead]) > mWindowDistance) {
+            removeOldest();
+        }
+
+        double d = mDistance - mOrigin;
+        int index = (mHead + mCount) % CAPACITY;
+        mDistances[index] = d;
+        mElevations[index] = elevation;
+        mCount++;
+        mSumD += d;
+        mSumE += elevation;
+        mSumDD += d * d;
+        mSumDE += d * elevation;
+
+        mAddedSinceRebase++;
+        if (mAddedSinceRebase == CAPACITY) rebase();
+    }
+
+    /**
+     * @return The current gradient, as a fraction of 1 (positive means going up), or {@code null} if it is not known yet.
+     */
+    public Float getGradient() {
+        if (mCount < MIN_POINT_COUNT) return null;
+        double span = mDistances[(mHead + mCount - 1) % CAPACITY] - mDistances[mHead];
+        if (span < mWindowDistance * MIN_SPAN_FRACTION) return null;
+        double denominator = mCount * mSumDD - mSumD * mSumD;
+        if (denominator <= 0) return null;
+        return (float) ((mCount * mSumDE - mSumD * mSumE) / denominator);
+    }
+
+    /**
+     * Forget all the points.
+     */
+    public void reset() {
+        mHead = 0;
+        mCount = 0;
+        mAddedSinceRebase = 0;
+        mOrigin = 0;
+        mDistance = 0;
+        mLastPointDistance = 0;
+        mSumD = 0;
+        mSumE = 0;
+        mSumDD = 0;
+        mSumDE = 0;
+    }
+
+
+    /*
+     * Helpers.
+     */
+
+    private void removeOldest() {
+        double d = mDistances[mHead];
+        double elevation = mElevations[mHead];
+        mSumD -= d;
+        mSumE -= elevation;
+        mSumDD -= d * d;
+        mSumDE -= d * elevation;
+        mHead = (mHead + 1) % CAPACITY;
+        mCount--;
+    }
+
+    /**
+     * Make the distances relative to the oldest point, and recompute the sums from scratch (this removes the accumulated rounding errors).
+     */
+    private void rebase() {
+        mAddedSinceRebase = 0;
+        double shift = mDistances[mHead];
+        mOrigin += shift;
+        mSumD = 0;
+        mSumE = 0;
+        mSumDD = 0;
+        mSumDE = 0;
+        for (int i = 0; i < mCount; i++) {
+            int index = (mHead + i) % CAPACITY;
+            double d = mDistances[index] - shift;
+            double elevation = mElevations[index];
+            mDistances[index] = d;
+            mSumD += d;
+            mSumE += elevation;
+            mSumDD += d * d;
+            mSumDE += d * elevation;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.location;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Bundle;
+
+import org.jraf.android.bikey.backend.barometer.BarometerManager;
+
+/**
+ * Live gradient of the road, computed by a {@link GradientCalculator} from the location updates.
+ */
+public class GradientMeter implements LocationListener {
+    /**
+     * The barometric altitude is precise to about 1 meter, so a shorter window can be used, which makes the gradient more responsive.
+     */
+    private static final float WINDOW_DISTANCE_BAROMETER_M = 50;
+
+    private final GradientCalculator mGradientCalculator;
+    private Location mLastLocation = null;
+
+    /**
+     * @param windowDistance The trailing distance over which the gradient is computed, in meters.
+     */
+    public GradientMeter(float windowDistance) {
+        mGradientCalculator = new GradientCalculator(windowDistance);
+    }
+
+    /**
+     * Use the window returned by {@link #getDefaultWindowDistance()}.
+     */
+    public GradientMeter() {
+        this(getDefaultWindowDistance());
+    }
+
+    /**
+     * @return A window adapted to the precision of the altitude: shorter if there is a barometer.
+     */
+    public static float getDefaultWindowDistance() {
+        return BarometerManager.get().hasBarometer() ? WINDOW_DISTANCE_BAROMETER_M : GradientCalculator.DEFAULT_WINDOW_DISTANCE_M;
+    }
+
+    public void startListening() {
+        mGradientCalculator.reset();
+        mLastLocation = null;
+        LocationManager.get().addLocationListener(this);
+    }
+
+    public void stopListening() {
+        LocationManager.get().removeLocationListener(this);
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        if (!location.hasAltitude()) return;
+        float distance = mLastLocation == null ? 0 : new LocationPair(mLastLocation, location).getDistance();
+        mGradientCalculator.add(distance, location.getAltitude());
+        mLastLocation = location;
+    }
+
+    /**
+     * @return The current gradient, as a fraction of 1 (positive means going up), or {@code null} if it is not known yet.
+     */
+    public Float getGradient() {
+        return mGradientCalculator.getGradient();
+    }
+
+    @Override
+    public void onStatusChanged(String provider, int status, Bundle extras) {}
+
+    @Override
+    public void onProviderEnabled(String provider) {}
+
+    @Override
+    public void onProviderDisabled(String provider) {}
+}
@@ -0,0 +1,194 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.location;
+
+import android.location.Location;
+
+import org.jraf.android.bikey.util.LocationUtil;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Decides the interval at which the location fixes should be requested: fast in turns, slower in straight lines, slowest when stationary.
+ */
+public class LocationIntervalScheduler {
+    private static final double EARTH_RADIUS_M = 6371009;
+
+    public static final int INTERVAL_FAST_MS = 1000;
+    public static final int INTERVAL_CRUISING_MS = 2000;
+    public static final int INTERVAL_CRUISING_SCREEN_OFF_MS = 3000;
+    public static final int INTERVAL_STATIONARY_MS = 5000;
+
+    /**
+     * Number of consecutive fixes under {@link LocationManager#SPEED_MIN_THRESHOLD_M_S} to consider the rider stationary.
+     */
+    private static final int STATIONARY_FIX_COUNT = 5;
+
+    /**
+     * Number of consecutive fixes without a turn to consider the rider cruising in a straight line.
+     */
+    private static final int STRAIGHT_FIX_COUNT = 5;
+
+    /**
+     * A change of bearing above this rate is considered a turn.
+     */
+    private static final float TURN_RATE_DEG_S = 10;
+
+    /**
+     * Below this speed, the bearing is too noisy to detect turns.
+     */
+    private static final float BEARING_MIN_SPEED_M_S = 8 / 3.6f;
+
+    private boolean mScreenOn = true;
+    private boolean mHasLast;
+    private long mLastDate;
+    private double mLastLat;
+    private double mLastLon;
+    private boolean mHasLastBearing;
+    private float mLastBearing;
+    private int mStationaryCount;
+    private int mStraightCount;
+    private int mInterval = INTERVAL_FAST_MS;
+
+    /**
+     * Feed a new fix to the scheduler.
+     *
+     * @return The interval at which the next fixes should be requested, in milliseconds.
+     */
+    public int onLocationChanged(Location location) {
+        long date = LocationUtil.getMonotonicTime(location);
+        if (!mHasLast || date <= mLastDate) {
+            setLast(location, date);
+            return mInterval;
+        }
+        float dt = (date - mLastDate) / 1000f;
+
+        float speed;
+        float bearing = 0;
+        boolean hasBearing = false;
+        if (location.hasSpeed()) {
+            speed = location.getSpeed();
+        } else {
+            speed = distanceFromLast(location) / dt;
+        }
+        if (speed >= BEARING_MIN_SPEED_M_S) {
+            hasBearing = true;
+            bearing = location.hasBearing() ? location.getBearing() : bearingFromLast(location);
+        }
+
+        if (speed < LocationManager.SPEED_MIN_THRESHOLD_M_S) {
+            mStationaryCount++;
+            mStraightCount = 0;
+        } else {
+            mStationaryCount = 0;
+            if (hasBearing && mHasLastBearing && Math.abs(getBearingDiff(mLastBearing, bearing)) / dt < TURN_RATE_DEG_S) {
+                mStraightCount++;
+            } else {
+                mStraightCount = 0;
+            }
+        }
+        mHasLastBearing = hasBearing;
+        mLastBearing = bearing;
+        setLast(location, date);
+
+        int interval;
+        if (mStationaryCount >= STATIONARY_FIX_COUNT) {
+            interval = INTERVAL_STATIONARY_MS;
+        } else if (mStationaryCount > 0) {
+            // Slowing down: keep the current rate until we know for sure
+            interval = mInterval;
+        } else if (mStraightCount >= STRAIGHT_FIX_COUNT) {
+            interval = mScreenOn ? INTERVAL_CRUISING_MS : INTERVAL_CRUISING_SCREEN_OFF_MS;
+        } else {
+            interval = INTERVAL_FAST_MS;
+        }
+        if (interval != mInterval) {
+            Log.d("interval " + mInterval + " -> " + interval);
+            mInterval = interval;
+        }
+        return mInterval;
+    }
+
+    public void setScreenOn(boolean screenOn) {
+        mScreenOn = screenOn;
+        if (mInterval == INTERVAL_CRUISING_MS || mInterval == INTERVAL_CRUISING_SCREEN_OFF_MS) {
+            mInterval = screenOn ? INTERVAL_CRUISING_MS : INTERVAL_CRUISING_SCREEN_OFF_MS;
+        }
+    }
+
+    /**
+     * @return The interval at which the fixes should be requested, in milliseconds.
+     */
+    public int getInterval() {
+        return mInterval;
+    }
+
+    /**
+     * Forget the previous fixes, and go back to the fastest rate.
+     */
+    public void reset() {
+        mHasLast = false;
+        mHasLastBearing = false;
+        mStationaryCount = 0;
+        mStraightCount = 0;
+        mInterval = INTERVAL_FAST_MS;
+    }
+
+
+    /*
+     * Helpers.
+     */
+
+    private void setLast(Location location, long date) {
+        mHasLast = true;
+        mLastDate = date;
+        mLastLat = location.getLatitude();
+        mLastLon = location.getLongitude();
+    }
+
+    private float distanceFromLast(Location location) {
+        // Equirectangular approximation: precise enough for a few meters, and much cheaper than Location.distanceBetween
+        double latRad = Math.toRadians((mLastLat + location.getLatitude()) / 2);
+        double dx = Math.toRadians(location.getLongitude() - mLastLon) * Math.cos(latRad);
+        double dy = Math.toRadians(location.getLatitude() - mLastLat);
+        return (float) (Math.sqrt(dx * dx + dy * dy) * EARTH_RADIUS_M);
+    }
+
+    private float bearingFromLast(Location location) {
+        double latRad = Math.toRadians((mLastLat + location.getLatitude()) / 2);
+        double dx = (location.getLongitude() - mLastLon) * Math.cos(latRad);
+        double dy = location.getLatitude() - mLastLat;
+        return (float) Math.toDegrees(Math.atan2(dx, dy));
+    }
+
+    /**
+     * @return The signed difference between two bearings, in [-180, 180].
+     */
+    private static float getBearingDiff(float from, float to) {
+        float diff = (to - from) % 360;
+        if (diff > 180) diff -= 360;
+        if (diff < -180) diff += 360;
+        return diff;
+    }
+}
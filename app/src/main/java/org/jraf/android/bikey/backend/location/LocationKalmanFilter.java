@@ -0,0 +1,172 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.location;
+
+import android.location.Location;
+
+import org.jraf.android.bikey.util.LocationUtil;
+
+/**
+ * Constant velocity Kalman filter for the location fixes.<br/>
+ * Positions are projected on a local plane (meters east and north of an origin close to the rider). Both axes share the same model and the same
+ * measurement noise (the accuracy of each fix), so they share the same 2x2 covariance matrix: the whole state is a few fields, updated in place,
+ * without any allocation.<br/>
+ * The filtered position and bearing are written back into the given {@link Location}. Its speed is left alone: the one measured by the receiver
+ * (Doppler) is more precise, and without it the speed is computed from the filtered positions (see {@link LocationPair#getSpeed()}).
+ */
+public class LocationKalmanFilter {
+    private static final double EARTH_RADIUS_M = 6371009;
+
+    /**
+     * Standard deviation of the acceleration, in m/s². A bike does not accelerate (or brake) much harder than that.
+     */
+    private static final double ACCELERATION_NOISE = 1;
+
+    /**
+     * Accuracy used for the fixes that don't have one.
+     */
+    private static final float DEFAULT_ACCURACY_M = 10;
+
+    /**
+     * After a gap longer than this, the state is reset to the new fix.
+     */
+    private static final long MAX_GAP_MS = 10 * 1000;
+
+    /**
+     * The origin of the local plane is moved when the rider gets farther than this from it, to keep the projection error low.
+     */
+    private static final double MAX_DISTANCE_FROM_ORIGIN_M = 5000;
+
+    /**
+     * Below this speed the bearing is meaningless and is not reported.
+     */
+    private static final float BEARING_MIN_SPEED_M_S = LocationManager.SPEED_MIN_THRESHOLD_M_S;
+
+    private boolean mInitialized;
+    private long mLastDate;
+
+    // Origin of the local plane
+    private double mOriginLat;
+    private double mOriginLon;
+    private double mMetersPerDegreeLat;
+    private double mMetersPerDegreeLon;
+
+    // State: position (m) and velocity (m/s) on each axis
+    private double mX;
+    private double mVx;
+    private double mY;
+    private double mVy;
+
+    // Covariance, shared by both axes: [[mP00, mP01], [mP01, mP11]]
+    private double mP00;
+    private double mP01;
+    private double mP11;
+
+    /**
+     * Feed a new fix to the filter, and replace its position and bearing by the filtered ones.
+     */
+    public void filter(Location location) {
+        long date = LocationUtil.getMonotonicTime(location);
+        double accuracy = location.hasAccuracy() ? location.getAccuracy() : DEFAULT_ACCURACY_M;
+        double measurementVariance = accuracy * accuracy;
+        long dateDiff = date - mLastDate;
+        if (!mInitialized || dateDiff <= 0 || dateDiff > MAX_GAP_MS) {
+            reset(location, measurementVariance);
+            return;
+        }
+        mLastDate = date;
+
+        // Predict
+        double dt = dateDiff / 1000d;
+        mX += mVx * dt;
+        mY += mVy * dt;
+        double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+        double dt2 = dt * dt;
+        double p00 = mP00 + 2 * dt * mP01 + dt2 * mP11 + q * dt2 * dt2 / 4;
+        double p01 = mP01 + dt * mP11 + q * dt2 * dt / 2;
+        double p11 = mP11 + q * dt2;
+
+        // Update with the measured position
+        double k0 = p00 / (p00 + measurementVariance);
+        double k1 = p01 / (p00 + measurementVariance);
+        double innovationX = (location.getLongitude() - mOriginLon) * mMetersPerDegreeLon - mX;
+        double innovationY = (location.getLatitude() - mOriginLat) * mMetersPerDegreeLat - mY;
+        mX += k0 * innovationX;
+        mVx += k1 * innovationX;
+        mY += k0 * innovationY;
+        mVy += k1 * innovationY;
+        mP00 = (1 - k0) * p00;
+        mP01 = (1 - k0) * p01;
+        mP11 = p11 - k1 * p01;
+
+        if (Math.abs(mX) > MAX_DISTANCE_FROM_ORIGIN_M || Math.abs(mY) > MAX_DISTANCE_FROM_ORIGIN_M) {
+            setOrigin(mOriginLat + mY / mMetersPerDegreeLat, mOriginLon + mX / mMetersPerDegreeLon);
+            mX = 0;
+            mY = 0;
+        }
+
+        // Publish
+        location.setLatitude(mOriginLat + mY / mMetersPerDegreeLat);
+        location.setLongitude(mOriginLon + mX / mMetersPerDegreeLon);
+        location.setAccuracy((float) Math.sqrt(mP00));
+        // The bearing measured by the receiver (Doppler), if any, is more precise than the filtered one: keep it
+        if (location.hasSpeed()) return;
+        float speed = (float) Math.sqrt(mVx * mVx + mVy * mVy);
+        if (speed >= BEARING_MIN_SPEED_M_S) {
+            float bearing = (float) Math.toDegrees(Math.atan2(mVx, mVy));
+            location.setBearing(bearing < 0 ? bearing + 360 : bearing);
+        } else {
+            location.removeBearing();
+        }
+    }
+
+    /**
+     * Forget the current state. The next fix will be used as is.
+     */
+    public void reset() {
+        mInitialized = false;
+    }
+
+    private void reset(Location location, double measurementVariance) {
+        mInitialized = true;
+        mLastDate = LocationUtil.getMonotonicTime(location);
+        setOrigin(location.getLatitude(), location.getLongitude());
+        mX = 0;
+        mY = 0;
+        mVx = 0;
+        mVy = 0;
+        mP00 = measurementVariance;
+        mP01 = 0;
+        // Unknown speed: anything up to ~50 km/h
+        mP11 = 15 * 15;
+    }
+
+    private void setOrigin(double lat, double lon) {
+        mOriginLat = lat;
+        mOriginLon = lon;
+        mMetersPerDegreeLat = Math.toRadians(EARTH_RADIUS_M);
+        mMetersPerDegreeLon = mMetersPerDegreeLat * Math.cos(Math.toRadians(lat));
+    }
+}
@@ -24,13 +24,20 @@
  */
 package org.jraf.android.bikey.backend.location;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.location.Location;
 import android.location.LocationListener;
 import android.os.Bundle;
 import android.os.Handler;
+import android.preference.PreferenceManager;
 
+import org.jraf.android.bikey.Constants;
 import org.jraf.android.bikey.app.Application;
+import org.jraf.android.bikey.backend.barometer.BarometerManager;
+import org.jraf.android.bikey.util.LocationUtil;
 import org.jraf.android.util.handler.HandlerUtil;
 import org.jraf.android.util.listeners.Listeners;
 import org.jraf.android.util.listeners.Listeners.Dispatcher;
@@ -47,7 +54,6 @@ public class LocationManager {
 
     private static final LocationManager INSTANCE = new LocationManager();
 
-    private static final int INTERVAL_LOC_REQUEST = 1000;
     private static final int ALLOWED_LOC_MISSES = 8;
 
     protected static final float ACCURACY_THRESHOLD_M = 20;
@@ -69,6 +75,17 @@ public class LocationManager {
     private Handler mHandler;
     private boolean mActive = false;
     private int mIgnoreLocationCount = IGNORE_LOCATION_COUNT;
+    private final LocationOutlierFilter mOutlierFilter = new LocationOutlierFilter();
+    private final LocationKalmanFilter mLocationFilter = new LocationKalmanFilter();
+    private volatile boolean mFilterLocations;
+    private final LocationIntervalScheduler mIntervalScheduler = new LocationIntervalScheduler();
+
+    /*
+     * Only accessed from the main thread.
+     */
+    private boolean mLocationRequested;
+    private boolean mStatusRequested;
+    private int mRequestedInterval;
 
     private LocationManager() {
         mContext = Application.getApplication();
@@ -104,12 +121,17 @@ public class LocationManager {
     private void startLocationListener() {
         Log.d();
         mIgnoreLocationCount = IGNORE_LOCATION_COUNT;
+        mFilterLocations = PreferenceManager.getDefaultSharedPreferences(mContext).getBoolean(Constants.PREF_FILTER_LOCATIONS,
+                Constants.PREF_FILTER_LOCATIONS_DEFAULT);
+        mOutlierFilter.reset();
+        mLocationFilter.reset();
         HandlerUtil.getMainHandler().post(new Runnable() {
             @Override
             public void run() {
-                android.location.LocationManager locationManager = (android.location.LocationManager) mContext.getSystemService(Context.LOCATION_SERVICE);
-                locationManager.removeUpdates(mGpsLocationListener);
-                locationManager.requestLocationUpdates(android.location.LocationManager.GPS_PROVIDER, INTERVAL_LOC_REQUEST, 0, mGpsLocationListener);
+                // Calibrate the barometric altitude from now on
+                BarometerManager.get().startListening();
+                mLocationRequested = true;
+                updateGpsRequest();
             }
         });
     }
@@ -119,12 +141,63 @@ public class LocationManager {
         HandlerUtil.getMainHandler().post(new Runnable() {
             @Override
             public void run() {
-                android.location.LocationManager locationManager = (android.location.LocationManager) mContext.getSystemService(Context.LOCATION_SERVICE);
-                locationManager.removeUpdates(mGpsLocationListener);
+                BarometerManager.get().stopListening();
+                mLocationRequested = false;
+                updateGpsRequest();
             }
         });
     }
 
+
+    /*
+     * Gps request.
+     */
+
+    /**
+     * Start, stop or change the single GPS request shared by the location and the status listeners, according to who needs it and to the
+     * interval decided by the {@link LocationIntervalScheduler}.<br/>
+     * Must be called from the main thread.
+     */
+    private void updateGpsRequest() {
+        android.location.LocationManager locationManager = (android.location.LocationManager) mContext.getSystemService(Context.LOCATION_SERVICE);
+        if (!mLocationRequested && !mStatusRequested) {
+            if (mRequestedInterval != 0) {
+                Log.d("Stop gps request");
+                locationManager.removeUpdates(mGpsLocationListener);
+                mContext.unregisterReceiver(mScreenReceiver);
+                mRequestedInterval = 0;
+            }
+            return;
+        }
+
+        if (mRequestedInterval == 0) {
+            mIntervalScheduler.reset();
+            android.os.PowerManager powerManager = (android.os.PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+            mIntervalScheduler.setScreenOn(powerManager.isScreenOn());
+            IntentFilter intentFilter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+            intentFilter.addAction(Intent.ACTION_SCREEN_OFF);
+            mContext.registerReceiver(mScreenReceiver, intentFilter);
+        }
+
+        int interval = mIntervalScheduler.getInterval();
+        if (interval != mRequestedInterval) {
+            Log.d("Request gps updates every " + interval + " ms");
+            locationManager.removeUpdates(mGpsLocationListener);
+            locationManager.requestLocationUpdates(android.location.LocationManager.GPS_PROVIDER, interval, 0, mGpsLocationListener);
+            mRequestedInterval = interval;
+        }
+    }
+
+    private BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            boolean screenOn = Intent.ACTION_SCREEN_ON.equals(intent.getAction());
+            Log.d("screenOn=" + screenOn);
+            mIntervalScheduler.setScreenOn(screenOn);
+            updateGpsRequest();
+        }
+    };
+
     private android.location.LocationListener mGpsLocationListener = new android.location.LocationListener() {
         @Override
         public void onStatusChanged(String provider, int status, Bundle extras) {
@@ -143,10 +216,25 @@ public class LocationManager {
 
         @Override
         public void onLocationChanged(Location location) {
+            // Keep the monotonic timestamp of the fix if the provider gave a sane one, otherwise use the reception time
+            long nowNanos = LocationUtil.elapsedRealtimeNanos();
+            long fixNanos = LocationUtil.getElapsedRealtimeNanos(location);
+            if (fixNanos <= 0 || fixNanos > nowNanos) {
+                fixNanos = nowNanos;
+                LocationUtil.setElapsedRealtimeNanos(location, fixNanos);
+            }
+
             // For some reason, the time seems to have a 1 second precision.
-            // Use the system time instead.
-            location.setTime(System.currentTimeMillis());
-            mLocationListener.onLocationChanged(location);
+            // Derive it from the system time and the age of the fix instead.
+            location.setTime(System.currentTimeMillis() - (nowNanos - fixNanos) / 1000000);
+
+            onGpsFix();
+
+            // Adapt the rate of the next fixes
+            mIntervalScheduler.onLocationChanged(location);
+            updateGpsRequest();
+
+            if (mLocationRequested) mLocationListener.onLocationChanged(location);
         }
     };
 
@@ -165,6 +253,16 @@ public class LocationManager {
                 return;
             }
 
+            // Drop the GPS glitches before they reach the filter, the listeners and the database
+            if (!mOutlierFilter.accept(location)) return;
+
+            // Replace the jittery GPS altitude with the barometric one (if available). This must be done before the filter, which replaces the
+            // accuracy of the fix with its own (much smaller) one, whereas the calibration needs the accuracy of the GPS.
+            BarometerManager.get().fuseAltitude(location);
+
+            // Smooth the position, and get the speed and bearing from the filter
+            if (mFilterLocations) mLocationFilter.filter(location);
+
             // Dispatch to listeners
             mLocationListeners.dispatch(new Dispatcher<LocationListener>() {
                 @Override
@@ -217,9 +315,8 @@ public class LocationManager {
         HandlerUtil.getMainHandler().post(new Runnable() {
             @Override
             public void run() {
-                android.location.LocationManager locationManager = (android.location.LocationManager) mContext.getSystemService(Context.LOCATION_SERVICE);
-                locationManager.removeUpdates(mGpsStatusLocationListener);
-                locationManager.requestLocationUpdates(android.location.LocationManager.GPS_PROVIDER, INTERVAL_LOC_REQUEST, 0, mGpsStatusLocationListener);
+                mStatusRequested = true;
+                updateGpsRequest();
             }
         });
     }
@@ -229,39 +326,28 @@ public class LocationManager {
         HandlerUtil.getMainHandler().post(new Runnable() {
             @Override
             public void run() {
-                android.location.LocationManager locationManager = (android.location.LocationManager) mContext.getSystemService(Context.LOCATION_SERVICE);
-                locationManager.removeUpdates(mGpsStatusLocationListener);
+                mStatusRequested = false;
+                updateGpsRequest();
             }
         });
     }
 
-    private android.location.LocationListener mGpsStatusLocationListener = new android.location.LocationListener() {
-        @Override
-        public void onStatusChanged(String provider, int status, Bundle extras) {
-            Log.d("status=" + status);
-        }
-
-        @Override
-        public void onProviderEnabled(String provider) {
-            Log.d("provider=" + provider);
-        }
+    private void onGpsFix() {
+        mLastFixDate = System.currentTimeMillis();
+        // We just received a fix so we're active
+        setActive(true);
 
-        @Override
-        public void onProviderDisabled(String provider) {
-            Log.d("provider=" + provider);
-        }
-
-        @Override
-        public void onLocationChanged(Location location) {
-            mLastFixDate = System.currentTimeMillis();
-            // We just received a fix so we're active
-            setActive(true);
+        // Schedule to check if we're still active
+        getHandler().removeCallbacks(mCheckForActiveRunnable);
+        getHandler().postDelayed(mCheckForActiveRunnable, getAllowedFixDelay());
+    }
 
-            // Schedule to check if we're still active
-            getHandler().removeCallbacks(mCheckForActiveRunnable);
-            getHandler().postDelayed(mCheckForActiveRunnable, INTERVAL_LOC_REQUEST * ALLOWED_LOC_MISSES);
-        }
-    };
+    /**
+     * @return The delay after which we consider that the gps is no longer active if we haven't received any fix.
+     */
+    private long getAllowedFixDelay() {
+        return Math.max(mRequestedInterval, LocationIntervalScheduler.INTERVAL_FAST_MS) * ALLOWED_LOC_MISSES;
+    }
 
     private Handler getHandler() {
         if (mHandler == null) {
@@ -273,7 +359,7 @@ public class LocationManager {
     protected Runnable mCheckForActiveRunnable = new Runnable() {
         @Override
         public void run() {
-            if (System.currentTimeMillis() - mLastFixDate >= INTERVAL_LOC_REQUEST * ALLOWED_LOC_MISSES) {
+            if (System.currentTimeMillis() - mLastFixDate >= getAllowedFixDelay()) {
                 setActive(false);
             }
         }
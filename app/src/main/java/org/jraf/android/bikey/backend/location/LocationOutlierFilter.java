@@ -0,0 +1,158 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.location;
+
+import android.location.Location;
+
+import org.jraf.android.bikey.util.LocationUtil;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Detects the location fixes that are GPS glitches, by comparing each fix to the last accepted one.
+ */
+public class LocationOutlierFilter {
+    private static final float MAX_SPEED_M_S = 100 / 3.6f;
+    private static final float MAX_ACCELERATION_M_S2 = 4;
+
+    private static final int MEDIAN_SPEED_COUNT = 5;
+    private static final float MEDIAN_SPEED_FACTOR = 3;
+    private static final float MEDIAN_SPEED_MARGIN_M_S = 15 / 3.6f;
+
+    /**
+     * Below this speed, the heading is too noisy to be checked.
+     */
+    private static final float HEADING_MIN_SPEED_M_S = 15 / 3.6f;
+    private static final float MAX_HEADING_CHANGE_DEG = 150;
+
+    private static final int MAX_CONSECUTIVE_REJECTS = 5;
+
+    /**
+     * After a gap longer than this, the next fix is accepted as is.
+     */
+    private static final long MAX_GAP_MS = 10 * 1000;
+
+    private final float[] mDistanceResults = new float[2];
+    private final float[] mSpeeds = new float[MEDIAN_SPEED_COUNT];
+    private final float[] mSortedSpeeds = new float[MEDIAN_SPEED_COUNT];
+    private int mSpeedCount;
+    private int mSpeedIndex;
+
+    private boolean mHasLast;
+    private long mLastDate;
+    private double mLastLat;
+    private double mLastLon;
+    private float mLastAccuracy;
+    private float mLastSpeed;
+    private float mLastBearing;
+    private int mConsecutiveRejectCount;
+
+    /**
+     * @return {@code true} if the given fix is plausible, {@code false} if it should be dropped.
+     */
+    public boolean accept(Location location) {
+        long date = LocationUtil.getMonotonicTime(location);
+        if (!mHasLast || date <= mLastDate || date - mLastDate > MAX_GAP_MS) {
+            reset();
+            setLast(location, -1, -1);
+            return true;
+        }
+
+        float dt = (date - mLastDate) / 1000f;
+        Location.distanceBetween(mLastLat, mLastLon, location.getLatitude(), location.getLongitude(), mDistanceResults);
+        float distance = mDistanceResults[0];
+        float bearing = mDistanceResults[1];
+        float speed = distance / dt;
+        float slack = mLastAccuracy + (location.hasAccuracy() ? location.getAccuracy() : 0);
+        float minSpeed = Math.max(0, distance - slack) / dt;
+
+        String reason = null;
+        if (minSpeed > MAX_SPEED_M_S) {
+            reason = "speed";
+        } else if (mLastSpeed != -1 && (minSpeed - mLastSpeed) / dt > MAX_ACCELERATION_M_S2) {
+            reason = "acceleration";
+        } else if (mSpeedCount == MEDIAN_SPEED_COUNT) {
+            float median = getMedianSpeed();
+            if (minSpeed > median * MEDIAN_SPEED_FACTOR && minSpeed - median > MEDIAN_SPEED_MARGIN_M_S) reason = "median speed";
+        }
+        if (reason == null && mLastBearing != -1 && speed >= HEADING_MIN_SPEED_M_S) {
+            float headingChange = Math.abs(bearing - mLastBearing) % 360;
+            if (headingChange > 180) headingChange = 360 - headingChange;
+            if (headingChange > MAX_HEADING_CHANGE_DEG) reason = "heading";
+        }
+
+        if (reason != null) {
+            mConsecutiveRejectCount++;
+            if (mConsecutiveRejectCount < MAX_CONSECUTIVE_REJECTS) {
+                Log.d("Outlier (" + reason + ", " + speed * 3.6f + " km/h): ignore location");
+                return false;
+            }
+            Log.d("Too many outliers in a row: start over");
+            reset();
+            setLast(location, -1, -1);
+            return true;
+        }
+
+        mConsecutiveRejectCount = 0;
+        mSpeeds[mSpeedIndex] = speed;
+        mSpeedIndex = (mSpeedIndex + 1) % MEDIAN_SPEED_COUNT;
+        if (mSpeedCount < MEDIAN_SPEED_COUNT) mSpeedCount++;
+        setLast(location, speed, speed >= HEADING_MIN_SPEED_M_S ? bearing : -1);
+        return true;
+    }
+
+    /**
+     * Forget the previous fixes. The next fix will be accepted as is.
+     */
+    public void reset() {
+        mHasLast = false;
+        mSpeedCount = 0;
+        mSpeedIndex = 0;
+        mConsecutiveRejectCount = 0;
+    }
+
+    private void setLast(Location location, float speed, float bearing) {
+        mHasLast = true;
+        mLastDate = LocationUtil.getMonotonicTime(location);
+        mLastLat = location.getLatitude();
+        mLastLon = location.getLongitude();
+        mLastAccuracy = location.hasAccuracy() ? location.getAccuracy() : 0;
+        mLastSpeed = speed;
+        mLastBearing = bearing;
+    }
+
+    private float getMedianSpeed() {
+        // Insertion sort: there are only a few values
+        for (int i = 0; i < mSpeedCount; i++) {
+            float speed = mSpeeds[i];
+            int j = i - 1;
+            while (j >= 0 && mSortedSpeeds[j] > speed) {
+                mSortedSpeeds[j + 1] = mSortedSpeeds[j];
+                j--;
+            }
+            mSortedSpeeds[j + 1] = speed;
+        }
+        return mSortedSpeeds[mSpeedCount / 2];
+    }
+}
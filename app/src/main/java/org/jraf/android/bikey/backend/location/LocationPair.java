@@ -27,11 +27,15 @@ package org.jraf.android.bikey.backend.location;
 import android.location.Location;
 import android.util.Pair;
 
+import org.jraf.android.bikey.backend.provider.log.SpeedSource;
+import org.jraf.android.bikey.util.LocationUtil;
+
 public class LocationPair extends Pair<Location, Location> {
     private Float mDistance;
     private Long mDuration;
     private Double mAltitudeDiff;
     private Float mSpeed;
+    private SpeedSource mSpeedSource;
     private Float mSlope;
 
     public LocationPair(Location previousLocation, Location newLocation) {
@@ -54,7 +58,7 @@ public class LocationPair extends Pair<Location, Location> {
 
     public long getDuration() {
         if (mDuration == null) {
-            mDuration = second.getTime() - first.getTime();
+            mDuration = LocationUtil.getDuration(first, second);
         }
         return mDuration;
     }
@@ -70,19 +74,35 @@ public class LocationPair extends Pair<Location, Location> {
     }
 
     /**
-     * In meters/second.
+     * In meters/second.<br/>
+     * The speed measured by the GNSS receiver (Doppler) for the new location is used if available, since it is more precise than (and does not
+     * need) the distance between the two locations. Otherwise the speed is computed from the distance and the duration.
      */
     public float getSpeed() {
         if (mSpeed == null) {
-            if (getDuration() == 0) {
-                mSpeed = 0f;
+            if (second.hasSpeed()) {
+                mSpeed = second.getSpeed();
+                mSpeedSource = SpeedSource.DOPPLER;
             } else {
-                mSpeed = getDistance() / (getDuration() / 1000f);
+                if (getDuration() == 0) {
+                    mSpeed = 0f;
+                } else {
+                    mSpeed = getDistance() / (getDuration() / 1000f);
+                }
+                mSpeedSource = SpeedSource.POSITIONS;
             }
         }
         return mSpeed;
     }
 
+    /**
+     * @return How the value returned by {@link #getSpeed()} has been obtained: {@link SpeedSource#DOPPLER} or {@link SpeedSource#POSITIONS}.
+     */
+    public SpeedSource getSpeedSource() {
+        if (mSpeedSource == null) getSpeed();
+        return mSpeedSource;
+    }
+
     /**
      * In fraction of 1 (positive means going up, negative means going down).
      */
@@ -99,7 +119,7 @@ public class LocationPair extends Pair<Location, Location> {
 
     @Override
     public String toString() {
-        return "LocationPair [getDuration()=" + getDuration() + ", getDistance()=" + getDistance() + ", getSpeed()=" + getSpeed() + ", getAltitudeDiff()="
+        return "LocationPair [getDuration()=" + getDuration() + ", getDistance()=" + getDistance() + ", getSpeed()=" + getSpeed() + ", getSpeedSource()=" + getSpeedSource() + ", getAltitudeDiff()="
                 + getAltitudeDiff() + ", getSlope()=" + getSlope() + "]";
     }
 }
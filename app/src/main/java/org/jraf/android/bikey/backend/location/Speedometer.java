@@ -34,7 +34,8 @@ import android.os.Bundle;
 import org.jraf.android.util.log.wrapper.Log;
 
 /**
- * Keeps a log of mDistance/mDuration. The size of the log depends on the last measured speed.
+ * Keeps a log of the last location pairs, and averages their speeds (see {@link LocationPair#getSpeed()}: the Doppler speed when available, the
+ * distance/duration otherwise). The size of the log depends on the last measured speed.
  */
 public class Speedometer implements LocationListener {
     /**
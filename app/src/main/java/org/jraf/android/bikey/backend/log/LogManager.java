@@ -25,22 +25,39 @@
 package org.jraf.android.bikey.backend.log;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.location.Location;
 import android.net.Uri;
+import android.os.RemoteException;
+import android.preference.PreferenceManager;
 
+import org.jraf.android.bikey.Constants;
 import org.jraf.android.bikey.app.Application;
 import org.jraf.android.bikey.backend.location.LocationManager;
 import org.jraf.android.bikey.backend.location.LocationPair;
+import org.jraf.android.bikey.backend.power.NormalizedPowerCalculator;
+import org.jraf.android.bikey.backend.provider.BikeyProvider;
 import org.jraf.android.bikey.backend.provider.log.LogColumns;
 import org.jraf.android.bikey.backend.provider.log.LogContentValues;
 import org.jraf.android.bikey.backend.provider.log.LogCursor;
 import org.jraf.android.bikey.backend.provider.log.LogSelection;
+import org.jraf.android.bikey.backend.provider.log.SpeedSource;
+import org.jraf.android.bikey.backend.provider.ride.RideColumns;
 import org.jraf.android.bikey.backend.ride.RideManager;
+import org.jraf.android.bikey.backend.trackimport.TrackImporter;
+import org.jraf.android.bikey.util.LocationUtil;
 import org.jraf.android.util.annotation.Background;
 import org.jraf.android.util.listeners.Listeners;
 import org.jraf.android.util.listeners.Listeners.Dispatcher;
@@ -51,59 +68,287 @@ import com.google.android.gms.maps.model.LatLng;
 public class LogManager {
     private static final LogManager INSTANCE = new LogManager();
 
+    /**
+     * Logs are recorded at most about once per second, so this is plenty for a 30 s window.
+     */
+    private static final int NORMALIZED_POWER_WINDOW_CAPACITY = 128;
+
     public static LogManager get() {
         return INSTANCE;
     }
 
     private final Context mContext;
     private Listeners<LogListener> mListeners = Listeners.newInstance();
+    private final ExecutorService mCompactionExecutor = Executors.newSingleThreadExecutor();
+    /**
+     * The simplifiers that may have logs not persisted yet, by ride.
+     */
+    private final Map<Uri, TrackSimplifier> mTrackSimplifiers = new ConcurrentHashMap<Uri, TrackSimplifier>();
 
     private LogManager() {
         mContext = Application.getApplication();
     }
 
     @Background
-    public Uri add(final Uri rideUri, Location location, Location previousLocation, Float cadence, Integer heartRate) {
+    public Uri add(Uri rideUri, Location location, Location previousLocation, Float cadence, Integer heartRate) {
+        return add(rideUri, location, previousLocation, cadence, heartRate, null, null);
+    }
+
+    /**
+     * @param wheelSpeed The speed measured by a wheel sensor in m/s, used instead of the speed computed from the locations, or {@code null}.
+     * @param power The power measured by a power meter in watts, or {@code null}.
+     */
+    @Background
+    public Uri add(Uri rideUri, Location location, Location previousLocation, Float cadence, Integer heartRate, Float wheelSpeed, Integer power) {
+        return add(rideUri, location, previousLocation, cadence, heartRate, wheelSpeed, power, null, null);
+    }
+
+    /**
+     * @param gradient The gradient of the road at the given location, as a fraction of 1, or {@code null} (see
+     *            {@link org.jraf.android.bikey.backend.location.GradientCalculator}).
+     * @param trackSimplifier If not {@code null}, the log is only persisted when the simplifier says it is needed (see {@link TrackSimplifier}).
+     *            {@link #flush(Uri, TrackSimplifier)} must then be called when the recording stops.
+     * @return The uri of the persisted log, or {@code null} if nothing has been persisted.
+     */
+    @Background
+    public Uri add(Uri rideUri, Location location, Location previousLocation, Float cadence, Integer heartRate, Float wheelSpeed, Integer power,
+            Float gradient, TrackSimplifier trackSimplifier) {
+        long rideId = ContentUris.parseId(rideUri);
+        LogContentValues values = createLogContentValues(rideId, location, previousLocation, cadence, heartRate, wheelSpeed, power);
+        values.putGradient(gradient);
+        if (trackSimplifier != null) {
+            mTrackSimplifiers.put(rideUri, trackSimplifier);
+            values = trackSimplifier.add(location, values);
+            if (values == null) {
+                // Nothing persisted, but the total distance has changed
+                dispatchLogAdded(rideUri);
+                return null;
+            }
+        }
+        return insert(rideUri, values);
+    }
+
+    /**
+     * Persist the log kept pending by the given simplifier, if any.
+     */
+    @Background
+    public Uri flush(Uri rideUri, TrackSimplifier trackSimplifier) {
+        LogContentValues values = trackSimplifier.flush();
+        Uri res = values == null ? null : insert(rideUri, values);
+        mTrackSimplifiers.remove(rideUri);
+        return res;
+    }
+
+    @Background
+    private Uri insert(Uri rideUri, LogContentValues values) {
         // Add a log
+        Uri res = mContext.getContentResolver().insert(LogColumns.CONTENT_URI, values.values());
+
+        // Update total distance for ride
+        float totalDistance = getPersistedTotalDistance(rideUri);
+        RideManager.get().updateTotalDistance(rideUri, totalDistance);
+
+        dispatchLogAdded(rideUri);
+        return res;
+    }
+
+    private void dispatchLogAdded(final Uri rideUri) {
+        mListeners.dispatch(new Dispatcher<LogListener>() {
+            @Override
+            public void dispatch(LogListener listener) {
+                listener.onLogAdded(rideUri);
+            }
+        });
+    }
+
+    /**
+     * Create the values of a log at the given location.<br/>
+     * The duration, distance and speed are computed from the previous location (if any), and are not set if the speed is under
+     * {@link LocationManager#SPEED_MIN_THRESHOLD_M_S}.
+     */
+    public LogContentValues createLogContentValues(long rideId, Location location, Location previousLocation, Float cadence, Integer heartRate) {
+        return createLogContentValues(rideId, location, previousLocation, cadence, heartRate, null, null);
+    }
+
+    /**
+     * Create the values of a log at the given location.<br/>
+     * If {@code wheelSpeed} is not {@code null}, it is used as the speed of the log instead of the one obtained from the locations (see
+     * {@link LocationPair#getSpeed()}), which is less precise. The distance is still computed from the locations.<br/>
+     * The source of the speed is recorded with it.
+     */
+    public LogContentValues createLogContentValues(long rideId, Location location, Location previousLocation, Float cadence, Integer heartRate,
+            Float wheelSpeed, Integer power) {
         LogContentValues values = new LogContentValues();
-        long rideId = ContentUris.parseId(rideUri);
         values.putRideId(rideId);
         values.putRecordedDate(location.getTime());
+        long elapsedRealtimeNanos = LocationUtil.getElapsedRealtimeNanos(location);
+        if (elapsedRealtimeNanos != 0) values.putElapsedRealtimeNanos(elapsedRealtimeNanos);
         values.putLat(location.getLatitude());
         values.putLon(location.getLongitude());
         values.putEle(location.getAltitude());
         if (previousLocation != null) {
             LocationPair locationPair = new LocationPair(previousLocation, location);
-            float speed = locationPair.getSpeed();
+            float speed;
+            SpeedSource speedSource;
+            if (wheelSpeed != null) {
+                speed = wheelSpeed;
+                speedSource = SpeedSource.WHEEL;
+            } else {
+                speed = locationPair.getSpeed();
+                speedSource = locationPair.getSpeedSource();
+            }
             if (speed < LocationManager.SPEED_MIN_THRESHOLD_M_S) {
                 Log.d("Speed under threshold, not logging it");
             } else {
                 values.putLogDuration(locationPair.getDuration());
                 values.putLogDistance(locationPair.getDistance());
                 values.putSpeed(speed);
+                values.putSpeedSource(speedSource);
             }
         }
         values.putCadence(cadence);
         values.putHeartRate(heartRate);
+        values.putPower(power);
+        return values;
+    }
 
-        Uri res = mContext.getContentResolver().insert(LogColumns.CONTENT_URI, values.values());
+    /*
+     * Compaction.
+     */
 
-        // Update total distance for ride
-        float totalDistance = getTotalDistance(rideUri);
-        RideManager.get().updateTotalDistance(rideUri, totalDistance);
+    /**
+     * Compact the stationary logs of the given ride (see {@link #compactStationaryLogs(Uri)}) on a background thread.
+     */
+    public void compactStationaryLogsAsync(final Uri rideUri) {
+        mCompactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compactStationaryLogs(rideUri);
+            }
+        });
+    }
 
-        // Dispatch to listeners
-        mListeners.dispatch(new Dispatcher<LogListener>() {
+    /**
+     * Compact the stationary logs of all the rides on a background thread, the first time this is called (to shrink the rides recorded before the
+     * compaction existed).
+     */
+    public void compactStationaryLogsOfAllRidesOnce() {
+        mCompactionExecutor.execute(new Runnable() {
             @Override
-            public void dispatch(LogListener listener) {
-                listener.onLogAdded(rideUri);
+            public void run() {
+                if (PreferenceManager.getDefaultSharedPreferences(mContext).getBoolean(Constants.PREF_STATIONARY_LOGS_COMPACTED, false)) return;
+                Cursor c = mContext.getContentResolver().query(RideColumns.CONTENT_URI, new String[] { RideColumns._ID }, null, null, null);
+                try {
+                    while (c.moveToNext()) {
+                        compactStationaryLogs(ContentUris.withAppendedId(RideColumns.CONTENT_URI, c.getLong(0)));
+                    }
+                } finally {
+                    c.close();
+                }
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit().putBoolean(Constants.PREF_STATIONARY_LOGS_COMPACTED, true).commit();
             }
         });
+    }
+
+    /**
+     * Thin out each run of consecutive stationary logs (logs without a speed, recorded while stopped) of the given ride: its first and last logs are
+     * kept, with the position and the exact start and end dates of the stop, as well as one log at least every
+     * {@link TrackImporter#PAUSE_DURATION}. This way the stop is not mistaken for a pause (which would start a new segment or lap in the exports and
+     * be left out of the duration when importing the track), and since stationary logs have no distance, the distance is unchanged.<br/>
+     * Only the logs without any sensor value (cadence, heart rate, power) are part of a run: the others are kept, so the sensor statistics and charts
+     * are unchanged too.<br/>
+     * The logs in between are deleted by date range, in a single transaction. The ride's total distance is then updated.
+     *
+     * @return The number of deleted logs.
+     */
+    @Background
+    public int compactStationaryLogs(Uri rideUri) {
+        long rideId = ContentUris.parseId(rideUri);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        String[] projection = { LogColumns.RECORDED_DATE, LogColumns.SPEED, LogColumns.CADENCE, LogColumns.HEART_RATE, LogColumns.POWER };
+        LogSelection where = new LogSelection();
+        where.rideId(rideId);
+        LogCursor c = where.query(mContext.getContentResolver(), projection, LogColumns.RECORDED_DATE);
+        try {
+            boolean inRun = false;
+            // Last kept log of the run
+            long keptDate = 0;
+            long previousDate = 0;
+            // Logs of the run after the last kept one
+            int count = 0;
+            while (c.moveToNext()) {
+                if (c.getSpeed() != null || c.getCadence() != null || c.getHeartRate() != null || c.getPower() != null) {
+                    // End of the run: keep its last log
+                    if (inRun) addCompactionOperation(operations, rideId, keptDate, previousDate, count - 1);
+                    inRun = false;
+                    continue;
+                }
+                long recordedDate = c.getRecordedDate().getTime();
+                if (!inRun) {
+                    // Start of a run: keep its first log
+                    inRun = true;
+                    keptDate = recordedDate;
+                    count = 0;
+                } else {
+                    if (count > 0 && recordedDate - keptDate > TrackImporter.PAUSE_DURATION) {
+                        // Keep the previous log
+                        addCompactionOperation(operations, rideId, keptDate, previousDate, count - 1);
+                        keptDate = previousDate;
+                        count = 0;
+                    }
+                    count++;
+                }
+                previousDate = recordedDate;
+            }
+            if (inRun) addCompactionOperation(operations, rideId, keptDate, previousDate, count - 1);
+        } finally {
+            c.close();
+        }
+        if (operations.isEmpty()) return 0;
+
+        int res = 0;
+        try {
+            ContentProviderResult[] results = mContext.getContentResolver().applyBatch(BikeyProvider.AUTHORITY, operations);
+            for (ContentProviderResult result : results) {
+                res += result.count;
+            }
+        } catch (RemoteException e) {
+            Log.w("Could not compact the logs of ride " + rideUri, e);
+            return 0;
+        } catch (OperationApplicationException e) {
+            Log.w("Could not compact the logs of ride " + rideUri, e);
+            return 0;
+        }
+        Log.d("Deleted " + res + " stationary logs of ride " + rideUri);
+
+        // Update the aggregates of the ride
+        RideManager.get().updateTotalDistance(rideUri, getPersistedTotalDistance(rideUri));
         return res;
     }
 
+    /**
+     * Delete the stationary logs recorded strictly between the given dates, if there are any.
+     */
+    private static void addCompactionOperation(ArrayList<ContentProviderOperation> operations, long rideId, long startDate, long endDate, int count) {
+        if (count <= 0) return;
+        LogSelection where = new LogSelection();
+        where.rideId(rideId).and().recordedDateAfter(new Date(startDate)).and().recordedDateBefore(new Date(endDate)).and().speed((Float) null)
+                .and().cadence((Float) null).and().heartRate((Integer) null).and().power((Integer) null);
+        operations.add(ContentProviderOperation.newDelete(LogColumns.CONTENT_URI).withSelection(where.sel(), where.args()).build());
+    }
+
+    /**
+     * Note: the distance of the logs kept pending by a {@link TrackSimplifier} is included.
+     */
     @Background
     public float getTotalDistance(Uri rideUri) {
+        TrackSimplifier trackSimplifier = mTrackSimplifiers.get(rideUri);
+        float pendingDistance = trackSimplifier == null ? 0 : trackSimplifier.getPendingDistance();
+        return getPersistedTotalDistance(rideUri) + pendingDistance;
+    }
+
+    @Background
+    private float getPersistedTotalDistance(Uri rideUri) {
         long rideId = ContentUris.parseId(rideUri);
         String[] projection = { "sum(" + LogColumns.LOG_DISTANCE + ")" };
         LogSelection where = new LogSelection();
@@ -139,7 +384,8 @@ public class LogManager {
     }
 
     /**
-     * Note: the top 10% points are discarded to account for imprecise values.
+     * Note: the top 10% points are discarded to account for imprecise values.<br/>
+     * See {@link #getTimeWeightedAverage(String)}.
      */
     @Background
     public Float getAverageCadence(Uri rideUri) {
@@ -148,7 +394,7 @@ public class LogManager {
         float max = getMaxCadence(rideUri);
 
         long rideId = ContentUris.parseId(rideUri);
-        String[] projection = { "avg(" + LogColumns.CADENCE + ")" };
+        String[] projection = { getTimeWeightedAverage(LogColumns.CADENCE) };
         LogSelection where = new LogSelection();
         where.rideId(rideId).and().cadenceGtEq(min).and().cadenceLtEq(max);
         Cursor c = mContext.getContentResolver().query(LogColumns.CONTENT_URI, projection, where.sel(), where.args(), null);
@@ -162,7 +408,8 @@ public class LogManager {
     }
 
     /**
-     * Note: the top 10% points are discarded to account for imprecise values.
+     * Note: the top 10% points are discarded to account for imprecise values.<br/>
+     * See {@link #getTimeWeightedAverage(String)}.
      */
     @Background
     public Float getAverageHeartRate(Uri rideUri) {
@@ -171,7 +418,7 @@ public class LogManager {
         float max = getMaxHeartRate(rideUri);
 
         long rideId = ContentUris.parseId(rideUri);
-        String[] projection = { "avg(" + LogColumns.HEART_RATE + ")" };
+        String[] projection = { getTimeWeightedAverage(LogColumns.HEART_RATE) };
         LogSelection where = new LogSelection();
         where.rideId(rideId).and().heartRateGtEq((int) min).and().heartRateLtEq((int) max);
         Cursor c = mContext.getContentResolver().query(LogColumns.CONTENT_URI, projection, where.sel(), where.args(), null);
@@ -184,6 +431,66 @@ public class LogManager {
         }
     }
 
+    /**
+     * Note: unlike the other averages, all the values are used, because the time spent not pedaling (0 W) is part of the effort.<br/>
+     * See {@link #getTimeWeightedAverage(String)}.
+     */
+    @Background
+    public Float getAveragePower(Uri rideUri) {
+        long rideId = ContentUris.parseId(rideUri);
+        String[] projection = { getTimeWeightedAverage(LogColumns.POWER) };
+        LogSelection where = new LogSelection();
+        where.rideId(rideId);
+        Cursor c = mContext.getContentResolver().query(LogColumns.CONTENT_URI, projection, where.sel(), where.args(), null);
+        try {
+            if (!c.moveToNext()) return null;
+            if (c.isNull(0)) return null;
+            return c.getFloat(0);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Logs are recorded at a variable interval (see {@link org.jraf.android.bikey.backend.location.LocationIntervalScheduler}), and a simplified log
+     * stands for the logs dropped before it (see {@link TrackSimplifier}), so the values are weighted by the time each log stands for: the time since
+     * the previous log of the ride, up to {@link TrackImporter#PAUSE_DURATION} (a longer gap is a pause). The first log of the ride does not count.
+     * 
+     * @return The SQL expression of the time-weighted average of the given column.
+     */
+    private static String getTimeWeightedAverage(String column) {
+        String weight = "MIN(" + LogColumns.TABLE_NAME + "." + LogColumns.RECORDED_DATE + "-(SELECT MAX(p." + LogColumns.RECORDED_DATE + ") FROM "
+                + LogColumns.TABLE_NAME + " p WHERE p." + LogColumns.RIDE_ID + "=" + LogColumns.TABLE_NAME + "." + LogColumns.RIDE_ID + " AND p."
+                + LogColumns.RECORDED_DATE + "<" + LogColumns.TABLE_NAME + "." + LogColumns.RECORDED_DATE + "), " + TrackImporter.PAUSE_DURATION
+                + ")";
+        return "sum(" + column + "*" + weight + ")/sum(" + weight + ")";
+    }
+
+    /**
+     * Compute the normalized power of a ride, in a single pass over its logs (see {@link NormalizedPowerCalculator}).
+     * 
+     * @return The normalized power in watts, or {@code null} if the ride has less than 30 s of power data.
+     */
+    @Background
+    public Float getNormalizedPower(Uri rideUri) {
+        long rideId = ContentUris.parseId(rideUri);
+        String[] projection = { LogColumns.RECORDED_DATE, LogColumns.POWER };
+        LogSelection where = new LogSelection();
+        where.rideId(rideId).and().powerNot((Integer) null);
+        LogCursor c = new LogCursor(mContext.getContentResolver().query(LogColumns.CONTENT_URI, projection, where.sel(), where.args(),
+                LogColumns.RECORDED_DATE));
+        try {
+            NormalizedPowerCalculator calculator = new NormalizedPowerCalculator(NORMALIZED_POWER_WINDOW_CAPACITY,
+                    TrackImporter.PAUSE_DURATION);
+            while (c.moveToNext()) {
+                calculator.add(c.getRecordedDate().getTime(), c.getPower());
+            }
+            return calculator.getNormalizedPower();
+        } finally {
+            c.close();
+        }
+    }
+
     @Background
     public Long getMovingDuration(Uri rideUri) {
         long rideId = ContentUris.parseId(rideUri);
@@ -268,6 +575,11 @@ public class LogManager {
         return getMin(rideUri, LogColumns.HEART_RATE);
     }
 
+    @Background
+    public float getMaxPower(Uri rideUri) {
+        return getMax(rideUri, LogColumns.POWER);
+    }
+
 
 
     @Background
@@ -422,6 +734,32 @@ public class LogManager {
         return res;
     }
 
+    @Background
+    public List<Float> getPowerArray(Uri rideUri, int max) {
+        // Get the point count to determine the ratio to apply to not get more than max values
+        Integer count = getLogCount(rideUri);
+        if (count == null) return null;
+        int ratio = count / max;
+        if (ratio == 0) ratio = 1;
+
+        ArrayList<Float> res = new ArrayList<>(max);
+        // Get the values
+        String[] projection = new String[] { LogColumns.POWER };
+        LogSelection where = new LogSelection();
+        // Get at most max rows by applying a modulo on the id
+        long rideId = ContentUris.parseId(rideUri);
+        where.rideId(rideId).and().powerNot((Integer) null).and().addRaw(LogColumns._ID + "%" + ratio + "=0");
+        LogCursor cursor = where.query(mContext.getContentResolver(), projection);
+        try {
+            while (cursor.moveToNext()) {
+                res.add(Float.valueOf(cursor.getPower()));
+            }
+        } finally {
+            cursor.close();
+        }
+        return res;
+    }
+
 
     /*
      * Listeners.
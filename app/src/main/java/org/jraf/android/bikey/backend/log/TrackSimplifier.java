@@ -0,0 +1,219 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.log;
+
+import android.content.ContentValues;
+import android.location.Location;
+
+import org.jraf.android.bikey.backend.provider.log.LogColumns;
+import org.jraf.android.bikey.backend.provider.log.LogContentValues;
+import org.jraf.android.bikey.backend.provider.log.SpeedSource;
+
+/**
+ * Streaming simplification of the recorded track, using the opening window algorithm.<br/>
+ * The distance and duration of the dropped logs are added to the next persisted log, and their cadence, heart rate and power are averaged into it.
+ */
+public class TrackSimplifier {
+    private static final double EARTH_RADIUS_M = 6371009;
+
+    /**
+     * Maximum number of logs in the window: on a long straight road, a log is still persisted every so often (the speed, heart rate... charts
+     * need them).
+     */
+    private static final int WINDOW_CAPACITY = 60;
+
+    /**
+     * Time-weighted sum of the values of a sensor.
+     */
+    private static class WeightedSum {
+        double sum;
+        long weight;
+
+        void add(Number value, long duration) {
+            if (value == null) return;
+            sum += value.doubleValue() * duration;
+            weight += duration;
+        }
+
+        double getAverage() {
+            return sum / weight;
+        }
+
+        void clear() {
+            sum = 0;
+            weight = 0;
+        }
+    }
+
+    private final double mTolerance;
+
+    private boolean mHasAnchor;
+    private double mAnchorLat;
+    private double mAnchorLon;
+    private double mMetersPerDegreeLon;
+
+    private final double[] mWindowX = new double[WINDOW_CAPACITY];
+    private final double[] mWindowY = new double[WINDOW_CAPACITY];
+    private int mWindowSize;
+
+    private LogContentValues mPending;
+    private int mPendingCount;
+    private volatile float mPendingDistance;
+    private long mPendingDuration;
+    private long mLastDate;
+    private final WeightedSum mCadenceSum = new WeightedSum();
+    private final WeightedSum mHeartRateSum = new WeightedSum();
+    private final WeightedSum mPowerSum = new WeightedSum();
+
+    /**
+     * @param tolerance The maximum distance between the recorded track and the simplified one, in meters.
+     */
+    public TrackSimplifier(float tolerance) {
+        mTolerance = tolerance;
+    }
+
+    /**
+     * Feed the values of a new log, recorded at the given location.
+     *
+     * @return The values of the log to persist now, or {@code null} if nothing needs to be persisted yet.
+     */
+    public LogContentValues add(Location location, LogContentValues values) {
+        ContentValues contentValues = values.values();
+        long date = contentValues.getAsLong(LogColumns.RECORDED_DATE);
+        if (!mHasAnchor) {
+            setAnchor(location.getLatitude(), location.getLongitude());
+            mLastDate = date;
+            return values;
+        }
+
+        double x = (location.getLongitude() - mAnchorLon) * mMetersPerDegreeLon;
+        double y = (location.getLatitude() - mAnchorLat) * Math.toRadians(EARTH_RADIUS_M);
+        LogContentValues res = null;
+        if (mPending != null && (mWindowSize == WINDOW_CAPACITY || !isWindowWithinTolerance(x, y))) {
+            // The pending log is needed: persist it, it becomes the new anchor
+            double pendingX = mWindowX[mWindowSize - 1];
+            double pendingY = mWindowY[mWindowSize - 1];
+            res = flush();
+            double pendingLat = mAnchorLat + pendingY / Math.toRadians(EARTH_RADIUS_M);
+            double pendingLon = mAnchorLon + pendingX / mMetersPerDegreeLon;
+            setAnchor(pendingLat, pendingLon);
+            x = (location.getLongitude() - mAnchorLon) * mMetersPerDegreeLon;
+            y = (location.getLatitude() - mAnchorLat) * Math.toRadians(EARTH_RADIUS_M);
+        }
+
+        // The new log is now the pending one
+        mWindowX[mWindowSize] = x;
+        mWindowY[mWindowSize] = y;
+        mWindowSize++;
+        mPending = values;
+        mPendingCount++;
+        Float distance = contentValues.getAsFloat(LogColumns.LOG_DISTANCE);
+        if (distance != null) mPendingDistance += distance;
+        Long duration = contentValues.getAsLong(LogColumns.LOG_DURATION);
+        if (duration != null) mPendingDuration += duration;
+
+        // Each value stands for the time since the previous log
+        long sampleDuration = Math.max(date - mLastDate, 0);
+        mLastDate = date;
+        mCadenceSum.add(contentValues.getAsFloat(LogColumns.CADENCE), sampleDuration);
+        mHeartRateSum.add(contentValues.getAsInteger(LogColumns.HEART_RATE), sampleDuration);
+        mPowerSum.add(contentValues.getAsInteger(LogColumns.POWER), sampleDuration);
+        return res;
+    }
+
+    /**
+     * Can be called from any thread.
+     * 
+     * @return The distance of the logs that have not been persisted yet, in meters.
+     */
+    public float getPendingDistance() {
+        return mPendingDistance;
+    }
+
+    /**
+     * @return The values of the pending log (with the distance, duration and sensor values of the dropped logs before it), which must be persisted
+     *         now, or {@code null} if there is none. The next log will be persisted as is.
+     */
+    public LogContentValues flush() {
+        LogContentValues res = mPending;
+        if (res != null && mPendingCount > 1) {
+            if (mCadenceSum.weight > 0) res.putCadence((float) mCadenceSum.getAverage());
+            if (mHeartRateSum.weight > 0) res.putHeartRate((int) Math.round(mHeartRateSum.getAverage()));
+            if (mPowerSum.weight > 0) res.putPower((int) Math.round(mPowerSum.getAverage()));
+        }
+        if (res != null && mPendingDuration > 0) {
+            res.putLogDistance(mPendingDistance);
+            res.putLogDuration(mPendingDuration);
+            if (res.values().getAsFloat(LogColumns.SPEED) == null) {
+                // The pending log itself was stationary, but not the dropped ones: a log with a distance must have a speed
+                res.putSpeed(mPendingDistance / (mPendingDuration / 1000f));
+                res.putSpeedSource(SpeedSource.POSITIONS);
+            }
+        }
+        mPending = null;
+        mPendingCount = 0;
+        mPendingDistance = 0;
+        mPendingDuration = 0;
+        mCadenceSum.clear();
+        mHeartRateSum.clear();
+        mPowerSum.clear();
+        mWindowSize = 0;
+        mHasAnchor = false;
+        return res;
+    }
+
+
+    /*
+     * Helpers.
+     */
+
+    private void setAnchor(double lat, double lon) {
+        mHasAnchor = true;
+        mAnchorLat = lat;
+        mAnchorLon = lon;
+        mMetersPerDegreeLon = Math.toRadians(EARTH_RADIUS_M) * Math.cos(Math.toRadians(lat));
+        mWindowSize = 0;
+    }
+
+    /**
+     * @return {@code true} if all the logs of the window are within the tolerance of the segment from the anchor (the origin) to the given point.
+     */
+    private boolean isWindowWithinTolerance(double x, double y) {
+        double lengthSquared = x * x + y * y;
+        double toleranceSquared = mTolerance * mTolerance;
+        for (int i = 0; i < mWindowSize; i++) {
+            double px = mWindowX[i];
+            double py = mWindowY[i];
+            // Projection of the point on the segment, clamped to its ends
+            double t = lengthSquared == 0 ? 0 : (px * x + py * y) / lengthSquared;
+            if (t < 0) t = 0;
+            if (t > 1) t = 1;
+            double dx = px - t * x;
+            double dy = py - t * y;
+            if (dx * dx + dy * dy > toleranceSquared) return false;
+        }
+        return true;
+    }
+}
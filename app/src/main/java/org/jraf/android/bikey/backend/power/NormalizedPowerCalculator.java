@@ -0,0 +1,124 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.power;
+
+/**
+ * Computes the normalized power: the fourth root of the mean of the fourth power of the 30 s rolling average power, sampled every second.<br/>
+ * Samples are not evenly spaced, so the power is weighted by time: each sample stands for the time since the previous one (up to a max duration,
+ * beyond which the gap is a pause and is left out).
+ */
+public class NormalizedPowerCalculator {
+    private static final long WINDOW_MS = 30 * 1000;
+    private static final long STEP_MS = 1000;
+
+    private final long mMaxSampleDuration;
+
+    // The samples in the window, as segments of constant power, on a time line without the pauses
+    private final long[] mStartTimes;
+    private final double[] mStartEnergies;
+    private final int[] mPowers;
+    private int mStart;
+    private int mSize;
+
+    private boolean mHasPreviousDate;
+    private long mPreviousDate;
+    // Time (without the pauses) and energy (in W.ms) at the end of the last sample
+    private long mTime;
+    private double mEnergy;
+
+    private double mFourthPowerSum;
+    private long mFourthPowerCount;
+
+    /**
+     * @param capacity The max number of samples kept for the window. If samples come more often than {@code capacity} per 30 s, the window is
+     *            shortened accordingly.
+     * @param maxSampleDuration The max duration a sample stands for, in milliseconds.
+     */
+    public NormalizedPowerCalculator(int capacity, long maxSampleDuration) {
+        mMaxSampleDuration = maxSampleDuration;
+        mStartTimes = new long[capacity];
+        mStartEnergies = new double[capacity];
+        mPowers = new int[capacity];
+    }
+
+    public void add(long date, int power) {
+        if (!mHasPreviousDate) {
+            // The first sample does not stand for any time
+            mHasPreviousDate = true;
+            mPreviousDate = date;
+            return;
+        }
+        long duration = Math.min(date - mPreviousDate, mMaxSampleDuration);
+        mPreviousDate = date;
+        if (duration <= 0) return;
+
+        if (mSize == mStartTimes.length) {
+            mStart = (mStart + 1) % mStartTimes.length;
+            mSize--;
+        }
+        int end = (mStart + mSize) % mStartTimes.length;
+        mStartTimes[end] = mTime;
+        mStartEnergies[end] = mEnergy;
+        mPowers[end] = power;
+        mSize++;
+
+        long endTime = mTime + duration;
+        for (long time = Math.max(mTime / STEP_MS + 1, WINDOW_MS / STEP_MS) * STEP_MS; time <= endTime; time += STEP_MS) {
+            // Evict the samples that are now out of the window
+            long windowStartTime = time - WINDOW_MS;
+            while (mSize > 1 && mStartTimes[(mStart + 1) % mStartTimes.length] <= windowStartTime) {
+                mStart = (mStart + 1) % mStartTimes.length;
+                mSize--;
+            }
+            long fromTime = Math.max(windowStartTime, mStartTimes[mStart]);
+            double fromEnergy = mStartEnergies[mStart] + (double) mPowers[mStart] * (fromTime - mStartTimes[mStart]);
+            double toEnergy = mEnergy + (double) power * (time - mTime);
+            double average = (toEnergy - fromEnergy) / (time - fromTime);
+            double square = average * average;
+            mFourthPowerSum += square * square;
+            mFourthPowerCount++;
+        }
+        mTime = endTime;
+        mEnergy += (double) power * duration;
+    }
+
+    /**
+     * @return The normalized power in watts, or {@code null} if the samples do not span a full window yet.
+     */
+    public Float getNormalizedPower() {
+        if (mFourthPowerCount == 0) return null;
+        return (float) Math.pow(mFourthPowerSum / mFourthPowerCount, .25);
+    }
+
+    public void clear() {
+        mStart = 0;
+        mSize = 0;
+        mHasPreviousDate = false;
+        mTime = 0;
+        mEnergy = 0;
+        mFourthPowerSum = 0;
+        mFourthPowerCount = 0;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.power;
+
+import android.bluetooth.BluetoothDevice;
+import android.os.Build;
+
+/**
+ * Bluetooth Smart Cycling Power meter.
+ */
+public abstract class PowerManager {
+    private static final PowerManager INSTANCE = Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2 ? new PowerManagerDisabled()
+            : new PowerManagerJellyBeanMR2();
+
+    public static PowerManager get() {
+        return INSTANCE;
+    }
+
+    public abstract void addListener(PowerListener listener);
+
+    public abstract void removeListener(PowerListener listener);
+
+    public abstract void setBluetoothDevice(BluetoothDevice bluetoothDevice);
+
+    public abstract boolean isConnected();
+
+    public abstract boolean isConnecting();
+
+    /**
+     * @return The last instantaneous power in watts, or {@code -1} if unknown.
+     */
+    public abstract int getLastPower();
+
+    /**
+     * @return The last cadence in revolutions per minute, or {@code -1} if unknown.
+     */
+    public abstract float getLastCadence();
+
+    public abstract void disconnect();
+}
@@ -0,0 +1,155 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.power;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.os.Build;
+import android.os.SystemClock;
+
+import org.jraf.android.bikey.backend.csc.RevolutionCounter;
+import org.jraf.android.bikey.backend.sensor.GattSensor;
+import org.jraf.android.util.listeners.Listeners.Dispatcher;
+
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class PowerManagerJellyBeanMR2 extends PowerManager {
+    // See https://developer.bluetooth.org/gatt/services/Pages/ServiceViewer.aspx?u=org.bluetooth.service.cycling_power.xml
+    private static final int GATT_SERVICE_CYCLING_POWER = 0x1818;
+
+    // See https://developer.bluetooth.org/gatt/characteristics/Pages/CharacteristicViewer.aspx?u=org.bluetooth.characteristic.cycling_power_measurement.xml
+    private static final int GATT_CHARACTERISTIC_CYCLING_POWER_MEASUREMENT = 0x2A63;
+
+    private static final int FLAG_PEDAL_POWER_BALANCE_PRESENT = 0x01;
+    private static final int FLAG_ACCUMULATED_TORQUE_PRESENT = 0x04;
+    private static final int FLAG_WHEEL_REVOLUTION_DATA_PRESENT = 0x10;
+    private static final int FLAG_CRANK_REVOLUTION_DATA_PRESENT = 0x20;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int PEDAL_POWER_BALANCE_SIZE = 1;
+    private static final int ACCUMULATED_TORQUE_SIZE = 2;
+    private static final int WHEEL_REVOLUTION_DATA_SIZE = 6;
+    private static final int CRANK_REVOLUTION_DATA_SIZE = 4;
+
+    /**
+     * Max plausible crank revolutions per second (240 rpm), to reject counter resets.
+     */
+    private static final float MAX_CRANK_RATE = 4f;
+
+    private final RevolutionCounter mCrankCounter = new RevolutionCounter(0xFFFFL, MAX_CRANK_RATE);
+
+    private volatile int mLastPower = -1;
+    private volatile float mLastCadence = -1;
+
+    /* package */PowerManagerJellyBeanMR2() {}
+
+    @Override
+    public void addListener(PowerListener listener) {
+        mSensor.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(PowerListener listener) {
+        mSensor.removeListener(listener);
+    }
+
+    @Override
+    public void setBluetoothDevice(BluetoothDevice bluetoothDevice) {
+        mSensor.connect(bluetoothDevice);
+    }
+
+    private final GattSensor<PowerListener> mSensor = new GattSensor<PowerListener>(GATT_SERVICE_CYCLING_POWER,
+            GATT_CHARACTERISTIC_CYCLING_POWER_MEASUREMENT) {
+        @Override
+        protected void onMeasurement(byte[] value) {
+            if (value == null || value.length < HEADER_SIZE) return;
+            long now = SystemClock.elapsedRealtime();
+            int flags = readUInt16(value, 0);
+            // Negative values are possible (back pedaling), ignore them
+            int power = Math.max(0, readSInt16(value, 2));
+            int offset = HEADER_SIZE;
+
+            // Skip the optional fields we are not interested in
+            if ((flags & FLAG_PEDAL_POWER_BALANCE_PRESENT) != 0) offset += PEDAL_POWER_BALANCE_SIZE;
+            if ((flags & FLAG_ACCUMULATED_TORQUE_PRESENT) != 0) offset += ACCUMULATED_TORQUE_SIZE;
+            if ((flags & FLAG_WHEEL_REVOLUTION_DATA_PRESENT) != 0) offset += WHEEL_REVOLUTION_DATA_SIZE;
+
+            float cadence = mLastCadence;
+            if ((flags & FLAG_CRANK_REVOLUTION_DATA_PRESENT) != 0 && value.length >= offset + CRANK_REVOLUTION_DATA_SIZE) {
+                int crankRevolutions = readUInt16(value, offset);
+                int crankEventTime = readUInt16(value, offset + 2);
+                float crankRate = mCrankCounter.update(crankRevolutions, crankEventTime, now);
+                cadence = crankRate == -1 ? -1 : crankRate * 60f;
+            }
+
+            onValidMeasurement();
+
+            if (power != mLastPower || cadence != mLastCadence) {
+                mLastPower = power;
+                mLastCadence = cadence;
+                // Inform listeners
+                dispatch(mPowerChangeDispatcher);
+            }
+        }
+
+        @Override
+        protected void onReset() {
+            mLastPower = -1;
+            mLastCadence = -1;
+            mCrankCounter.reset();
+        }
+    };
+
+    private final Dispatcher<PowerListener> mPowerChangeDispatcher = new Dispatcher<PowerListener>() {
+        @Override
+        public void dispatch(PowerListener listener) {
+            listener.onPowerChange(mLastPower, mLastCadence);
+        }
+    };
+
+    @Override
+    public boolean isConnected() {
+        return mSensor.isConnected();
+    }
+
+    @Override
+    public boolean isConnecting() {
+        return mSensor.isConnecting();
+    }
+
+    @Override
+    public int getLastPower() {
+        return mLastPower;
+    }
+
+    @Override
+    public float getLastCadence() {
+        return mLastCadence;
+    }
+
+    @Override
+    public void disconnect() {
+        mSensor.disconnect();
+    }
+}
@@ -24,12 +24,14 @@
  */
 package org.jraf.android.bikey.backend.provider;
 
+import java.io.File;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderClient;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
 import android.content.ContentValues;
@@ -38,12 +40,16 @@ import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.BaseColumns;
 import android.util.Log;
 
 import org.jraf.android.bikey.BuildConfig;
+import org.jraf.android.bikey.backend.dbimport.DatabaseImporter;
+import org.jraf.android.bikey.backend.export.db.DbExporter;
 import org.jraf.android.bikey.backend.provider.log.LogColumns;
 import org.jraf.android.bikey.backend.provider.ride.RideColumns;
+import org.jraf.android.bikey.backend.provider.rrinterval.RrIntervalColumns;
 
 public class BikeyProvider extends ContentProvider {
     private static final String TAG = BikeyProvider.class.getSimpleName();
@@ -59,12 +65,25 @@ public class BikeyProvider extends ContentProvider {
     public static final String QUERY_NOTIFY = "QUERY_NOTIFY";
     public static final String QUERY_GROUP_BY = "QUERY_GROUP_BY";
 
+    /**
+     * Replace the whole database with the contents of the database file whose path is given as the argument.
+     */
+    public static final String METHOD_IMPORT_DATABASE = "METHOD_IMPORT_DATABASE";
+
+    /**
+     * Add the rides and logs of the database file whose path is given as the argument that are not already present.
+     */
+    public static final String METHOD_MERGE_DATABASE = "METHOD_MERGE_DATABASE";
+
     private static final int URI_TYPE_LOG = 0;
     private static final int URI_TYPE_LOG_ID = 1;
 
     private static final int URI_TYPE_RIDE = 2;
     private static final int URI_TYPE_RIDE_ID = 3;
 
+    private static final int URI_TYPE_RR_INTERVAL = 4;
+    private static final int URI_TYPE_RR_INTERVAL_ID = 5;
+
 
 
     private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
@@ -74,6 +93,8 @@ public class BikeyProvider extends ContentProvider {
         URI_MATCHER.addURI(AUTHORITY, LogColumns.TABLE_NAME + "/#", URI_TYPE_LOG_ID);
         URI_MATCHER.addURI(AUTHORITY, RideColumns.TABLE_NAME, URI_TYPE_RIDE);
         URI_MATCHER.addURI(AUTHORITY, RideColumns.TABLE_NAME + "/#", URI_TYPE_RIDE_ID);
+        URI_MATCHER.addURI(AUTHORITY, RrIntervalColumns.TABLE_NAME, URI_TYPE_RR_INTERVAL);
+        URI_MATCHER.addURI(AUTHORITY, RrIntervalColumns.TABLE_NAME + "/#", URI_TYPE_RR_INTERVAL_ID);
     }
 
     protected BikeySQLiteOpenHelper mBikeySQLiteOpenHelper;
@@ -115,6 +136,11 @@ public class BikeyProvider extends ContentProvider {
             case URI_TYPE_RIDE_ID:
                 return TYPE_CURSOR_ITEM + RideColumns.TABLE_NAME;
 
+            case URI_TYPE_RR_INTERVAL:
+                return TYPE_CURSOR_DIR + RrIntervalColumns.TABLE_NAME;
+            case URI_TYPE_RR_INTERVAL_ID:
+                return TYPE_CURSOR_ITEM + RrIntervalColumns.TABLE_NAME;
+
         }
         return null;
     }
@@ -225,6 +251,31 @@ public class BikeyProvider extends ContentProvider {
         }
     }
 
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (DEBUG) Log.d(TAG, "call method=" + method + " arg=" + arg);
+        if (METHOD_IMPORT_DATABASE.equals(method) || METHOD_MERGE_DATABASE.equals(method)) {
+            if (METHOD_IMPORT_DATABASE.equals(method)) {
+                DatabaseImporter.importDatabase(mBikeySQLiteOpenHelper.getWritableDatabase(), new File(arg));
+            } else {
+                DatabaseImporter.mergeDatabase(mBikeySQLiteOpenHelper.getWritableDatabase(), new File(arg));
+            }
+            getContext().getContentResolver().notifyChange(RideColumns.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(LogColumns.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(RrIntervalColumns.CONTENT_URI, null);
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Direct access to the database, for operations that need a consistent view of it across several statements (see {@link DbExporter}).<br/>
+     * Only usable from our own process, through {@link ContentProviderClient#getLocalContentProvider()}.
+     */
+    public SQLiteDatabase getWritableDatabase() {
+        return mBikeySQLiteOpenHelper.getWritableDatabase();
+    }
+
     private static class QueryParams {
         public String table;
         public String tablesWithJoins;
@@ -254,6 +305,16 @@ public class BikeyProvider extends ContentProvider {
                 res.orderBy = RideColumns.DEFAULT_ORDER;
                 break;
 
+            case URI_TYPE_RR_INTERVAL:
+            case URI_TYPE_RR_INTERVAL_ID:
+                res.table = RrIntervalColumns.TABLE_NAME;
+                res.tablesWithJoins = RrIntervalColumns.TABLE_NAME;
+                if (RideColumns.hasColumns(projection)) {
+                    res.tablesWithJoins += " LEFT OUTER JOIN " + RideColumns.TABLE_NAME + " ON " + RrIntervalColumns.TABLE_NAME + "." + RrIntervalColumns.RIDE_ID + "=" + RideColumns.TABLE_NAME + "." + RideColumns._ID;
+                }
+                res.orderBy = RrIntervalColumns.DEFAULT_ORDER;
+                break;
+
             default:
                 throw new IllegalArgumentException("The uri '" + uri + "' is not supported by this ContentProvider");
         }
@@ -261,6 +322,7 @@ public class BikeyProvider extends ContentProvider {
         switch (matchedId) {
             case URI_TYPE_LOG_ID:
             case URI_TYPE_RIDE_ID:
+            case URI_TYPE_RR_INTERVAL_ID:
                 id = uri.getLastPathSegment();
         }
         if (id != null) {
@@ -37,12 +37,13 @@ import android.util.Log;
 import org.jraf.android.bikey.BuildConfig;
 import org.jraf.android.bikey.backend.provider.log.LogColumns;
 import org.jraf.android.bikey.backend.provider.ride.RideColumns;
+import org.jraf.android.bikey.backend.provider.rrinterval.RrIntervalColumns;
 
 public class BikeySQLiteOpenHelper extends SQLiteOpenHelper {
     private static final String TAG = BikeySQLiteOpenHelper.class.getSimpleName();
 
     public static final String DATABASE_FILE_NAME = "bikey_provider.db";
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 13;
     private final Context mContext;
     private final BikeySQLiteOpenHelperCallbacks mOpenHelperCallbacks;
 
@@ -59,7 +60,11 @@ public class BikeySQLiteOpenHelper extends SQLiteOpenHelper {
             + LogColumns.LOG_DISTANCE + " REAL, "
             + LogColumns.SPEED + " REAL, "
             + LogColumns.CADENCE + " REAL, "
-            + LogColumns.HEART_RATE + " INTEGER "
+            + LogColumns.HEART_RATE + " INTEGER, "
+            + LogColumns.POWER + " INTEGER, "
+            + LogColumns.ELAPSED_REALTIME_NANOS + " INTEGER, "
+            + LogColumns.SPEED_SOURCE + " INTEGER, "
+            + LogColumns.GRADIENT + " REAL "
             + ", CONSTRAINT fk_ride_id FOREIGN KEY (ride_id) REFERENCES ride (_id) ON DELETE CASCADE"
             + " );";
 
@@ -72,7 +77,18 @@ public class BikeySQLiteOpenHelper extends SQLiteOpenHelper {
             + RideColumns.FIRST_ACTIVATED_DATE + " INTEGER, "
             + RideColumns.ACTIVATED_DATE + " INTEGER, "
             + RideColumns.DURATION + " INTEGER NOT NULL, "
-            + RideColumns.DISTANCE + " REAL NOT NULL "
+            + RideColumns.DISTANCE + " REAL NOT NULL, "
+            + RideColumns.VERSION + " INTEGER NOT NULL DEFAULT 0, "
+            + RideColumns.MODIFIED_DATE + " INTEGER NOT NULL DEFAULT 0 "
+            + " );";
+
+    public static final String SQL_CREATE_TABLE_RR_INTERVAL = "CREATE TABLE IF NOT EXISTS "
+            + RrIntervalColumns.TABLE_NAME + " ( "
+            + RrIntervalColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + RrIntervalColumns.RIDE_ID + " INTEGER NOT NULL, "
+            + RrIntervalColumns.RECORDED_DATE + " INTEGER NOT NULL, "
+            + RrIntervalColumns.RR_INTERVAL + " INTEGER NOT NULL "
+            + ", CONSTRAINT fk_ride_id FOREIGN KEY (ride_id) REFERENCES ride (_id) ON DELETE CASCADE"
             + " );";
 
     // @formatter:on
@@ -123,6 +139,7 @@ public class BikeySQLiteOpenHelper extends SQLiteOpenHelper {
         mOpenHelperCallbacks.onPreCreate(mContext, db);
         db.execSQL(SQL_CREATE_TABLE_LOG);
         db.execSQL(SQL_CREATE_TABLE_RIDE);
+        db.execSQL(SQL_CREATE_TABLE_RR_INTERVAL);
         mOpenHelperCallbacks.onPostCreate(mContext, db);
     }
 
@@ -52,6 +52,11 @@ public class BikeySQLiteOpenHelperCallbacks {
     public void onPostCreate(final Context context, final SQLiteDatabase db) {
         if (BuildConfig.DEBUG) Log.d(TAG, "onPostCreate");
         // Insert your db creation code here. This is called after your tables are created.
+        db.execSQL(BikeySQLiteUpgradeHelper.SQL_CREATE_INDEX_LOG_RIDE_ID_RECORDED_DATE);
+        db.execSQL(BikeySQLiteUpgradeHelper.SQL_CREATE_INDEX_RR_INTERVAL_RIDE_ID_RECORDED_DATE);
+        for (String sql : BikeySQLiteUpgradeHelper.SQL_CREATE_TRIGGERS_RIDE_VERSION) {
+            db.execSQL(sql);
+        }
     }
 
     public void onUpgrade(final Context context, final SQLiteDatabase db, final int oldVersion, final int newVersion) {
@@ -30,6 +30,7 @@ import android.util.Log;
 import org.jraf.android.bikey.BuildConfig;
 import org.jraf.android.bikey.backend.provider.log.LogColumns;
 import org.jraf.android.bikey.backend.provider.ride.RideColumns;
+import org.jraf.android.bikey.backend.provider.rrinterval.RrIntervalColumns;
 
 public class BikeySQLiteUpgradeHelper {
     private static final String TAG = BikeySQLiteUpgradeHelper.class.getSimpleName();
@@ -92,6 +93,144 @@ public class BikeySQLiteUpgradeHelper {
             + " = "
             + " duration "
             + " ;";
+
+    // 5 -> 6
+    public static final String SQL_CREATE_INDEX_LOG_RIDE_ID_RECORDED_DATE = "CREATE INDEX IF NOT EXISTS "
+            + "idx_log_ride_id_recorded_date"
+            + " ON "
+            + LogColumns.TABLE_NAME
+            + " ( "
+            + LogColumns.RIDE_ID + ", "
+            + LogColumns.RECORDED_DATE
+            + " )"
+            + " ;";
+
+    // 6 -> 7
+    private static final String SQL_UPGRADE_TABLE_RIDE_7 = "ALTER TABLE "
+            + RideColumns.TABLE_NAME
+            + " ADD COLUMN "
+            + RideColumns.VERSION + " INTEGER NOT NULL DEFAULT 0"
+            + " ;";
+    // The version of a ride is incremented each time one of its logs is inserted, updated or deleted, and when it is renamed
+    private static final String[] SQL_CREATE_TRIGGERS_RIDE_VERSION_7 = {
+            "CREATE TRIGGER IF NOT EXISTS trg_log_insert_ride_version"
+            + " AFTER INSERT ON " + LogColumns.TABLE_NAME
+            + " BEGIN UPDATE " + RideColumns.TABLE_NAME + " SET " + RideColumns.VERSION + "=" + RideColumns.VERSION + "+1"
+            + " WHERE " + RideColumns._ID + "=NEW." + LogColumns.RIDE_ID + "; END"
+            + " ;",
+
+            "CREATE TRIGGER IF NOT EXISTS trg_log_update_ride_version"
+            + " AFTER UPDATE ON " + LogColumns.TABLE_NAME
+            + " BEGIN UPDATE " + RideColumns.TABLE_NAME + " SET " + RideColumns.VERSION + "=" + RideColumns.VERSION + "+1"
+            + " WHERE " + RideColumns._ID + " IN (OLD." + LogColumns.RIDE_ID + ", NEW." + LogColumns.RIDE_ID + "); END"
+            + " ;",
+
+            "CREATE TRIGGER IF NOT EXISTS trg_log_delete_ride_version"
+            + " AFTER DELETE ON " + LogColumns.TABLE_NAME
+            + " BEGIN UPDATE " + RideColumns.TABLE_NAME + " SET " + RideColumns.VERSION + "=" + RideColumns.VERSION + "+1"
+            + " WHERE " + RideColumns._ID + "=OLD." + LogColumns.RIDE_ID + "; END"
+            + " ;",
+
+            "CREATE TRIGGER IF NOT EXISTS trg_ride_update_name_ride_version"
+            + " AFTER UPDATE OF " + RideColumns.NAME + " ON " + RideColumns.TABLE_NAME
+            + " WHEN OLD." + RideColumns.NAME + " IS NOT NEW." + RideColumns.NAME
+            + " BEGIN UPDATE " + RideColumns.TABLE_NAME + " SET " + RideColumns.VERSION + "=" + RideColumns.VERSION + "+1"
+            + " WHERE " + RideColumns._ID + "=NEW." + RideColumns._ID + "; END"
+            + " ;",
+    };
+
+    // 7 -> 8
+    private static final String SQL_UPGRADE_TABLE_LOG_8 = "ALTER TABLE "
+            + LogColumns.TABLE_NAME
+            + " ADD COLUMN "
+            + LogColumns.POWER + " INTEGER "
+            + " ;";
+
+    // 8 -> 9
+    // Uses the creation statement of the new RR_INTERVAL table (see BikeySQLiteOpenHelper)
+    public static final String SQL_CREATE_INDEX_RR_INTERVAL_RIDE_ID_RECORDED_DATE = "CREATE INDEX IF NOT EXISTS "
+            + "idx_rr_interval_ride_id_recorded_date"
+            + " ON "
+            + RrIntervalColumns.TABLE_NAME
+            + " ( "
+            + RrIntervalColumns.RIDE_ID + ", "
+            + RrIntervalColumns.RECORDED_DATE
+            + " )"
+            + " ;";
+
+    // 9 -> 10
+    private static final String SQL_UPGRADE_TABLE_LOG_10 = "ALTER TABLE "
+            + LogColumns.TABLE_NAME
+            + " ADD COLUMN "
+            + LogColumns.ELAPSED_REALTIME_NANOS + " INTEGER "
+            + " ;";
+
+    // 10 -> 11
+    private static final String SQL_UPGRADE_TABLE_LOG_11 = "ALTER TABLE "
+            + LogColumns.TABLE_NAME
+            + " ADD COLUMN "
+            + LogColumns.SPEED_SOURCE + " INTEGER "
+            + " ;";
+
+    // 11 -> 12
+    private static final String SQL_UPGRADE_TABLE_LOG_12 = "ALTER TABLE "
+            + LogColumns.TABLE_NAME
+            + " ADD COLUMN "
+            + LogColumns.GRADIENT + " REAL "
+            + " ;";
+
+    // 12 -> 13
+    private static final String SQL_UPGRADE_TABLE_RIDE_13 = "ALTER TABLE "
+            + RideColumns.TABLE_NAME
+            + " ADD COLUMN "
+            + RideColumns.MODIFIED_DATE + " INTEGER NOT NULL DEFAULT 0"
+            + " ;";
+    private static final String SQL_POPULATE_TABLE_RIDE_13 = "UPDATE "
+            + RideColumns.TABLE_NAME
+            + " SET "
+            + RideColumns.MODIFIED_DATE + "=MAX(" + RideColumns.CREATED_DATE + ", IFNULL((SELECT MAX(" + LogColumns.RECORDED_DATE + ") FROM "
+            + LogColumns.TABLE_NAME + " WHERE " + LogColumns.RIDE_ID + "=" + RideColumns.TABLE_NAME + "." + RideColumns._ID + "), 0))"
+            + " ;";
+    private static final String[] SQL_DROP_TRIGGERS_RIDE_VERSION_13 = {
+            "DROP TRIGGER IF EXISTS trg_log_insert_ride_version ;",
+            "DROP TRIGGER IF EXISTS trg_log_update_ride_version ;",
+            "DROP TRIGGER IF EXISTS trg_log_delete_ride_version ;",
+            "DROP TRIGGER IF EXISTS trg_ride_update_name_ride_version ;",
+    };
+    // The current time, in milliseconds since the epoch
+    private static final String SQL_NOW = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    // The version of a ride is incremented, and its modification date updated, each time one of its logs is inserted, updated or deleted, and when
+    // it is renamed
+    public static final String[] SQL_CREATE_TRIGGERS_RIDE_VERSION = {
+            "CREATE TRIGGER IF NOT EXISTS trg_log_insert_ride_version"
+            + " AFTER INSERT ON " + LogColumns.TABLE_NAME
+            + " BEGIN UPDATE " + RideColumns.TABLE_NAME + " SET " + RideColumns.VERSION + "=" + RideColumns.VERSION + "+1, "
+            + RideColumns.MODIFIED_DATE + "=" + SQL_NOW
+            + " WHERE " + RideColumns._ID + "=NEW." + LogColumns.RIDE_ID + "; END"
+            + " ;",
+
+            "CREATE TRIGGER IF NOT EXISTS trg_log_update_ride_version"
+            + " AFTER UPDATE ON " + LogColumns.TABLE_NAME
+            + " BEGIN UPDATE " + RideColumns.TABLE_NAME + " SET " + RideColumns.VERSION + "=" + RideColumns.VERSION + "+1, "
+            + RideColumns.MODIFIED_DATE + "=" + SQL_NOW
+            + " WHERE " + RideColumns._ID + " IN (OLD." + LogColumns.RIDE_ID + ", NEW." + LogColumns.RIDE_ID + "); END"
+            + " ;",
+
+            "CREATE TRIGGER IF NOT EXISTS trg_log_delete_ride_version"
+            + " AFTER DELETE ON " + LogColumns.TABLE_NAME
+            + " BEGIN UPDATE " + RideColumns.TABLE_NAME + " SET " + RideColumns.VERSION + "=" + RideColumns.VERSION + "+1, "
+            + RideColumns.MODIFIED_DATE + "=" + SQL_NOW
+            + " WHERE " + RideColumns._ID + "=OLD." + LogColumns.RIDE_ID + "; END"
+            + " ;",
+
+            "CREATE TRIGGER IF NOT EXISTS trg_ride_update_name_ride_version"
+            + " AFTER UPDATE OF " + RideColumns.NAME + " ON " + RideColumns.TABLE_NAME
+            + " WHEN OLD." + RideColumns.NAME + " IS NOT NEW." + RideColumns.NAME
+            + " BEGIN UPDATE " + RideColumns.TABLE_NAME + " SET " + RideColumns.VERSION + "=" + RideColumns.VERSION + "+1, "
+            + RideColumns.MODIFIED_DATE + "=" + SQL_NOW
+            + " WHERE " + RideColumns._ID + "=NEW." + RideColumns._ID + "; END"
+            + " ;",
+    };
     // @formatter:on
 
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
@@ -131,6 +270,73 @@ public class BikeySQLiteUpgradeHelper {
                     db.execSQL(SQL_POPULATE_TABLE_LOG_5);
                     curVersion = 5;
                     break;
+
+                case 5:
+                    // 5 -> 6
+                    // Add an index on the ride and recorded date of logs
+                    db.execSQL(SQL_CREATE_INDEX_LOG_RIDE_ID_RECORDED_DATE);
+                    curVersion = 6;
+                    break;
+
+                case 6:
+                    // 6 -> 7
+                    // Add new VERSION column, and the triggers that maintain it
+                    db.execSQL(SQL_UPGRADE_TABLE_RIDE_7);
+                    for (String sql : SQL_CREATE_TRIGGERS_RIDE_VERSION_7) {
+                        db.execSQL(sql);
+                    }
+                    curVersion = 7;
+                    break;
+
+                case 7:
+                    // 7 -> 8
+                    // Add new POWER column
+                    db.execSQL(SQL_UPGRADE_TABLE_LOG_8);
+                    curVersion = 8;
+                    break;
+
+                case 8:
+                    // 8 -> 9
+                    // Add new RR_INTERVAL table
+                    db.execSQL(BikeySQLiteOpenHelper.SQL_CREATE_TABLE_RR_INTERVAL);
+                    db.execSQL(SQL_CREATE_INDEX_RR_INTERVAL_RIDE_ID_RECORDED_DATE);
+                    curVersion = 9;
+                    break;
+
+                case 9:
+                    // 9 -> 10
+                    // Add new ELAPSED_REALTIME_NANOS column
+                    db.execSQL(SQL_UPGRADE_TABLE_LOG_10);
+                    curVersion = 10;
+                    break;
+
+                case 10:
+                    // 10 -> 11
+                    // Add new SPEED_SOURCE column
+                    db.execSQL(SQL_UPGRADE_TABLE_LOG_11);
+                    curVersion = 11;
+                    break;
+
+                case 11:
+                    // 11 -> 12
+                    // Add new GRADIENT column
+                    db.execSQL(SQL_UPGRADE_TABLE_LOG_12);
+                    curVersion = 12;
+                    break;
+
+                case 12:
+                    // 12 -> 13
+                    // Add new MODIFIED_DATE column, and update the triggers to maintain it
+                    db.execSQL(SQL_UPGRADE_TABLE_RIDE_13);
+                    db.execSQL(SQL_POPULATE_TABLE_RIDE_13);
+                    for (String sql : SQL_DROP_TRIGGERS_RIDE_VERSION_13) {
+                        db.execSQL(sql);
+                    }
+                    for (String sql : SQL_CREATE_TRIGGERS_RIDE_VERSION) {
+                        db.execSQL(sql);
+                    }
+                    curVersion = 13;
+                    break;
             }
         }
     }
@@ -50,6 +50,10 @@ public class LogColumns implements BaseColumns {
     public static final String SPEED = "speed";
     public static final String CADENCE = "cadence";
     public static final String HEART_RATE = "heart_rate";
+    public static final String POWER = "power";
+    public static final String ELAPSED_REALTIME_NANOS = "elapsed_realtime_nanos";
+    public static final String SPEED_SOURCE = "speed_source";
+    public static final String GRADIENT = "gradient";
 
     public static final String DEFAULT_ORDER = TABLE_NAME + "." +_ID;
 
@@ -65,7 +69,11 @@ public class LogColumns implements BaseColumns {
             TABLE_NAME + "." + LOG_DISTANCE,
             TABLE_NAME + "." + SPEED,
             TABLE_NAME + "." + CADENCE,
-            TABLE_NAME + "." + HEART_RATE
+            TABLE_NAME + "." + HEART_RATE,
+            TABLE_NAME + "." + POWER,
+            TABLE_NAME + "." + ELAPSED_REALTIME_NANOS,
+            TABLE_NAME + "." + SPEED_SOURCE,
+            TABLE_NAME + "." + GRADIENT
     };
     // @formatter:on
 
@@ -82,6 +90,10 @@ public class LogColumns implements BaseColumns {
         ALL_COLUMNS.add(SPEED);
         ALL_COLUMNS.add(CADENCE);
         ALL_COLUMNS.add(HEART_RATE);
+        ALL_COLUMNS.add(POWER);
+        ALL_COLUMNS.add(ELAPSED_REALTIME_NANOS);
+        ALL_COLUMNS.add(SPEED_SOURCE);
+        ALL_COLUMNS.add(GRADIENT);
     }
 
     public static boolean hasColumns(String[] projection) {
@@ -145,4 +145,44 @@ public class LogContentValues extends AbstractContentValues {
         return this;
     }
 
+    public LogContentValues putPower(Integer value) {
+        mContentValues.put(LogColumns.POWER, value);
+        return this;
+    }
+
+    public LogContentValues putPowerNull() {
+        mContentValues.putNull(LogColumns.POWER);
+        return this;
+    }
+
+    public LogContentValues putElapsedRealtimeNanos(Long value) {
+        mContentValues.put(LogColumns.ELAPSED_REALTIME_NANOS, value);
+        return this;
+    }
+
+    public LogContentValues putElapsedRealtimeNanosNull() {
+        mContentValues.putNull(LogColumns.ELAPSED_REALTIME_NANOS);
+        return this;
+    }
+
+    public LogContentValues putSpeedSource(SpeedSource value) {
+        mContentValues.put(LogColumns.SPEED_SOURCE, value == null ? null : value.ordinal());
+        return this;
+    }
+
+    public LogContentValues putSpeedSourceNull() {
+        mContentValues.putNull(LogColumns.SPEED_SOURCE);
+        return this;
+    }
+
+    public LogContentValues putGradient(Float value) {
+        mContentValues.put(LogColumns.GRADIENT, value);
+        return this;
+    }
+
+    public LogContentValues putGradientNull() {
+        mContentValues.putNull(LogColumns.GRADIENT);
+        return this;
+    }
+
 }
@@ -171,4 +171,52 @@ public class LogCursor extends AbstractCursor {
     public float getDistance() {
         return getFloatOrNull(RideColumns.DISTANCE);
     }
+
+    /**
+     * Get the {@code version} value.
+     */
+    public long getVersion() {
+        return getLongOrNull(RideColumns.VERSION);
+    }
+
+    /**
+     * Get the {@code power} value.
+     * Can be {@code null}.
+     */
+    public Integer getPower() {
+        return getIntegerOrNull(LogColumns.POWER);
+    }
+
+    /**
+     * Get the {@code elapsed_realtime_nanos} value.
+     * Can be {@code null}.
+     */
+    public Long getElapsedRealtimeNanos() {
+        return getLongOrNull(LogColumns.ELAPSED_REALTIME_NANOS);
+    }
+
+    /**
+     * Get the {@code speed_source} value.
+     * Can be {@code null}.
+     */
+    public SpeedSource getSpeedSource() {
+        Integer intValue = getIntegerOrNull(LogColumns.SPEED_SOURCE);
+        if (intValue == null) return null;
+        return SpeedSource.values()[intValue];
+    }
+
+    /**
+     * Get the {@code gradient} value.
+     * Can be {@code null}.
+     */
+    public Float getGradient() {
+        return getFloatOrNull(LogColumns.GRADIENT);
+    }
+
+    /**
+     * Get the {@code modified_date} value.
+     */
+    public long getModifiedDate() {
+        return getLongOrNull(RideColumns.MODIFIED_DATE);
+    }
 }
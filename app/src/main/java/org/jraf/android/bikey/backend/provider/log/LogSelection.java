@@ -381,4 +381,104 @@ public class LogSelection extends AbstractSelection<LogSelection> {
         addLessThanOrEquals(LogColumns.HEART_RATE, value);
         return this;
     }
+
+    public LogSelection power(Integer... value) {
+        addEquals(LogColumns.POWER, value);
+        return this;
+    }
+
+    public LogSelection powerNot(Integer... value) {
+        addNotEquals(LogColumns.POWER, value);
+        return this;
+    }
+
+    public LogSelection powerGt(int value) {
+        addGreaterThan(LogColumns.POWER, value);
+        return this;
+    }
+
+    public LogSelection powerGtEq(int value) {
+        addGreaterThanOrEquals(LogColumns.POWER, value);
+        return this;
+    }
+
+    public LogSelection powerLt(int value) {
+        addLessThan(LogColumns.POWER, value);
+        return this;
+    }
+
+    public LogSelection powerLtEq(int value) {
+        addLessThanOrEquals(LogColumns.POWER, value);
+        return this;
+    }
+
+    public LogSelection elapsedRealtimeNanos(Long... value) {
+        addEquals(LogColumns.ELAPSED_REALTIME_NANOS, value);
+        return this;
+    }
+
+    public LogSelection elapsedRealtimeNanosNot(Long... value) {
+        addNotEquals(LogColumns.ELAPSED_REALTIME_NANOS, value);
+        return this;
+    }
+
+    public LogSelection elapsedRealtimeNanosGt(long value) {
+        addGreaterThan(LogColumns.ELAPSED_REALTIME_NANOS, value);
+        return this;
+    }
+
+    public LogSelection elapsedRealtimeNanosGtEq(long value) {
+        addGreaterThanOrEquals(LogColumns.ELAPSED_REALTIME_NANOS, value);
+        return this;
+    }
+
+    public LogSelection elapsedRealtimeNanosLt(long value) {
+        addLessThan(LogColumns.ELAPSED_REALTIME_NANOS, value);
+        return this;
+    }
+
+    public LogSelection elapsedRealtimeNanosLtEq(long value) {
+        addLessThanOrEquals(LogColumns.ELAPSED_REALTIME_NANOS, value);
+        return this;
+    }
+
+    public LogSelection speedSource(SpeedSource... value) {
+        addEquals(LogColumns.SPEED_SOURCE, value);
+        return this;
+    }
+
+    public LogSelection speedSourceNot(SpeedSource... value) {
+        addNotEquals(LogColumns.SPEED_SOURCE, value);
+        return this;
+    }
+
+    public LogSelection gradient(Float... value) {
+        addEquals(LogColumns.GRADIENT, value);
+        return this;
+    }
+
+    public LogSelection gradientNot(Float... value) {
+        addNotEquals(LogColumns.GRADIENT, value);
+        return this;
+    }
+
+    public LogSelection gradientGt(float value) {
+        addGreaterThan(LogColumns.GRADIENT, value);
+        return this;
+    }
+
+    public LogSelection gradientGtEq(float value) {
+        addGreaterThanOrEquals(LogColumns.GRADIENT, value);
+        return this;
+    }
+
+    public LogSelection gradientLt(float value) {
+        addLessThan(LogColumns.GRADIENT, value);
+        return this;
+    }
+
+    public LogSelection gradientLtEq(float value) {
+        addLessThanOrEquals(LogColumns.GRADIENT, value);
+        return this;
+    }
 }
@@ -0,0 +1,46 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2013-2014 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.provider.log;
+
+/**
+ * Possible values for the {@code speed_source} column of the {@code log} table.
+ */
+public enum SpeedSource {
+    /**
+     * The speed has been computed from the distance between consecutive locations.
+     */
+    POSITIONS,
+
+    /**
+     * The speed has been measured by the GNSS receiver, from the Doppler shift of the satellite signals.
+     */
+    DOPPLER,
+
+    /**
+     * The speed has been measured by a wheel sensor.
+     */
+    WHEEL,
+
+}
\ No newline at end of file
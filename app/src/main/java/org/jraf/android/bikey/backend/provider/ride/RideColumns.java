@@ -47,6 +47,8 @@ public class RideColumns implements BaseColumns {
     public static final String ACTIVATED_DATE = "activated_date";
     public static final String DURATION = "duration";
     public static final String DISTANCE = "distance";
+    public static final String VERSION = "version";
+    public static final String MODIFIED_DATE = "modified_date";
 
     public static final String DEFAULT_ORDER = TABLE_NAME + "." +_ID;
 
@@ -59,7 +61,9 @@ public class RideColumns implements BaseColumns {
             TABLE_NAME + "." + FIRST_ACTIVATED_DATE,
             TABLE_NAME + "." + ACTIVATED_DATE,
             TABLE_NAME + "." + DURATION,
-            TABLE_NAME + "." + DISTANCE
+            TABLE_NAME + "." + DISTANCE,
+            TABLE_NAME + "." + VERSION,
+            TABLE_NAME + "." + MODIFIED_DATE
     };
     // @formatter:on
 
@@ -73,6 +77,8 @@ public class RideColumns implements BaseColumns {
         ALL_COLUMNS.add(ACTIVATED_DATE);
         ALL_COLUMNS.add(DURATION);
         ALL_COLUMNS.add(DISTANCE);
+        ALL_COLUMNS.add(VERSION);
+        ALL_COLUMNS.add(MODIFIED_DATE);
     }
 
     public static boolean hasColumns(String[] projection) {
@@ -127,4 +127,16 @@ public class RideContentValues extends AbstractContentValues {
     }
 
 
+    public RideContentValues putVersion(long value) {
+        mContentValues.put(RideColumns.VERSION, value);
+        return this;
+    }
+
+
+    public RideContentValues putModifiedDate(long value) {
+        mContentValues.put(RideColumns.MODIFIED_DATE, value);
+        return this;
+    }
+
+
 }
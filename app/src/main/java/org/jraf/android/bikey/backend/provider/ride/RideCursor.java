@@ -94,4 +94,18 @@ public class RideCursor extends AbstractCursor {
     public float getDistance() {
         return getFloatOrNull(RideColumns.DISTANCE);
     }
+
+    /**
+     * Get the {@code version} value.
+     */
+    public long getVersion() {
+        return getLongOrNull(RideColumns.VERSION);
+    }
+
+    /**
+     * Get the {@code modified_date} value.
+     */
+    public long getModifiedDate() {
+        return getLongOrNull(RideColumns.MODIFIED_DATE);
+    }
 }
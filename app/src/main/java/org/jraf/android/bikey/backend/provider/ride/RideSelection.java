@@ -267,4 +267,64 @@ public class RideSelection extends AbstractSelection<RideSelection> {
         addLessThanOrEquals(RideColumns.DISTANCE, value);
         return this;
     }
+
+    public RideSelection version(long... value) {
+        addEquals(RideColumns.VERSION, toObjectArray(value));
+        return this;
+    }
+
+    public RideSelection versionNot(long... value) {
+        addNotEquals(RideColumns.VERSION, toObjectArray(value));
+        return this;
+    }
+
+    public RideSelection versionGt(long value) {
+        addGreaterThan(RideColumns.VERSION, value);
+        return this;
+    }
+
+    public RideSelection versionGtEq(long value) {
+        addGreaterThanOrEquals(RideColumns.VERSION, value);
+        return this;
+    }
+
+    public RideSelection versionLt(long value) {
+        addLessThan(RideColumns.VERSION, value);
+        return this;
+    }
+
+    public RideSelection versionLtEq(long value) {
+        addLessThanOrEquals(RideColumns.VERSION, value);
+        return this;
+    }
+
+    public RideSelection modifiedDate(long... value) {
+        addEquals(RideColumns.MODIFIED_DATE, toObjectArray(value));
+        return this;
+    }
+
+    public RideSelection modifiedDateNot(long... value) {
+        addNotEquals(RideColumns.MODIFIED_DATE, toObjectArray(value));
+        return this;
+    }
+
+    public RideSelection modifiedDateGt(long value) {
+        addGreaterThan(RideColumns.MODIFIED_DATE, value);
+        return this;
+    }
+
+    public RideSelection modifiedDateGtEq(long value) {
+        addGreaterThanOrEquals(RideColumns.MODIFIED_DATE, value);
+        return this;
+    }
+
+    public RideSelection modifiedDateLt(long value) {
+        addLessThan(RideColumns.MODIFIED_DATE, value);
+        return this;
+    }
+
+    public RideSelection modifiedDateLtEq(long value) {
+        addLessThanOrEquals(RideColumns.MODIFIED_DATE, value);
+        return this;
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2013-2014 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.provider.rrinterval;
+
+import java.util.Date;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.jraf.android.bikey.backend.provider.base.AbstractSelection;
+
+/**
+ * Selection for the {@code rr_interval} table.
+ */
+public class RrIntervalSelection extends AbstractSelection<RrIntervalSelection> {
+    @Override
+    public Uri uri() {
+        return RrIntervalColumns.CONTENT_URI;
+    }
+
+    /**
+     * Query the given content resolver using this selection.
+     *
+     * @param contentResolver The content resolver to query.
+     * @param projection A list of which columns to return. Passing null will return all columns, which is inefficient.
+     * @param sortOrder How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself). Passing null will use the default sort
+     *            order, which may be unordered.
+     * @return A {@code RrIntervalCursor} object, which is positioned before the first entry, or null.
+     */
+    public RrIntervalCursor query(ContentResolver contentResolver, String[] projection, String sortOrder) {
+        Cursor cursor = contentResolver.query(uri(), projection, sel(), args(), sortOrder);
+        if (cursor == null) return null;
+        return new RrIntervalCursor(cursor);
+    }
+
+    /**
+     * Equivalent of calling {@code query(contentResolver, projection, null}.
+     */
+    public RrIntervalCursor query(ContentResolver contentResolver, String[] projection) {
+        return query(contentResolver, projection, null);
+    }
+
+    /**
+     * Equivalent of calling {@code query(contentResolver, projection, null, null}.
+     */
+    public RrIntervalCursor query(ContentResolver contentResolver) {
+        return query(contentResolver, null, null);
+    }
+
+
+    public RrIntervalSelection id(long... value) {
+        addEquals(RrIntervalColumns._ID, toObjectArray(value));
+        return this;
+    }
+
+
+    public RrIntervalSelection rideId(long... value) {
+        addEquals(RrIntervalColumns.RIDE_ID, toObjectArray(value));
+        return this;
+    }
+
+    public RrIntervalSelection rideIdNot(long... value) {
+        addNotEquals(RrIntervalColumns.RIDE_ID, toObjectArray(value));
+        return this;
+    }
+
+    public RrIntervalSelection rideIdGt(long value) {
+        addGreaterThan(RrIntervalColumns.RIDE_ID, value);
+        return this;
+    }
+
+    public RrIntervalSelection rideIdGtEq(long value) {
+        addGreaterThanOrEquals(RrIntervalColumns.RIDE_ID, value);
+        return this;
+    }
+
+    public RrIntervalSelection rideIdLt(long value) {
+        addLessThan(RrIntervalColumns.RIDE_ID, value);
+        return this;
+    }
+
+    public RrIntervalSelection rideIdLtEq(long value) {
+        addLessThanOrEquals(RrIntervalColumns.RIDE_ID, value);
+        return this;
+    }
+
+    public RrIntervalSelection recordedDate(Date... value) {
+        addEquals(RrIntervalColumns.RECORDED_DATE, value);
+        return this;
+    }
+
+    public RrIntervalSelection recordedDateNot(Date... value) {
+        addNotEquals(RrIntervalColumns.RECORDED_DATE, value);
+        return this;
+    }
+
+    public RrIntervalSelection recordedDate(long... value) {
+        addEquals(RrIntervalColumns.RECORDED_DATE, toObjectArray(value));
+        return this;
+    }
+
+    public RrIntervalSelection recordedDateAfter(Date value) {
+        addGreaterThan(RrIntervalColumns.RECORDED_DATE, value);
+        return this;
+    }
+
+    public RrIntervalSelection recordedDateAfterEq(Date value) {
+        addGreaterThanOrEquals(RrIntervalColumns.RECORDED_DATE, value);
+        return this;
+    }
+
+    public RrIntervalSelection recordedDateBefore(Date value) {
+        addLessThan(RrIntervalColumns.RECORDED_DATE, value);
+        return this;
+    }
+
+    public RrIntervalSelection recordedDateBeforeEq(Date value) {
+        addLessThanOrEquals(RrIntervalColumns.RECORDED_DATE, value);
+        return this;
+    }
+
+    public RrIntervalSelection rrInterval(int... value) {
+        addEquals(RrIntervalColumns.RR_INTERVAL, toObjectArray(value));
+        return this;
+    }
+
+    public RrIntervalSelection rrIntervalNot(int... value) {
+        addNotEquals(RrIntervalColumns.RR_INTERVAL, toObjectArray(value));
+        return this;
+    }
+
+    public RrIntervalSelection rrIntervalGt(int value) {
+        addGreaterThan(RrIntervalColumns.RR_INTERVAL, value);
+        return this;
+    }
+
+    public RrIntervalSelection rrIntervalGtEq(int value) {
+        addGreaterThanOrEquals(RrIntervalColumns.RR_INTERVAL, value);
+        return this;
+    }
+
+    public RrIntervalSelection rrIntervalLt(int value) {
+        addLessThan(RrIntervalColumns.RR_INTERVAL, value);
+        return this;
+    }
+
+    public RrIntervalSelection rrIntervalLtEq(int value) {
+        addLessThanOrEquals(RrIntervalColumns.RR_INTERVAL, value);
+        return this;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.ride;
+
+import android.location.Location;
+
+import org.jraf.android.bikey.util.LocationUtil;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * State machine that detects when the rider stops (traffic lights...) and starts moving again, from the stream of speeds.<br/>
+ * To avoid flapping, there is an hysteresis both on the speed (the speed to resume is higher than the speed to pause) and on the time (the speed
+ * must stay on the other side of the threshold for a while before the state changes).<br/>
+ * The transitions are reported with the date of the first fix of the streak that triggered them, so the ride duration does not include the
+ * confirmation delays.
+ */
+public class AutoPauseDetector {
+    public static interface AutoPauseListener {
+        /**
+         * @param date The date (wall time) at which the rider stopped.
+         */
+        void onAutoPause(long date);
+
+        /**
+         * @param date The date (wall time) at which the rider started moving again.
+         */
+        void onAutoResume(long date);
+    }
+
+    /**
+     * Below this speed, the rider is considered stopped.
+     */
+    private static final float PAUSE_SPEED_M_S = 3 / 3.6f;
+
+    /**
+     * Above this speed, the rider is considered moving again.
+     */
+    private static final float RESUME_SPEED_M_S = 6 / 3.6f;
+
+    /**
+     * How long the speed must stay above {@link #RESUME_SPEED_M_S} to resume.
+     */
+    private static final long RESUME_DELAY_MS = 3 * 1000;
+
+    private final long mPauseDelay;
+    private final AutoPauseListener mListener;
+
+    private boolean mPaused;
+    private boolean mHasCandidate;
+    private long mCandidateMonotonicTime;
+    private long mCandidateDate;
+
+    /**
+     * @param pauseDelay How long the speed must stay under the pause threshold to pause, in milliseconds.
+     */
+    public AutoPauseDetector(long pauseDelay, AutoPauseListener listener) {
+        mPauseDelay = pauseDelay;
+        mListener = listener;
+    }
+
+    /**
+     * Feed a new fix to the detector.
+     *
+     * @param speed The current speed in m/s (from the location or from a more precise sensor).
+     */
+    public void onLocationChanged(Location location, float speed) {
+        boolean candidate = mPaused ? speed >= RESUME_SPEED_M_S : speed < PAUSE_SPEED_M_S;
+        if (!candidate) {
+            mHasCandidate = false;
+            return;
+        }
+
+        long monotonicTime = LocationUtil.getMonotonicTime(location);
+        if (!mHasCandidate) {
+            mHasCandidate = true;
+            mCandidateMonotonicTime = monotonicTime;
+            mCandidateDate = location.getTime();
+        }
+
+        long delay = mPaused ? RESUME_DELAY_MS : mPauseDelay;
+        if (monotonicTime - mCandidateMonotonicTime < delay) return;
+
+        mPaused = !mPaused;
+        mHasCandidate = false;
+        if (mPaused) {
+            Log.d("Auto pause at " + mCandidateDate);
+            mListener.onAutoPause(mCandidateDate);
+        } else {
+            Log.d("Auto resume at " + mCandidateDate);
+            mListener.onAutoResume(mCandidateDate);
+        }
+    }
+
+    /**
+     * @return {@code true} if the rider is currently considered stopped.
+     */
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    /**
+     * Go back to the moving state, without notifying the listener (for instance when the ride is resumed manually).
+     */
+    public void reset() {
+        mPaused = false;
+        mHasCandidate = false;
+    }
+}
@@ -30,4 +30,14 @@ public interface RideListener {
     void onActivated(Uri rideUri);
 
     void onPaused(Uri rideUri);
+
+    /**
+     * Called when the rider has stopped: the ride is still active, but its duration is not counted anymore.
+     */
+    void onAutoPaused(Uri rideUri);
+
+    /**
+     * Called when the rider has started moving again after an automatic pause.
+     */
+    void onAutoResumed(Uri rideUri);
 }
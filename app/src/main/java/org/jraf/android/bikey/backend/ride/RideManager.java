@@ -40,6 +40,7 @@ import org.jraf.android.bikey.Constants;
 import org.jraf.android.bikey.R;
 import org.jraf.android.bikey.app.Application;
 import org.jraf.android.bikey.app.collect.LogCollectorService;
+import org.jraf.android.bikey.backend.export.ExportCache;
 import org.jraf.android.bikey.backend.log.LogManager;
 import org.jraf.android.bikey.backend.provider.BikeyProvider;
 import org.jraf.android.bikey.backend.provider.log.LogContentValues;
@@ -49,6 +50,8 @@ import org.jraf.android.bikey.backend.provider.ride.RideContentValues;
 import org.jraf.android.bikey.backend.provider.ride.RideCursor;
 import org.jraf.android.bikey.backend.provider.ride.RideSelection;
 import org.jraf.android.bikey.backend.provider.ride.RideState;
+import org.jraf.android.bikey.backend.provider.rrinterval.RrIntervalContentValues;
+import org.jraf.android.bikey.backend.provider.rrinterval.RrIntervalSelection;
 import org.jraf.android.util.annotation.Background;
 import org.jraf.android.util.listeners.Listeners;
 import org.jraf.android.util.listeners.Listeners.Dispatcher;
@@ -70,8 +73,13 @@ public class RideManager {
 
     @Background
     public Uri create(String name) {
+        return create(name, new Date());
+    }
+
+    @Background
+    public Uri create(String name, Date createdDate) {
         RideContentValues values = new RideContentValues();
-        values.putCreatedDate(new Date());
+        values.putCreatedDate(createdDate);
         if (!TextUtils.isEmpty(name)) {
             values.putName(name);
         }
@@ -96,6 +104,14 @@ public class RideManager {
         logWhere.rideId(ids);
         logWhere.delete(mContext.getContentResolver());
 
+        // Delete RR intervals
+        RrIntervalSelection rrIntervalWhere = new RrIntervalSelection();
+        rrIntervalWhere.rideId(ids);
+        rrIntervalWhere.delete(mContext.getContentResolver());
+
+        // Delete their exports
+        ExportCache.get().remove(ids);
+
         // If we just deleted the current ride, select another ride to be the current ride (if any).
         Uri currentRideUri = getCurrentRide();
         long currentRideId = Long.valueOf(currentRideUri.getLastPathSegment());
@@ -152,6 +168,13 @@ public class RideManager {
             values.putRideId(masterRideId);
             values.update(contentResolver, logWhere);
 
+            // Update RR intervals
+            RrIntervalSelection rrIntervalWhere = new RrIntervalSelection();
+            rrIntervalWhere.rideId(mergedRideId);
+            RrIntervalContentValues rrIntervalValues = new RrIntervalContentValues();
+            rrIntervalValues.putRideId(masterRideId);
+            rrIntervalValues.update(contentResolver, rrIntervalWhere);
+
             // Delete merged ride
             rideWhere = new RideSelection();
             rideWhere.id(mergedRideId);
@@ -160,6 +183,9 @@ public class RideManager {
             contentResolver.delete(contentUri, rideWhere.sel(), rideWhere.args());
         }
 
+        // The exports of all these rides are now stale
+        ExportCache.get().remove(ids);
+
         // Rename master ride
         Uri masterRideUri = ContentUris.withAppendedId(RideColumns.CONTENT_URI, masterRideId);
         String name = getName(masterRideUri);
@@ -193,6 +219,14 @@ public class RideManager {
 
     @Background
     public void activate(final Uri rideUri) {
+        activate(rideUri, System.currentTimeMillis());
+    }
+
+    /**
+     * Activate a ride, as of the given date (which can be in the past, for instance when the ride is resumed automatically).
+     */
+    @Background
+    public void activate(final Uri rideUri, long date) {
         // Get first activated date
         Date firstActivatedDate = getFirstActivatedDate(rideUri);
 
@@ -200,11 +234,10 @@ public class RideManager {
         RideContentValues values = new RideContentValues();
         values.putState(RideState.ACTIVE);
         // Update activated date
-        Date now = new Date();
-        values.putActivatedDate(now);
+        values.putActivatedDate(date);
         // Update first activated date, only if first time
         if (firstActivatedDate == null) {
-            values.putFirstActivatedDate(now);
+            values.putFirstActivatedDate(date);
         }
         mContext.getContentResolver().update(rideUri, values.values(), null, null);
 
@@ -217,6 +250,20 @@ public class RideManager {
         });
     }
 
+    /**
+     * Update a ride whose logs have been imported: it is marked as paused, first activated at the date of its first log.
+     */
+    @Background
+    public void updateImported(Uri rideUri, Date firstActivatedDate, long duration, float distance) {
+        RideContentValues values = new RideContentValues();
+        values.putState(RideState.PAUSED);
+        values.putFirstActivatedDate(firstActivatedDate);
+        values.putActivatedDate(0l);
+        values.putDuration(duration);
+        values.putDistance(distance);
+        mContext.getContentResolver().update(rideUri, values.values(), null, null);
+    }
+
     @Background
     public void updateTotalDistance(Uri rideUri, float distance) {
         RideContentValues values = new RideContentValues();
@@ -244,19 +291,32 @@ public class RideManager {
 
     @Background
     public void pause(final Uri rideUri) {
-        // Get current activated date / duration
-        String[] projection = { RideColumns.ACTIVATED_DATE, RideColumns.DURATION };
+        pause(rideUri, System.currentTimeMillis());
+    }
+
+    /**
+     * Pause a ride, as of the given date (which can be in the past).<br/>
+     * Nothing is done if the ride is not active.
+     */
+    @Background
+    public void pause(final Uri rideUri, long date) {
+        // Get current state / activated date / duration
+        String[] projection = { RideColumns.STATE, RideColumns.ACTIVATED_DATE, RideColumns.DURATION };
         RideCursor c = new RideCursor(mContext.getContentResolver().query(rideUri, projection, null, null, null));
         try {
             if (!c.moveToNext()) {
                 Log.w("Could not pause ride, uri " + rideUri + " not found");
                 return;
             }
+            if (c.getState() != RideState.ACTIVE) {
+                Log.d("Ride " + rideUri + " is not active, nothing to do");
+                return;
+            }
             long activatedDate = c.getActivatedDate().getTime();
             long duration = c.getDuration();
 
-            // Update duration, state, and reset activated date
-            duration += System.currentTimeMillis() - activatedDate;
+            // Update duration (unless auto paused), state, and reset activated date
+            if (activatedDate != 0) duration += Math.max(0, date - activatedDate);
 
             RideContentValues values = new RideContentValues();
             values.putState(RideState.PAUSED);
@@ -271,9 +331,74 @@ public class RideManager {
                     listener.onPaused(rideUri);
                 }
             });
+
+            // Collapse the logs recorded while stopped
+            LogManager.get().compactStationaryLogsAsync(rideUri);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Stop counting the duration of an active ride as of the given date, while the rider is stopped (see {@link AutoPauseDetector}). The ride stays
+     * active: its activated date is reset until {@link #autoResume(Uri, long)} is called.<br/>
+     * Nothing is done if the ride is not active, or already auto paused.
+     */
+    @Background
+    public void autoPause(final Uri rideUri, long date) {
+        String[] projection = { RideColumns.STATE, RideColumns.ACTIVATED_DATE, RideColumns.DURATION };
+        RideCursor c = new RideCursor(mContext.getContentResolver().query(rideUri, projection, null, null, null));
+        try {
+            if (!c.moveToNext()) {
+                Log.w("Could not auto pause ride, uri " + rideUri + " not found");
+                return;
+            }
+            long activatedDate = c.getActivatedDate().getTime();
+            if (c.getState() != RideState.ACTIVE || activatedDate == 0) {
+                Log.d("Ride " + rideUri + " is not active or already auto paused, nothing to do");
+                return;
+            }
+
+            // Update duration, and reset activated date
+            RideContentValues values = new RideContentValues();
+            values.putDuration(c.getDuration() + Math.max(0, date - activatedDate));
+            values.putActivatedDate(0l);
+            mContext.getContentResolver().update(rideUri, values.values(), null, null);
         } finally {
             c.close();
         }
+
+        // Dispatch to listeners
+        mListeners.dispatch(new Dispatcher<RideListener>() {
+            @Override
+            public void dispatch(RideListener listener) {
+                listener.onAutoPaused(rideUri);
+            }
+        });
+    }
+
+    /**
+     * Count the duration of an auto paused ride again, as of the given date.<br/>
+     * Nothing is done if the ride is not active, or not auto paused.
+     */
+    @Background
+    public void autoResume(final Uri rideUri, long date) {
+        RideContentValues values = new RideContentValues();
+        values.putActivatedDate(date);
+        RideSelection where = new RideSelection();
+        where.id(ContentUris.parseId(rideUri)).and().state(RideState.ACTIVE).and().activatedDate(0l);
+        if (values.update(mContext.getContentResolver(), where) == 0) {
+            Log.d("Ride " + rideUri + " is not auto paused, nothing to do");
+            return;
+        }
+
+        // Dispatch to listeners
+        mListeners.dispatch(new Dispatcher<RideListener>() {
+            @Override
+            public void dispatch(RideListener listener) {
+                listener.onAutoResumed(rideUri);
+            }
+        });
     }
 
     /**
@@ -319,6 +444,16 @@ public class RideManager {
         }
     }
 
+    @Background
+    public Date getCreatedDate(Uri rideUri) {
+        RideCursor c = query(rideUri);
+        try {
+            return c.getCreatedDate();
+        } finally {
+            c.close();
+        }
+    }
+
     @Background
     public Date getActivatedDate(Uri rideUri) {
         RideCursor c = query(rideUri);
@@ -349,6 +484,19 @@ public class RideManager {
         }
     }
 
+    /**
+     * The version of a ride is incremented each time its logs or its name change.
+     */
+    @Background
+    public long getVersion(Uri rideUri) {
+        RideCursor c = query(rideUri);
+        try {
+            return c.getVersion();
+        } finally {
+            c.close();
+        }
+    }
+
     @Background
     public RideState getState(Uri rideUri) {
         RideCursor c = query(rideUri);
@@ -0,0 +1,195 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.sensor;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.os.Build;
+
+import org.jraf.android.util.listeners.Listeners;
+import org.jraf.android.util.listeners.Listeners.Dispatcher;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * A bluetooth sensor connected through the {@link SensorHub}, which keeps track of the connection status and informs the listeners.<br/>
+ * Subclasses parse the measurements, see {@link #onMeasurement(byte[])}.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public abstract class GattSensor<L extends SensorListener> {
+    // @formatter:off
+    private static enum Status {
+        DISCONNECTED,
+        CONNECTING,
+        CONNECTED,
+    }
+    // @formatter:on
+
+    private final int mServiceNumber;
+    private final int mCharacteristicNumber;
+    private final Listeners<L> mListeners = new Listeners<L>();
+    private volatile Status mStatus = Status.DISCONNECTED;
+
+    /**
+     * @param serviceNumber The assigned number of the GATT service of the sensor.
+     * @param characteristicNumber The assigned number of the measurement characteristic.
+     */
+    protected GattSensor(int serviceNumber, int characteristicNumber) {
+        mServiceNumber = serviceNumber;
+        mCharacteristicNumber = characteristicNumber;
+    }
+
+    public void addListener(L listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(L listener) {
+        mListeners.remove(listener);
+    }
+
+    public void connect(BluetoothDevice bluetoothDevice) {
+        Log.d();
+        SensorHub.get().connect(bluetoothDevice, mServiceNumber, mCharacteristicNumber, mSensorCallback);
+    }
+
+    public void disconnect() {
+        Log.d();
+        SensorHub.get().disconnect(mSensorCallback);
+        onDisconnect();
+    }
+
+    public boolean isConnected() {
+        return mStatus == Status.CONNECTED;
+    }
+
+    public boolean isConnecting() {
+        return mStatus == Status.CONNECTING;
+    }
+
+    /**
+     * Called on the sensor hub thread, for each notification of the measurement characteristic. This can be several times per second: the raw
+     * bytes must be parsed directly, without allocating anything.<br/>
+     * Implementations call {@link #onValidMeasurement()} before informing the listeners of the new values.
+     */
+    protected abstract void onMeasurement(byte[] value);
+
+    /**
+     * Called when the sensor is disconnected, to forget the last values.
+     */
+    protected abstract void onReset();
+
+    /**
+     * Inform the listeners. The dispatchers used on the notification path should be allocated once.
+     */
+    protected void dispatch(Dispatcher<L> dispatcher) {
+        mListeners.dispatch(dispatcher);
+    }
+
+    protected void onValidMeasurement() {
+        if (mStatus != Status.CONNECTED) {
+            mStatus = Status.CONNECTED;
+
+            // Inform listeners
+            mListeners.dispatch(mConnectedDispatcher);
+        }
+    }
+
+    protected void onDisconnect() {
+        mStatus = Status.DISCONNECTED;
+        onReset();
+        mListeners.dispatch(new Dispatcher<L>() {
+            @Override
+            public void dispatch(L listener) {
+                listener.onDisconnected();
+            }
+        });
+    }
+
+    /*
+     * The sensor hub callbacks are all called on the sensor hub thread.
+     */
+
+    private final SensorCallback mSensorCallback = new SensorCallback() {
+        @Override
+        public void onConnecting() {
+            mStatus = Status.CONNECTING;
+            // Inform listeners
+            mListeners.dispatch(new Dispatcher<L>() {
+                @Override
+                public void dispatch(L listener) {
+                    listener.onConnecting();
+                }
+            });
+        }
+
+        @Override
+        public void onMeasurement(byte[] value) {
+            GattSensor.this.onMeasurement(value);
+        }
+
+        @Override
+        public void onDisconnected() {
+            onDisconnect();
+        }
+
+        @Override
+        public void onError() {
+            mStatus = Status.DISCONNECTED;
+            // Inform listeners
+            mListeners.dispatch(new Dispatcher<L>() {
+                @Override
+                public void dispatch(L listener) {
+                    listener.onError();
+                }
+            });
+        }
+    };
+
+    private final Dispatcher<L> mConnectedDispatcher = new Dispatcher<L>() {
+        @Override
+        public void dispatch(L listener) {
+            listener.onConnected();
+        }
+    };
+
+
+    /*
+     * Helpers.
+     */
+
+    protected static int readUInt16(byte[] value, int offset) {
+        // Little endian
+        return (value[offset] & 0xFF) | ((value[offset + 1] & 0xFF) << 8);
+    }
+
+    protected static int readSInt16(byte[] value, int offset) {
+        // Little endian
+        return (short) readUInt16(value, offset);
+    }
+
+    protected static long readUInt32(byte[] value, int offset) {
+        // Little endian
+        return (value[offset] & 0xFFL) | ((value[offset + 1] & 0xFFL) << 8) | ((value[offset + 2] & 0xFFL) << 16) | ((value[offset + 3] & 0xFFL) << 24);
+    }
+}
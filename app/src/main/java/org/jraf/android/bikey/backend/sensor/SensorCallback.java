@@ -0,0 +1,53 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.sensor;
+
+/**
+ * Callbacks of a sensor connected through the {@link SensorHub}.<br/>
+ * They are all called on the sensor hub thread.
+ */
+public interface SensorCallback {
+    /**
+     * Called when a connection to the sensor is attempted, including when it is re-attempted after a loss of the link.
+     */
+    void onConnecting();
+
+    /**
+     * Called for each notification of the measurement characteristic.
+     * 
+     * @param value The raw value of the characteristic.
+     */
+    void onMeasurement(byte[] value);
+
+    /**
+     * Called when the link to the sensor is lost. A reconnection will be attempted.
+     */
+    void onDisconnected();
+
+    /**
+     * Called when the sensor does not have the expected service or characteristic. No reconnection will be attempted.
+     */
+    void onError();
+}
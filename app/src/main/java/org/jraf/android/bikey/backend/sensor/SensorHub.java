@@ -0,0 +1,505 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.sensor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import org.jraf.android.bikey.app.Application;
+import org.jraf.android.util.log.LogUtil;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Manages the GATT connections of the bluetooth sensors (heart rate monitor, speed and cadence sensor, power meter).
+ * <ul>
+ * <li>All the GATT callbacks are handled, and the {@link SensorCallback}s are called, on a single thread.</li>
+ * <li>The GATT operations (service discovery, descriptor writes, RSSI reads) of all the sensors go through a single queue, because the bluetooth
+ * stack only handles one at a time. An operation that does not complete in time is handled like a lost link, so an unresponsive sensor cannot
+ * block the others.</li>
+ * <li>A lost link is reconnected with an exponential backoff.</li>
+ * <li>The signal strength and the packet rate of each sensor are tracked, see {@link SensorMetrics}.</li>
+ * </ul>
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class SensorHub {
+    private static final SensorHub INSTANCE = new SensorHub();
+
+    public static SensorHub get() {
+        return INSTANCE;
+    }
+
+    // See https://developer.bluetooth.org/gatt/descriptors/Pages/DescriptorViewer.aspx?u=org.bluetooth.descriptor.gatt.client_characteristic_configuration.xml
+    private static final int GATT_DESCRIPTOR_CLIENT_CHARACTERISTIC_CONFIGURATION = 0x2902;
+
+    private static final long RECONNECT_DELAY_MIN_MS = 1000;
+    private static final long RECONNECT_DELAY_MAX_MS = 60 * 1000;
+    private static final long OPERATION_TIMEOUT_MS = 10 * 1000;
+    private static final long METRICS_PERIOD_MS = 10 * 1000;
+
+    private static final int MSG_CONNECTION_STATE_CHANGE = 0;
+    private static final int MSG_SERVICES_DISCOVERED = 1;
+    private static final int MSG_DESCRIPTOR_WRITE = 2;
+    private static final int MSG_READ_REMOTE_RSSI = 3;
+    private static final int MSG_CHARACTERISTIC_CHANGED = 4;
+    private static final int MSG_OPERATION_TIMEOUT = 5;
+    private static final int MSG_RECONNECT = 6;
+    private static final int MSG_METRICS = 7;
+
+    private static final int OPERATION_DISCOVER_SERVICES = 0;
+    private static final int OPERATION_ENABLE_NOTIFICATION = 1;
+    private static final int OPERATION_READ_REMOTE_RSSI = 2;
+
+    private static class Connection {
+        BluetoothDevice device;
+        int serviceNumber;
+        int characteristicNumber;
+        SensorCallback callback;
+        SensorMetrics metrics;
+
+        /**
+         * Changes at each connection attempt, so the callbacks of the previous attempts can be ignored.
+         */
+        int attemptId;
+        BluetoothGatt gatt;
+        boolean subscribed;
+        int failedAttemptCount;
+    }
+
+    private static class Operation {
+        final int type;
+        final Connection connection;
+        final BluetoothGattDescriptor descriptor;
+
+        Operation(int type, Connection connection, BluetoothGattDescriptor descriptor) {
+            this.type = type;
+            this.connection = connection;
+            this.descriptor = descriptor;
+        }
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+
+    /*
+     * The fields below are only accessed on the hub thread.
+     */
+    private final List<Connection> mConnections = new ArrayList<Connection>();
+    private final SparseArray<Connection> mConnectionsByAttemptId = new SparseArray<Connection>();
+    private int mNextAttemptId;
+    private final ArrayDeque<Operation> mOperations = new ArrayDeque<Operation>();
+    private Operation mCurrentOperation;
+
+    private SensorHub() {
+        mContext = Application.getApplication();
+        HandlerThread handlerThread = new HandlerThread(SensorHub.class.getSimpleName());
+        handlerThread.start();
+        mHandler = new Handler(handlerThread.getLooper(), mHandlerCallback);
+    }
+
+    /**
+     * Connect to a sensor and subscribe to the notifications of its measurement characteristic.<br/>
+     * The connection is kept until {@link #disconnect(SensorCallback)} is called: a lost link is reconnected automatically.
+     * If there was already a connection with the same callback, it is closed first.
+     * 
+     * @param serviceNumber The assigned number of the GATT service of the sensor.
+     * @param characteristicNumber The assigned number of the measurement characteristic.
+     * @return The metrics of the connection.
+     */
+    public SensorMetrics connect(final BluetoothDevice device, final int serviceNumber, final int characteristicNumber, final SensorCallback callback) {
+        final SensorMetrics metrics = new SensorMetrics(device.getAddress());
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Connection previous = findConnection(callback);
+                if (previous != null) close(previous);
+
+                Connection connection = new Connection();
+                connection.device = device;
+                connection.serviceNumber = serviceNumber;
+                connection.characteristicNumber = characteristicNumber;
+                connection.callback = callback;
+                connection.metrics = metrics;
+                mConnections.add(connection);
+                if (!mHandler.hasMessages(MSG_METRICS)) mHandler.sendEmptyMessageDelayed(MSG_METRICS, METRICS_PERIOD_MS);
+
+                callback.onConnecting();
+                connectGatt(connection);
+            }
+        });
+        return metrics;
+    }
+
+    /**
+     * Close the connection with the given callback, if any. The callback will not be called anymore.
+     */
+    public void disconnect(final SensorCallback callback) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Connection connection = findConnection(callback);
+                if (connection != null) close(connection);
+            }
+        });
+    }
+
+
+    /*
+     * Connections.
+     */
+
+    private Connection findConnection(SensorCallback callback) {
+        for (Connection connection : mConnections) {
+            if (connection.callback == callback) return connection;
+        }
+        return null;
+    }
+
+    private void connectGatt(Connection connection) {
+        Log.d("Connecting to " + connection.device.getAddress());
+        connection.attemptId = mNextAttemptId++;
+        mConnectionsByAttemptId.put(connection.attemptId, connection);
+        // No auto connect: a direct connection is faster, and lost links are handled by the backoff
+        connection.gatt = connection.device.connectGatt(mContext, false, new GattCallback(connection.attemptId));
+        if (connection.gatt == null) {
+            // Bluetooth is probably off
+            onLinkLost(connection);
+        }
+    }
+
+    private void onLinkLost(Connection connection) {
+        releaseGatt(connection);
+        connection.callback.onDisconnected();
+
+        long delay = Math.min(RECONNECT_DELAY_MIN_MS << Math.min(connection.failedAttemptCount, 16), RECONNECT_DELAY_MAX_MS);
+        connection.failedAttemptCount++;
+        connection.metrics.onReconnect();
+        Log.d("Link lost with " + connection.device.getAddress() + ", reconnecting in " + delay + " ms");
+        connection.callback.onConnecting();
+        mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_RECONNECT, connection), delay);
+    }
+
+    private void releaseGatt(Connection connection) {
+        mConnectionsByAttemptId.remove(connection.attemptId);
+        removeOperations(connection);
+        if (connection.gatt != null) {
+            connection.gatt.disconnect();
+            connection.gatt.close();
+            connection.gatt = null;
+        }
+        connection.subscribed = false;
+    }
+
+    private void close(Connection connection) {
+        Log.d("Closing connection with " + connection.device.getAddress());
+        releaseGatt(connection);
+        mHandler.removeMessages(MSG_RECONNECT, connection);
+        mConnections.remove(connection);
+    }
+
+    /**
+     * The sensor does not have what we expect: no need to try again.
+     */
+    private void fail(Connection connection) {
+        close(connection);
+        connection.callback.onError();
+    }
+
+
+    /*
+     * GATT callbacks.
+     */
+
+    /**
+     * Forwards the GATT callbacks, which are called on binder threads, to the hub thread.
+     */
+    private class GattCallback extends BluetoothGattCallback {
+        private final int mAttemptId;
+
+        public GattCallback(int attemptId) {
+            mAttemptId = attemptId;
+        }
+
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            Log.d("status=" + LogUtil.getConstantName(BluetoothGatt.class, status, "GATT_") + " newState="
+                    + LogUtil.getConstantName(BluetoothProfile.class, newState, "STATE_"));
+            mHandler.obtainMessage(MSG_CONNECTION_STATE_CHANGE, mAttemptId, newState).sendToTarget();
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            mHandler.obtainMessage(MSG_SERVICES_DISCOVERED, mAttemptId, status).sendToTarget();
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            mHandler.obtainMessage(MSG_DESCRIPTOR_WRITE, mAttemptId, status).sendToTarget();
+        }
+
+        @Override
+        public void onReadRemoteRssi(BluetoothGatt gatt, int rssi, int status) {
+            mHandler.obtainMessage(MSG_READ_REMOTE_RSSI, mAttemptId, status == BluetoothGatt.GATT_SUCCESS ? rssi : SensorMetrics.RSSI_UNKNOWN)
+                    .sendToTarget();
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            // This is called several times per second: messages are pooled, and the value is a new array for each notification so it can be
+            // passed as is
+            mHandler.obtainMessage(MSG_CHARACTERISTIC_CHANGED, mAttemptId, 0, characteristic.getValue()).sendToTarget();
+        }
+    }
+
+    private final Handler.Callback mHandlerCallback = new Handler.Callback() {
+        @Override
+        public boolean handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_OPERATION_TIMEOUT:
+                    onOperationTimeout((Operation) msg.obj);
+                    return true;
+
+                case MSG_RECONNECT:
+                    connectGatt((Connection) msg.obj);
+                    return true;
+
+                case MSG_METRICS:
+                    onMetrics();
+                    return true;
+            }
+
+            Connection connection = mConnectionsByAttemptId.get(msg.arg1);
+            if (connection == null) {
+                // Callback of a closed connection, or of a previous attempt: ignore it
+                return true;
+            }
+            switch (msg.what) {
+                case MSG_CONNECTION_STATE_CHANGE:
+                    onConnectionStateChange(connection, msg.arg2);
+                    break;
+
+                case MSG_SERVICES_DISCOVERED:
+                    onServicesDiscovered(connection, msg.arg2);
+                    break;
+
+                case MSG_DESCRIPTOR_WRITE:
+                    onDescriptorWrite(connection, msg.arg2);
+                    break;
+
+                case MSG_READ_REMOTE_RSSI:
+                    completeOperation(connection, OPERATION_READ_REMOTE_RSSI);
+                    if (msg.arg2 != SensorMetrics.RSSI_UNKNOWN) connection.metrics.onRssi(msg.arg2);
+                    break;
+
+                case MSG_CHARACTERISTIC_CHANGED:
+                    connection.metrics.onPacket();
+                    connection.callback.onMeasurement((byte[]) msg.obj);
+                    break;
+            }
+            return true;
+        }
+    };
+
+    private void onConnectionStateChange(Connection connection, int newState) {
+        switch (newState) {
+            case BluetoothProfile.STATE_CONNECTED:
+                enqueue(new Operation(OPERATION_DISCOVER_SERVICES, connection, null));
+                break;
+
+            case BluetoothProfile.STATE_DISCONNECTED:
+                onLinkLost(connection);
+                break;
+        }
+    }
+
+    private void onServicesDiscovered(Connection connection, int status) {
+        completeOperation(connection, OPERATION_DISCOVER_SERVICES);
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            onLinkLost(connection);
+            return;
+        }
+
+        BluetoothGattService service = null;
+        for (BluetoothGattService s : connection.gatt.getServices()) {
+            if (getAssignedNumber(s.getUuid()) == connection.serviceNumber) {
+                service = s;
+                break;
+            }
+        }
+        if (service == null) {
+            Log.w("Service " + Integer.toHexString(connection.serviceNumber) + " not found on " + connection.device.getAddress());
+            fail(connection);
+            return;
+        }
+
+        BluetoothGattCharacteristic characteristic = null;
+        for (BluetoothGattCharacteristic c : service.getCharacteristics()) {
+            if (getAssignedNumber(c.getUuid()) == connection.characteristicNumber) {
+                characteristic = c;
+                break;
+            }
+        }
+        if (characteristic == null) {
+            Log.w("Characteristic " + Integer.toHexString(connection.characteristicNumber) + " not found on " + connection.device.getAddress());
+            fail(connection);
+            return;
+        }
+
+        BluetoothGattDescriptor descriptor = null;
+        for (BluetoothGattDescriptor d : characteristic.getDescriptors()) {
+            if (getAssignedNumber(d.getUuid()) == GATT_DESCRIPTOR_CLIENT_CHARACTERISTIC_CONFIGURATION) {
+                descriptor = d;
+                break;
+            }
+        }
+        if (descriptor == null) {
+            Log.w("Client characteristic configuration descriptor not found on " + connection.device.getAddress());
+            fail(connection);
+            return;
+        }
+
+        connection.gatt.setCharacteristicNotification(characteristic, true);
+        descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+        enqueue(new Operation(OPERATION_ENABLE_NOTIFICATION, connection, descriptor));
+    }
+
+    private void onDescriptorWrite(Connection connection, int status) {
+        completeOperation(connection, OPERATION_ENABLE_NOTIFICATION);
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            onLinkLost(connection);
+            return;
+        }
+        Log.d("Subscribed to " + connection.device.getAddress());
+        connection.subscribed = true;
+        connection.failedAttemptCount = 0;
+    }
+
+    private void onMetrics() {
+        long now = SystemClock.elapsedRealtime();
+        for (Connection connection : mConnections) {
+            if (!connection.subscribed) continue;
+            connection.metrics.updatePacketRate(now);
+            Log.d(connection.metrics.toString());
+            enqueue(new Operation(OPERATION_READ_REMOTE_RSSI, connection, null));
+        }
+        if (!mConnections.isEmpty()) mHandler.sendEmptyMessageDelayed(MSG_METRICS, METRICS_PERIOD_MS);
+    }
+
+
+    /*
+     * Operation queue.
+     */
+
+    private void enqueue(Operation operation) {
+        mOperations.add(operation);
+        runNextOperation();
+    }
+
+    private void runNextOperation() {
+        while (mCurrentOperation == null && !mOperations.isEmpty()) {
+            Operation operation = mOperations.poll();
+            if (startOperation(operation)) {
+                mCurrentOperation = operation;
+                mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_OPERATION_TIMEOUT, operation), OPERATION_TIMEOUT_MS);
+            } else {
+                Log.w("Could not start operation " + operation.type + " on " + operation.connection.device.getAddress());
+                if (operation.type != OPERATION_READ_REMOTE_RSSI) onLinkLost(operation.connection);
+            }
+        }
+    }
+
+    private boolean startOperation(Operation operation) {
+        BluetoothGatt gatt = operation.connection.gatt;
+        if (gatt == null) return false;
+        switch (operation.type) {
+            case OPERATION_DISCOVER_SERVICES:
+                return gatt.discoverServices();
+
+            case OPERATION_ENABLE_NOTIFICATION:
+                return gatt.writeDescriptor(operation.descriptor);
+
+            case OPERATION_READ_REMOTE_RSSI:
+                return gatt.readRemoteRssi();
+        }
+        return false;
+    }
+
+    private void completeOperation(Connection connection, int type) {
+        if (mCurrentOperation == null || mCurrentOperation.connection != connection || mCurrentOperation.type != type) return;
+        mHandler.removeMessages(MSG_OPERATION_TIMEOUT, mCurrentOperation);
+        mCurrentOperation = null;
+        runNextOperation();
+    }
+
+    private void onOperationTimeout(Operation operation) {
+        if (operation != mCurrentOperation) return;
+        Log.w("Operation " + operation.type + " timed out on " + operation.connection.device.getAddress());
+        mCurrentOperation = null;
+        onLinkLost(operation.connection);
+        runNextOperation();
+    }
+
+    /**
+     * Remove the pending operations of the given connection, including the current one.
+     */
+    private void removeOperations(Connection connection) {
+        for (Iterator<Operation> i = mOperations.iterator(); i.hasNext();) {
+            if (i.next().connection == connection) i.remove();
+        }
+        if (mCurrentOperation != null && mCurrentOperation.connection == connection) {
+            mHandler.removeMessages(MSG_OPERATION_TIMEOUT, mCurrentOperation);
+            mCurrentOperation = null;
+            runNextOperation();
+        }
+    }
+
+
+    /*
+     * Helpers.
+     */
+
+    private static int getAssignedNumber(UUID uuid) {
+        // Keep only the significant bits of the UUID
+        return (int) ((uuid.getMostSignificantBits() & 0x0000FFFF00000000L) >> 32);
+    }
+}
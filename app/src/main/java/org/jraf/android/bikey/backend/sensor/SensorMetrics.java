@@ -0,0 +1,100 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.sensor;
+
+/**
+ * Link quality metrics of a sensor connected through the {@link SensorHub}.<br/>
+ * They are updated on the sensor hub thread and can be read from any thread.
+ */
+public class SensorMetrics {
+    public static final int RSSI_UNKNOWN = Integer.MIN_VALUE;
+
+    private final String mAddress;
+    private volatile int mRssi = RSSI_UNKNOWN;
+    private volatile float mPacketRate;
+    private volatile int mReconnectCount;
+
+    private long mPacketCount;
+    private long mRatePacketCount;
+    private long mRateDate;
+
+    /* package */SensorMetrics(String address) {
+        mAddress = address;
+    }
+
+    /* package */void onPacket() {
+        mPacketCount++;
+    }
+
+    /* package */void onRssi(int rssi) {
+        mRssi = rssi;
+    }
+
+    /* package */void onReconnect() {
+        mReconnectCount++;
+        mRssi = RSSI_UNKNOWN;
+    }
+
+    /**
+     * Update the packet rate with the packets received since the last call.
+     */
+    /* package */void updatePacketRate(long now) {
+        if (mRateDate != 0 && now > mRateDate) {
+            mPacketRate = (mPacketCount - mRatePacketCount) * 1000f / (now - mRateDate);
+        }
+        mRatePacketCount = mPacketCount;
+        mRateDate = now;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * @return The last signal strength in dBm, or {@link #RSSI_UNKNOWN}.
+     */
+    public int getRssi() {
+        return mRssi;
+    }
+
+    /**
+     * @return The number of notifications received per second.
+     */
+    public float getPacketRate() {
+        return mPacketRate;
+    }
+
+    /**
+     * @return The number of times the link was lost and a reconnection was attempted.
+     */
+    public int getReconnectCount() {
+        return mReconnectCount;
+    }
+
+    @Override
+    public String toString() {
+        return mAddress + " rssi=" + (mRssi == RSSI_UNKNOWN ? "?" : mRssi) + " packetRate=" + mPacketRate + " reconnectCount=" + mReconnectCount;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.trackimport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.jraf.android.bikey.backend.export.fit.FitReader;
+import org.jraf.android.bikey.backend.export.fit.FitReader.RecordListener;
+
+/**
+ * Imports a FIT activity file (see {@link FitReader}).
+ */
+public class FitImporter extends TrackImporter {
+    public FitImporter(Context context, Uri uri) {
+        super(context, uri);
+    }
+
+    @Override
+    protected void parse(InputStream in) throws IOException {
+        new FitReader(mRecordListener).read(in);
+    }
+
+    private RecordListener mRecordListener = new RecordListener() {
+        @Override
+        public void onRecord(long date, double lat, double lon, double ele, Float cadence, Integer heartRate) {
+            addPoint(date, lat, lon, ele, cadence, heartRate);
+        }
+    };
+}
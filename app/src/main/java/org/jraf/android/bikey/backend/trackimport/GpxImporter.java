@@ -0,0 +1,96 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.trackimport;
+
+import java.io.IOException;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+import android.net.Uri;
+
+/**
+ * Imports a GPX file.<br/>
+ * The heart rate and cadence are read from the Garmin TrackPointExtension ({@code hr} and {@code cad} elements), if present. Points without a time
+ * are ignored.
+ */
+public class GpxImporter extends XmlTrackImporter {
+    public GpxImporter(Context context, Uri uri) {
+        super(context, uri);
+    }
+
+    @Override
+    protected void parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+        boolean inTrack = false;
+        boolean inTrackPoint = false;
+        boolean hasName = false;
+        double lat = 0;
+        double lon = 0;
+        double ele = 0;
+        long date = -1;
+        Float cadence = null;
+        Integer heartRate = null;
+
+        int eventType;
+        while ((eventType = parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+                if ("trk".equals(name)) {
+                    inTrack = true;
+                } else if ("trkpt".equals(name)) {
+                    inTrackPoint = true;
+                    lat = parseDouble(parser.getAttributeValue(null, "lat"));
+                    lon = parseDouble(parser.getAttributeValue(null, "lon"));
+                    ele = 0;
+                    date = -1;
+                    cadence = null;
+                    heartRate = null;
+                } else if (inTrackPoint) {
+                    if ("ele".equals(name)) {
+                        ele = parseDouble(parser.nextText());
+                    } else if ("time".equals(name)) {
+                        date = parseDateTime(parser.nextText());
+                    } else if ("hr".equals(name)) {
+                        heartRate = (int) Math.round(parseDouble(parser.nextText()));
+                    } else if ("cad".equals(name)) {
+                        cadence = (float) parseDouble(parser.nextText());
+                    }
+                } else if (inTrack && !hasName && "name".equals(name)) {
+                    setRideName(parser.nextText().trim());
+                    hasName = true;
+                }
+            } else if (eventType == XmlPullParser.END_TAG) {
+                String name = parser.getName();
+                if ("trkpt".equals(name)) {
+                    inTrackPoint = false;
+                    if (date != -1) addPoint(date, lat, lon, ele, cadence, heartRate);
+                } else if ("trk".equals(name)) {
+                    inTrack = false;
+                }
+            }
+        }
+    }
+}
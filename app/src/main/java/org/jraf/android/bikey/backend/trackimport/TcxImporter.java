@@ -0,0 +1,103 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.trackimport;
+
+import java.io.IOException;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+import android.net.Uri;
+
+/**
+ * Imports a Training Center XML file.<br/>
+ * Track points without a position are ignored. The notes of the activity, if any, are used as the name of the ride.
+ */
+public class TcxImporter extends XmlTrackImporter {
+    public TcxImporter(Context context, Uri uri) {
+        super(context, uri);
+    }
+
+    @Override
+    protected void parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+        boolean inLap = false;
+        boolean inTrackPoint = false;
+        boolean inHeartRate = false;
+        double lat = Double.NaN;
+        double lon = Double.NaN;
+        double ele = 0;
+        long date = -1;
+        Float cadence = null;
+        Integer heartRate = null;
+
+        int eventType;
+        while ((eventType = parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+                if ("Lap".equals(name)) {
+                    inLap = true;
+                } else if ("Trackpoint".equals(name)) {
+                    inTrackPoint = true;
+                    lat = Double.NaN;
+                    lon = Double.NaN;
+                    ele = 0;
+                    date = -1;
+                    cadence = null;
+                    heartRate = null;
+                } else if (inTrackPoint) {
+                    if ("Time".equals(name)) {
+                        date = parseDateTime(parser.nextText());
+                    } else if ("LatitudeDegrees".equals(name)) {
+                        lat = parseDouble(parser.nextText());
+                    } else if ("LongitudeDegrees".equals(name)) {
+                        lon = parseDouble(parser.nextText());
+                    } else if ("AltitudeMeters".equals(name)) {
+                        ele = parseDouble(parser.nextText());
+                    } else if ("HeartRateBpm".equals(name)) {
+                        inHeartRate = true;
+                    } else if (inHeartRate && "Value".equals(name)) {
+                        heartRate = (int) Math.round(parseDouble(parser.nextText()));
+                    } else if ("Cadence".equals(name)) {
+                        cadence = (float) parseDouble(parser.nextText());
+                    }
+                } else if (!inLap && "Notes".equals(name)) {
+                    String notes = parser.nextText().trim();
+                    if (notes.length() > 0) setRideName(notes);
+                }
+            } else if (eventType == XmlPullParser.END_TAG) {
+                String name = parser.getName();
+                if ("Trackpoint".equals(name)) {
+                    inTrackPoint = false;
+                    if (date != -1 && !Double.isNaN(lat) && !Double.isNaN(lon)) addPoint(date, lat, lon, ele, cadence, heartRate);
+                } else if ("HeartRateBpm".equals(name)) {
+                    inHeartRate = false;
+                } else if ("Lap".equals(name)) {
+                    inLap = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.trackimport;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.location.Location;
+import android.net.Uri;
+
+import org.jraf.android.bikey.backend.export.fit.FitProtocol;
+import org.jraf.android.bikey.backend.log.LogManager;
+import org.jraf.android.bikey.backend.progress.CancelledException;
+import org.jraf.android.bikey.backend.progress.ProgressListener;
+import org.jraf.android.bikey.backend.provider.BikeyProvider;
+import org.jraf.android.bikey.backend.provider.log.LogColumns;
+import org.jraf.android.bikey.backend.provider.log.LogContentValues;
+import org.jraf.android.bikey.backend.provider.log.LogSelection;
+import org.jraf.android.bikey.backend.provider.ride.RideSelection;
+import org.jraf.android.bikey.backend.ride.RideManager;
+import org.jraf.android.util.annotation.Background;
+import org.jraf.android.util.io.IoUtil;
+import org.jraf.android.util.log.wrapper.Log;
+
+/**
+ * Base class for importers creating a new ride from a track file.<br/>
+ * Subclasses parse the file in a streaming fashion and call {@link #addPoint(long, double, double, double, Float, Integer)} for each point. The logs
+ * are computed the same way as when recording (see {@link LogManager#createLogContentValues(long, Location, Location, Float, Integer)}) and are
+ * inserted by batches of {@link #BATCH_SIZE}, each batch in a single transaction. Memory usage does not depend on the size of the file.
+ */
+public abstract class TrackImporter {
+    public interface RideCreatedListener {
+        /**
+         * Called on the importing thread, as soon as the ride has been created (before any log is inserted).
+         */
+        void onRideCreated(Uri rideUri);
+    }
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int SNIFF_SIZE = 1024;
+    private static final long PROGRESS_STEP = 64 * 1024;
+
+    /**
+     * Points separated by more than this are considered to be separated by a pause, which is not counted in the ride duration.
+     */
+    public static final long PAUSE_DURATION = 5 * 60 * 1000;
+
+    private final Context mContext;
+    private final Uri mUri;
+
+    private final ContentValues[] mBatch = new ContentValues[BATCH_SIZE];
+    private int mBatchCount;
+    private Location mLocation = new Location((String) null);
+    private Location mPreviousLocation = new Location((String) null);
+    private final Calendar mCalendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+
+    private Uri mRideUri;
+    private long mRideId;
+    private String mRideName;
+    private long mFirstDate;
+    private int mLogCount;
+    private long mDuration;
+    private float mDistance;
+    private volatile boolean mCancelled;
+    private RideCreatedListener mRideCreatedListener;
+
+    protected TrackImporter(Context context, Uri uri) {
+        mContext = context;
+        mUri = uri;
+    }
+
+    /**
+     * Create an importer for the file at the given uri, guessing its format from its first bytes.
+     * 
+     * @return The importer, or {@code null} if the file is not a GPX, TCX or FIT file (for instance a Bikey database file).
+     */
+    @Background
+    public static TrackImporter newInstance(Context context, Uri uri) throws IOException {
+        byte[] head = new byte[SNIFF_SIZE];
+        int length = 0;
+        InputStream in = context.getContentResolver().openInputStream(uri);
+        try {
+            int read;
+            while (length < head.length && (read = in.read(head, length, head.length - length)) != -1) {
+                length += read;
+            }
+        } finally {
+            IoUtil.closeSilently(in);
+        }
+
+        if (length >= 12 && Arrays.equals(Arrays.copyOfRange(head, 8, 12), FitProtocol.DATA_TYPE)) return new FitImporter(context, uri);
+        String text = new String(head, 0, length, "UTF-8");
+        if (text.contains("<gpx")) return new GpxImporter(context, uri);
+        if (text.contains("<TrainingCenterDatabase")) return new TcxImporter(context, uri);
+        return null;
+    }
+
+    /**
+     * Import the file into a new ride.
+     * 
+     * @param progressListener Notified with the number of bytes read so far, on the calling thread. Can be {@code null}.
+     * @return The uri of the created ride.
+     */
+    @Background
+    public Uri importTrack(ProgressListener progressListener) throws IOException {
+        Log.d("uri=" + mUri);
+        long size = getSize();
+        InputStream in = new BufferedInputStream(new ProgressInputStream(mContext.getContentResolver().openInputStream(mUri), size, progressListener),
+                BUFFER_SIZE);
+        boolean ok = false;
+        try {
+            parse(in);
+            flush();
+            if (mLogCount == 0) throw new IOException("No track points found in " + mUri);
+            ok = true;
+        } finally {
+            IoUtil.closeSilently(in);
+            if (!ok) deleteRide();
+        }
+
+        RideManager.get().updateImported(mRideUri, new Date(mFirstDate), mDuration, mDistance);
+        if (mRideName != null) RideManager.get().updateName(mRideUri, mRideName);
+        mContext.getContentResolver().notifyChange(LogColumns.CONTENT_URI, null);
+        Log.d("Imported " + mLogCount + " logs into " + mRideUri);
+        return mRideUri;
+    }
+
+    /**
+     * Ask the import to stop as soon as possible. Can be called from any thread.<br/>
+     * The import then fails with a {@link CancelledException}, and the partially imported ride is deleted.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public void setRideCreatedListener(RideCreatedListener rideCreatedListener) {
+        mRideCreatedListener = rideCreatedListener;
+    }
+
+    /**
+     * Parse the given stream, calling {@link #addPoint(long, double, double, double, Float, Integer)} for each point, in chronological order.
+     */
+    protected abstract void parse(InputStream in) throws IOException;
+
+    protected void setRideName(String rideName) {
+        mRideName = rideName;
+    }
+
+    /**
+     * @param date The date of the point, in milliseconds since the epoch.
+     * @param cadence The cadence, or {@code null} if unknown.
+     * @param heartRate The heart rate, or {@code null} if unknown.
+     */
+    protected void addPoint(long date, double lat, double lon, double ele, Float cadence, Integer heartRate) {
+        if (mRideUri == null) {
+            mRideUri = RideManager.get().create(null, new Date(date));
+            mRideId = ContentUris.parseId(mRideUri);
+            mFirstDate = date;
+            if (mRideCreatedListener != null) mRideCreatedListener.onRideCreated(mRideUri);
+        }
+
+        // Reuse the two Location objects
+        Location swap = mPreviousLocation;
+        mPreviousLocation = mLocation;
+        mLocation = swap;
+        mLocation.setTime(date);
+        mLocation.setLatitude(lat);
+        mLocation.setLongitude(lon);
+        mLocation.setAltitude(ele);
+
+        Location previousLocation = null;
+        if (mLogCount > 0) {
+            previousLocation = mPreviousLocation;
+            long duration = date - previousLocation.getTime();
+            if (duration > 0 && duration <= PAUSE_DURATION) mDuration += duration;
+        }
+
+        LogContentValues values = LogManager.get().createLogContentValues(mRideId, mLocation, previousLocation, cadence, heartRate);
+        ContentValues contentValues = values.values();
+        Float logDistance = contentValues.getAsFloat(LogColumns.LOG_DISTANCE);
+        if (logDistance != null) mDistance += logDistance;
+
+        mBatch[mBatchCount++] = contentValues;
+        mLogCount++;
+        if (mBatchCount == BATCH_SIZE) flush();
+    }
+
+    private void flush() {
+        if (mBatchCount == 0) return;
+        ContentValues[] batch = mBatchCount == BATCH_SIZE ? mBatch : Arrays.copyOf(mBatch, mBatchCount);
+        mContext.getContentResolver().bulkInsert(BikeyProvider.notify(LogColumns.CONTENT_URI, false), batch);
+        Arrays.fill(mBatch, null);
+        mBatchCount = 0;
+    }
+
+    private void deleteRide() {
+        if (mRideUri == null) return;
+        deleteRide(mContext, mRideUri);
+    }
+
+    /**
+     * Delete a partially imported ride, and its logs.
+     */
+    @Background
+    public static void deleteRide(Context context, Uri rideUri) {
+        Log.d("Deleting partially imported ride " + rideUri);
+        long rideId = ContentUris.parseId(rideUri);
+        LogSelection logWhere = new LogSelection();
+        logWhere.rideId(rideId);
+        logWhere.delete(context.getContentResolver());
+        RideSelection rideWhere = new RideSelection();
+        rideWhere.id(rideId);
+        rideWhere.delete(context.getContentResolver());
+    }
+
+    /**
+     * @return The size of the file, or {@code -1} if it is unknown.
+     */
+    private long getSize() {
+        AssetFileDescriptor fileDescriptor = null;
+        try {
+            fileDescriptor = mContext.getContentResolver().openAssetFileDescriptor(mUri, "r");
+            return fileDescriptor.getLength();
+        } catch (IOException e) {
+            Log.w("Could not get the size of " + mUri, e);
+            return -1;
+        } finally {
+            if (fileDescriptor != null) {
+                try {
+                    fileDescriptor.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Parse an ISO 8601 date time, as found in GPX and TCX files (for instance {@code 2014-04-30T18:03:21Z},
+     * {@code 2014-04-30T18:03:21.500Z} or {@code 2014-04-30T20:03:21+02:00}).
+     * 
+     * @return The date in milliseconds since the epoch.
+     */
+    protected long parseDateTime(String dateTime) throws IOException {
+        String s = dateTime.trim();
+        try {
+            int year = Integer.parseInt(s.substring(0, 4));
+            int month = Integer.parseInt(s.substring(5, 7));
+            int day = Integer.parseInt(s.substring(8, 10));
+            int hour = Integer.parseInt(s.substring(11, 13));
+            int minute = Integer.parseInt(s.substring(14, 16));
+            int second = Integer.parseInt(s.substring(17, 19));
+            int i = 19;
+            int length = s.length();
+
+            // Fraction of second
+            int millis = 0;
+            if (i < length && s.charAt(i) == '.') {
+                i++;
+                int factor = 100;
+                while (i < length && Character.isDigit(s.charAt(i))) {
+                    millis += (s.charAt(i) - '0') * factor;
+                    factor /= 10;
+                    i++;
+                }
+            }
+
+            // Time zone
+            long offset = 0;
+            if (i < length && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                int sign = s.charAt(i) == '+' ? 1 : -1;
+                int offsetHours = Integer.parseInt(s.substring(i + 1, i + 3));
+                i += 3;
+                if (i < length && s.charAt(i) == ':') i++;
+                int offsetMinutes = i < length ? Integer.parseInt(s.substring(i, i + 2)) : 0;
+                offset = sign * (offsetHours * 60 + offsetMinutes) * 60 * 1000L;
+            }
+
+            mCalendar.clear();
+            mCalendar.set(year, month - 1, day, hour, minute, second);
+            return mCalendar.getTimeInMillis() + millis - offset;
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid date time: " + dateTime, e);
+        }
+    }
+
+    /**
+     * Reports the number of bytes read from the underlying stream, and checks for cancellation.
+     */
+    private class ProgressInputStream extends FilterInputStream {
+        private final long mSize;
+        private final ProgressListener mProgressListener;
+        private long mCount;
+        private long mNextProgress;
+
+        public ProgressInputStream(InputStream in, long size, ProgressListener progressListener) {
+            super(in);
+            mSize = size;
+            mProgressListener = progressListener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int res = super.read();
+            if (res != -1) onRead(1);
+            return res;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int res = super.read(buffer, offset, count);
+            if (res > 0) onRead(res);
+            return res;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long res = super.skip(count);
+            if (res > 0) onRead(res);
+            return res;
+        }
+
+        private void onRead(long count) throws CancelledException {
+            if (mCancelled) throw new CancelledException();
+            mCount += count;
+            if (mProgressListener != null && mCount >= mNextProgress) {
+                mProgressListener.onProgress(mCount, mSize);
+                mNextProgress = mCount + PROGRESS_STEP;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.backend.trackimport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Xml;
+
+/**
+ * Base class for importers of XML track files, using a pull parser.
+ */
+public abstract class XmlTrackImporter extends TrackImporter {
+    protected XmlTrackImporter(Context context, Uri uri) {
+        super(context, uri);
+    }
+
+    @Override
+    protected void parse(InputStream in) throws IOException {
+        try {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(in, null);
+            parse(parser);
+        } catch (XmlPullParserException e) {
+            throw new IOException("Could not parse " + getClass().getSimpleName() + " file", e);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number in " + getClass().getSimpleName() + " file", e);
+        }
+    }
+
+    /**
+     * Parse the document, calling {@link #addPoint(long, double, double, double, Float, Integer)} for each point.
+     */
+    protected abstract void parse(XmlPullParser parser) throws XmlPullParserException, IOException;
+
+    protected static double parseDouble(String s) {
+        return Double.parseDouble(s.trim());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ * 
+ * Copyright (C) 2013 Benoit 'BoD' Lubek (BoD@JRAF.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jraf.android.bikey.util;
+
+import android.annotation.TargetApi;
+import android.location.Location;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+/**
+ * Helpers to carry a monotonic timestamp (elapsed realtime since boot, in nanoseconds) alongside the wall time of a {@link Location}.<br/>
+ * Unlike the wall time, the elapsed realtime is not affected by clock adjustments (NTP, network time, time zone or manual changes), so it is the one
+ * used to compute durations and speeds.<br/>
+ * On API 17+ the value is stored in the location itself, on older devices it is stored in its extras.
+ */
+public class LocationUtil {
+    private static final String EXTRA_ELAPSED_REALTIME_NANOS = "org.jraf.android.bikey.EXTRA_ELAPSED_REALTIME_NANOS";
+
+    private static final long NANOS_PER_MS = 1000000;
+
+    /**
+     * @return The current elapsed realtime since boot, in nanoseconds.
+     */
+    public static long elapsedRealtimeNanos() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return elapsedRealtimeNanosJellyBeanMR1();
+        }
+        return SystemClock.elapsedRealtime() * NANOS_PER_MS;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static long elapsedRealtimeNanosJellyBeanMR1() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * @return The elapsed realtime of the given location, in nanoseconds, or {@code 0} if it is not known (for instance for imported tracks).
+     */
+    public static long getElapsedRealtimeNanos(Location location) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return getElapsedRealtimeNanosJellyBeanMR1(location);
+        }
+        Bundle extras = location.getExtras();
+        if (extras == null) return 0;
+        return extras.getLong(EXTRA_ELAPSED_REALTIME_NANOS, 0);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static long getElapsedRealtimeNanosJellyBeanMR1(Location location) {
+        return location.getElapsedRealtimeNanos();
+    }
+
+    public static void setElapsedRealtimeNanos(Location location, long elapsedRealtimeNanos) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            setElapsedRealtimeNanosJellyBeanMR1(location, elapsedRealtimeNanos);
+            return;
+        }
+        Bundle extras = location.getExtras();
+        if (extras == null) {
+            extras = new Bundle();
+            location.setExtras(extras);
+        }
+        extras.putLong(EXTRA_ELAPSED_REALTIME_NANOS, elapsedRealtimeNanos);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static void setElapsedRealtimeNanosJellyBeanMR1(Location location, long elapsedRealtimeNanos) {
+        location.setElapsedRealtimeNanos(elapsedRealtimeNanos);
+    }
+
+    /**
+     * @return A timestamp in milliseconds suitable to compute durations: the elapsed realtime of the location if it is known, its wall time
+     *         otherwise.<br/>
+     *         Only compare values obtained from locations of the same source (live or imported).
+     */
+    public static long getMonotonicTime(Location location) {
+        long elapsedRealtimeNanos = getElapsedRealtimeNanos(location);
+        if (elapsedRealtimeNanos == 0) return location.getTime();
+        return elapsedRealtimeNanos / NANOS_PER_MS;
+    }
+
+    /**
+     * @return The duration between the two given locations, in milliseconds. The elapsed realtime is used if it is known for both locations, the
+     *         wall time otherwise.
+     */
+    public static long getDuration(Location from, Location to) {
+        long fromNanos = getElapsedRealtimeNanos(from);
+        long toNanos = getElapsedRealtimeNanos(to);
+        if (fromNanos == 0 || toNanos == 0) return to.getTime() - from.getTime();
+        return (toNanos - fromNanos) / NANOS_PER_MS;
+    }
+}
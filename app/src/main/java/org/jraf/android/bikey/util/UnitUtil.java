@@ -45,6 +45,8 @@ public class UnitUtil {
     private static DecimalFormat FORMAT_DISTANCE = new DecimalFormat("0.00");
     private static DecimalFormat FORMAT_CADENCE = new DecimalFormat("0");
     private static DecimalFormat FORMAT_HEART_RATE = new DecimalFormat("0");
+    private static DecimalFormat FORMAT_POWER = new DecimalFormat("0");
+    private static DecimalFormat FORMAT_GRADIENT = new DecimalFormat("0");
 
 
     private static char sDecimalSeparator;
@@ -173,4 +175,37 @@ public class UnitUtil {
     public static CharSequence formatHeartRate(int bpm) {
         return FORMAT_HEART_RATE.format(bpm);
     }
+
+
+    /*
+     * Power.
+     */
+
+    public static CharSequence formatPower(float watts, boolean withUnit) {
+        String unit = "";
+        if (withUnit) unit = " W";
+
+        return FORMAT_POWER.format(watts) + unit;
+    }
+
+    public static CharSequence formatPower(float watts) {
+        return FORMAT_POWER.format(watts);
+    }
+
+
+    /*
+     * Gradient.
+     */
+
+    public static CharSequence formatGradient(Float gradient, boolean withUnit) {
+        String unit = "";
+        if (withUnit) unit = " %";
+
+        if (gradient == null) return "?" + unit;
+        return FORMAT_GRADIENT.format(gradient * 100) + unit;
+    }
+
+    public static CharSequence formatGradient(Float gradient) {
+        return formatGradient(gradient, true);
+    }
 }